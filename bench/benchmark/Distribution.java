@@ -0,0 +1,74 @@
+package benchmark;
+
+import java.util.Random;
+
+/**
+ * How often synthetic workloads pick each of n items.
+ */
+public enum Distribution {
+
+    /** Every item equally likely. */
+    UNIFORM,
+
+    /** Item of rank k (1-based) picked with probability proportional to 1/k, like word frequencies. */
+    ZIPF;
+
+    /**
+     * Create a sampler of this distribution.
+     *
+     * @param n positive number of items
+     * @param random source of randomness; owned by the sampler from now on
+     * @return a sampler over the items 0..n-1; for ZIPF, item ranks are a
+     *         random permutation of the items
+     */
+    public Sampler sampler(int n, Random random) {
+        if (n <= 0) throw new IllegalArgumentException("Need at least one item");
+        if (this == UNIFORM) return new Sampler(null, null, random, n);
+        double[] cumulative = new double[n];
+        double total = 0;
+        for (int k = 0; k < n; k++) {
+            total += 1.0 / (k + 1);
+            cumulative[k] = total;
+        }
+        int[] items = new int[n];
+        for (int k = 0; k < n; k++) {
+            int j = random.nextInt(k + 1);
+            items[k] = items[j];
+            items[j] = k;
+        }
+        return new Sampler(cumulative, items, random, n);
+    }
+
+    /**
+     * Draws items from a Distribution. Not thread-safe.
+     */
+    public static final class Sampler {
+        private final double[] cumulative;
+        private final int[] items;
+        private final Random random;
+        private final int n;
+
+        private Sampler(double[] cumulative, int[] items, Random random, int n) {
+            this.cumulative = cumulative;
+            this.items = items;
+            this.random = random;
+            this.n = n;
+        }
+
+        /**
+         * @return the next item, in 0..n-1
+         */
+        public int next() {
+            if (cumulative == null) return random.nextInt(n);
+            double u = random.nextDouble() * cumulative[n - 1];
+            int low = 0;
+            int high = n - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] < u) low = middle + 1;
+                else high = middle;
+            }
+            return items[low];
+        }
+    }
+}
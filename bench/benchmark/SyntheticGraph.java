@@ -0,0 +1,159 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import graph.Graph;
+
+/**
+ * A reproducible random edge list, replayed into Graph implementations by
+ * benchmarks. Vertices are labelled "v0", "v1", ...; there are about eight
+ * edges per vertex, with sources and targets drawn independently from a
+ * Distribution, so ZIPF graphs have a few very high-degree vertices.
+ */
+public final class SyntheticGraph {
+
+    private static final int EDGES_PER_VERTEX = 8;
+
+    private final String[] labels;
+    private final int[] sources;
+    private final int[] targets;
+    private final int[] weights;
+
+    // Abstraction function:
+    //   - edge i is labels[sources[i]] -> labels[targets[i]] with weight weights[i]
+    // Representation invariant:
+    //   - sources, targets and weights have equal length; no (source, target) pair
+    //     repeats; every weight is > 0
+
+    /**
+     * Generate a graph.
+     *
+     * @param edges positive number of distinct edges
+     * @param degrees how sources and targets are chosen
+     * @param seed random seed; equal arguments give equal graphs
+     * @return a graph with the given number of edges
+     */
+    public static SyntheticGraph generate(int edges, Distribution degrees, long seed) {
+        if (edges <= 0) throw new IllegalArgumentException("Need at least one edge");
+        int n = Math.max((int) Math.sqrt(edges) + 2, edges / EDGES_PER_VERTEX);
+        Random random = new Random(seed);
+        Distribution.Sampler sourceSampler = degrees.sampler(n, random);
+        Distribution.Sampler targetSampler = degrees.sampler(n, new Random(random.nextLong()));
+
+        LongSet seen = new LongSet(edges);
+        int[] sources = new int[edges];
+        int[] targets = new int[edges];
+        int[] weights = new int[edges];
+        int m = 0;
+        // skewed samplers keep redrawing the same head pairs; fall back to uniform targets when stuck
+        for (long attempt = 0; m < edges; attempt++) {
+            int s = sourceSampler.next();
+            int t = attempt < 20L * edges ? targetSampler.next() : random.nextInt(n);
+            if (!seen.add((long) s << 32 | t)) continue;
+            sources[m] = s;
+            targets[m] = t;
+            weights[m] = 1 + random.nextInt(100);
+            m++;
+        }
+        String[] labels = new String[n];
+        for (int v = 0; v < n; v++) {
+            labels[v] = "v" + v;
+        }
+        return new SyntheticGraph(labels, sources, targets, weights);
+    }
+
+    private SyntheticGraph(String[] labels, int[] sources, int[] targets, int[] weights) {
+        this.labels = labels;
+        this.sources = sources;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    /**
+     * @return number of vertex labels used by the edges
+     */
+    public int vertexCount() {
+        return labels.length;
+    }
+
+    /**
+     * @return number of edges
+     */
+    public int edgeCount() {
+        return sources.length;
+    }
+
+    /**
+     * @param v vertex number, in 0..vertexCount()-1
+     * @return the label of that vertex
+     */
+    public String label(int v) {
+        return labels[v];
+    }
+
+    /**
+     * Add every edge to a graph.
+     *
+     * @param <G> type of the graph
+     * @param graph graph to fill; its existing edges between the same vertices are overwritten
+     * @return graph
+     */
+    public <G extends Graph<String>> G fill(G graph) {
+        for (int i = 0; i < sources.length; i++) {
+            graph.set(labels[sources[i]], labels[targets[i]], weights[i]);
+        }
+        return graph;
+    }
+
+    /**
+     * Pre-draw vertices so benchmarks do not pay for random numbers in the timed loop.
+     *
+     * @param count power of two number of draws
+     * @param seed random seed
+     * @return count vertex numbers drawn uniformly
+     */
+    public int[] picks(int count, long seed) {
+        Random random = new Random(seed);
+        int[] picks = new int[count];
+        for (int i = 0; i < count; i++) {
+            picks[i] = random.nextInt(labels.length);
+        }
+        return picks;
+    }
+
+    /**
+     * Insert-only set of non-negative longs, for deduplicating edges without boxing.
+     */
+    private static final class LongSet {
+        private long[] keys;
+        private int size;
+
+        LongSet(int expected) {
+            keys = new long[Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1];
+            Arrays.fill(keys, -1);
+        }
+
+        boolean add(long key) {
+            int mask = keys.length - 1;
+            long h = key * 0x9E3779B97F4A7C15L;
+            int i = (int) (h ^ (h >>> 32)) & mask;
+            for (; keys[i] != -1; i = (i + 1) & mask) {
+                if (keys[i] == key) return false;
+            }
+            keys[i] = key;
+            if (++size * 2 > keys.length) grow();
+            return true;
+        }
+
+        private void grow() {
+            long[] old = keys;
+            keys = new long[old.length * 2];
+            Arrays.fill(keys, -1);
+            size = 0;
+            for (long key : old) {
+                if (key != -1) add(key);
+            }
+        }
+    }
+}
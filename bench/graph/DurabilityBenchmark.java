@@ -0,0 +1,131 @@
+package graph;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import benchmark.Distribution;
+import benchmark.SyntheticGraph;
+
+/**
+ * JMH benchmark of the write throughput of a {@link DurableGraph} over a
+ * {@link ConcurrentGraph}, against the ConcurrentGraph alone, with several
+ * writer threads setting edges of a synthetic graph.
+ *
+ * <p>Parameters, each overridable with JMH's {@code -p}:
+ * <pre>
+ *   window  durability window in milliseconds, or "memory" for the
+ *           ConcurrentGraph alone (default memory,0,1,10)
+ *   edges   number of edges of the synthetic graph (default 100000)
+ *   dir     directory to create the log in (default the temporary directory)
+ * </pre>
+ * Four writer threads by default; choose another number with {@code -t}.
+ * Each set changes the edge's weight, so every set is logged. With a
+ * positive window a set does not wait for the disk, so its figure is the
+ * rate at which changes are accepted; the log is synced after each
+ * iteration, untimed, so no backlog carries into the next one. The graph is
+ * closed and its directory deleted after each trial.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DurabilityBenchmark {
+
+    @Param({ "memory", "0", "1", "10" })
+    public String window;
+
+    @Param({ "100000" })
+    public int edges;
+
+    @Param({ "" })
+    public String dir;
+
+    SyntheticGraph data;
+    int[] picks;
+    Graph<String> graph;
+    Path directory;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        data = SyntheticGraph.generate(edges, Distribution.ZIPF, 6005);
+        picks = data.picks(GraphBenchmark.PICKS, 1);
+        if (window.equals("memory")) {
+            graph = new ConcurrentGraph<>();
+            return;
+        }
+        directory = dir.isEmpty() ? Files.createTempDirectory("durable")
+                : Files.createTempDirectory(Paths.get(dir), "durable");
+        graph = DurableGraph.builder(directory).graph(new ConcurrentGraph<>())
+                .durabilityWindow(Long.parseLong(window), TimeUnit.MILLISECONDS).build();
+    }
+
+    @TearDown(Level.Iteration)
+    public void sync() throws IOException {
+        if (graph instanceof DurableGraph) ((DurableGraph<String>) graph).sync();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        if (graph instanceof DurableGraph) ((DurableGraph<String>) graph).close();
+        graph = null;
+        if (directory != null) delete(directory);
+    }
+
+    /**
+     * One writer's place in the picks. Writers pair the same sources with
+     * different targets, and each pass through the picks sets new weights.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        int offset;
+        int count;
+
+        @Setup(Level.Trial)
+        public void start(ThreadParams thread) {
+            offset = thread.getThreadIndex() + 1;
+        }
+    }
+
+    @Benchmark
+    public int set(Writer writer) {
+        int i = writer.count & (GraphBenchmark.PICKS - 1);
+        int pass = writer.count++ / GraphBenchmark.PICKS;
+        return graph.set(data.label(picks[i]), data.label(picks[(i + writer.offset) & (GraphBenchmark.PICKS - 1)]),
+                1 + (pass & 63));
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            List<Path> paths = files.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path file : paths) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package graph;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmark.Distribution;
+import benchmark.SyntheticGraph;
+import metrics.Metrics;
+
+/**
+ * JMH benchmarks of building and changing every mutable Graph
+ * implementation, over synthetic graphs of several sizes and degree
+ * distributions. {@link GraphQueryBenchmark} measures the queries.
+ *
+ * <p>Parameters, each overridable with JMH's {@code -p}:
+ * <pre>
+ *   edges    number of edges (default 1000,100000; up to 10000000 with -jvmArgs -Xmx16g)
+ *   degrees  UNIFORM or ZIPF (default both)
+ *   impl     implementation names (default all)
+ * </pre>
+ * Each implementation runs in its own forked JVMs, so one implementation's
+ * JIT profile of the Graph call sites never skews another's. Run with
+ * {@code -prof gc} for the allocation rate, and keep each run's results
+ * with {@code -rf csv -rff FILE} to compare a change against a baseline, e.g.
+ * {@code java -jar target/bench/benchmarks.jar GraphBenchmark -p edges=10000000 -jvmArgs -Xmx16g -prof gc -rf csv -rff after.csv}.
+ *
+ * <p>add and remove cannot run in a steady state, since they use up the
+ * vertices they work on, so they run in single-shot batches of
+ * {@value #BATCH} operations with an untimed reset before each batch; do
+ * not override their mode with {@code -bm}. Their {@code -prof gc} figures
+ * are per batch, and remove's include the refills of its graph.
+ *
+ * <p>Every graph a benchmark makes is closed once it is done with, if it is
+ * {@link AutoCloseable}, so an {@link OffHeapGraph}'s memory is freed rather
+ * than left for its cleaner.
+ */
+@State(Scope.Benchmark)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GraphBenchmark {
+
+    static final int PICKS = 1 << 12;
+    // fewer than the vertices of the smallest graph, 1000 edges over 125 vertices
+    static final int BATCH = 100;
+
+    @Param({ "1000", "100000" })
+    public int edges;
+
+    @Param({ "UNIFORM", "ZIPF" })
+    public Distribution degrees;
+
+    @Param({ "ConcreteEdgesGraph", "ConcreteVerticesGraph", "IntGraph", "HashGraph", "AdaptiveGraph",
+             "ConcurrentGraph", "OffHeapGraph", "VersionedGraph", "InstrumentedGraph" })
+    public String impl;
+
+    SyntheticGraph data;
+    int[] picks;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        data = SyntheticGraph.generate(edges, degrees, 6005);
+        picks = data.picks(PICKS, 1);
+    }
+
+    /**
+     * @param impl name of a Graph implementation, or "FrozenGraph"
+     * @return a new empty graph of that implementation
+     */
+    static Graph<String> emptyGraph(String impl) {
+        switch (impl) {
+        case "ConcreteEdgesGraph": return new ConcreteEdgesGraph();
+        case "ConcreteVerticesGraph": return new ConcreteVerticesGraph();
+        case "IntGraph": return new IntGraph();
+        case "HashGraph": return new HashGraph<>();
+        case "AdaptiveGraph": return new AdaptiveGraph<>();
+        case "ConcurrentGraph": return new ConcurrentGraph<>();
+        case "OffHeapGraph": return new OffHeapGraph();
+        case "VersionedGraph": return new VersionedGraph<>();
+        // HashGraph behind disabled metrics, to compare with HashGraph for the decorator's overhead
+        case "InstrumentedGraph": return new InstrumentedGraph<>(new HashGraph<>(), new Metrics("bench", false));
+        default: throw new IllegalArgumentException("Unknown implementation " + impl);
+        }
+    }
+
+    /**
+     * @param graph graph to close if it is AutoCloseable, or null
+     * @throws Exception if closing it fails
+     */
+    static void close(Graph<String> graph) throws Exception {
+        if (graph instanceof AutoCloseable) ((AutoCloseable) graph).close();
+    }
+
+    /**
+     * The graph build() made, closed after each invocation.
+     */
+    @State(Scope.Thread)
+    public static class Built {
+        Graph<String> graph;
+
+        @TearDown(Level.Invocation)
+        public void close() throws Exception {
+            GraphBenchmark.close(graph);
+            graph = null;
+        }
+    }
+
+    /**
+     * A graph filled once per trial, and the next operation's number.
+     */
+    @State(Scope.Thread)
+    public static class Filled {
+        Graph<String> graph;
+        int i;
+
+        @Setup(Level.Trial)
+        public void fill(GraphBenchmark benchmark) {
+            graph = benchmark.data.fill(emptyGraph(benchmark.impl));
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            GraphBenchmark.close(graph);
+            graph = null;
+        }
+    }
+
+    /**
+     * A filled graph without the BATCH vertices that add() adds, reset before each batch.
+     */
+    @State(Scope.Thread)
+    public static class Adding {
+        final String[] fresh = new String[BATCH];
+        Graph<String> graph;
+        int i;
+
+        @Setup(Level.Trial)
+        public void fill(GraphBenchmark benchmark) {
+            for (int k = 0; k < BATCH; k++) {
+                fresh[k] = "new" + k;
+            }
+            graph = benchmark.data.fill(emptyGraph(benchmark.impl));
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            for (String label : fresh) {
+                graph.remove(label);
+            }
+            i = 0;
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            GraphBenchmark.close(graph);
+            graph = null;
+        }
+    }
+
+    /**
+     * A filled graph with at least BATCH vertices left to remove, refilled when they run out.
+     */
+    @State(Scope.Thread)
+    public static class Removing {
+        SyntheticGraph data;
+        String impl;
+        Graph<String> graph;
+        int removed;
+
+        @Setup(Level.Trial)
+        public void bind(GraphBenchmark benchmark) {
+            data = benchmark.data;
+            impl = benchmark.impl;
+        }
+
+        @Setup(Level.Iteration)
+        public void refill() throws Exception {
+            if (graph == null || removed + BATCH > data.vertexCount()) {
+                close(); // free the old graph before filling a new one
+                graph = data.fill(emptyGraph(impl));
+                removed = 0;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Exception {
+            GraphBenchmark.close(graph);
+            graph = null;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void build(Built built) {
+        built.graph = data.fill(emptyGraph(impl));
+    }
+
+    @Benchmark
+    public int set(Filled filled) {
+        int i = filled.i++;
+        return filled.graph.set(data.label(picks[i & (PICKS - 1)]), data.label(picks[(i + 1) & (PICKS - 1)]),
+                1 + (i & 63));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 20, batchSize = BATCH)
+    @Measurement(iterations = 50, batchSize = BATCH)
+    public boolean add(Adding adding) {
+        return adding.graph.add(adding.fresh[adding.i++ % BATCH]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 20, batchSize = BATCH)
+    @Measurement(iterations = 50, batchSize = BATCH)
+    public boolean remove(Removing removing) {
+        return removing.graph.remove(removing.data.label(removing.removed++ % removing.data.vertexCount()));
+    }
+}
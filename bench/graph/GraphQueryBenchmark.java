@@ -0,0 +1,96 @@
+package graph;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import benchmark.Distribution;
+import benchmark.SyntheticGraph;
+
+/**
+ * JMH benchmarks of the Graph queries on every Graph implementation,
+ * FrozenGraph included, over the same synthetic graphs as
+ * {@link GraphBenchmark}, with the same parameters.
+ */
+@State(Scope.Thread)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GraphQueryBenchmark {
+
+    @Param({ "1000", "100000" })
+    public int edges;
+
+    @Param({ "UNIFORM", "ZIPF" })
+    public Distribution degrees;
+
+    @Param({ "ConcreteEdgesGraph", "ConcreteVerticesGraph", "IntGraph", "HashGraph", "AdaptiveGraph",
+             "ConcurrentGraph", "OffHeapGraph", "VersionedGraph", "InstrumentedGraph", "FrozenGraph" })
+    public String impl;
+
+    private SyntheticGraph data;
+    private int[] picks;
+    private Graph<String> graph;
+    private int i;
+
+    // created once, as a caller on a hot path would, and handed the current Blackhole
+    private Blackhole blackhole;
+    private final ObjIntConsumer<String> visitor = (target, weight) -> blackhole.consume(weight);
+
+    @Setup(Level.Trial)
+    public void fill() {
+        data = SyntheticGraph.generate(edges, degrees, 6005);
+        picks = data.picks(GraphBenchmark.PICKS, 2);
+        graph = impl.equals("FrozenGraph")
+                ? data.fill(GraphBenchmark.emptyGraph("HashGraph")).freeze()
+                : data.fill(GraphBenchmark.emptyGraph(impl));
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        GraphBenchmark.close(graph);
+        graph = null;
+    }
+
+    private String nextLabel() {
+        return data.label(picks[i++ & (GraphBenchmark.PICKS - 1)]);
+    }
+
+    @Benchmark
+    public Map<String, Integer> sources() {
+        return graph.sources(nextLabel());
+    }
+
+    @Benchmark
+    public Map<String, Integer> targets() {
+        return graph.targets(nextLabel());
+    }
+
+    @Benchmark
+    public void forEachTarget(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        graph.forEachTarget(nextLabel(), visitor);
+    }
+
+    @Benchmark
+    public int weight() {
+        return graph.weight(nextLabel(), nextLabel());
+    }
+}
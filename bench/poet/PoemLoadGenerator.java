@@ -0,0 +1,233 @@
+package poet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import benchmark.Distribution;
+import metrics.LatencyHistogram;
+import metrics.LatencySummary;
+
+/**
+ * A loopback load generator for {@link PoemServer}, measuring request
+ * latency percentiles and throughput on one machine.
+ *
+ * <p>By default it starts a server in this JVM, over a synthetic corpus
+ * like {@link PoetBenchmark}'s, and sends it requests from a number of
+ * client threads, each over a keep-alive connection. For each number of
+ * connections it reports the requests per second achieved, latency
+ * percentiles, and responses by status.
+ *
+ * <p>Without {@code -rate}, each client sends its next request as soon as
+ * the previous response arrives, so the best throughput over the numbers
+ * of connections is the server's maximum. With {@code -rate}, the clients
+ * together send that many requests per second on a fixed schedule, and
+ * latency is measured from when each request was due rather than when it
+ * was sent, so a stalled server is not hidden by clients waiting on it.
+ *
+ * <p>Options:
+ * <pre>
+ *   -words N        corpus words (default 100000)
+ *   -degrees D      uniform or zipf corpus word frequencies (default zipf)
+ *   -inputs N       distinct poem inputs, of 50 words each (default 64);
+ *                   fewer inputs give more coalesced requests
+ *   -c N1,N2        numbers of connections to try (default 1,4,16,64)
+ *   -d SECONDS      measured duration per number of connections (default 5)
+ *   -w SECONDS      warmup duration per number of connections (default 2)
+ *   -rate QPS       requests per second over all connections (default as fast as possible)
+ *   -inflight N     server's maximum poems in flight (default 256)
+ *   -url URL        load an already running server instead of starting one
+ * </pre>
+ * For example {@code java -Xmx4g -cp target/bench/benchmarks.jar poet.PoemLoadGenerator -words 1000000 -c 8,32}.
+ */
+public final class PoemLoadGenerator {
+
+    private static final int INPUT_WORDS = 50;
+    private static final int STATUSES = 600;
+
+    private PoemLoadGenerator() {
+        throw new AssertionError("PoemLoadGenerator is not instantiable");
+    }
+
+    /**
+     * Run the load generator.
+     *
+     * @param args options, as described in the class comment
+     * @throws IOException if the corpus cannot be written or the server cannot be started
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int words = 100000;
+        Distribution degrees = Distribution.ZIPF;
+        int inputCount = 64;
+        int[] connections = { 1, 4, 16, 64 };
+        double seconds = 5;
+        double warmupSeconds = 2;
+        double rate = 0;
+        int maxInFlight = 256;
+        URI target = null;
+        for (int a = 0; a < args.length; a++) {
+            String option = args[a];
+            if (a + 1 == args.length) throw new IllegalArgumentException("Missing value for " + option);
+            String value = args[++a];
+            switch (option) {
+            case "-words": words = Integer.parseInt(value); break;
+            case "-degrees": degrees = Distribution.valueOf(value.toUpperCase(Locale.ROOT)); break;
+            case "-inputs": inputCount = Integer.parseInt(value); break;
+            case "-c": connections = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray(); break;
+            case "-d": seconds = Double.parseDouble(value); break;
+            case "-w": warmupSeconds = Double.parseDouble(value); break;
+            case "-rate": rate = Double.parseDouble(value); break;
+            case "-inflight": maxInFlight = Integer.parseInt(value); break;
+            case "-url": target = URI.create(value); break;
+            default: throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (words <= 0 || inputCount <= 0 || seconds <= 0 || warmupSeconds < 0 || rate < 0) {
+            throw new IllegalArgumentException("Counts, durations and rate must be positive");
+        }
+
+        String[] vocabulary = PoetBenchmark.vocabulary(Math.max(2, words / 20));
+        Distribution.Sampler sampler = degrees.sampler(vocabulary.length, new Random(6005));
+        String[] inputs = new String[inputCount];
+        for (int k = 0; k < inputCount; k++) {
+            StringBuilder input = new StringBuilder();
+            for (int w = 0; w < INPUT_WORDS; w++) {
+                input.append(w == 0 ? "" : " ").append(vocabulary[sampler.next()]);
+            }
+            inputs[k] = input.toString();
+        }
+
+        PoemServer server = null;
+        if (target == null) {
+            File corpus = PoetBenchmark.corpus(words, vocabulary, sampler);
+            server = PoemServer.builder(new GraphPoet(corpus)).maxInFlight(maxInFlight).tcpNoDelay().build();
+            Files.delete(corpus.toPath());
+            target = server.uri();
+            System.out.println(server + ", corpus of " + words + " " + degrees.name().toLowerCase(Locale.ROOT) + " words");
+        }
+        System.out.printf("%6s %10s %10s %10s %10s %10s %10s  %s%n",
+                "conns", "req/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "statuses");
+        try {
+            for (int c : connections) {
+                if (c <= 0) throw new IllegalArgumentException("Connections must be positive");
+                run(target.toURL(), inputs, c, rate, warmupSeconds);
+                long coalesced = server != null ? server.coalesced() : 0;
+                Result result = run(target.toURL(), inputs, c, rate, seconds);
+                System.out.printf("%6d %10.0f %10.1f %10.1f %10.1f %10.1f %10.1f  %s%s%n", c,
+                        result.requests / result.seconds, micros(result.latency.getP50Nanos()),
+                        micros(result.latency.getP90Nanos()), micros(result.latency.getP99Nanos()),
+                        micros(result.latency.getP999Nanos()), micros(result.latency.getMaxNanos()),
+                        result.statuses,
+                        server != null ? " coalesced=" + (server.coalesced() - coalesced) : "");
+            }
+        } finally {
+            if (server != null) server.close();
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1e3;
+    }
+
+    // Load the server from connections clients for the given time
+    private static Result run(URL url, String[] inputs, int connections, double rate, double seconds)
+            throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLongArray statuses = new AtomicLongArray(STATUSES);
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        // with a rate, each client is due to send one request per interval, staggered
+        long interval = rate > 0 ? (long) (connections * 1e9 / rate) : 0;
+        List<Thread> clients = new ArrayList<>();
+        for (int t = 0; t < connections; t++) {
+            Random random = new Random(6005 + t);
+            long first = start + interval * t / connections;
+            Thread client = new Thread(() -> {
+                for (long due = first; ; due += interval) {
+                    if (interval > 0) {
+                        for (long wait; (wait = due - System.nanoTime()) > 0; ) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    long sent = System.nanoTime();
+                    if (sent >= end) break;
+                    int status = send(url, inputs[random.nextInt(inputs.length)]);
+                    latency.record(System.nanoTime() - (interval > 0 ? due : sent));
+                    statuses.incrementAndGet(status >= 0 && status < STATUSES ? status : 0);
+                }
+            }, "poem-client-" + t);
+            clients.add(client);
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        StringBuilder counts = new StringBuilder();
+        for (int status = 0; status < STATUSES; status++) {
+            long count = statuses.get(status);
+            if (count > 0) counts.append(counts.length() == 0 ? "" : " ").append(status == 0 ? "error" : status)
+                                 .append('=').append(count);
+        }
+        LatencySummary summary = latency.summary();
+        return new Result(summary.getCount(), elapsed, summary, counts.toString());
+    }
+
+    // Send one request and read its whole response, so the connection can be kept alive
+    private static int send(URL url, String input) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(input.getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (body != null) {
+                try (InputStream in = body) {
+                    byte[] chunk = new byte[8192];
+                    ByteArrayOutputStream ignored = new ByteArrayOutputStream();
+                    for (int read; (read = in.read(chunk)) >= 0; ) {
+                        ignored.write(chunk, 0, read);
+                    }
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Requests completed in some time, their latencies, and their statuses.
+     */
+    private static final class Result {
+        private final long requests;
+        private final double seconds;
+        private final LatencySummary latency;
+        private final String statuses;
+
+        Result(long requests, double seconds, LatencySummary latency, String statuses) {
+            this.requests = requests;
+            this.seconds = seconds;
+            this.latency = latency;
+            this.statuses = statuses;
+        }
+    }
+}
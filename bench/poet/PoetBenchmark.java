@@ -0,0 +1,225 @@
+package poet;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import benchmark.Distribution;
+
+/**
+ * JMH benchmarks of building a GraphPoet from a corpus and of writing poems,
+ * over synthetic corpora whose word frequencies are uniform or Zipfian.
+ *
+ * <p>Parameters, each overridable with JMH's {@code -p}:
+ * <pre>
+ *   words    number of words in the corpus (default 10000,1000000)
+ *   degrees  UNIFORM or ZIPF word frequencies (default both)
+ * </pre>
+ * The vocabulary has one distinct word per 20 corpus words, and each poem
+ * input is 50 words drawn from the same distribution. One poem operation
+ * is one input; poemBatch writes all 64 inputs at once but counts as 64
+ * operations, so it compares directly with poem. The poemCached benchmarks
+ * use a bridge cache of 1000 pairs, fewer than the 3136 adjacent pairs of the
+ * inputs, so that the eviction policy matters. poemLongBridges allows
+ * bridges of up to 3 words, with the default search budget.
+ * Run with {@code -prof gc} for the allocation rate.
+ */
+@State(Scope.Benchmark)
+@Fork(2)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PoetBenchmark {
+
+    private static final int WORDS_PER_LINE = 16;
+    private static final int INPUTS = 64;
+    private static final int INPUT_WORDS = 50;
+    private static final int CACHE_SIZE = 1000;
+    private static final int LONG_BRIDGE_WORDS = 3;
+
+    @Param({ "10000", "1000000" })
+    public int words;
+
+    @Param({ "UNIFORM", "ZIPF" })
+    public Distribution degrees;
+
+    File corpus;
+    String[] inputs;
+
+    @Setup(Level.Trial)
+    public void writeCorpus() throws IOException {
+        String[] vocabulary = vocabulary(Math.max(2, words / 20));
+        Distribution.Sampler sampler = degrees.sampler(vocabulary.length, new Random(6005));
+        corpus = corpus(words, vocabulary, sampler);
+        inputs = new String[INPUTS];
+        for (int k = 0; k < INPUTS; k++) {
+            StringBuilder input = new StringBuilder();
+            for (int w = 0; w < INPUT_WORDS; w++) {
+                input.append(w == 0 ? "" : " ").append(vocabulary[sampler.next()]);
+            }
+            inputs[k] = input.toString();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws IOException {
+        Files.delete(corpus.toPath());
+    }
+
+    /**
+     * A poet built once per trial, and the next input's number. Each kind
+     * of poet is its own state, so a run builds only the poets it uses.
+     */
+    @State(Scope.Thread)
+    public abstract static class Poet {
+        GraphPoet poet;
+        String[] inputs;
+        int i;
+
+        @Setup(Level.Trial)
+        public void build(PoetBenchmark benchmark) throws IOException {
+            poet = build(GraphPoet.builder(benchmark.corpus));
+            inputs = benchmark.inputs;
+        }
+
+        abstract GraphPoet build(GraphPoetBuilder builder) throws IOException;
+
+        String nextInput() {
+            return inputs[i++ % INPUTS];
+        }
+    }
+
+    public static class Plain extends Poet {
+        @Override
+        GraphPoet build(GraphPoetBuilder builder) throws IOException {
+            return builder.build();
+        }
+    }
+
+    public static class Precomputed extends Poet {
+        @Override
+        GraphPoet build(GraphPoetBuilder builder) throws IOException {
+            return builder.precomputeBridges().build();
+        }
+    }
+
+    public static class CachedLru extends Poet {
+        @Override
+        GraphPoet build(GraphPoetBuilder builder) throws IOException {
+            return builder.bridgeCache(CACHE_SIZE, BridgeCache.Policy.LRU).build();
+        }
+    }
+
+    public static class CachedTinyLfu extends Poet {
+        @Override
+        GraphPoet build(GraphPoetBuilder builder) throws IOException {
+            return builder.bridgeCache(CACHE_SIZE, BridgeCache.Policy.TINY_LFU).build();
+        }
+    }
+
+    public static class LongBridges extends Poet {
+        @Override
+        GraphPoet build(GraphPoetBuilder builder) throws IOException {
+            return builder.maxBridgeWords(LONG_BRIDGE_WORDS).build();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public GraphPoet load() throws IOException {
+        return new GraphPoet(corpus, false);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public GraphPoet loadPrecomputed() throws IOException {
+        return new GraphPoet(corpus, true);
+    }
+
+    @Benchmark
+    public String poem(Plain poet) {
+        return poet.poet.poem(poet.nextInput());
+    }
+
+    @Benchmark
+    public String poemPrecomputed(Precomputed poet) {
+        return poet.poet.poem(poet.nextInput());
+    }
+
+    @Benchmark
+    public String poemCachedLru(CachedLru poet) {
+        return poet.poet.poem(poet.nextInput());
+    }
+
+    @Benchmark
+    public String poemCachedTinyLfu(CachedTinyLfu poet) {
+        return poet.poet.poem(poet.nextInput());
+    }
+
+    @Benchmark
+    public String poemLongBridges(LongBridges poet) {
+        return poet.poet.poem(poet.nextInput());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public List<String> poemBatch(Plain poet) {
+        return poet.poet.poems(Arrays.asList(poet.inputs));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public List<String> poemBatchPrecomputed(Precomputed poet) {
+        return poet.poet.poems(Arrays.asList(poet.inputs));
+    }
+
+    // Distinct lowercase words of 3 to 9 letters
+    static String[] vocabulary(int size) {
+        Random random = new Random(6005);
+        String[] words = new String[size];
+        for (int k = 0; k < size; k++) {
+            StringBuilder word = new StringBuilder();
+            for (int letters = 3 + random.nextInt(7); letters > 0; letters--) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words[k] = word.append(Integer.toString(k, 36)).toString();
+        }
+        return words;
+    }
+
+    static File corpus(int words, String[] vocabulary, Distribution.Sampler sampler) throws IOException {
+        File file = File.createTempFile("corpus", ".txt");
+        file.deleteOnExit();
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int w = 0; w < words; w++) {
+                out.write(vocabulary[sampler.next()]);
+                out.write(w % WORDS_PER_LINE == WORDS_PER_LINE - 1 ? '\n' : ' ');
+            }
+        }
+        return file;
+    }
+}
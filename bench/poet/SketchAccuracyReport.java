@@ -0,0 +1,175 @@
+package poet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import benchmark.Distribution;
+import graph.Graph;
+
+/**
+ * Reports how the bridge words of a poet loaded within a memory budget
+ * compare with those of a poet loaded with exact counts, over a synthetic
+ * corpus like {@link PoetBenchmark}'s.
+ *
+ * <p>For each budget it reports the memory the counts took, the share of
+ * the exact graph's edges kept and of its total weight they carry, the
+ * largest possible overcount, and the share of bridges that match the exact
+ * poet's over two samples of word pairs:
+ * <ul><li> input pairs: adjacent words of poem inputs drawn from the
+ *          corpus's word distribution, most of which have no bridge
+ *     <li> bridged pairs: the ends of random two-edge paths of the exact
+ *          graph, picked in proportion to their adjacency counts, which all
+ *          have a bridge </ul>
+ *
+ * <p>Options:
+ * <pre>
+ *   -words N        corpus words (default 1000000)
+ *   -degrees D      uniform or zipf corpus word frequencies (default zipf)
+ *   -budgets B1,B2  memory budgets, in bytes or with a k or m suffix
+ *                   (default 256k,1m,4m,16m)
+ *   -samples N      pairs in each sample (default 5000)
+ * </pre>
+ */
+public final class SketchAccuracyReport {
+
+    private static final int INDEX_SLOT_BYTES = 12;
+
+    private SketchAccuracyReport() {
+        throw new AssertionError("SketchAccuracyReport is not instantiable");
+    }
+
+    /**
+     * Run the report.
+     *
+     * @param args options, as described in the class comment
+     * @throws IOException if the corpus cannot be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        int words = 1000000;
+        Distribution degrees = Distribution.ZIPF;
+        String[] budgets = { "256k", "1m", "4m", "16m" };
+        int samples = 5000;
+        for (int a = 0; a < args.length; a++) {
+            String option = args[a];
+            if (a + 1 == args.length) throw new IllegalArgumentException("Missing value for " + option);
+            String value = args[++a];
+            switch (option) {
+            case "-words": words = Integer.parseInt(value); break;
+            case "-degrees": degrees = Distribution.valueOf(value.toUpperCase(Locale.ROOT)); break;
+            case "-budgets": budgets = value.split(","); break;
+            case "-samples": samples = Integer.parseInt(value); break;
+            default: throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+
+        String[] vocabulary = PoetBenchmark.vocabulary(Math.max(2, words / 20));
+        Distribution.Sampler sampler = degrees.sampler(vocabulary.length, new Random(6005));
+        File corpus = PoetBenchmark.corpus(words, vocabulary, sampler);
+        try {
+            long start = System.nanoTime();
+            Graph<String> exact = CorpusLoader.load(corpus.toPath());
+            double exactSeconds = (System.nanoTime() - start) / 1e9;
+            long edges = 0;
+            long weight = 0;
+            for (String vertex : exact.vertices()) {
+                for (int w : exact.targets(vertex).values()) {
+                    edges++;
+                    weight += w;
+                }
+            }
+            // an exact count is a BridgeTable entry, at most 3/4 full
+            long exactBytes = Long.highestOneBit(Math.max(8, edges * 4 / 3) * 2 - 1) * INDEX_SLOT_BYTES;
+
+            Random random = new Random(6005);
+            List<String[]> inputPairs = new ArrayList<>();
+            for (int k = 0; k < samples; k++) {
+                inputPairs.add(new String[] { vocabulary[sampler.next()], vocabulary[sampler.next()] });
+            }
+            List<String[]> bridgedPairs = new ArrayList<>();
+            while (bridgedPairs.size() < samples) {
+                String first = vocabulary[sampler.next()];
+                String middle = pick(exact.targets(first), random);
+                String last = middle == null ? null : pick(exact.targets(middle), random);
+                if (last != null) bridgedPairs.add(new String[] { first, last });
+            }
+            GraphPoet exactPoet = new GraphPoet(exact, false);
+            String[] exactInputBridges = bridges(exactPoet, inputPairs);
+            String[] exactBridges = bridges(exactPoet, bridgedPairs);
+
+            System.out.printf(Locale.ROOT,
+                    "corpus: %d %s words, %d distinct adjacencies, exact counts %.1f MB, load %.2f s%n", words, degrees.name().toLowerCase(Locale.ROOT), edges, exactBytes / 1e6, exactSeconds);
+            System.out.printf(Locale.ROOT, "%10s %10s %9s %9s %9s %10s %8s %9s %9s%n", "budget", "used MB", "edges %",
+                    "weight %", "max err", "evicted", "load s", "input %", "bridged %");
+            for (String budget : budgets) {
+                long bytes = parseBytes(budget);
+                AdjacencySketch counts = new AdjacencySketch(bytes);
+                start = System.nanoTime();
+                Graph<String> sketched = CorpusLoader.load(corpus.toPath(), counts);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                long keptWeight = 0;
+                for (String vertex : sketched.vertices()) {
+                    for (String target : sketched.targets(vertex).keySet()) {
+                        keptWeight += exact.weight(vertex, target);
+                    }
+                }
+                GraphPoet poet = new GraphPoet(sketched, false);
+                System.out.printf(Locale.ROOT, "%10s %10.2f %9.1f %9.1f %9d %10d %8.2f %9.1f %9.1f%n", budget,
+                        counts.sizeInBytes() / 1e6, 100.0 * counts.size() / edges,
+                        100.0 * keptWeight / weight, counts.maxError(), counts.evictions(),
+                        seconds, agreement(exactInputBridges, bridges(poet, inputPairs)),
+                        agreement(exactBridges, bridges(poet, bridgedPairs)));
+            }
+        } finally {
+            Files.delete(corpus.toPath());
+        }
+    }
+
+    // A target picked in proportion to its weight, or null if there are none
+    private static String pick(Map<String, Integer> targets, Random random) {
+        long total = 0;
+        for (int weight : targets.values()) {
+            total += weight;
+        }
+        if (total == 0) return null;
+        long point = (long) (random.nextDouble() * total);
+        for (Map.Entry<String, Integer> target : targets.entrySet()) {
+            point -= target.getValue();
+            if (point < 0) return target.getKey();
+        }
+        return null;
+    }
+
+    // The bridge of each pair, or "" if it has none
+    private static String[] bridges(GraphPoet poet, List<String[]> pairs) {
+        String[] bridges = new String[pairs.size()];
+        for (int k = 0; k < bridges.length; k++) {
+            String[] pair = pairs.get(k);
+            String poem = poet.poem(pair[0] + " " + pair[1]);
+            int from = pair[0].length() + 1;
+            int to = poem.length() - pair[1].length() - 1;
+            bridges[k] = to > from ? poem.substring(from, to) : "";
+        }
+        return bridges;
+    }
+
+    private static double agreement(String[] expected, String[] actual) {
+        int same = 0;
+        for (int k = 0; k < expected.length; k++) {
+            if (expected[k].equals(actual[k])) same++;
+        }
+        return 100.0 * same / expected.length;
+    }
+
+    private static long parseBytes(String budget) {
+        String lower = budget.toLowerCase(Locale.ROOT);
+        if (lower.endsWith("k")) return Long.parseLong(lower.substring(0, lower.length() - 1)) << 10;
+        if (lower.endsWith("m")) return Long.parseLong(lower.substring(0, lower.length() - 1)) << 20;
+        return Long.parseLong(lower);
+    }
+}
@@ -0,0 +1,133 @@
+package graph;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A Graph that starts in the compact {@link SmallGraph} form and moves itself
+ * to the hashed {@link HashGraph} form once it grows past a few vertices or
+ * edges. The switch happens inside a mutator and is invisible to clients,
+ * including through a previously returned {@link #vertices()} view.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+class AdaptiveGraph<L> implements Graph<L> {
+
+    /** Largest vertex count kept in the compact form. */
+    static final int SMALL_MAX_VERTICES = 16;
+    /** Largest edge count, and so largest degree, kept in the compact form. */
+    static final int SMALL_MAX_EDGES = 32;
+
+    private Graph<L> delegate;
+    private SmallGraph<L> small;
+
+    // Abstraction function:
+    //   - This graph is the graph represented by delegate.
+    // Representation invariant:
+    //   - while compact, small == delegate and small holds at most SMALL_MAX_VERTICES
+    //     vertices and SMALL_MAX_EDGES edges; once hashed, small == null and
+    //     delegate is a HashGraph, and it never goes back.
+
+    /**
+     * Create an empty graph in the compact form.
+     */
+    AdaptiveGraph() {
+        small = new SmallGraph<>();
+        delegate = small;
+    }
+
+    /**
+     * @return true iff this graph is still in the compact form
+     */
+    boolean isCompact() {
+        return small != null;
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        boolean added = delegate.add(vertex);
+        if (added) growIfNeeded();
+        return added;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        int oldWeight = delegate.set(source, target, weight);
+        growIfNeeded();
+        return oldWeight;
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        return delegate.remove(vertex);
+    }
+
+    @Override
+    public Set<L> vertices() {
+        // reads through to whichever form is current, so the view survives a switch
+        return new AbstractSet<L>() {
+            @Override
+            public int size() {
+                return delegate.vertices().size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return delegate.vertices().contains(o);
+            }
+
+            @Override
+            public Iterator<L> iterator() {
+                return delegate.vertices().iterator();
+            }
+        };
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        return delegate.sources(target);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        return delegate.targets(source);
+    }
+
+    @Override
+    public int weight(L source, L target) {
+        return delegate.weight(source, target);
+    }
+
+    @Override
+    public void forEachSource(L target, ObjIntConsumer<? super L> action) {
+        delegate.forEachSource(target, action);
+    }
+
+    @Override
+    public void forEachTarget(L source, ObjIntConsumer<? super L> action) {
+        delegate.forEachTarget(source, action);
+    }
+
+    @Override
+    public L maxWeightTarget(L source) {
+        return delegate.maxWeightTarget(source);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    private void growIfNeeded() {
+        if (small == null) return;
+        if (small.vertexCount() <= SMALL_MAX_VERTICES && small.edgeCount() <= SMALL_MAX_EDGES) return;
+
+        HashGraph<L> hashed = new HashGraph<>(small.vertexCount() * 2);
+        small.copyInto(hashed);
+        delegate = hashed;
+        small = null;
+    }
+}
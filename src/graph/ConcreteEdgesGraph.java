@@ -1,15 +1,20 @@
 package graph;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.ObjIntConsumer;
 
 public class ConcreteEdgesGraph implements Graph<String> {
     
     private final Set<String> vertices = new HashSet<>();
-    private final Set<Edge> edges = new HashSet<>();
+    // source -> (target -> edge) and target -> (source -> edge); both indexes hold the same Edge objects
+    private final Map<String, Map<String, Edge>> outgoing = new HashMap<>();
+    private final Map<String, Map<String, Edge>> incoming = new HashMap<>();
     
     @Override
     public boolean add(String vertex) {
@@ -23,28 +28,37 @@ public class ConcreteEdgesGraph implements Graph<String> {
         add(source);
         add(target);
 
-        for (Edge edge : edges) {
-            if (edge.getSource().equals(source) && edge.getTarget().equals(target)) {
-                int oldWeight = edge.getWeight();
-                if (weight == 0) {
-                    edges.remove(edge);
-                } else {
-                    edge.setWeight(weight);
-                }
-                return oldWeight;
-            }
+        Map<String, Edge> targets = outgoing.get(source);
+        Edge existing = targets != null ? targets.get(target) : null;
+        int oldWeight = existing != null ? existing.getWeight() : 0;
+
+        if (weight == 0) {
+            if (existing != null) unlink(source, target);
+        } else {
+            // edges are immutable, so an update replaces the edge in both indexes
+            Edge edge = new Edge(source, target, weight);
+            outgoing.computeIfAbsent(source, k -> new HashMap<>()).put(target, edge);
+            incoming.computeIfAbsent(target, k -> new HashMap<>()).put(source, edge);
         }
-
-        if (weight > 0) edges.add(new Edge(source, target, weight));
-        return 0;
+        return oldWeight;
     }
 
     @Override
     public boolean remove(String vertex) {
-        if (!vertices.contains(vertex)) return false;
-        
-        vertices.remove(vertex);
-        edges.removeIf(edge -> edge.getSource().equals(vertex) || edge.getTarget().equals(vertex));
+        if (!vertices.remove(vertex)) return false;
+
+        Map<String, Edge> targets = outgoing.remove(vertex);
+        if (targets != null) {
+            for (String target : targets.keySet()) {
+                removeIndexEntry(incoming, target, vertex);
+            }
+        }
+        Map<String, Edge> sources = incoming.remove(vertex);
+        if (sources != null) {
+            for (String source : sources.keySet()) {
+                removeIndexEntry(outgoing, source, vertex);
+            }
+        }
         return true;
     }
 
@@ -55,35 +69,86 @@ public class ConcreteEdgesGraph implements Graph<String> {
 
     @Override
     public Map<String, Integer> sources(String target) {
-        Map<String, Integer> sources = new HashMap<>();
-        for (Edge edge : edges) {
-            if (edge.getTarget().equals(target)) {
-                sources.put(edge.getSource(), edge.getWeight());
-            }
-        }
-        return sources;
+        return weights(incoming.get(target));
     }
 
     @Override
     public Map<String, Integer> targets(String source) {
-        Map<String, Integer> targets = new HashMap<>();
-        for (Edge edge : edges) {
-            if (edge.getSource().equals(source)) {
-                targets.put(edge.getTarget(), edge.getWeight());
-            }
+        return weights(outgoing.get(source));
+    }
+
+    @Override
+    public int weight(String source, String target) {
+        Map<String, Edge> targets = outgoing.get(source);
+        Edge edge = targets != null ? targets.get(target) : null;
+        return edge != null ? edge.getWeight() : 0;
+    }
+
+    @Override
+    public void forEachSource(String target, ObjIntConsumer<? super String> action) {
+        Map<String, Edge> sources = incoming.get(target);
+        if (sources == null) return;
+        for (Edge edge : sources.values()) {
+            action.accept(edge.getSource(), edge.getWeight());
         }
-        return targets;
+    }
+
+    @Override
+    public void forEachTarget(String source, ObjIntConsumer<? super String> action) {
+        Map<String, Edge> targets = outgoing.get(source);
+        if (targets == null) return;
+        for (Edge edge : targets.values()) {
+            action.accept(edge.getTarget(), edge.getWeight());
+        }
+    }
+
+    @Override
+    public String maxWeightTarget(String source) {
+        Map<String, Edge> targets = outgoing.get(source);
+        if (targets == null) return null;
+        Edge best = null;
+        for (Edge edge : targets.values()) {
+            if (best == null || edge.getWeight() > best.getWeight()) best = edge;
+        }
+        return best != null ? best.getTarget() : null;
     }
 
     @Override
     public String toString() {
+        List<Edge> edges = new ArrayList<>();
+        for (Map<String, Edge> targets : outgoing.values()) {
+            edges.addAll(targets.values());
+        }
         return "Graph with vertices: " + vertices + " and edges: " + edges;
     }
     
+    // Remove the edge source -> target from both indexes
+    private void unlink(String source, String target) {
+        removeIndexEntry(outgoing, source, target);
+        removeIndexEntry(incoming, target, source);
+    }
+    
+    // Remove index.get(key).get(neighbor), dropping the inner map once it is empty
+    private static void removeIndexEntry(Map<String, Map<String, Edge>> index, String key, String neighbor) {
+        Map<String, Edge> neighbors = index.get(key);
+        if (neighbors == null) return;
+        neighbors.remove(neighbor);
+        if (neighbors.isEmpty()) index.remove(key);
+    }
+    
+    private static Map<String, Integer> weights(Map<String, Edge> neighbors) {
+        Map<String, Integer> weights = new HashMap<>();
+        if (neighbors == null) return weights;
+        for (Map.Entry<String, Edge> entry : neighbors.entrySet()) {
+            weights.put(entry.getKey(), entry.getValue().getWeight());
+        }
+        return weights;
+    }
+    
     private static class Edge {
         private final String source;
         private final String target;
-        private int weight;
+        private final int weight;
         
         Edge(String source, String target, int weight) {
             this.source = source;
@@ -95,8 +160,6 @@ public class ConcreteEdgesGraph implements Graph<String> {
         public String getTarget() { return target; }
         public int getWeight() { return weight; }
 
-        public void setWeight(int weight) { this.weight = weight; }
-
         @Override
         public String toString() {
             return source + " -> " + target + " (" + weight + ")";
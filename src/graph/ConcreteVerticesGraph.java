@@ -4,6 +4,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.ObjIntConsumer;
 
 public class ConcreteVerticesGraph implements Graph<String> {
 
@@ -24,16 +25,21 @@ public class ConcreteVerticesGraph implements Graph<String> {
         add(target);
 
         Vertex sourceVertex = vertices.get(source);
-        return sourceVertex.setEdge(target, weight);
+        return sourceVertex.setEdge(vertices.get(target), weight);
     }
 
     @Override
     public boolean remove(String vertex) {
-        if (!vertices.containsKey(vertex)) return false;
+        Vertex removed = vertices.remove(vertex);
+        if (removed == null) return false;
 
-        vertices.remove(vertex);
-        for (Vertex v : vertices.values()) {
-            v.removeEdge(vertex);
+        for (String target : removed.getTargets().keySet()) {
+            Vertex v = vertices.get(target);
+            if (v != null) v.removeIncoming(vertex);
+        }
+        for (String source : removed.getSources().keySet()) {
+            Vertex v = vertices.get(source);
+            if (v != null) v.removeEdge(vertex);
         }
         return true;
     }
@@ -45,12 +51,8 @@ public class ConcreteVerticesGraph implements Graph<String> {
 
     @Override
     public Map<String, Integer> sources(String target) {
-        Map<String, Integer> sources = new HashMap<>();
-        for (Map.Entry<String, Vertex> entry : vertices.entrySet()) {
-            int weight = entry.getValue().getEdge(target);
-            if (weight > 0) sources.put(entry.getKey(), weight);
-        }
-        return sources;
+        Vertex vertex = vertices.get(target);
+        return vertex != null ? new HashMap<>(vertex.getSources()) : new HashMap<>();
     }
 
     @Override
@@ -59,6 +61,39 @@ public class ConcreteVerticesGraph implements Graph<String> {
         return vertex != null ? vertex.getTargets() : Collections.emptyMap();
     }
 
+    @Override
+    public int weight(String source, String target) {
+        Vertex vertex = vertices.get(source);
+        return vertex != null ? vertex.getEdge(target) : 0;
+    }
+
+    @Override
+    public void forEachSource(String target, ObjIntConsumer<? super String> action) {
+        Vertex vertex = vertices.get(target);
+        if (vertex != null) Graphs.visit(vertex.incoming, action);
+    }
+
+    @Override
+    public void forEachTarget(String source, ObjIntConsumer<? super String> action) {
+        Vertex vertex = vertices.get(source);
+        if (vertex != null) Graphs.visit(vertex.edges, action);
+    }
+
+    @Override
+    public String maxWeightTarget(String source) {
+        Vertex vertex = vertices.get(source);
+        if (vertex == null) return null;
+        String best = null;
+        int bestWeight = 0;
+        for (Map.Entry<String, Integer> edge : vertex.edges.entrySet()) {
+            if (edge.getValue() > bestWeight) {
+                best = edge.getKey();
+                bestWeight = edge.getValue();
+            }
+        }
+        return best;
+    }
+
     @Override
     public String toString() {
         return "Graph with vertices: " + vertices.keySet() + " and edges: " + vertices.values();
@@ -67,13 +102,20 @@ public class ConcreteVerticesGraph implements Graph<String> {
     private static class Vertex {
         private final String name;
         private final Map<String, Integer> edges = new HashMap<>();
+        // mirror of the edges maps of other vertices: source -> weight of source -> this
+        private final Map<String, Integer> incoming = new HashMap<>();
 
         Vertex(String name) { this.name = name; }
 
-        public int setEdge(String target, int weight) {
-            int oldWeight = edges.getOrDefault(target, 0);
-            if (weight == 0) edges.remove(target);
-            else edges.put(target, weight);
+        public int setEdge(Vertex target, int weight) {
+            int oldWeight = edges.getOrDefault(target.name, 0);
+            if (weight == 0) {
+                edges.remove(target.name);
+                target.incoming.remove(name);
+            } else {
+                edges.put(target.name, weight);
+                target.incoming.put(name, weight);
+            }
             return oldWeight;
         }
 
@@ -81,6 +123,10 @@ public class ConcreteVerticesGraph implements Graph<String> {
             edges.remove(target);
         }
 
+        public void removeIncoming(String source) {
+            incoming.remove(source);
+        }
+
         public int getEdge(String target) {
             return edges.getOrDefault(target, 0);
         }
@@ -89,6 +135,10 @@ public class ConcreteVerticesGraph implements Graph<String> {
             return Collections.unmodifiableMap(edges);
         }
 
+        public Map<String, Integer> getSources() {
+            return Collections.unmodifiableMap(incoming);
+        }
+
         @Override
         public String toString() {
             return name + " -> " + edges;
@@ -0,0 +1,378 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A thread-safe Graph that guards each vertex's adjacency with one of a fixed
+ * set of striped locks, so operations on unrelated vertices run in parallel.
+ *
+ * <p>Every operation is atomic. {@link #set} locks the stripes of both
+ * endpoints, so it returns exactly the weight it replaced. {@link #sources}
+ * and {@link #targets} return a consistent snapshot of one vertex's edges.
+ * {@link #vertices()} returns a weakly consistent live view that may be
+ * iterated while other threads mutate the graph. {@link #forEachSource} and
+ * {@link #forEachTarget} copy the vertex's row under its stripe into flat
+ * arrays kept per thread, without boxing, and run their action on the copy
+ * after releasing it, so the action sees a consistent row and may read the
+ * graph. Once a thread's arrays have grown to its largest row, visiting
+ * allocates nothing; they are reused across ConcurrentGraphs, and an action
+ * that visits again gets arrays of its own.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public class ConcurrentGraph<L> implements Graph<L> {
+
+    // the rows visit() copies out, one set per thread
+    private static final ThreadLocal<RowBuffer> ROWS = ThreadLocal.withInitial(RowBuffer::new);
+
+    private final ConcurrentHashMap<L, Adjacency<L>> vertices = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes;
+
+    // Abstraction function:
+    //   - The vertices are the keys of vertices; the edge s -> t has weight
+    //     vertices.get(s).outgoing.get(t).
+    // Representation invariant:
+    //   - vertices.get(s).outgoing.get(t) == vertices.get(t).incoming.get(s) for every
+    //     edge, and it is > 0; both endpoints of every edge are keys of vertices.
+    //   - stripes.length is a power of two.
+    // Thread safety argument:
+    //   - the entry for v in vertices, and v's Adjacency maps, are only created, read
+    //     or changed while holding stripeFor(v).
+    //   - operations that need several stripes take them in increasing index order,
+    //     so they cannot deadlock.
+    //   - sources() and targets() copy one Adjacency map under its stripe, so they
+    //     never expose a map another thread can modify.
+    //   - forEachSource() and forEachTarget() run their action with no stripe held,
+    //     so an action that reads the graph cannot take stripes out of order.
+    //   - a RowBuffer is only used by the thread it belongs to, and by one visit at a
+    //     time: a nested visit finds it in use and copies into a new one.
+
+    /**
+     * Create an empty graph with a number of lock stripes suited to this machine.
+     */
+    public ConcurrentGraph() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create an empty graph.
+     *
+     * @param concurrencyLevel positive number of threads expected to use the
+     *        graph at once; the number of lock stripes is derived from it
+     */
+    public ConcurrentGraph(int concurrencyLevel) {
+        if (concurrencyLevel <= 0) throw new IllegalArgumentException("Concurrency level must be positive");
+        int count = Math.max(16, Integer.highestOneBit(concurrencyLevel - 1) << 1);
+        stripes = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        ReentrantLock lock = stripes[stripeFor(vertex)];
+        lock.lock();
+        try {
+            return vertices.putIfAbsent(vertex, new Adjacency<>()) == null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative");
+
+        int first = stripeFor(source);
+        int second = stripeFor(target);
+        if (first > second) {
+            int swap = first;
+            first = second;
+            second = swap;
+        }
+        stripes[first].lock();
+        if (second != first) stripes[second].lock();
+        try {
+            Adjacency<L> from = vertices.computeIfAbsent(source, k -> new Adjacency<>());
+            Adjacency<L> to = vertices.computeIfAbsent(target, k -> new Adjacency<>());
+            Integer oldWeight;
+            if (weight == 0) {
+                oldWeight = from.outgoing.remove(target);
+                to.incoming.remove(source);
+            } else {
+                oldWeight = from.outgoing.put(target, weight);
+                to.incoming.put(source, weight);
+            }
+            return oldWeight != null ? oldWeight : 0;
+        } finally {
+            if (second != first) stripes[second].unlock();
+            stripes[first].unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        int own = stripeFor(vertex);
+        while (true) {
+            // find which stripes the vertex's neighbours live on, then lock them all
+            boolean[] needed = new boolean[stripes.length];
+            needed[own] = true;
+            stripes[own].lock();
+            try {
+                Adjacency<L> adjacency = vertices.get(vertex);
+                if (adjacency == null) return false;
+                markStripes(adjacency, needed);
+            } finally {
+                stripes[own].unlock();
+            }
+
+            lockAll(needed);
+            try {
+                Adjacency<L> adjacency = vertices.get(vertex);
+                if (adjacency == null) return false;
+                // edges added while no lock was held may reach new stripes; if so, retry
+                boolean[] now = new boolean[stripes.length];
+                markStripes(adjacency, now);
+                if (covers(needed, now)) {
+                    vertices.remove(vertex);
+                    for (L target : adjacency.outgoing.keySet()) {
+                        Adjacency<L> other = vertices.get(target);
+                        if (other != null) other.incoming.remove(vertex);
+                    }
+                    for (L source : adjacency.incoming.keySet()) {
+                        Adjacency<L> other = vertices.get(source);
+                        if (other != null) other.outgoing.remove(vertex);
+                    }
+                    return true;
+                }
+            } finally {
+                unlockAll(needed);
+            }
+        }
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return Collections.unmodifiableSet(vertices.keySet());
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        ReentrantLock lock = stripes[stripeFor(target)];
+        lock.lock();
+        try {
+            Adjacency<L> adjacency = vertices.get(target);
+            return adjacency != null ? new HashMap<>(adjacency.incoming) : new HashMap<>();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        ReentrantLock lock = stripes[stripeFor(source)];
+        lock.lock();
+        try {
+            Adjacency<L> adjacency = vertices.get(source);
+            return adjacency != null ? new HashMap<>(adjacency.outgoing) : new HashMap<>();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int weight(L source, L target) {
+        ReentrantLock lock = stripes[stripeFor(source)];
+        lock.lock();
+        try {
+            Adjacency<L> adjacency = vertices.get(source);
+            Integer weight = adjacency != null ? adjacency.outgoing.get(target) : null;
+            return weight != null ? weight : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Copies the row under its lock into arrays kept per thread, and visits
+     * the copy once unlocked.
+     */
+    @Override
+    public void forEachSource(L target, ObjIntConsumer<? super L> action) {
+        visit(target, false, action);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Copies the row under its lock into arrays kept per thread, and visits
+     * the copy once unlocked.
+     */
+    @Override
+    public void forEachTarget(L source, ObjIntConsumer<? super L> action) {
+        visit(source, true, action);
+    }
+
+    @Override
+    public L maxWeightTarget(L source) {
+        ReentrantLock lock = stripes[stripeFor(source)];
+        lock.lock();
+        try {
+            Adjacency<L> adjacency = vertices.get(source);
+            if (adjacency == null) return null;
+            L best = null;
+            int bestWeight = 0;
+            for (Map.Entry<L, Integer> edge : adjacency.outgoing.entrySet()) {
+                if (edge.getValue() > bestWeight) {
+                    best = edge.getKey();
+                    bestWeight = edge.getValue();
+                }
+            }
+            return best;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Copy one row of vertex under its stripe, then run action on the copy once unlocked, so
+    // an action that reads the graph never holds one stripe while waiting for another
+    @SuppressWarnings("unchecked")
+    private void visit(L vertex, boolean outgoing, ObjIntConsumer<? super L> action) {
+        RowBuffer row = ROWS.get();
+        if (row.inUse) row = new RowBuffer();
+        int size;
+        ReentrantLock lock = stripes[stripeFor(vertex)];
+        lock.lock();
+        try {
+            Adjacency<L> adjacency = vertices.get(vertex);
+            if (adjacency == null) return;
+            Map<L, Integer> edges = outgoing ? adjacency.outgoing : adjacency.incoming;
+            size = edges.size();
+            row.reserve(size);
+            int i = 0;
+            for (Map.Entry<L, Integer> edge : edges.entrySet()) {
+                row.labels[i] = edge.getKey();
+                row.weights[i++] = edge.getValue();
+            }
+        } finally {
+            lock.unlock();
+        }
+        row.inUse = true;
+        try {
+            for (int i = 0; i < size; i++) {
+                action.accept((L) row.labels[i], row.weights[i]);
+            }
+        } finally {
+            // drop the labels, so the buffer keeps no removed vertex alive
+            Arrays.fill(row.labels, 0, size, null);
+            row.inUse = false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        List<String> edges = new ArrayList<>();
+        for (L source : vertices.keySet()) {
+            for (Map.Entry<L, Integer> edge : targets(source).entrySet()) {
+                edges.add(source + " -> " + edge.getKey() + " (" + edge.getValue() + ")");
+            }
+        }
+        return "Graph with vertices: " + vertices.keySet() + " and edges: " + edges;
+    }
+
+    /**
+     * Assert the rep invariant. Locks every stripe, so it sees a quiescent graph.
+     */
+    void checkRep() {
+        boolean[] all = new boolean[stripes.length];
+        Arrays.fill(all, true);
+        lockAll(all);
+        try {
+            for (Map.Entry<L, Adjacency<L>> entry : vertices.entrySet()) {
+                L vertex = entry.getKey();
+                for (Map.Entry<L, Integer> edge : entry.getValue().outgoing.entrySet()) {
+                    assert edge.getValue() > 0 : "non-positive weight on " + vertex + " -> " + edge.getKey();
+                    Adjacency<L> target = vertices.get(edge.getKey());
+                    assert target != null : "edge to missing vertex " + edge.getKey();
+                    assert edge.getValue().equals(target.incoming.get(vertex))
+                            : "incoming index disagrees for " + vertex + " -> " + edge.getKey();
+                }
+                for (Map.Entry<L, Integer> edge : entry.getValue().incoming.entrySet()) {
+                    Adjacency<L> source = vertices.get(edge.getKey());
+                    assert source != null : "edge from missing vertex " + edge.getKey();
+                    assert edge.getValue().equals(source.outgoing.get(vertex))
+                            : "outgoing index disagrees for " + edge.getKey() + " -> " + vertex;
+                }
+            }
+        } finally {
+            unlockAll(all);
+        }
+    }
+
+    private int stripeFor(Object vertex) {
+        int h = vertex.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    private void markStripes(Adjacency<L> adjacency, boolean[] marks) {
+        for (L target : adjacency.outgoing.keySet()) {
+            marks[stripeFor(target)] = true;
+        }
+        for (L source : adjacency.incoming.keySet()) {
+            marks[stripeFor(source)] = true;
+        }
+    }
+
+    private static boolean covers(boolean[] held, boolean[] wanted) {
+        for (int i = 0; i < wanted.length; i++) {
+            if (wanted[i] && !held[i]) return false;
+        }
+        return true;
+    }
+
+    private void lockAll(boolean[] which) {
+        for (int i = 0; i < which.length; i++) {
+            if (which[i]) stripes[i].lock();
+        }
+    }
+
+    private void unlockAll(boolean[] which) {
+        for (int i = which.length - 1; i >= 0; i--) {
+            if (which[i]) stripes[i].unlock();
+        }
+    }
+
+    /**
+     * Arrays one thread copies rows into, grown to the largest row it has visited.
+     */
+    private static final class RowBuffer {
+        Object[] labels = new Object[16];
+        int[] weights = new int[16];
+        boolean inUse = false;
+
+        void reserve(int size) {
+            if (size > labels.length) {
+                int capacity = Math.max(size, labels.length + (labels.length >> 1));
+                labels = new Object[capacity];
+                weights = new int[capacity];
+            }
+        }
+    }
+
+    private static class Adjacency<L> {
+        final Map<L, Integer> outgoing = new HashMap<>();
+        final Map<L, Integer> incoming = new HashMap<>();
+    }
+}
@@ -0,0 +1,229 @@
+package graph;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A compact, append-only dictionary of words, numbering them with dense int
+ * IDs from 0 in the order they are first added. Each word is stored once,
+ * as UTF-8 in one shared byte array, with no String or other object per
+ * word: a word costs its UTF-8 length plus about 16 bytes of index, against
+ * about 50 bytes plus its length for a String alone.
+ *
+ * <p>Words are looked up straight from a slice of UTF-8 bytes or from any
+ * CharSequence (such as a reused StringBuilder), so looking up or adding a
+ * known word allocates nothing. {@link #word(int)} decodes a new String each
+ * time it is called; callers that need a word's String often should keep it.
+ *
+ * <p>IDs are stable: words are never removed. A Dictionary is not
+ * thread-safe.
+ */
+public final class Dictionary {
+
+    private static final int EMPTY = -1;
+
+    private byte[] bytes = new byte[1 << 10];
+    private int byteCount = 0;
+    private int[] offsets = new int[65];
+    private int[] hashes = new int[64];
+    private int size = 0;
+    private int[] slots = new int[128];
+    private byte[] scratch = new byte[64];
+
+    // Abstraction function:
+    //   - word i, for i in [0, size), is the UTF-8 decoding of bytes[offsets[i] .. offsets[i + 1]).
+    // Representation invariant:
+    //   - words [0, size) are distinct; offsets[0] == 0, offsets is non-decreasing and
+    //     offsets[size] == byteCount; hashes[i] == hash of word i's bytes.
+    //   - slots is an open-addressing table of the IDs [0, size) keyed by hashes, with a
+    //     power-of-two length and fewer than half of its slots used.
+    //   - scratch is only used within a single call.
+
+    /**
+     * Create an empty dictionary.
+     */
+    public Dictionary() {
+        Arrays.fill(slots, EMPTY);
+    }
+
+    /**
+     * @return number of words in this dictionary
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find a word from its UTF-8 encoding.
+     *
+     * @param utf8 buffer holding the word
+     * @param offset start of the word in utf8
+     * @param length length of the word in bytes
+     * @return the word's ID, or -1 if it is not in this dictionary
+     */
+    public int idOf(byte[] utf8, int offset, int length) {
+        int hash = hash(utf8, offset, length);
+        int slot = find(utf8, offset, length, hash);
+        return slots[slot];
+    }
+
+    /**
+     * Find a word.
+     *
+     * @param word a word; unpaired surrogates are treated as '?', as
+     *        {@link String#getBytes(java.nio.charset.Charset) getBytes} does
+     * @return the word's ID, or -1 if it is not in this dictionary
+     */
+    public int idOf(CharSequence word) {
+        int length = encode(word);
+        return idOf(scratch, 0, length);
+    }
+
+    /**
+     * Find or add a word from its UTF-8 encoding.
+     *
+     * @param utf8 buffer holding the word
+     * @param offset start of the word in utf8
+     * @param length length of the word in bytes
+     * @return the word's ID
+     */
+    public int intern(byte[] utf8, int offset, int length) {
+        int hash = hash(utf8, offset, length);
+        int slot = find(utf8, offset, length, hash);
+        return slots[slot] != EMPTY ? slots[slot] : add(utf8, offset, length, hash, slot);
+    }
+
+    /**
+     * Find or add a word.
+     *
+     * @param word a word; unpaired surrogates are treated as '?'
+     * @return the word's ID
+     */
+    public int intern(CharSequence word) {
+        int length = encode(word);
+        return intern(scratch, 0, length);
+    }
+
+    /**
+     * Find or add a word of another dictionary, copying its bytes directly.
+     *
+     * @param other a dictionary
+     * @param id ID of a word in other
+     * @return the word's ID in this dictionary
+     */
+    public int intern(Dictionary other, int id) {
+        checkId(other, id);
+        return intern(other.bytes, other.offsets[id], other.offsets[id + 1] - other.offsets[id]);
+    }
+
+    /**
+     * @param id ID of a word in this dictionary
+     * @return a new String of the word with that ID
+     */
+    public String word(int id) {
+        checkId(this, id);
+        return new String(bytes, offsets[id], offsets[id + 1] - offsets[id], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return approximate number of bytes of heap this dictionary uses
+     */
+    public long sizeInBytes() {
+        return bytes.length + 4L * (offsets.length + hashes.length + slots.length) + scratch.length;
+    }
+
+    @Override
+    public String toString() {
+        return "Dictionary of " + size + " words in " + byteCount + " bytes";
+    }
+
+    private static void checkId(Dictionary dictionary, int id) {
+        if (id < 0 || id >= dictionary.size) throw new IllegalArgumentException("No word with ID " + id);
+    }
+
+    // Return the slot holding the word, or the empty slot where it would go
+    private int find(byte[] utf8, int offset, int length, int hash) {
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        for (int id; (id = slots[i]) != EMPTY; i = (i + 1) & mask) {
+            if (hashes[id] == hash && matches(id, utf8, offset, length)) return i;
+        }
+        return i;
+    }
+
+    private boolean matches(int id, byte[] utf8, int offset, int length) {
+        int start = offsets[id];
+        if (offsets[id + 1] - start != length) return false;
+        for (int k = 0; k < length; k++) {
+            if (bytes[start + k] != utf8[offset + k]) return false;
+        }
+        return true;
+    }
+
+    private int add(byte[] utf8, int offset, int length, int hash, int slot) {
+        if (byteCount + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, byteCount + length));
+        }
+        System.arraycopy(utf8, offset, bytes, byteCount, length);
+        byteCount += length;
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+        int id = size++;
+        hashes[id] = hash;
+        offsets[id + 1] = byteCount;
+        slots[slot] = id;
+        if (size * 2 > slots.length) rehash();
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY);
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hashes[id] & mask;
+            while (slots[i] != EMPTY) i = (i + 1) & mask;
+            slots[i] = id;
+        }
+    }
+
+    // Encode a word as UTF-8 into scratch, returning its length in bytes
+    private int encode(CharSequence word) {
+        int n = word.length();
+        if (scratch.length < 3 * n) scratch = new byte[Math.max(2 * scratch.length, 3 * n)];
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            char c = word.charAt(i);
+            if (c < 0x80) {
+                scratch[length++] = (byte) c;
+            } else if (c < 0x800) {
+                scratch[length++] = (byte) (0xC0 | c >> 6);
+                scratch[length++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(word.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, word.charAt(++i));
+                scratch[length++] = (byte) (0xF0 | codePoint >> 18);
+                scratch[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                scratch[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                scratch[length++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                scratch[length++] = '?';
+            } else {
+                scratch[length++] = (byte) (0xE0 | c >> 12);
+                scratch[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                scratch[length++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return length;
+    }
+
+    private static int hash(byte[] utf8, int offset, int length) {
+        int h = 0;
+        for (int k = offset; k < offset + length; k++) {
+            h = 31 * h + utf8[k];
+        }
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,1023 @@
+package graph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A Graph decorator that makes every change to another graph durable: each
+ * {@link #add}, {@link #set} and {@link #remove} that changes the graph is
+ * appended to a write-ahead log in a directory, and the graph is
+ * periodically written to a compact checkpoint there, after which the log
+ * before it is deleted. Opening the directory again, after a clean close or
+ * a crash, recovers the graph by loading the latest checkpoint and replaying
+ * the log after it. Build one with {@link #builder(Path)}.
+ *
+ * <p>The log is written by a background thread that appends whatever has
+ * accumulated since its last write and then forces it to disk, so one
+ * {@code fsync} commits the changes of every writer waiting for it. With a
+ * durability window of zero (the default) a change returns once it is on
+ * disk; with a positive window it returns at once, and is on disk within
+ * the window, so a crash loses at most the changes of the last window.
+ * {@link #batch} applies many changes with one wait, and {@link #sync()}
+ * waits for every change made so far.
+ *
+ * <p>Log records are framed by their length and a CRC32, so a record torn by
+ * a crash is detected and dropped on recovery. Checkpoints are written to a
+ * temporary file, forced, and renamed into place, so a crash while writing
+ * one leaves the previous checkpoint and the log intact.
+ *
+ * <p>Changes may be made by several threads: they are applied to the
+ * decorated graph and logged in one order, under this object's monitor.
+ * Reads go straight to the decorated graph, so they are safe concurrently
+ * with changes only if it is thread-safe, such as a {@link ConcurrentGraph}.
+ * A checkpoint copies the graph under the monitor, pausing changes for the
+ * copy but not for the writing; {@link #reset} pauses them until its
+ * checkpoint is in place. Once the log cannot be written, every change
+ * throws {@link UncheckedIOException}.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public final class DurableGraph<L> implements Graph<L>, Closeable {
+
+    static final String LOG_PREFIX = "wal-";
+    static final String LOG_SUFFIX = ".log";
+    static final String CHECKPOINT_PREFIX = "checkpoint-";
+    static final String CHECKPOINT_SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String LOCK_FILE = "lock";
+    static final int CHECKPOINT_MAGIC = 0x47434B50;
+    static final int CHECKPOINT_VERSION = 1;
+
+    private static final byte ADD = 1;
+    private static final byte SET = 2;
+    private static final byte REMOVE = 3;
+    private static final byte BATCH = 4;
+    // bytes of log after which the flusher writes without waiting out the window
+    private static final int FLUSH_BYTES = 1 << 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Writes vertex labels to, and reads them from, log records and
+     * checkpoints. {@code read} must return a label equal to the one written.
+     *
+     * @param <L> type of vertex labels
+     */
+    public interface LabelCodec<L> {
+
+        /**
+         * @param label label to write
+         * @param out where to write it
+         * @throws IOException if out cannot be written
+         */
+        void write(L label, DataOutput out) throws IOException;
+
+        /**
+         * @param in where to read a label written by {@link #write}
+         * @return the label
+         * @throws IOException if in cannot be read or holds no valid label
+         */
+        L read(DataInput in) throws IOException;
+    }
+
+    /**
+     * A codec of String labels, each written as its UTF-8 byte length (a
+     * varint) followed by its UTF-8 bytes; unpaired surrogates are kept, as
+     * WTF-8, rather than replaced.
+     */
+    public static final LabelCodec<String> STRINGS = new LabelCodec<String>() {
+        @Override
+        public void write(String label, DataOutput out) throws IOException {
+            byte[] bytes = LabelBytes.encode(label);
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            byte[] bytes = new byte[readVarint(in)];
+            in.readFully(bytes);
+            return LabelBytes.decode(bytes);
+        }
+    };
+
+    private final Graph<L> delegate;
+    private final LabelCodec<L> codec;
+    private final Path directory;
+    private final long windowNanos;
+    private final long checkpointBytes;
+    private final boolean recovered;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Thread flusher;
+    private final ExecutorService checkpointer;
+    private final Object checkpointLock = new Object();
+
+    // guarded by this
+    private final Buffer payload = new Buffer();
+    private final DataOutputStream payloadOut = new DataOutputStream(payload);
+    private final CRC32 crc = new CRC32();
+    private Buffer pending = new Buffer();
+    private Buffer spare = new Buffer();
+    private long firstPendingNanos;
+    private Buffer sealed = null;
+    private int segment;
+    private int flushedSegment;
+    private long appended = 0;
+    private long durable = 0;
+    private int waiters = 0;
+    private long logBytes;
+    private boolean checkpointDue = false;
+    private int batchDepth = 0;
+    private final Buffer batchRecords = new Buffer();
+    private int batchCount;
+    private boolean resetting = false;
+    private boolean closed = false;
+    private boolean closing = false;
+    private IOException failure = null;
+    private IOException checkpointFailure = null;
+
+    // only used by the flusher once it starts
+    private FileChannel channel;
+
+    // Abstraction function:
+    //   - the graph delegate, whose every change since the last checkpoint in directory
+    //     is in the log segments after it, up to appended records, the first durable of
+    //     which are on disk.
+    // Representation invariant:
+    //   - checkpoint c in directory holds the graph after every record of the segments
+    //     numbered below c; records of segment s follow those of every segment below s.
+    //   - the records not yet written are those in sealed, which end segment
+    //     flushedSegment, followed by those in pending, of segment segment.
+    //   - durable <= appended; logBytes is the bytes logged since the last checkpoint.
+    //   - batchDepth > 0 only while the thread holding the monitor runs a batch, whose
+    //     batchCount records so far are in batchRecords.
+    // Safety from rep exposure:
+    //   - delegate is owned by this graph, and the views it returns are read-only
+    //     or copies, as its own spec says.
+    // Thread safety argument:
+    //   - delegate's changes and the log's buffers, counters and flags are only used
+    //     under this object's monitor, so the log holds the changes in the order they
+    //     were applied.
+    //   - channel is only used by the flusher, which writes outside the monitor the
+    //     buffers it took from sealed and pending under it.
+    //   - checkpoints are taken one at a time under checkpointLock, which is always
+    //     taken before the monitor.
+    //   - while resetting, changes wait in checkWritable(), so no record after a reset
+    //     reaches the log before the reset's checkpoint is in place.
+
+    /**
+     * Start configuring a durable graph with String labels, kept in a
+     * directory.
+     *
+     * @param directory directory of the log and checkpoints, created if needed
+     * @return a new builder with default options
+     */
+    public static DurableGraphBuilder<String> builder(Path directory) {
+        return new DurableGraphBuilder<>(directory, STRINGS);
+    }
+
+    /**
+     * Start configuring a durable graph kept in a directory.
+     *
+     * @param <L> type of vertex labels
+     * @param directory directory of the log and checkpoints, created if needed
+     * @param codec codec of the labels
+     * @return a new builder with default options
+     */
+    public static <L> DurableGraphBuilder<L> builder(Path directory, LabelCodec<L> codec) {
+        return new DurableGraphBuilder<>(directory, codec);
+    }
+
+    DurableGraph(Path directory, LabelCodec<L> codec, Graph<L> delegate, long windowNanos, long checkpointBytes)
+            throws IOException {
+        this.delegate = delegate;
+        this.codec = codec;
+        this.directory = directory;
+        this.windowNanos = windowNanos;
+        this.checkpointBytes = checkpointBytes;
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            this.lock = lock(lockChannel, directory);
+            this.recovered = recover();
+            this.channel = FileChannel.open(logFile(segment), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            syncDirectory();
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+        this.flushedSegment = segment;
+        this.checkpointer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "durable-graph-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher = new Thread(this::flushLoop, "durable-graph-log");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    private static FileLock lock(FileChannel channel, Path directory) throws IOException {
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) throw new IOException("Graph directory already open: " + directory);
+        return lock;
+    }
+
+    /**
+     * @return true if the directory held a graph when this graph was opened,
+     *         false if this graph started empty
+     */
+    public boolean recovered() {
+        return recovered;
+    }
+
+    /**
+     * @return true iff a background checkpoint is queued or running
+     */
+    synchronized boolean checkpointing() {
+        return checkpointDue;
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        long record;
+        synchronized (this) {
+            checkWritable();
+            if (!delegate.add(vertex)) return false;
+            record = log(() -> {
+                payloadOut.writeByte(ADD);
+                codec.write(vertex, payloadOut);
+            });
+        }
+        awaitIfSynchronous(record);
+        return true;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        long record;
+        int previous;
+        synchronized (this) {
+            checkWritable();
+            previous = delegate.set(source, target, weight);
+            if (previous == weight && weight != 0) return previous;
+            record = log(() -> {
+                payloadOut.writeByte(SET);
+                codec.write(source, payloadOut);
+                codec.write(target, payloadOut);
+                writeVarint(payloadOut, weight);
+            });
+        }
+        awaitIfSynchronous(record);
+        return previous;
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        long record;
+        synchronized (this) {
+            checkWritable();
+            if (!delegate.remove(vertex)) return false;
+            record = log(() -> {
+                payloadOut.writeByte(REMOVE);
+                codec.write(vertex, payloadOut);
+            });
+        }
+        awaitIfSynchronous(record);
+        return true;
+    }
+
+    /**
+     * Make a series of changes as one: no other thread's change is applied
+     * between them, they are logged as one record, so recovery finds either
+     * all or none of them, and with a zero durability window the batch
+     * waits for the disk once rather than once per change.
+     *
+     * @param changes makes its changes to the graph it is given, which is this
+     *        graph; if it throws, the changes it made are kept and logged
+     */
+    public void batch(Consumer<? super Graph<L>> changes) {
+        long record = 0;
+        synchronized (this) {
+            checkWritable();
+            if (batchDepth++ == 0) {
+                batchRecords.reset();
+                batchCount = 0;
+            }
+            try {
+                changes.accept(this);
+            } finally {
+                if (--batchDepth == 0 && batchCount > 0) {
+                    record = log(() -> {
+                        payloadOut.writeByte(BATCH);
+                        writeVarint(payloadOut, batchCount);
+                        batchRecords.writeTo(payloadOut);
+                    });
+                }
+            }
+        }
+        awaitIfSynchronous(record);
+    }
+
+    /**
+     * Wait until every change made so far is on disk.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void sync() throws IOException {
+        long record;
+        synchronized (this) {
+            record = appended;
+        }
+        awaitDurable(record);
+    }
+
+    /**
+     * Write a checkpoint of the graph now, and delete the log before it,
+     * rather than waiting until the log has grown by the configured number
+     * of bytes.
+     *
+     * @throws IOException if the checkpoint or the log cannot be written
+     */
+    public void checkpoint() throws IOException {
+        checkpoint(null);
+    }
+
+    /**
+     * Replace every vertex and edge of this graph with a copy of another
+     * graph's, and checkpoint the result, so that the log of the old graph
+     * is discarded. Use this to install a graph rebuilt from scratch.
+     * Changes by other threads wait until the checkpoint is in place, since
+     * until then recovery would apply them to the old graph.
+     *
+     * @param contents graph to copy; not modified
+     * @throws IOException if the checkpoint or the log cannot be written;
+     *         the graph then refuses every change, as after a log failure
+     */
+    public void reset(Graph<L> contents) throws IOException {
+        checkpoint(contents);
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return delegate.vertices();
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        return delegate.sources(target);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        return delegate.targets(source);
+    }
+
+    @Override
+    public int weight(L source, L target) {
+        return delegate.weight(source, target);
+    }
+
+    @Override
+    public void forEachSource(L target, ObjIntConsumer<? super L> action) {
+        delegate.forEachSource(target, action);
+    }
+
+    @Override
+    public void forEachTarget(L source, ObjIntConsumer<? super L> action) {
+        delegate.forEachTarget(source, action);
+    }
+
+    @Override
+    public L maxWeightTarget(L source) {
+        return delegate.maxWeightTarget(source);
+    }
+
+    /**
+     * Write every change made so far to disk and close the log. Does not
+     * checkpoint; the next open replays the log since the last checkpoint.
+     * Changes after closing throw {@link IllegalStateException}.
+     *
+     * @throws IOException if the log or the last background checkpoint could
+     *         not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        checkpointer.shutdown();
+        try {
+            while (!checkpointer.awaitTermination(1, TimeUnit.SECONDS)) {
+                // a background checkpoint is still writing
+            }
+            synchronized (this) {
+                closing = true;
+                notifyAll();
+            }
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing", e);
+        } finally {
+            lock.release();
+            lockChannel.close();
+        }
+        synchronized (this) {
+            if (failure != null) throw failure;
+            if (checkpointFailure != null) throw checkpointFailure;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    // Must hold the monitor
+    private void checkWritable() {
+        boolean interrupted = false;
+        while (resetting) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (closed) throw new IllegalStateException("Graph is closed");
+        if (failure != null) throw new UncheckedIOException("Write-ahead log failed", failure);
+    }
+
+    /**
+     * Writes one log record's payload.
+     */
+    private interface Record {
+        void write() throws IOException;
+    }
+
+    // Append a record to the log, or to the current batch; return its record number, or 0 if batched.
+    // Must hold the monitor
+    private long log(Record record) {
+        try {
+            payload.reset();
+            record.write();
+            if (batchDepth > 0) {
+                payload.writeTo(batchRecords);
+                batchCount++;
+                return 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot encode log record", e);
+        }
+        crc.reset();
+        crc.update(payload.array(), 0, payload.size());
+        boolean wasEmpty = pending.size() == 0;
+        pending.writeInt(payload.size());
+        pending.write(payload.array(), 0, payload.size());
+        pending.writeInt((int) crc.getValue());
+        logBytes += payload.size() + 8;
+        appended++;
+        if (wasEmpty) {
+            firstPendingNanos = System.nanoTime();
+            notifyAll();
+        } else if (pending.size() >= FLUSH_BYTES) {
+            notifyAll();
+        }
+        if (logBytes >= checkpointBytes && !checkpointDue && !closed) {
+            checkpointDue = true;
+            checkpointer.execute(this::checkpointInBackground);
+        }
+        return appended;
+    }
+
+    private void awaitIfSynchronous(long record) {
+        if (record == 0 || windowNanos > 0) return;
+        try {
+            awaitDurable(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write-ahead log failed", e);
+        }
+    }
+
+    // Wait until the given number of records are on disk
+    private synchronized void awaitDurable(long record) throws IOException {
+        boolean interrupted = false;
+        waiters++;
+        notifyAll();
+        try {
+            while (durable < record) {
+                if (failure != null) throw failure;
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            waiters--;
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    // Run by the flusher thread: write and force the log whenever a writer waits, the window
+    // runs out or enough has accumulated, and start new segments when checkpoints seal old ones
+    private void flushLoop() {
+        try {
+            while (true) {
+                Buffer ending;
+                Buffer batch;
+                int next;
+                long upTo;
+                synchronized (this) {
+                    while (!readyToFlush()) {
+                        if (closing && pending.size() == 0) {
+                            channel.close();
+                            return;
+                        }
+                        long wait = pending.size() == 0 ? 0 : firstPendingNanos + windowNanos - System.nanoTime();
+                        try {
+                            if (pending.size() == 0) wait();
+                            else TimeUnit.NANOSECONDS.timedWait(this, wait);
+                        } catch (InterruptedException e) {
+                            // keep flushing; close() stops this thread
+                        }
+                    }
+                    ending = sealed;
+                    sealed = null;
+                    next = segment;
+                    batch = pending;
+                    pending = spare;
+                    spare = null;
+                    upTo = appended;
+                }
+                if (ending != null) {
+                    write(ending);
+                    channel.force(false);
+                    channel.close();
+                    channel = FileChannel.open(logFile(next), StandardOpenOption.CREATE_NEW,
+                            StandardOpenOption.WRITE);
+                    syncDirectory();
+                }
+                write(batch);
+                channel.force(false);
+                batch.reset();
+                synchronized (this) {
+                    durable = upTo;
+                    flushedSegment = next;
+                    // keep the emptied buffer for reuse unless a burst grew it far beyond the usual
+                    spare = batch.array().length <= 4 * FLUSH_BYTES ? batch : new Buffer();
+                    notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+        }
+    }
+
+    // Must hold the monitor
+    private boolean readyToFlush() {
+        if (sealed != null) return true;
+        if (pending.size() == 0) return false;
+        return windowNanos == 0 || waiters > 0 || closing || pending.size() >= FLUSH_BYTES
+                || System.nanoTime() - firstPendingNanos >= windowNanos;
+    }
+
+    private void write(Buffer buffer) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.array(), 0, buffer.size());
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private void checkpointInBackground() {
+        try {
+            checkpoint(null);
+        } catch (IOException e) {
+            synchronized (this) {
+                checkpointFailure = e;
+            }
+        } catch (IllegalStateException | UncheckedIOException e) {
+            // closed, or the log failed; either is reported elsewhere
+        } finally {
+            synchronized (this) {
+                checkpointDue = false;
+            }
+        }
+    }
+
+    // Copy the graph, after replacing its contents if not null, and end the log segment at the
+    // same point; write the copy as the checkpoint that starts the next segment, and delete the
+    // files before it. A reset is not logged, so changes wait until its checkpoint is in place
+    private void checkpoint(Graph<L> contents) throws IOException {
+        synchronized (checkpointLock) {
+            synchronized (this) {
+                checkWritable();
+                resetting = contents != null;
+            }
+            try {
+                checkpointSealed(contents);
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    // the graph was replaced but the replacement is not on disk
+                    if (resetting && failure == null) {
+                        failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                    }
+                }
+                throw e;
+            } finally {
+                synchronized (this) {
+                    resetting = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    // Must hold checkpointLock
+    private void checkpointSealed(Graph<L> contents) throws IOException {
+        Checkpoint<L> copy;
+        int number;
+        long upTo;
+        synchronized (this) {
+            if (contents != null) {
+                for (L vertex : new ArrayList<>(delegate.vertices())) {
+                    delegate.remove(vertex);
+                }
+                Graphs.sum(delegate, contents);
+            }
+            copy = Checkpoint.of(delegate);
+            number = segment + 1;
+            sealed = pending;
+            pending = new Buffer();
+            segment = number;
+            upTo = appended;
+            logBytes = 0;
+            notifyAll();
+        }
+        Path temp = directory.resolve(CHECKPOINT_PREFIX + number + CHECKPOINT_SUFFIX + TEMP_SUFFIX);
+        copy.write(temp, codec);
+        synchronized (this) {
+            // wait for the flusher to start the new segment, so the old one is no longer written
+            waiters++;
+            notifyAll();
+            try {
+                while (durable < upTo || flushedSegment < number) {
+                    if (failure != null) throw failure;
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while checkpointing", e);
+                    }
+                }
+            } finally {
+                waiters--;
+            }
+        }
+        Files.move(temp, checkpointFile(number), StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        deleteBefore(number);
+    }
+
+    // Load the latest checkpoint and replay the log after it; truncate a torn last record.
+    // Return true if there was anything to recover, and set segment to a new segment's number
+    private boolean recover() throws IOException {
+        TreeMap<Integer, Path> checkpoints = numbered(CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX);
+        TreeMap<Integer, Path> logs = numbered(LOG_PREFIX, LOG_SUFFIX);
+        for (Path file : list()) {
+            if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) Files.delete(file);
+        }
+        int start = 0;
+        boolean found = false;
+        if (!checkpoints.isEmpty()) {
+            start = checkpoints.lastKey();
+            Checkpoint.read(checkpoints.lastEntry().getValue(), codec).applyTo(delegate);
+            found = true;
+        }
+        long replayed = 0;
+        int last = logs.isEmpty() ? -1 : logs.lastKey();
+        for (Map.Entry<Integer, Path> log : logs.tailMap(start).entrySet()) {
+            long records = replay(log.getValue(), log.getKey() == last);
+            found |= records > 0;
+            replayed += Files.size(log.getValue());
+        }
+        this.logBytes = replayed;
+        this.segment = Math.max(start, last + 1);
+        deleteBefore(start);
+        return found;
+    }
+
+    // Apply every whole record of a log segment; truncate a torn or corrupt tail if it is the last
+    // segment, and fail otherwise. Return the number of records applied
+    private long replay(Path file, boolean last) throws IOException {
+        long records = 0;
+        try (FileChannel log = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = log.size();
+            long valid = 0;
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(log),
+                    BUFFER_SIZE));
+            CRC32 check = new CRC32();
+            while (size - valid >= 8) {
+                int length = in.readInt();
+                if (length <= 0 || length > size - valid - 8) break;
+                byte[] record = new byte[length];
+                in.readFully(record);
+                check.reset();
+                check.update(record, 0, length);
+                if (in.readInt() != (int) check.getValue()) break;
+                apply(new DataInputStream(new ByteArrayInputStream(record)));
+                valid += length + 8;
+                records++;
+            }
+            if (valid < size) {
+                if (!last) throw new IOException("Corrupt write-ahead log: " + file);
+                log.truncate(valid);
+                log.force(true);
+            }
+        }
+        return records;
+    }
+
+    private void apply(DataInputStream in) throws IOException {
+        int op = in.readUnsignedByte();
+        switch (op) {
+        case ADD:
+            delegate.add(codec.read(in));
+            break;
+        case SET: {
+            L source = codec.read(in);
+            L target = codec.read(in);
+            delegate.set(source, target, readVarint(in));
+            break;
+        }
+        case REMOVE:
+            delegate.remove(codec.read(in));
+            break;
+        case BATCH:
+            for (int count = readVarint(in); count > 0; count--) {
+                apply(in);
+            }
+            break;
+        default:
+            throw new IOException("Unknown log record type " + op);
+        }
+    }
+
+    private TreeMap<Integer, Path> numbered(String prefix, String suffix) throws IOException {
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        for (Path file : list()) {
+            String name = file.getFileName().toString();
+            if (!name.startsWith(prefix) || !name.endsWith(suffix)) continue;
+            try {
+                files.put(Integer.parseInt(name.substring(prefix.length(), name.length() - suffix.length())), file);
+            } catch (NumberFormatException e) {
+                // not one of ours
+            }
+        }
+        return files;
+    }
+
+    private List<Path> list() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    // Delete the checkpoints and log segments that checkpoint number makes unnecessary
+    private void deleteBefore(int number) throws IOException {
+        for (Path file : numbered(CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX).headMap(number).values()) {
+            Files.delete(file);
+        }
+        for (Path file : numbered(LOG_PREFIX, LOG_SUFFIX).headMap(number).values()) {
+            Files.delete(file);
+        }
+    }
+
+    private Path logFile(int number) {
+        return directory.resolve(LOG_PREFIX + number + LOG_SUFFIX);
+    }
+
+    private Path checkpointFile(int number) {
+        return directory.resolve(CHECKPOINT_PREFIX + number + CHECKPOINT_SUFFIX);
+    }
+
+    // Make a file's creation, rename or deletion durable, where the platform allows it
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // directories cannot be opened or forced on some platforms
+        }
+    }
+
+    static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * A byte buffer whose contents can be written without copying.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(BUFFER_SIZE);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+    }
+
+    /**
+     * A compact copy of a graph: its vertices numbered in some order, and the
+     * out-edges of each as (target number, weight) pairs.
+     *
+     * <p>The file format is a magic number and version (ints), the vertex
+     * count and each label, then for each vertex in order its out-degree and
+     * out-edges, all counts, numbers and weights as varints, and finally the
+     * CRC32 of everything before it (a long).
+     */
+    private static final class Checkpoint<L> {
+        private final List<L> labels;
+        private final int[] offsets;
+        private final int[] targets;
+        private final int[] weights;
+
+        private Checkpoint(List<L> labels, int[] offsets, int[] targets, int[] weights) {
+            this.labels = labels;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.weights = weights;
+        }
+
+        static <L> Checkpoint<L> of(Graph<L> graph) {
+            List<L> labels = new ArrayList<>(graph.vertices());
+            Map<L, Integer> ids = new HashMap<>();
+            for (int id = 0; id < labels.size(); id++) {
+                ids.put(labels.get(id), id);
+            }
+            int[] offsets = new int[labels.size() + 1];
+            int[][] edges = { new int[16], new int[16] };
+            int[] count = { 0 };
+            for (int id = 0; id < labels.size(); id++) {
+                graph.forEachTarget(labels.get(id), (target, weight) -> {
+                    if (count[0] == edges[0].length) {
+                        edges[0] = Arrays.copyOf(edges[0], count[0] * 2);
+                        edges[1] = Arrays.copyOf(edges[1], count[0] * 2);
+                    }
+                    edges[0][count[0]] = ids.get(target);
+                    edges[1][count[0]] = weight;
+                    count[0]++;
+                });
+                offsets[id + 1] = count[0];
+            }
+            return new Checkpoint<>(labels, offsets, edges[0], edges[1]);
+        }
+
+        void write(Path file, LabelCodec<L> codec) throws IOException {
+            CRC32 crc = new CRC32();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        new CheckedOutputStream(Channels.newOutputStream(channel), crc), BUFFER_SIZE));
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeInt(CHECKPOINT_VERSION);
+                writeVarint(out, labels.size());
+                for (L label : labels) {
+                    codec.write(label, out);
+                }
+                for (int id = 0; id < labels.size(); id++) {
+                    writeVarint(out, offsets[id + 1] - offsets[id]);
+                    for (int k = offsets[id]; k < offsets[id + 1]; k++) {
+                        writeVarint(out, targets[k]);
+                        writeVarint(out, weights[k]);
+                    }
+                }
+                out.flush();
+                out.writeLong(crc.getValue());
+                out.flush();
+                channel.force(true);
+            }
+        }
+
+        static <L> Checkpoint<L> read(Path file, LabelCodec<L> codec) throws IOException {
+            CRC32 crc = new CRC32();
+            try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                    new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE), crc))) {
+                if (in.readInt() != CHECKPOINT_MAGIC) throw new IOException("Not a graph checkpoint: " + file);
+                int version = in.readInt();
+                if (version != CHECKPOINT_VERSION) {
+                    throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+                }
+                int n = readVarint(in);
+                List<L> labels = new ArrayList<>();
+                for (int id = 0; id < n; id++) {
+                    labels.add(codec.read(in));
+                }
+                int[] offsets = new int[n + 1];
+                int[] targets = new int[16];
+                int[] weights = new int[16];
+                for (int id = 0; id < n; id++) {
+                    int degree = readVarint(in);
+                    offsets[id + 1] = offsets[id] + degree;
+                    if (offsets[id + 1] > targets.length) {
+                        targets = Arrays.copyOf(targets, Math.max(offsets[id + 1], targets.length * 2));
+                        weights = Arrays.copyOf(weights, targets.length);
+                    }
+                    for (int k = offsets[id]; k < offsets[id + 1]; k++) {
+                        targets[k] = readVarint(in);
+                        weights[k] = readVarint(in);
+                        if (targets[k] >= n) throw new IOException("Corrupt checkpoint: " + file);
+                    }
+                }
+                long computed = crc.getValue();
+                if (in.readLong() != computed || in.read() != -1) throw new IOException("Corrupt checkpoint: " + file);
+                return new Checkpoint<>(labels, offsets, targets, weights);
+            } catch (EOFException e) {
+                throw new IOException("Truncated checkpoint: " + file, e);
+            }
+        }
+
+        void applyTo(Graph<L> graph) {
+            for (int id = 0; id < labels.size(); id++) {
+                graph.add(labels.get(id));
+                for (int k = offsets[id]; k < offsets[id + 1]; k++) {
+                    graph.set(labels.get(id), labels.get(targets[k]), weights[k]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package graph;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures a {@link DurableGraph}. Obtain one from
+ * {@link DurableGraph#builder(Path)}; every option has a default.
+ *
+ * @param <L> type of vertex labels in the graphs built
+ */
+public final class DurableGraphBuilder<L> {
+
+    private final Path directory;
+    private final DurableGraph.LabelCodec<L> codec;
+    private Graph<L> delegate = null;
+    private long windowNanos = 0;
+    private long checkpointBytes = 64L << 20;
+
+    DurableGraphBuilder(Path directory, DurableGraph.LabelCodec<L> codec) {
+        this.directory = directory;
+        this.codec = codec;
+    }
+
+    /**
+     * Keep the graph in the given graph (default a new {@link Graph#empty()}),
+     * for example a {@link ConcurrentGraph} to allow reads concurrent with
+     * changes.
+     *
+     * @param empty empty graph, owned by the durable graph from now on
+     * @return this builder
+     */
+    public DurableGraphBuilder<L> graph(Graph<L> empty) {
+        if (!empty.vertices().isEmpty()) throw new IllegalArgumentException("Graph must be empty");
+        this.delegate = empty;
+        return this;
+    }
+
+    /**
+     * Let changes return before they are on disk, as long as each is on disk
+     * within the given duration; a crash then loses at most the changes made
+     * in that long. By default every change waits until it is on disk.
+     *
+     * @param duration nonnegative duration; 0 makes every change wait
+     * @param unit unit of duration
+     * @return this builder
+     */
+    public DurableGraphBuilder<L> durabilityWindow(long duration, TimeUnit unit) {
+        if (duration < 0) throw new IllegalArgumentException("Durability window cannot be negative");
+        this.windowNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Checkpoint the graph in the background whenever the log has grown by
+     * the given number of bytes since the last checkpoint (default 64 MB).
+     * Recovery replays at most about that much log.
+     *
+     * @param bytes positive number of bytes
+     * @return this builder
+     */
+    public DurableGraphBuilder<L> checkpointBytes(long bytes) {
+        if (bytes <= 0) throw new IllegalArgumentException("Checkpoint bytes must be positive");
+        this.checkpointBytes = bytes;
+        return this;
+    }
+
+    /**
+     * Open the directory, recovering the graph it holds, if any.
+     *
+     * @return a new graph, which must be closed
+     * @throws IOException if the directory cannot be read or written, is
+     *         already open, or holds a corrupt checkpoint or log
+     */
+    public DurableGraph<L> build() throws IOException {
+        Graph<L> graph = delegate != null ? delegate : Graph.<L>empty();
+        delegate = null;
+        return new DurableGraph<>(directory, codec, graph, windowNanos, checkpointBytes);
+    }
+}
@@ -0,0 +1,347 @@
+package graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * An immutable Graph in compressed sparse row (CSR) layout: vertices are
+ * numbered densely, and each vertex's targets and sources are contiguous,
+ * ID-sorted runs in shared int arrays, so lookups binary-search a row and
+ * scans read memory sequentially.
+ *
+ * <p>Mutators throw {@link UnsupportedOperationException}. The maps returned
+ * by {@link #sources} and {@link #targets} are unmodifiable views of the rows
+ * rather than copies. A FrozenGraph is safe to share between threads without
+ * locking.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public final class FrozenGraph<L> implements Graph<L> {
+
+    private static final int EMPTY = -1;
+
+    private final Object[] labels;
+    private final int[] slots;
+    private final int[] outOffsets;
+    private final int[] outTargets;
+    private final int[] outWeights;
+    private final int[] inOffsets;
+    private final int[] inSources;
+    private final int[] inWeights;
+
+    // Abstraction function:
+    //   - The vertices are labels[0..n), where n = labels.length.
+    //   - For each vertex s and each i in [outOffsets[s], outOffsets[s + 1]), there is
+    //     an edge labels[s] -> labels[outTargets[i]] with weight outWeights[i].
+    // Representation invariant:
+    //   - labels are distinct; slots is an open-addressing table of the IDs 0..n keyed
+    //     by label hash, with EMPTY in unused slots and a power-of-two length.
+    //   - outOffsets and inOffsets have length n + 1, start at 0 and never decrease.
+    //   - each out row is strictly increasing in target ID and each in row strictly
+    //     increasing in source ID; all weights are > 0.
+    //   - the in rows list exactly the edges of the out rows, with the same weights.
+    // Safety from rep exposure:
+    //   - all fields are private, final and never mutated after construction;
+    //     views returned to clients are read-only.
+
+    /**
+     * Create an immutable snapshot of a graph. A thread-safe graph may be
+     * changed while it is copied: the copy then has the vertices seen by one
+     * pass over its vertices(), and each of their edges as of the moment
+     * targets() is called for it, less any edges to vertices that pass did
+     * not see. It is always a valid graph, but not necessarily one the graph
+     * ever was.
+     *
+     * @param <L> type of vertex labels in the graph
+     * @param graph graph to copy; not modified
+     * @return a FrozenGraph with the same vertices and edges as graph
+     */
+    @SuppressWarnings("unchecked")
+    public static <L> FrozenGraph<L> copyOf(Graph<L> graph) {
+        if (graph instanceof FrozenGraph) return (FrozenGraph<L>) graph;
+        return new FrozenGraph<>(graph);
+    }
+
+    private FrozenGraph(Graph<L> graph) {
+        labels = graph.vertices().toArray();
+        int n = labels.length;
+
+        slots = new int[Math.max(2, Integer.highestOneBit(Math.max(1, n) * 2 - 1) << 1)];
+        Arrays.fill(slots, EMPTY);
+        for (int id = 0; id < n; id++) {
+            int mask = slots.length - 1;
+            int i = mix(labels[id].hashCode()) & mask;
+            while (slots[i] != EMPTY) i = (i + 1) & mask;
+            slots[i] = id;
+        }
+
+        // forward rows, sorted by target ID
+        List<int[]> rows = new ArrayList<>(n);
+        outOffsets = new int[n + 1];
+        int[] inDegrees = new int[n];
+        for (int s = 0; s < n; s++) {
+            @SuppressWarnings("unchecked")
+            Map<L, Integer> targets = graph.targets((L) labels[s]);
+            long[] packed = new long[targets.size()];
+            int k = 0;
+            for (Map.Entry<L, Integer> edge : targets.entrySet()) {
+                int t = idOf(edge.getKey());
+                // a concurrent change may have added the target after the vertices were read
+                if (t == EMPTY) continue;
+                inDegrees[t]++;
+                packed[k++] = ((long) t << 32) | (edge.getValue() & 0xFFFFFFFFL);
+            }
+            if (k < packed.length) packed = Arrays.copyOf(packed, k);
+            Arrays.sort(packed);
+            int[] row = new int[packed.length * 2];
+            for (int i = 0; i < packed.length; i++) {
+                row[2 * i] = (int) (packed[i] >>> 32);
+                row[2 * i + 1] = (int) packed[i];
+            }
+            rows.add(row);
+            outOffsets[s + 1] = outOffsets[s] + packed.length;
+        }
+        int edgeCount = outOffsets[n];
+        outTargets = new int[edgeCount];
+        outWeights = new int[edgeCount];
+        for (int s = 0; s < n; s++) {
+            int[] row = rows.get(s);
+            for (int i = 0, e = outOffsets[s]; i < row.length; i += 2, e++) {
+                outTargets[e] = row[i];
+                outWeights[e] = row[i + 1];
+            }
+        }
+
+        // reverse rows: visiting sources in increasing ID keeps each in row sorted
+        inOffsets = new int[n + 1];
+        for (int t = 0; t < n; t++) {
+            inOffsets[t + 1] = inOffsets[t] + inDegrees[t];
+        }
+        inSources = new int[edgeCount];
+        inWeights = new int[edgeCount];
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        for (int s = 0; s < n; s++) {
+            for (int e = outOffsets[s]; e < outOffsets[s + 1]; e++) {
+                int slot = fill[outTargets[e]]++;
+                inSources[slot] = s;
+                inWeights[slot] = outWeights[e];
+            }
+        }
+    }
+
+    /**
+     * @return this graph, which is already immutable
+     */
+    @Override
+    public FrozenGraph<L> freeze() {
+        return this;
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        throw new UnsupportedOperationException("FrozenGraph is immutable");
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        throw new UnsupportedOperationException("FrozenGraph is immutable");
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        throw new UnsupportedOperationException("FrozenGraph is immutable");
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return new AbstractSet<L>() {
+            @Override
+            public int size() {
+                return labels.length;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return idOf(o) != EMPTY;
+            }
+
+            @Override
+            public Iterator<L> iterator() {
+                return new Iterator<L>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < labels.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public L next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return (L) labels[next++];
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        int t = idOf(target);
+        return t == EMPTY ? new Row(0, 0, inSources, inWeights)
+                : new Row(inOffsets[t], inOffsets[t + 1], inSources, inWeights);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        int s = idOf(source);
+        return s == EMPTY ? new Row(0, 0, outTargets, outWeights)
+                : new Row(outOffsets[s], outOffsets[s + 1], outTargets, outWeights);
+    }
+
+    @Override
+    public int weight(L source, L target) {
+        int s = idOf(source);
+        int t = idOf(target);
+        if (s == EMPTY || t == EMPTY) return 0;
+        int i = Arrays.binarySearch(outTargets, outOffsets[s], outOffsets[s + 1], t);
+        return i >= 0 ? outWeights[i] : 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEachSource(L target, ObjIntConsumer<? super L> action) {
+        int t = idOf(target);
+        if (t == EMPTY) return;
+        for (int i = inOffsets[t]; i < inOffsets[t + 1]; i++) {
+            action.accept((L) labels[inSources[i]], inWeights[i]);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEachTarget(L source, ObjIntConsumer<? super L> action) {
+        int s = idOf(source);
+        if (s == EMPTY) return;
+        for (int i = outOffsets[s]; i < outOffsets[s + 1]; i++) {
+            action.accept((L) labels[outTargets[i]], outWeights[i]);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public L maxWeightTarget(L source) {
+        int s = idOf(source);
+        if (s == EMPTY) return null;
+        int best = -1;
+        for (int i = outOffsets[s]; i < outOffsets[s + 1]; i++) {
+            if (best < 0 || outWeights[i] > outWeights[best]) best = i;
+        }
+        return best >= 0 ? (L) labels[outTargets[best]] : null;
+    }
+
+    @Override
+    public String toString() {
+        List<String> edges = new ArrayList<>();
+        for (int s = 0; s < labels.length; s++) {
+            for (int e = outOffsets[s]; e < outOffsets[s + 1]; e++) {
+                edges.add(labels[s] + " -> " + labels[outTargets[e]] + " (" + outWeights[e] + ")");
+            }
+        }
+        return "Graph with vertices: " + vertices() + " and edges: " + edges;
+    }
+
+    // Return the ID of a label, or EMPTY if it is not a vertex
+    private int idOf(Object label) {
+        if (label == null) return EMPTY;
+        int mask = slots.length - 1;
+        for (int i = mix(label.hashCode()) & mask; slots[i] != EMPTY; i = (i + 1) & mask) {
+            if (labels[slots[i]].equals(label)) return slots[i];
+        }
+        return EMPTY;
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Read-only map view of one CSR row, mapping neighbour labels to weights.
+     */
+    private final class Row extends AbstractMap<L, Integer> {
+        private final int from;
+        private final int to;
+        private final int[] neighbors;
+        private final int[] weights;
+
+        Row(int from, int to, int[] neighbors, int[] weights) {
+            this.from = from;
+            this.to = to;
+            this.neighbors = neighbors;
+            this.weights = weights;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            int i = indexOf(key);
+            return i >= 0 ? weights[i] : null;
+        }
+
+        private int indexOf(Object key) {
+            int id = idOf(key);
+            if (id == EMPTY) return -1;
+            int i = Arrays.binarySearch(neighbors, from, to, id);
+            return i >= 0 ? i : -1;
+        }
+
+        @Override
+        public Set<Map.Entry<L, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<L, Integer>>() {
+                @Override
+                public int size() {
+                    return to - from;
+                }
+
+                @Override
+                public Iterator<Map.Entry<L, Integer>> iterator() {
+                    return new Iterator<Map.Entry<L, Integer>>() {
+                        private int next = from;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < to;
+                        }
+
+                        @Override
+                        @SuppressWarnings("unchecked")
+                        public Map.Entry<L, Integer> next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            int i = next++;
+                            return new AbstractMap.SimpleImmutableEntry<>((L) labels[neighbors[i]], weights[i]);
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
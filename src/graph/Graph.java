@@ -5,6 +5,7 @@ package graph;
 
 import java.util.Map;
 import java.util.Set;
+import java.util.function.ObjIntConsumer;
 
 /**
  * A mutable weighted directed graph with labeled vertices.
@@ -12,8 +13,14 @@ import java.util.Set;
  * using the {@link Object#equals(Object) equals} method.
  * Edges are directed and have a positive weight of type {@code int}.
  * 
- * <p>PS2 instructions: this is a required ADT interface.
- * You MUST NOT change the specifications or add additional methods.
+ * <p>The core operations are {@link #add}, {@link #set}, {@link #remove},
+ * {@link #vertices}, {@link #sources} and {@link #targets}, with the
+ * specifications of the original PS2 interface. The remaining operations,
+ * {@link #weight}, {@link #forEachSource}, {@link #forEachTarget},
+ * {@link #maxWeightTarget} and {@link #freeze}, have default
+ * implementations in terms of the core ones, which implementations override
+ * to answer without building maps. {@link #builder()} chooses an
+ * implementation from hints about a graph's size and use.
  * 
  * @param <L> type of vertex labels in this graph, must be immutable
  */
@@ -26,7 +33,18 @@ public interface Graph<L> {
      * @return a new empty weighted directed graph
      */
     public static <L> Graph<L> empty() {
-        throw new RuntimeException("not implemented");
+        return builder().build();
+    }
+    
+    /**
+     * Start choosing a graph representation from hints about its size and use.
+     * An empty graph built without hints starts in a compact form suited to
+     * small graphs and switches to a hashed form as it grows.
+     * 
+     * @return a new builder with no hints set
+     */
+    public static GraphBuilder builder() {
+        return new GraphBuilder();
     }
     
     /**
@@ -95,4 +113,82 @@ public interface Graph<L> {
      */
     public Map<L, Integer> targets(L source);
     
+    /**
+     * Get the weight of one edge, without building a map of the source's
+     * targets.
+     * 
+     * @param source a label
+     * @param target a label
+     * @return the weight of the edge from source to target, or zero if there
+     *         is no such edge
+     */
+    public default int weight(L source, L target) {
+        Integer weight = targets(source).get(target);
+        return weight != null ? weight : 0;
+    }
+    
+    /**
+     * Visit the source vertices with directed edges to a target vertex,
+     * with the weights of those edges, in no particular order; action must
+     * not modify this graph. This default copies {@link #sources(Object)}
+     * into a map. The implementations in this package override it to visit
+     * their rows in place without boxing weights, except where their own
+     * documentation says what they copy or decode.
+     * 
+     * @param target a label
+     * @param action called once with each source vertex s and the (nonzero)
+     *        weight of the edge from s to target
+     */
+    public default void forEachSource(L target, ObjIntConsumer<? super L> action) {
+        Graphs.visit(sources(target), action);
+    }
+    
+    /**
+     * Visit the target vertices with directed edges from a source vertex,
+     * with the weights of those edges, in no particular order; action must
+     * not modify this graph. This default copies {@link #targets(Object)}
+     * into a map, as {@link #forEachSource} does.
+     * 
+     * @param source a label
+     * @param action called once with each target vertex t and the (nonzero)
+     *        weight of the edge from source to t
+     */
+    public default void forEachTarget(L source, ObjIntConsumer<? super L> action) {
+        Graphs.visit(targets(source), action);
+    }
+    
+    /**
+     * Find the heaviest edge out of a vertex.
+     * 
+     * @param source a label
+     * @return a target vertex whose edge from source has the greatest weight
+     *         among all edges from source (if several do, any one of them),
+     *         or null if there are no edges from source
+     */
+    public default L maxWeightTarget(L source) {
+        L best = null;
+        int bestWeight = 0;
+        for (Map.Entry<L, Integer> edge : targets(source).entrySet()) {
+            if (edge.getValue() > bestWeight) {
+                best = edge.getKey();
+                bestWeight = edge.getValue();
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Create an immutable snapshot of this graph, laid out for fast reads.
+     * The snapshot is unaffected by later changes to this graph, its
+     * mutators throw UnsupportedOperationException, and it may be shared
+     * between threads without locking. A thread-safe graph may be frozen
+     * while other threads change it; see {@link FrozenGraph#copyOf(Graph)}
+     * for what the snapshot then holds.
+     * 
+     * @return a graph with the same vertices and edges as this graph
+     */
+    public default FrozenGraph<L> freeze() {
+        return FrozenGraph.copyOf(this);
+    }
+    
 }
@@ -0,0 +1,81 @@
+package graph;
+
+/**
+ * Chooses a Graph representation from hints about how the graph will be
+ * used. Obtain one from {@link Graph#builder()}; every hint is optional, and
+ * the graph returned by {@link #build()} meets the full Graph spec whatever
+ * hints were given.
+ */
+public final class GraphBuilder {
+
+    private int expectedVertices = 0;
+    private int expectedEdges = 0;
+    private boolean readMostly = false;
+    private boolean concurrent = false;
+
+    GraphBuilder() {
+    }
+
+    /**
+     * Hint how many vertices the graph will hold.
+     *
+     * @param expectedVertices nonnegative expected vertex count
+     * @return this builder
+     */
+    public GraphBuilder expectedVertices(int expectedVertices) {
+        if (expectedVertices < 0) throw new IllegalArgumentException("Expected vertices cannot be negative");
+        this.expectedVertices = expectedVertices;
+        return this;
+    }
+
+    /**
+     * Hint how many edges the graph will hold.
+     *
+     * @param expectedEdges nonnegative expected edge count
+     * @return this builder
+     */
+    public GraphBuilder expectedEdges(int expectedEdges) {
+        if (expectedEdges < 0) throw new IllegalArgumentException("Expected edges cannot be negative");
+        this.expectedEdges = expectedEdges;
+        return this;
+    }
+
+    /**
+     * Hint that the graph will be queried far more often than it is mutated,
+     * so lookups should be favored over footprint.
+     *
+     * @return this builder
+     */
+    public GraphBuilder readMostly() {
+        this.readMostly = true;
+        return this;
+    }
+
+    /**
+     * Require the graph to be safe for use by multiple threads; the graph
+     * built is a {@link ConcurrentGraph} and the other hints are ignored.
+     *
+     * @return this builder
+     */
+    public GraphBuilder concurrent() {
+        this.concurrent = true;
+        return this;
+    }
+
+    /**
+     * Create an empty graph using the hints given so far.
+     *
+     * @param <L> type of vertex labels in the graph, must be immutable
+     * @return a new empty weighted directed graph
+     */
+    public <L> Graph<L> build() {
+        if (concurrent) {
+            return new ConcurrentGraph<>();
+        }
+        boolean large = expectedVertices > AdaptiveGraph.SMALL_MAX_VERTICES
+                || expectedEdges > AdaptiveGraph.SMALL_MAX_EDGES;
+        return large || readMostly
+                ? new HashGraph<>(Math.max(expectedVertices, expectedEdges / 4))
+                : new AdaptiveGraph<>();
+    }
+}
@@ -0,0 +1,266 @@
+package graph;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes a versioned, checksummed binary file format for graphs
+ * with String labels, laid out so that {@link #map(Path)} can serve a graph
+ * straight from the memory-mapped file.
+ *
+ * <p>All numbers are big-endian. The file is a 40-byte header followed by a
+ * body of sections:
+ * <pre>
+ *   header:  magic "GRPH", version, vertex count n, edge count m (ints),
+ *            label byte count, CRC32 of the body (longs),
+ *            CRC32 of the preceding 32 header bytes (int), 4 bytes padding
+ *   body:    label offsets   n + 1 ints, into the label bytes
+ *            label bytes     UTF-8 labels (WTF-8 for unpaired surrogates, see
+ *                            LabelBytes), sorted by unsigned byte order,
+ *                            padded with zeros to a multiple of 4
+ *            out offsets     n + 1 ints, into out edges (in edge units)
+ *            out edges       m (target ID, weight) int pairs, each row sorted by ID
+ *            in offsets      n + 1 ints, into in edges (in edge units)
+ *            in edges        m (source ID, weight) int pairs, each row sorted by ID
+ * </pre>
+ * A vertex's ID is the rank of its label in the sorted label bytes. Each
+ * section is mapped as one buffer, so it is limited to
+ * {@link Integer#MAX_VALUE} bytes: a snapshot holds up to about 268 million
+ * edges and 2 GB of labels.
+ */
+public final class GraphSnapshot {
+
+    static final int MAGIC = 0x47525048;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+
+    private GraphSnapshot() {
+        throw new AssertionError("GraphSnapshot is not instantiable");
+    }
+
+    /**
+     * Write a graph to a snapshot file, replacing any existing file.
+     *
+     * @param graph graph to write; not modified
+     * @param file file to write
+     * @throws IOException if the file cannot be written, or the graph is too
+     *         large for a mappable snapshot
+     */
+    public static void write(Graph<String> graph, Path file) throws IOException {
+        byte[][] labels = new byte[graph.vertices().size()][];
+        int n = 0;
+        for (String vertex : graph.vertices()) {
+            labels[n++] = LabelBytes.encode(vertex);
+        }
+        Arrays.sort(labels, UNSIGNED_ORDER);
+        Map<String, Integer> ids = new HashMap<>();
+        long labelBytes = 0;
+        for (int id = 0; id < n; id++) {
+            ids.put(LabelBytes.decode(labels[id]), id);
+            labelBytes += labels[id].length;
+        }
+
+        // forward rows as packed (ID << 32 | weight) longs, sorted by ID
+        long[][] rows = new long[n][];
+        int[] inDegrees = new int[n];
+        long edgeCount = 0;
+        for (int s = 0; s < n; s++) {
+            Map<String, Integer> targets = graph.targets(LabelBytes.decode(labels[s]));
+            long[] row = new long[targets.size()];
+            int k = 0;
+            for (Map.Entry<String, Integer> edge : targets.entrySet()) {
+                int t = ids.get(edge.getKey());
+                inDegrees[t]++;
+                row[k++] = ((long) t << 32) | (edge.getValue() & 0xFFFFFFFFL);
+            }
+            Arrays.sort(row);
+            rows[s] = row;
+            edgeCount += row.length;
+        }
+        if (!mappable(n, labelBytes, edgeCount)) {
+            throw new IOException("Graph too large for a mappable snapshot: " + n + " vertices, " + edgeCount
+                    + " edges, " + labelBytes + " label bytes");
+        }
+        int m = (int) edgeCount;
+
+        CRC32 bodyCrc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), bodyCrc), 1 << 16));
+
+            int offset = 0;
+            out.writeInt(0);
+            for (byte[] label : labels) {
+                offset += label.length;
+                out.writeInt(offset);
+            }
+            for (byte[] label : labels) {
+                out.write(label);
+            }
+            for (int pad = 0; pad < padding(labelBytes); pad++) {
+                out.writeByte(0);
+            }
+
+            out.writeInt(0);
+            int edges = 0;
+            for (long[] row : rows) {
+                edges += row.length;
+                out.writeInt(edges);
+            }
+            for (long[] row : rows) {
+                for (long edge : row) {
+                    out.writeLong(edge);
+                }
+            }
+
+            // reverse rows: visiting sources in increasing ID keeps each in row sorted
+            int[] inOffsets = new int[n + 1];
+            for (int t = 0; t < n; t++) {
+                inOffsets[t + 1] = inOffsets[t] + inDegrees[t];
+            }
+            long[] inEdges = new long[m];
+            int[] fill = Arrays.copyOf(inOffsets, n);
+            for (int s = 0; s < n; s++) {
+                for (long edge : rows[s]) {
+                    int t = (int) (edge >>> 32);
+                    inEdges[fill[t]++] = ((long) s << 32) | (edge & 0xFFFFFFFFL);
+                }
+            }
+            for (int inOffset : inOffsets) {
+                out.writeInt(inOffset);
+            }
+            for (long edge : inEdges) {
+                out.writeLong(edge);
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putLong(labelBytes).putLong(bodyCrc.getValue());
+            header.putInt(crc(header, 32));
+            header.putInt(0);
+            header.flip();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+        }
+    }
+
+    /**
+     * Open a snapshot file as a read-only graph backed by the mapped file.
+     * Only the header is read and checked, so opening takes about the same
+     * time whatever the size of the graph; use
+     * {@link MappedGraph#verifyChecksum()} to check the body as well.
+     *
+     * @param file snapshot file written by {@link #write(Graph, Path)}
+     * @return an immutable graph equal to the one written
+     * @throws IOException if the file cannot be read, or is not a snapshot of
+     *         this version, or its header is corrupt
+     */
+    public static MappedGraph map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) == -1) throw new IOException("Truncated snapshot header: " + file);
+            }
+            header.flip();
+            if (header.getInt(0) != MAGIC) throw new IOException("Not a graph snapshot: " + file);
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported snapshot version " + header.getInt(4) + ": " + file);
+            }
+            if (header.getInt(32) != crc(header, 32)) throw new IOException("Corrupt snapshot header: " + file);
+            int n = header.getInt(8);
+            int m = header.getInt(12);
+            long labelBytes = header.getLong(16);
+            long bodyCrc = header.getLong(24);
+
+            long labelOffsets = HEADER_SIZE;
+            long labelData = labelOffsets + 4L * (n + 1);
+            long outOffsets = labelData + labelBytes + padding(labelBytes);
+            long outEdges = outOffsets + 4L * (n + 1);
+            long inOffsets = outEdges + 8L * m;
+            long inEdges = inOffsets + 4L * (n + 1);
+            long end = inEdges + 8L * m;
+            if (channel.size() != end) throw new IOException("Snapshot has wrong length: " + file);
+
+            return new MappedGraph(n,
+                    map(channel, labelOffsets, labelData - labelOffsets),
+                    map(channel, labelData, outOffsets - labelData),
+                    map(channel, outOffsets, outEdges - outOffsets),
+                    map(channel, outEdges, inOffsets - outEdges),
+                    map(channel, inOffsets, inEdges - inOffsets),
+                    map(channel, inEdges, end - inEdges),
+                    bodyCrc);
+        }
+    }
+
+    /**
+     * Read a snapshot file into a graph, after checking its whole checksum.
+     *
+     * @param file snapshot file written by {@link #write(Graph, Path)}
+     * @param into graph to add the snapshot's vertices and edges to; edges
+     *        already in it take the snapshot's weights
+     * @throws IOException if the file cannot be read, or is not a snapshot of
+     *         this version, or is corrupt
+     */
+    public static void read(Path file, Graph<String> into) throws IOException {
+        MappedGraph snapshot = map(file);
+        if (!snapshot.verifyChecksum()) throw new IOException("Corrupt snapshot body: " + file);
+        for (String vertex : snapshot.vertices()) {
+            into.add(vertex);
+        }
+        for (String source : snapshot.vertices()) {
+            for (Map.Entry<String, Integer> edge : snapshot.targets(source).entrySet()) {
+                into.set(source, edge.getKey(), edge.getValue());
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) throw new IOException("Snapshot section too large to map: " + size + " bytes");
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    /**
+     * @return true iff every section of a snapshot of n vertices, m edges and
+     *         labelBytes bytes of labels fits in one mapping
+     */
+    static boolean mappable(int n, long labelBytes, long m) {
+        return 4L * (n + 1) <= Integer.MAX_VALUE
+                && labelBytes + padding(labelBytes) <= Integer.MAX_VALUE
+                && 8L * m <= Integer.MAX_VALUE;
+    }
+
+    private static int padding(long labelBytes) {
+        return (int) ((4 - labelBytes % 4) % 4);
+    }
+
+    private static int crc(ByteBuffer buffer, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset(), length);
+        return (int) crc.getValue();
+    }
+
+    private static final Comparator<byte[]> UNSIGNED_ORDER = (a, b) -> {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) return diff;
+        }
+        return a.length - b.length;
+    };
+}
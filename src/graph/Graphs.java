@@ -0,0 +1,80 @@
+package graph;
+
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Static utilities that work on any Graph through its public operations.
+ */
+public final class Graphs {
+
+    private Graphs() {
+        throw new AssertionError("Graphs is not instantiable");
+    }
+
+    /**
+     * Add to the weight of an edge, creating or removing the edge as needed.
+     * If delta is positive, the source and target vertices are added to the
+     * graph if they do not already exist. The edge is changed by at most one
+     * call to {@link Graph#set}, so readers never see an intermediate weight,
+     * but the change is not atomic: callers that change the same edge from
+     * several threads must synchronize.
+     *
+     * @param <L> type of vertex labels in the graph
+     * @param graph graph to modify
+     * @param source label of the source vertex
+     * @param target label of the target vertex
+     * @param delta amount to add to the edge's weight; may be negative
+     * @return the new weight of the edge, or zero if there is now no such edge
+     * @throws IllegalArgumentException if the new weight would be negative,
+     *         in which case the graph is not modified
+     * @throws ArithmeticException if the new weight would overflow an int,
+     *         in which case the graph is not modified
+     */
+    public static <L> int addWeight(Graph<L> graph, L source, L target, int delta) {
+        // weight() reads one edge, so no targets() copy is needed
+        int previous = graph.weight(source, target);
+        if (delta == 0) return previous;
+        int weight = Math.addExact(previous, delta);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight of " + source + " -> " + target
+                    + " cannot drop below zero: " + previous + " + " + delta);
+        }
+        graph.set(source, target, weight);
+        return weight;
+    }
+
+    /**
+     * Add every vertex of one graph to another, and add the weight of every
+     * edge of the first graph to the weight of the same edge in the second.
+     *
+     * @param <L> type of vertex labels in the graphs
+     * @param into graph to modify
+     * @param from graph to add into it; not modified, and must not be into
+     */
+    public static <L> void sum(Graph<L> into, Graph<L> from) {
+        if (into == from) throw new IllegalArgumentException("Cannot sum a graph into itself");
+        for (L vertex : from.vertices()) {
+            into.add(vertex);
+        }
+        for (L source : from.vertices()) {
+            for (Map.Entry<L, Integer> edge : from.targets(source).entrySet()) {
+                addWeight(into, source, edge.getKey(), edge.getValue());
+            }
+        }
+    }
+
+    /**
+     * Call an action with each edge of an adjacency map, for the graphs that
+     * keep their rows as maps from labels to weights.
+     *
+     * @param <L> type of vertex labels
+     * @param edges map from the other endpoint of each edge to its weight
+     * @param action called once with each endpoint and weight
+     */
+    static <L> void visit(Map<L, Integer> edges, ObjIntConsumer<? super L> action) {
+        for (Map.Entry<L, Integer> edge : edges.entrySet()) {
+            action.accept(edge.getKey(), edge.getValue());
+        }
+    }
+}
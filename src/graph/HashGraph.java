@@ -0,0 +1,152 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A Graph with hashed adjacency in both directions: each vertex maps to its
+ * outgoing and incoming edge weights, so every operation costs about the
+ * degree of the vertices involved.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+class HashGraph<L> implements Graph<L> {
+
+    private final Map<L, Map<L, Integer>> outgoing;
+    private final Map<L, Map<L, Integer>> incoming;
+
+    // Abstraction function:
+    //   - The vertices are the keys of outgoing; the edge s -> t has weight
+    //     outgoing.get(s).get(t).
+    // Representation invariant:
+    //   - outgoing and incoming have the same key set.
+    //   - outgoing.get(s).get(t) == incoming.get(t).get(s) for every edge, and it is > 0.
+
+    /**
+     * Create an empty graph.
+     */
+    HashGraph() {
+        this(16);
+    }
+
+    /**
+     * Create an empty graph sized for an expected number of vertices.
+     *
+     * @param expectedVertices number of vertices the graph is expected to hold
+     */
+    HashGraph(int expectedVertices) {
+        int capacity = Math.max(16, (int) (expectedVertices / 0.75f) + 1);
+        outgoing = new HashMap<>(capacity);
+        incoming = new HashMap<>(capacity);
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        if (outgoing.containsKey(vertex)) return false;
+        outgoing.put(vertex, new HashMap<>(4));
+        incoming.put(vertex, new HashMap<>(4));
+        return true;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative");
+
+        add(source);
+        add(target);
+
+        Integer oldWeight;
+        if (weight == 0) {
+            oldWeight = outgoing.get(source).remove(target);
+            incoming.get(target).remove(source);
+        } else {
+            oldWeight = outgoing.get(source).put(target, weight);
+            incoming.get(target).put(source, weight);
+        }
+        return oldWeight != null ? oldWeight : 0;
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        Map<L, Integer> targets = outgoing.remove(vertex);
+        if (targets == null) return false;
+        Map<L, Integer> sources = incoming.remove(vertex);
+
+        for (L target : targets.keySet()) {
+            Map<L, Integer> targetSources = incoming.get(target);
+            if (targetSources != null) targetSources.remove(vertex);
+        }
+        for (L source : sources.keySet()) {
+            Map<L, Integer> sourceTargets = outgoing.get(source);
+            if (sourceTargets != null) sourceTargets.remove(vertex);
+        }
+        return true;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return Collections.unmodifiableSet(outgoing.keySet());
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        Map<L, Integer> sources = incoming.get(target);
+        return sources != null ? new HashMap<>(sources) : new HashMap<>();
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        Map<L, Integer> targets = outgoing.get(source);
+        return targets != null ? new HashMap<>(targets) : new HashMap<>();
+    }
+
+    @Override
+    public int weight(L source, L target) {
+        Map<L, Integer> targets = outgoing.get(source);
+        Integer weight = targets != null ? targets.get(target) : null;
+        return weight != null ? weight : 0;
+    }
+
+    @Override
+    public void forEachSource(L target, ObjIntConsumer<? super L> action) {
+        Map<L, Integer> sources = incoming.get(target);
+        if (sources != null) Graphs.visit(sources, action);
+    }
+
+    @Override
+    public void forEachTarget(L source, ObjIntConsumer<? super L> action) {
+        Map<L, Integer> targets = outgoing.get(source);
+        if (targets != null) Graphs.visit(targets, action);
+    }
+
+    @Override
+    public L maxWeightTarget(L source) {
+        Map<L, Integer> targets = outgoing.get(source);
+        if (targets == null) return null;
+        L best = null;
+        int bestWeight = 0;
+        for (Map.Entry<L, Integer> edge : targets.entrySet()) {
+            if (edge.getValue() > bestWeight) {
+                best = edge.getKey();
+                bestWeight = edge.getValue();
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        List<String> edges = new ArrayList<>();
+        for (Map.Entry<L, Map<L, Integer>> entry : outgoing.entrySet()) {
+            for (Map.Entry<L, Integer> edge : entry.getValue().entrySet()) {
+                edges.add(entry.getKey() + " -> " + edge.getKey() + " (" + edge.getValue() + ")");
+            }
+        }
+        return "Graph with vertices: " + outgoing.keySet() + " and edges: " + edges;
+    }
+}
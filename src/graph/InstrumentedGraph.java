@@ -0,0 +1,186 @@
+package graph;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+import metrics.Metrics;
+
+/**
+ * A Graph decorator that times every call to another graph, recording into
+ * a timer per Graph method ("add", "set", "remove", "vertices", "sources",
+ * "targets", "weight", "forEachSource", "forEachTarget" and "maxWeightTarget")
+ * of a {@link Metrics}. Each timer's count is the number of calls
+ * made while the metrics were enabled.
+ *
+ * <p>Behaves exactly like the decorated graph, and is as thread-safe as it
+ * is. Only the call itself is timed: iterating a returned view later is not.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public final class InstrumentedGraph<L> implements Graph<L> {
+
+    private final Graph<L> delegate;
+    private final Metrics metrics;
+    private final Metrics.Timer add;
+    private final Metrics.Timer set;
+    private final Metrics.Timer remove;
+    private final Metrics.Timer vertices;
+    private final Metrics.Timer sources;
+    private final Metrics.Timer targets;
+    private final Metrics.Timer weight;
+    private final Metrics.Timer forEachSource;
+    private final Metrics.Timer forEachTarget;
+    private final Metrics.Timer maxWeightTarget;
+
+    // Abstraction function:
+    //   - the graph delegate.
+    // Representation invariant:
+    //   - each timer is metrics.timer() of its method's name.
+    // Safety from rep exposure:
+    //   - delegate is owned by the caller, who may keep using it directly; those
+    //     calls are simply not timed.
+
+    /**
+     * Time the calls made to a graph through the returned decorator.
+     *
+     * @param delegate graph to decorate
+     * @param metrics metrics to record into
+     */
+    public InstrumentedGraph(Graph<L> delegate, Metrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.add = metrics.timer("add");
+        this.set = metrics.timer("set");
+        this.remove = metrics.timer("remove");
+        this.vertices = metrics.timer("vertices");
+        this.sources = metrics.timer("sources");
+        this.targets = metrics.timer("targets");
+        this.weight = metrics.timer("weight");
+        this.forEachSource = metrics.timer("forEachSource");
+        this.forEachTarget = metrics.timer("forEachTarget");
+        this.maxWeightTarget = metrics.timer("maxWeightTarget");
+    }
+
+    /**
+     * @return the metrics this graph records into
+     */
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        long start = add.start();
+        try {
+            return delegate.add(vertex);
+        } finally {
+            add.stop(start);
+        }
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        long start = set.start();
+        try {
+            return delegate.set(source, target, weight);
+        } finally {
+            set.stop(start);
+        }
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        long start = remove.start();
+        try {
+            return delegate.remove(vertex);
+        } finally {
+            remove.stop(start);
+        }
+    }
+
+    @Override
+    public Set<L> vertices() {
+        long start = vertices.start();
+        try {
+            return delegate.vertices();
+        } finally {
+            vertices.stop(start);
+        }
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        long start = sources.start();
+        try {
+            return delegate.sources(target);
+        } finally {
+            sources.stop(start);
+        }
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        long start = targets.start();
+        try {
+            return delegate.targets(source);
+        } finally {
+            targets.stop(start);
+        }
+    }
+
+    @Override
+    public int weight(L source, L target) {
+        long start = weight.start();
+        try {
+            return delegate.weight(source, target);
+        } finally {
+            weight.stop(start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The time recorded includes the time spent in action.
+     */
+    @Override
+    public void forEachSource(L target, ObjIntConsumer<? super L> action) {
+        long start = forEachSource.start();
+        try {
+            delegate.forEachSource(target, action);
+        } finally {
+            forEachSource.stop(start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The time recorded includes the time spent in action.
+     */
+    @Override
+    public void forEachTarget(L source, ObjIntConsumer<? super L> action) {
+        long start = forEachTarget.start();
+        try {
+            delegate.forEachTarget(source, action);
+        } finally {
+            forEachTarget.stop(start);
+        }
+    }
+
+    @Override
+    public L maxWeightTarget(L source) {
+        long start = maxWeightTarget.start();
+        try {
+            return delegate.maxWeightTarget(source);
+        } finally {
+            maxWeightTarget.stop(start);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+}
@@ -0,0 +1,519 @@
+package graph;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A Graph of String labels that interns each label to a dense int ID and
+ * stores adjacency in primitive int arrays, so edges cost a few ints each
+ * instead of boxed map entries.
+ *
+ * <p>Each vertex has at most one int[] row of outgoing (target, weight)
+ * pairs and one of incoming source IDs, so a vertex costs two array headers
+ * rather than the two maps, their tables and entries of a map-based graph.
+ * Rows of up to {@value Rows#LINEAR} edges are unordered lists, searched
+ * linearly and grown one edge at a time, so they are exactly full; larger
+ * rows are open-addressing tables that grow by half their capacity. Labels are
+ * found through a table of their hashes and IDs, with no boxed Integer or map
+ * entry per vertex.
+ *
+ * <p>Besides the label-based Graph operations, callers on hot paths can
+ * resolve a label once with {@link #idOf(String)} and then use the primitive
+ * accessors {@link #targetsOf(int)}, {@link #sourcesOf(int)} and
+ * {@link #weightOf(int, int)}. The ID of a vertex is stable until the vertex
+ * is removed; IDs of removed vertices are reused by later additions.
+ * {@link #vertices()} is an unmodifiable live view that must not be iterated
+ * while the graph is modified.
+ */
+public class IntGraph implements Graph<String> {
+
+    private static final int NO_VERTEX = -1;
+    private static final long EMPTY_SLOT = -1L;
+
+    private long[] index = newIndex(16);
+    private String[] labels = new String[16];
+    private int[][] outgoing = new int[16][];
+    private int[][] incoming = new int[16][];
+    private int[] freeIds = new int[0];
+    private int freeCount = 0;
+    private int nextId = 0;
+    private int vertexCount = 0;
+
+    // Abstraction function:
+    //   - Vertex v with label labels[v] exists iff labels[v] != null.
+    //   - The edge labels[s] -> labels[t] has weight w iff outgoing[s] maps t to w.
+    // Representation invariant:
+    //   - index is an open-addressing table, with linear probing and at most 3/4 full,
+    //     holding (labels[v].hashCode() << 32 | v) for exactly the IDs v with
+    //     labels[v] != null, each placed by that hash, and EMPTY_SLOT elsewhere; the
+    //     non-null labels are distinct, and vertexCount of them.
+    //   - outgoing[s] and incoming[t] are null or non-empty rows (see Rows); outgoing
+    //     rows have width 2 and every weight in them is > 0, incoming rows width 1.
+    //   - incoming[t] contains s iff outgoing[s] contains t; incoming keeps no weights,
+    //     so each edge's weight is stored exactly once.
+    //   - freeIds[0..freeCount) are exactly the IDs below nextId with labels[id] == null.
+
+    @Override
+    public boolean add(String vertex) {
+        if (idOf(vertex) != NO_VERTEX) return false;
+        intern(vertex);
+        return true;
+    }
+
+    @Override
+    public int set(String source, String target, int weight) {
+        if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative");
+
+        int s = intern(source);
+        int t = intern(target);
+        int[] row = outgoing[s];
+        int i = row != null ? Rows.find(row, 2, t) : Rows.NOT_FOUND;
+        if (i != Rows.NOT_FOUND) {
+            int oldWeight = row[i + 1];
+            if (weight > 0) {
+                row[i + 1] = weight;
+            } else {
+                outgoing[s] = Rows.delete(row, 2, i);
+                incoming[t] = Rows.remove(incoming[t], 1, s);
+            }
+            return oldWeight;
+        }
+        if (weight > 0) {
+            outgoing[s] = Rows.insert(row, 2, t, weight);
+            incoming[t] = Rows.insert(incoming[t], 1, s, 0);
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean remove(String vertex) {
+        int v = idOf(vertex);
+        if (v == NO_VERTEX) return false;
+
+        int[] targets = outgoing[v];
+        if (targets != null) {
+            for (int i = 1; i < targets.length; i += 2) {
+                int t = targets[i];
+                if (t != Rows.EMPTY && t != v) incoming[t] = Rows.remove(incoming[t], 1, v);
+            }
+        }
+        int[] sources = incoming[v];
+        if (sources != null) {
+            for (int i = 1; i < sources.length; i++) {
+                int s = sources[i];
+                if (s != Rows.EMPTY && s != v) outgoing[s] = Rows.remove(outgoing[s], 2, v);
+            }
+        }
+        unindex(v);
+        labels[v] = null;
+        outgoing[v] = null;
+        incoming[v] = null;
+        vertexCount--;
+        if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, Math.max(4, freeCount * 2));
+        freeIds[freeCount++] = v;
+        return true;
+    }
+
+    @Override
+    public Set<String> vertices() {
+        return new AbstractSet<String>() {
+            @Override
+            public int size() {
+                return vertexCount;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && idOf((String) o) != NO_VERTEX;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private int next = skipFree(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < nextId;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (next >= nextId) throw new NoSuchElementException();
+                        String label = labels[next];
+                        next = skipFree(next + 1);
+                        return label;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        Map<String, Integer> result = new HashMap<>();
+        forEachSource(target, result::put);
+        return result;
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        Map<String, Integer> result = new HashMap<>();
+        forEachTarget(source, result::put);
+        return result;
+    }
+
+    @Override
+    public int weight(String source, String target) {
+        int s = idOf(source);
+        int t = idOf(target);
+        if (s == NO_VERTEX || t == NO_VERTEX) return 0;
+        return weightIn(outgoing[s], t);
+    }
+
+    @Override
+    public void forEachSource(String target, ObjIntConsumer<? super String> action) {
+        int t = idOf(target);
+        if (t == NO_VERTEX || incoming[t] == null) return;
+        int[] row = incoming[t];
+        for (int i = 1; i < row.length; i++) {
+            if (row[i] != Rows.EMPTY) action.accept(labels[row[i]], weightIn(outgoing[row[i]], t));
+        }
+    }
+
+    @Override
+    public void forEachTarget(String source, ObjIntConsumer<? super String> action) {
+        int s = idOf(source);
+        if (s == NO_VERTEX || outgoing[s] == null) return;
+        int[] row = outgoing[s];
+        for (int i = 1; i < row.length; i += 2) {
+            if (row[i] != Rows.EMPTY) action.accept(labels[row[i]], row[i + 1]);
+        }
+    }
+
+    @Override
+    public String maxWeightTarget(String source) {
+        int s = idOf(source);
+        if (s == NO_VERTEX || outgoing[s] == null) return null;
+        int[] row = outgoing[s];
+        int best = -1;
+        for (int i = 1; i < row.length; i += 2) {
+            if (row[i] != Rows.EMPTY && (best < 0 || row[i + 1] > row[best + 1])) best = i;
+        }
+        return best >= 0 ? labels[row[best]] : null;
+    }
+
+    /**
+     * Get the ID of a vertex.
+     *
+     * @param label a label
+     * @return the ID of the vertex with that label, or -1 if there is none
+     */
+    public int idOf(String label) {
+        if (label == null) return NO_VERTEX;
+        int hash = label.hashCode();
+        int mask = index.length - 1;
+        for (int i = mix(hash) & mask; index[i] != EMPTY_SLOT; i = (i + 1) & mask) {
+            // compare the stored hash first, so a probe touches no other label
+            int id = (int) index[i];
+            if ((int) (index[i] >>> 32) == hash && labels[id].equals(label)) return id;
+        }
+        return NO_VERTEX;
+    }
+
+    /**
+     * Get the label of a vertex.
+     *
+     * @param id ID of a vertex in this graph
+     * @return the label of that vertex
+     * @throws IllegalArgumentException if id is not the ID of a vertex in this graph
+     */
+    public String labelOf(int id) {
+        checkId(id);
+        return labels[id];
+    }
+
+    /**
+     * Get the targets of a vertex's outgoing edges.
+     *
+     * @param source ID of a vertex in this graph
+     * @return a new array of the IDs of all vertices with an edge from source, in no particular order
+     * @throws IllegalArgumentException if source is not the ID of a vertex in this graph
+     */
+    public int[] targetsOf(int source) {
+        checkId(source);
+        return Rows.keys(outgoing[source], 2);
+    }
+
+    /**
+     * Get the sources of a vertex's incoming edges.
+     *
+     * @param target ID of a vertex in this graph
+     * @return a new array of the IDs of all vertices with an edge to target, in no particular order
+     * @throws IllegalArgumentException if target is not the ID of a vertex in this graph
+     */
+    public int[] sourcesOf(int target) {
+        checkId(target);
+        return Rows.keys(incoming[target], 1);
+    }
+
+    /**
+     * Get the weight of an edge.
+     *
+     * @param source ID of a vertex in this graph
+     * @param target ID of a vertex in this graph
+     * @return the weight of the edge from source to target, or zero if there is no such edge
+     * @throws IllegalArgumentException if source or target is not the ID of a vertex in this graph
+     */
+    public int weightOf(int source, int target) {
+        checkId(source);
+        checkId(target);
+        return weightIn(outgoing[source], target);
+    }
+
+    @Override
+    public String toString() {
+        List<String> edges = new ArrayList<>();
+        for (int s = 0; s < nextId; s++) {
+            int[] row = outgoing[s];
+            if (row == null) continue;
+            for (int i = 1; i < row.length; i += 2) {
+                if (row[i] != Rows.EMPTY) edges.add(labels[s] + " -> " + labels[row[i]] + " (" + row[i + 1] + ")");
+            }
+        }
+        return "Graph with vertices: " + vertices() + " and edges: " + edges;
+    }
+
+    // Return the ID of label, adding a vertex for it if necessary
+    private int intern(String label) {
+        int existing = idOf(label);
+        if (existing != NO_VERTEX) return existing;
+
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = nextId++;
+            if (id == labels.length) {
+                int capacity = labels.length + (labels.length >> 1);
+                labels = Arrays.copyOf(labels, capacity);
+                outgoing = Arrays.copyOf(outgoing, capacity);
+                incoming = Arrays.copyOf(incoming, capacity);
+            }
+        }
+        labels[id] = label;
+        vertexCount++;
+        if (vertexCount * 4 > index.length * 3) {
+            index = newIndex(index.length * 2);
+            for (int v = 0; v < nextId; v++) {
+                if (labels[v] != null) place(v);
+            }
+        } else {
+            place(id);
+        }
+        return id;
+    }
+
+    // Put ID v, whose label is set, into its empty slot of index
+    private void place(int v) {
+        int hash = labels[v].hashCode();
+        int mask = index.length - 1;
+        int i = mix(hash) & mask;
+        while (index[i] != EMPTY_SLOT) i = (i + 1) & mask;
+        index[i] = (long) hash << 32 | v;
+    }
+
+    // Take ID v, whose label is still set, out of index; uses backward-shift deletion so no tombstones are left
+    private void unindex(int v) {
+        int mask = index.length - 1;
+        int hole = mix(labels[v].hashCode()) & mask;
+        while ((int) index[hole] != v) hole = (hole + 1) & mask;
+        for (int j = (hole + 1) & mask; index[j] != EMPTY_SLOT; j = (j + 1) & mask) {
+            int home = mix((int) (index[j] >>> 32)) & mask;
+            // move index[j] into the hole unless its home slot lies cyclically in (hole, j]
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                index[hole] = index[j];
+                hole = j;
+            }
+        }
+        index[hole] = EMPTY_SLOT;
+    }
+
+    private int skipFree(int id) {
+        while (id < nextId && labels[id] == null) id++;
+        return id;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= nextId || labels[id] == null) {
+            throw new IllegalArgumentException("No vertex with ID " + id);
+        }
+    }
+
+    private static int weightIn(int[] row, int target) {
+        int i = row != null ? Rows.find(row, 2, target) : Rows.NOT_FOUND;
+        return i != Rows.NOT_FOUND ? row[i + 1] : 0;
+    }
+
+    private static long[] newIndex(int capacity) {
+        long[] index = new long[capacity];
+        Arrays.fill(index, EMPTY_SLOT);
+        return index;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Operations on adjacency rows. A row is an int[] holding its number of
+     * entries, then its slots of width ints each: a vertex ID or EMPTY, and,
+     * in rows of width 2, the ID's value. Rows of at most LINEAR slots keep
+     * their entries in the first slots and are searched linearly; larger rows
+     * are open-addressing tables with linear probing, at most 7/8 full, that
+     * stay tables however many entries are later deleted.
+     * Unused slots of both kinds are EMPTY. Operations that change a row
+     * return the row to use from then on, which is null once it is empty.
+     */
+    private static final class Rows {
+        static final int EMPTY = -1;
+        static final int NOT_FOUND = -1;
+        static final int LINEAR = 16;
+
+        private Rows() {
+            throw new AssertionError("Rows is not instantiable");
+        }
+
+        // Return the position in row of key's slot, or NOT_FOUND
+        static int find(int[] row, int width, int key) {
+            int capacity = (row.length - 1) / width;
+            if (capacity <= LINEAR) {
+                for (int i = 1, end = 1 + row[0] * width; i < end; i += width) {
+                    if (row[i] == key) return i;
+                }
+                return NOT_FOUND;
+            }
+            for (int slot = home(key, capacity);; slot = next(slot, capacity)) {
+                int i = 1 + slot * width;
+                if (row[i] == key) return i;
+                if (row[i] == EMPTY) return NOT_FOUND;
+            }
+        }
+
+        // Add key, which is not in row (possibly null), with value if width is 2
+        static int[] insert(int[] row, int width, int key, int value) {
+            if (row == null) row = create(1, width);
+            int capacity = (row.length - 1) / width;
+            int size = row[0] + 1;
+            if (capacity <= LINEAR ? size > capacity : size * 8 > capacity * 7) {
+                row = resize(row, width, grow(capacity, size));
+            }
+            place(row, width, key, value);
+            row[0] = size;
+            return row;
+        }
+
+        // Remove key, which is in row
+        static int[] remove(int[] row, int width, int key) {
+            return delete(row, width, find(row, width, key));
+        }
+
+        // Remove the entry in slot position i of row
+        static int[] delete(int[] row, int width, int i) {
+            int size = row[0] - 1;
+            if (size == 0) return null;
+            int capacity = (row.length - 1) / width;
+            if (capacity <= LINEAR) {
+                int last = 1 + size * width;
+                System.arraycopy(row, last, row, i, width);
+                row[last] = EMPTY;
+            } else {
+                int hole = (i - 1) / width;
+                for (int j = next(hole, capacity); row[1 + j * width] != EMPTY; j = next(j, capacity)) {
+                    int home = home(row[1 + j * width], capacity);
+                    // move slot j into the hole unless its home slot lies cyclically in (hole, j]
+                    if (distance(home, j, capacity) >= distance(hole, j, capacity)) {
+                        System.arraycopy(row, 1 + j * width, row, 1 + hole * width, width);
+                        hole = j;
+                    }
+                }
+                row[1 + hole * width] = EMPTY;
+            }
+            row[0] = size;
+            return row;
+        }
+
+        // Return a new array of the keys in row (possibly null)
+        static int[] keys(int[] row, int width) {
+            if (row == null) return new int[0];
+            int[] keys = new int[row[0]];
+            int n = 0;
+            for (int i = 1; i < row.length; i += width) {
+                if (row[i] != EMPTY) keys[n++] = row[i];
+            }
+            return keys;
+        }
+
+        private static int[] create(int capacity, int width) {
+            int[] row = new int[1 + capacity * width];
+            for (int i = 1; i < row.length; i += width) {
+                row[i] = EMPTY;
+            }
+            return row;
+        }
+
+        // One more slot while linear, so small rows are exactly full; once hashed, about
+        // 1.5 times capacity, and enough for size entries at most 7/8 full
+        private static int grow(int capacity, int size) {
+            if (capacity < LINEAR) return capacity + 1;
+            return Math.max(capacity + (capacity >> 1), size * 8 / 7 + 1);
+        }
+
+        private static int[] resize(int[] row, int width, int capacity) {
+            int[] resized = create(capacity, width);
+            for (int i = 1; i < row.length; i += width) {
+                if (row[i] != EMPTY) {
+                    place(resized, width, row[i], width == 2 ? row[i + 1] : 0);
+                    resized[0]++;
+                }
+            }
+            return resized;
+        }
+
+        // Put key and value into an empty slot of row, without counting them
+        private static void place(int[] row, int width, int key, int value) {
+            int capacity = (row.length - 1) / width;
+            int i;
+            if (capacity <= LINEAR) {
+                i = 1 + row[0] * width;
+            } else {
+                int slot = home(key, capacity);
+                while (row[1 + slot * width] != EMPTY) slot = next(slot, capacity);
+                i = 1 + slot * width;
+            }
+            row[i] = key;
+            if (width == 2) row[i + 1] = value;
+        }
+
+        private static int home(int key, int capacity) {
+            return (int) (((mix(key) & 0xFFFFFFFFL) * capacity) >>> 32);
+        }
+
+        private static int next(int slot, int capacity) {
+            return slot + 1 == capacity ? 0 : slot + 1;
+        }
+
+        private static int distance(int from, int to, int capacity) {
+            return to >= from ? to - from : to - from + capacity;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package graph;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A lossless byte encoding of String labels, for the graphs and formats that
+ * keep labels as bytes. It is WTF-8: UTF-8, except that an unpaired surrogate
+ * is encoded as the three bytes UTF-8 would give its code point, where
+ * {@link String#getBytes(java.nio.charset.Charset) getBytes} would replace it
+ * with '?'. Labels without unpaired surrogates encode exactly as UTF-8, so
+ * files written with UTF-8 labels read back unchanged.
+ */
+final class LabelBytes {
+
+    private LabelBytes() {
+        throw new AssertionError("LabelBytes is not instantiable");
+    }
+
+    /**
+     * @param label a label
+     * @return a new array of the label's bytes, from which
+     *         {@link #decode(byte[], int, int)} returns an equal label
+     */
+    static byte[] encode(String label) {
+        if (!hasUnpairedSurrogate(label)) return label.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[3 * label.length()];
+        int length = 0;
+        for (int i = 0; i < label.length();) {
+            int c = label.codePointAt(i);
+            i += Character.charCount(c);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xC0 | c >> 6);
+                bytes[length++] = (byte) (0x80 | c & 0x3F);
+            } else if (c < 0x10000) {
+                bytes[length++] = (byte) (0xE0 | c >> 12);
+                bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[length++] = (byte) (0x80 | c & 0x3F);
+            } else {
+                bytes[length++] = (byte) (0xF0 | c >> 18);
+                bytes[length++] = (byte) (0x80 | c >> 12 & 0x3F);
+                bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[length++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * @param bytes buffer holding a label encoded by {@link #encode(String)}
+     * @param offset start of the label in bytes
+     * @param length length of the label in bytes
+     * @return a new String of the label
+     */
+    static String decode(byte[] bytes, int offset, int length) {
+        if (!hasEncodedSurrogate(bytes, offset, length)) {
+            return new String(bytes, offset, length, StandardCharsets.UTF_8);
+        }
+        StringBuilder label = new StringBuilder(length);
+        for (int i = offset; i < offset + length;) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                label.append((char) b);
+                i += 1;
+            } else if (b < 0xE0) {
+                label.append((char) ((b & 0x1F) << 6 | bytes[i + 1] & 0x3F));
+                i += 2;
+            } else if (b < 0xF0) {
+                label.append((char) ((b & 0x0F) << 12 | (bytes[i + 1] & 0x3F) << 6 | bytes[i + 2] & 0x3F));
+                i += 3;
+            } else {
+                label.appendCodePoint((b & 0x07) << 18 | (bytes[i + 1] & 0x3F) << 12
+                        | (bytes[i + 2] & 0x3F) << 6 | bytes[i + 3] & 0x3F);
+                i += 4;
+            }
+        }
+        return label.toString();
+    }
+
+    /**
+     * @param bytes a label encoded by {@link #encode(String)}
+     * @return a new String of the label
+     */
+    static String decode(byte[] bytes) {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    private static boolean hasUnpairedSurrogate(String label) {
+        for (int i = 0; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < label.length()
+                    && Character.isLowSurrogate(label.charAt(i + 1))) {
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A surrogate's three bytes are 0xED then 0xA0..0xBF, which valid UTF-8 never contains
+    private static boolean hasEncodedSurrogate(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length - 1; i++) {
+            if (bytes[i] == (byte) 0xED && (bytes[i + 1] & 0xFF) >= 0xA0) return true;
+        }
+        return false;
+    }
+}
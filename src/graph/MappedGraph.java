@@ -0,0 +1,307 @@
+package graph;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * An immutable Graph served directly from a memory-mapped snapshot file (see
+ * {@link GraphSnapshot}). Nothing is copied onto the heap when the graph is
+ * opened: label lookups binary-search the sorted label bytes in the file,
+ * and the maps returned by {@link #sources} and {@link #targets} are
+ * unmodifiable views that read one row of the file, decoding labels only as
+ * they are iterated.
+ *
+ * <p>Mutators throw {@link UnsupportedOperationException}. A MappedGraph is
+ * safe to share between threads without locking.
+ */
+public final class MappedGraph implements Graph<String> {
+
+    private static final int NONE = -1;
+
+    private final int vertexCount;
+    private final IntBuffer labelOffsets;
+    private final ByteBuffer labelData;
+    private final IntBuffer outOffsets;
+    private final IntBuffer outEdges;
+    private final IntBuffer inOffsets;
+    private final IntBuffer inEdges;
+    private final ByteBuffer[] sections;
+    private final long bodyCrc;
+
+    // Abstraction function:
+    //   - The vertices are the labels decoded from labelData between consecutive
+    //     labelOffsets; for each vertex s and each i in [outOffsets[s], outOffsets[s + 1]),
+    //     there is an edge s -> outEdges[2i] with weight outEdges[2i + 1].
+    // Representation invariant:
+    //   - the buffers hold the sections of a snapshot written by GraphSnapshot.write with
+    //     vertexCount vertices; sections are those buffers in file order, together spanning
+    //     the whole body, and bodyCrc is the body's recorded CRC32.
+    // Safety from rep exposure and thread safety:
+    //   - the buffers are read-only, never escape, and are only read with absolute gets,
+    //     which do not touch their positions.
+
+    MappedGraph(int vertexCount, ByteBuffer labelOffsets, ByteBuffer labelData, ByteBuffer outOffsets,
+            ByteBuffer outEdges, ByteBuffer inOffsets, ByteBuffer inEdges, long bodyCrc) {
+        this.vertexCount = vertexCount;
+        this.labelOffsets = labelOffsets.asIntBuffer();
+        this.labelData = labelData;
+        this.outOffsets = outOffsets.asIntBuffer();
+        this.outEdges = outEdges.asIntBuffer();
+        this.inOffsets = inOffsets.asIntBuffer();
+        this.inEdges = inEdges.asIntBuffer();
+        this.sections = new ByteBuffer[] { labelOffsets, labelData, outOffsets, outEdges, inOffsets, inEdges };
+        this.bodyCrc = bodyCrc;
+    }
+
+    /**
+     * Check the whole file against the checksum in its header. This reads
+     * every page of the file.
+     *
+     * @return true iff the snapshot body is intact
+     */
+    public boolean verifyChecksum() {
+        CRC32 crc = new CRC32();
+        for (ByteBuffer section : sections) {
+            crc.update(section.duplicate());
+        }
+        return crc.getValue() == bodyCrc;
+    }
+
+    @Override
+    public boolean add(String vertex) {
+        throw new UnsupportedOperationException("MappedGraph is immutable");
+    }
+
+    @Override
+    public int set(String source, String target, int weight) {
+        throw new UnsupportedOperationException("MappedGraph is immutable");
+    }
+
+    @Override
+    public boolean remove(String vertex) {
+        throw new UnsupportedOperationException("MappedGraph is immutable");
+    }
+
+    @Override
+    public Set<String> vertices() {
+        return new AbstractSet<String>() {
+            @Override
+            public int size() {
+                return vertexCount;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && idOf((String) o) != NONE;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < vertexCount;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return labelOf(next++);
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        int t = idOf(target);
+        return t == NONE ? new Row(0, 0, inEdges) : new Row(inOffsets.get(t), inOffsets.get(t + 1), inEdges);
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        int s = idOf(source);
+        return s == NONE ? new Row(0, 0, outEdges) : new Row(outOffsets.get(s), outOffsets.get(s + 1), outEdges);
+    }
+
+    @Override
+    public int weight(String source, String target) {
+        Integer weight = targets(source).get(target);
+        return weight != null ? weight : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Reads the row in place, but decodes a new String for each visited label.
+     */
+    @Override
+    public void forEachSource(String target, ObjIntConsumer<? super String> action) {
+        int t = idOf(target);
+        if (t != NONE) visit(inOffsets.get(t), inOffsets.get(t + 1), inEdges, action);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Reads the row in place, but decodes a new String for each visited label.
+     */
+    @Override
+    public void forEachTarget(String source, ObjIntConsumer<? super String> action) {
+        int s = idOf(source);
+        if (s != NONE) visit(outOffsets.get(s), outOffsets.get(s + 1), outEdges, action);
+    }
+
+    @Override
+    public String maxWeightTarget(String source) {
+        int s = idOf(source);
+        if (s == NONE) return null;
+        int best = -1;
+        for (int e = outOffsets.get(s); e < outOffsets.get(s + 1); e++) {
+            if (best < 0 || outEdges.get(2 * e + 1) > outEdges.get(2 * best + 1)) best = e;
+        }
+        return best >= 0 ? labelOf(outEdges.get(2 * best)) : null;
+    }
+
+    private void visit(int from, int to, IntBuffer edges, ObjIntConsumer<? super String> action) {
+        for (int e = from; e < to; e++) {
+            action.accept(labelOf(edges.get(2 * e)), edges.get(2 * e + 1));
+        }
+    }
+
+    @Override
+    public String toString() {
+        List<String> edges = new ArrayList<>();
+        for (int s = 0; s < vertexCount; s++) {
+            for (int e = outOffsets.get(s); e < outOffsets.get(s + 1); e++) {
+                edges.add(labelOf(s) + " -> " + labelOf(outEdges.get(2 * e)) + " (" + outEdges.get(2 * e + 1) + ")");
+            }
+        }
+        return "Graph with vertices: " + vertices() + " and edges: " + edges;
+    }
+
+    private String labelOf(int id) {
+        int start = labelOffsets.get(id);
+        byte[] bytes = new byte[labelOffsets.get(id + 1) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = labelData.get(start + i);
+        }
+        return LabelBytes.decode(bytes);
+    }
+
+    // Binary search the sorted labels; return the label's ID or NONE
+    private int idOf(String label) {
+        if (label == null) return NONE;
+        byte[] key = LabelBytes.encode(label);
+        int low = 0;
+        int high = vertexCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = compareLabel(middle, key);
+            if (order < 0) low = middle + 1;
+            else if (order > 0) high = middle - 1;
+            else return middle;
+        }
+        return NONE;
+    }
+
+    private int compareLabel(int id, byte[] key) {
+        int start = labelOffsets.get(id);
+        int length = labelOffsets.get(id + 1) - start;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int diff = (labelData.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (diff != 0) return diff;
+        }
+        return length - key.length;
+    }
+
+    /**
+     * Read-only map view of one row of (neighbour ID, weight) pairs.
+     */
+    private final class Row extends AbstractMap<String, Integer> {
+        private final int from;
+        private final int to;
+        private final IntBuffer edges;
+
+        Row(int from, int to, IntBuffer edges) {
+            this.from = from;
+            this.to = to;
+            this.edges = edges;
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) != NONE;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            int i = indexOf(key);
+            return i != NONE ? edges.get(2 * i + 1) : null;
+        }
+
+        private int indexOf(Object key) {
+            if (!(key instanceof String)) return NONE;
+            int id = idOf((String) key);
+            if (id == NONE) return NONE;
+            int low = from;
+            int high = to - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int neighbor = edges.get(2 * middle);
+                if (neighbor < id) low = middle + 1;
+                else if (neighbor > id) high = middle - 1;
+                else return middle;
+            }
+            return NONE;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Integer>>() {
+                @Override
+                public int size() {
+                    return to - from;
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Integer>> iterator() {
+                    return new Iterator<Map.Entry<String, Integer>>() {
+                        private int next = from;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < to;
+                        }
+
+                        @Override
+                        public Map.Entry<String, Integer> next() {
+                            if (!hasNext()) throw new NoSuchElementException();
+                            int i = next++;
+                            return new AbstractMap.SimpleImmutableEntry<>(labelOf(edges.get(2 * i)),
+                                    edges.get(2 * i + 1));
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,745 @@
+package graph;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A Graph of String labels kept almost entirely outside the Java heap, so
+ * that graphs of hundreds of millions of edges add nothing for the garbage
+ * collector to trace. Labels (as UTF-8, see LabelBytes), the label index, a
+ * fixed-size record per vertex and each vertex's adjacency tables all live
+ * in direct ByteBuffers carved into blocks by an arena; the heap holds only
+ * one reference per megabyte of arena and a few counters.
+ *
+ * <p>The arena allocates power-of-two blocks from 1 MB chunks, recycling
+ * freed blocks through one free list per size, so an adjacency table that
+ * grows reuses the space of smaller ones. Blocks larger than a chunk (the
+ * adjacency of a vertex with more than about 100k edges) get a buffer of
+ * their own, which is freed as soon as the block is.
+ *
+ * <p>Call {@link #close()} to free the off-heap memory at once; any later
+ * use of the graph throws IllegalStateException. A graph that is never
+ * closed is freed when it is garbage collected, like any direct buffer. The
+ * off-heap memory counts against the JVM's direct memory limit
+ * ({@code -XX:MaxDirectMemorySize}).
+ *
+ * <p>The maps returned by {@link #sources} and {@link #targets} are new
+ * heap copies; {@link #vertices()} is an unmodifiable live view that must
+ * not be iterated while the graph is modified. An OffHeapGraph is not
+ * thread-safe.
+ */
+public final class OffHeapGraph implements Graph<String>, AutoCloseable {
+
+    private static final int NONE = -1;
+    private static final long NULL = -1L;
+
+    // vertex records: 64 bytes each, 16384 to a chunk-sized page
+    private static final int RECORD_BITS = 6;
+    private static final int PAGE_BITS = 14;
+    private static final int LABEL = 0;         // long: address of the label bytes, NULL if free
+    private static final int OUT = 8;           // long: address of the outgoing table
+    private static final int IN = 16;           // long: address of the incoming table
+    private static final int LABEL_LENGTH = 24; // int: number of label bytes
+    private static final int HASH = 28;         // int: hash of the label bytes
+    private static final int OUT_SIZE = 32;     // int: number of outgoing edges
+    private static final int OUT_BITS = 36;     // int: log2 of the outgoing table's slots
+    private static final int IN_SIZE = 40;      // int: number of incoming edges
+    private static final int IN_BITS = 44;      // int: log2 of the incoming table's slots
+    private static final int NEXT_FREE = 48;    // int: next free record, if this one is free
+
+    private static final int MIN_TABLE_BITS = 2;
+
+    private final Arena arena = new Arena();
+    private long[] pages = new long[4];
+    private int recordCount = 0;
+    private int freeRecord = NONE;
+    private int vertexCount = 0;
+    private long index;
+    private int indexBits;
+    private boolean closed = false;
+
+    // Abstraction function:
+    //   - Vertex v exists iff record v has LABEL != NULL; its label is the LabelBytes decoding
+    //     of the LABEL_LENGTH bytes at LABEL.
+    //   - The edge s -> t has weight w iff the outgoing table of s maps t to w.
+    // Representation invariant:
+    //   - records [0, recordCount) are in pages[v >>> PAGE_BITS]; free records form a
+    //     list from freeRecord through NEXT_FREE; vertexCount counts the others.
+    //   - the index is an open-addressing table of 2^indexBits int slots, each a vertex ID
+    //     or NONE; it holds each vertex once, reachable by linear probing from
+    //     slot(HASH), and is at most three-quarters full. No two vertices have equal labels.
+    //   - an outgoing table holds 2^OUT_BITS slots of (target ID, weight > 0), empty slots
+    //     having target NONE; an incoming table holds 2^IN_BITS slots of source IDs.
+    //     Both are at most three-quarters full and probed linearly; a vertex without
+    //     edges in a direction may have no table (address NULL, bits 0).
+    //   - s is in the incoming table of t iff t is in the outgoing table of s; incoming
+    //     tables keep no weights, so each weight is stored once.
+    //   - if closed, the arena has been freed and nothing else is meaningful.
+    // Safety from rep exposure:
+    //   - no buffer or address escapes; labels are decoded into new Strings, and
+    //     sources and targets return new maps.
+
+    /**
+     * Create an empty graph.
+     */
+    public OffHeapGraph() {
+        this.indexBits = 4;
+        this.index = newIntTable(indexBits);
+    }
+
+    @Override
+    public boolean add(String vertex) {
+        checkOpen();
+        byte[] label = LabelBytes.encode(vertex);
+        int hash = hash(label);
+        if (find(label, hash) != NONE) return false;
+        insert(label, hash);
+        return true;
+    }
+
+    @Override
+    public int set(String source, String target, int weight) {
+        checkOpen();
+        if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative");
+        int s = intern(source);
+        int t = intern(target);
+        if (weight == 0) {
+            int oldWeight = removeOut(s, t);
+            if (oldWeight != 0) removeIn(t, s);
+            return oldWeight;
+        }
+        int oldWeight = putOut(s, t, weight);
+        if (oldWeight == 0) putIn(t, s);
+        return oldWeight;
+    }
+
+    @Override
+    public boolean remove(String vertex) {
+        checkOpen();
+        int v = idOf(vertex);
+        if (v == NONE) return false;
+        long record = record(v);
+
+        long out = arena.getLong(record + OUT);
+        for (int i = 0, slots = slots(record, OUT, OUT_BITS); i < slots; i++) {
+            int t = arena.getInt(out + 8L * i);
+            if (t != NONE && t != v) removeIn(t, v);
+        }
+        long in = arena.getLong(record + IN);
+        for (int i = 0, slots = slots(record, IN, IN_BITS); i < slots; i++) {
+            int s = arena.getInt(in + 4L * i);
+            if (s != NONE && s != v) removeOut(s, v);
+        }
+        if (out != NULL) arena.free(out, arena.getInt(record + OUT_BITS) + 3);
+        if (in != NULL) arena.free(in, arena.getInt(record + IN_BITS) + 2);
+
+        removeFromIndex(v);
+        arena.free(arena.getLong(record + LABEL), blockBits(arena.getInt(record + LABEL_LENGTH)));
+        arena.putLong(record + LABEL, NULL);
+        arena.putInt(record + NEXT_FREE, freeRecord);
+        freeRecord = v;
+        vertexCount--;
+        return true;
+    }
+
+    @Override
+    public Set<String> vertices() {
+        checkOpen();
+        return new AbstractSet<String>() {
+            @Override
+            public int size() {
+                checkOpen();
+                return vertexCount;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof String && idOf((String) o) != NONE;
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                checkOpen();
+                return new Iterator<String>() {
+                    private int next = skipFree(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < recordCount;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        String label = labelOf(next);
+                        next = skipFree(next + 1);
+                        return label;
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        Map<String, Integer> result = new HashMap<>();
+        forEachSource(target, result::put);
+        return result;
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        Map<String, Integer> result = new HashMap<>();
+        forEachTarget(source, result::put);
+        return result;
+    }
+
+    @Override
+    public int weight(String source, String target) {
+        int s = idOf(source);
+        int t = idOf(target);
+        return s == NONE || t == NONE ? 0 : weightOf(s, t);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Reads the tables in place, but decodes a new String for each visited label.
+     */
+    @Override
+    public void forEachSource(String target, ObjIntConsumer<? super String> action) {
+        int t = idOf(target);
+        if (t == NONE) return;
+        long record = record(t);
+        long in = arena.getLong(record + IN);
+        for (int i = 0, slots = slots(record, IN, IN_BITS); i < slots; i++) {
+            int s = arena.getInt(in + 4L * i);
+            if (s != NONE) action.accept(labelOf(s), weightOf(s, t));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Reads the tables in place, but decodes a new String for each visited label.
+     */
+    @Override
+    public void forEachTarget(String source, ObjIntConsumer<? super String> action) {
+        int s = idOf(source);
+        if (s == NONE) return;
+        long record = record(s);
+        long out = arena.getLong(record + OUT);
+        for (int i = 0, slots = slots(record, OUT, OUT_BITS); i < slots; i++) {
+            int t = arena.getInt(out + 8L * i);
+            if (t != NONE) action.accept(labelOf(t), arena.getInt(out + 8L * i + 4));
+        }
+    }
+
+    @Override
+    public String maxWeightTarget(String source) {
+        int s = idOf(source);
+        if (s == NONE) return null;
+        long record = record(s);
+        long out = arena.getLong(record + OUT);
+        int best = NONE;
+        int bestWeight = 0;
+        for (int i = 0, slots = slots(record, OUT, OUT_BITS); i < slots; i++) {
+            int t = arena.getInt(out + 8L * i);
+            int weight = arena.getInt(out + 8L * i + 4);
+            if (t != NONE && weight > bestWeight) {
+                best = t;
+                bestWeight = weight;
+            }
+        }
+        return best != NONE ? labelOf(best) : null;
+    }
+
+    /**
+     * @return the number of bytes of off-heap memory this graph holds,
+     *         including free space in its chunks
+     */
+    public long offHeapBytes() {
+        checkOpen();
+        return arena.reserved();
+    }
+
+    /**
+     * Free this graph's off-heap memory. The graph cannot be used afterwards.
+     * Closing a closed graph does nothing.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        arena.close();
+        pages = null;
+    }
+
+    @Override
+    public String toString() {
+        checkOpen();
+        List<String> edges = new ArrayList<>();
+        for (int s = skipFree(0); s < recordCount; s = skipFree(s + 1)) {
+            String source = labelOf(s);
+            forEachTarget(source, (target, weight) -> edges.add(source + " -> " + target + " (" + weight + ")"));
+        }
+        return "Graph with vertices: " + vertices() + " and edges: " + edges;
+    }
+
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("OffHeapGraph is closed");
+    }
+
+    // Address of record v
+    private long record(int v) {
+        return pages[v >>> PAGE_BITS] + ((long) (v & ((1 << PAGE_BITS) - 1)) << RECORD_BITS);
+    }
+
+    // Return the first record at or after v that holds a vertex, or recordCount
+    private int skipFree(int v) {
+        while (v < recordCount && arena.getLong(record(v) + LABEL) == NULL) v++;
+        return v;
+    }
+
+    // Number of slots of a record's outgoing or incoming table, 0 if it has none
+    private int slots(long record, int addressField, int bitsField) {
+        return arena.getLong(record + addressField) == NULL ? 0 : 1 << arena.getInt(record + bitsField);
+    }
+
+    private String labelOf(int v) {
+        long record = record(v);
+        byte[] bytes = new byte[arena.getInt(record + LABEL_LENGTH)];
+        arena.getBytes(arena.getLong(record + LABEL), bytes);
+        return LabelBytes.decode(bytes);
+    }
+
+    // Return the ID of a vertex, or NONE
+    private int idOf(String label) {
+        checkOpen();
+        if (label == null) return NONE;
+        byte[] bytes = LabelBytes.encode(label);
+        return find(bytes, hash(bytes));
+    }
+
+    // Return the ID of a vertex, adding it if necessary
+    private int intern(String label) {
+        byte[] bytes = LabelBytes.encode(label);
+        int hash = hash(bytes);
+        int v = find(bytes, hash);
+        return v != NONE ? v : insert(bytes, hash);
+    }
+
+    private int find(byte[] label, int hash) {
+        int mask = (1 << indexBits) - 1;
+        for (int i = slot(hash, mask);; i = (i + 1) & mask) {
+            int v = arena.getInt(index + 4L * i);
+            if (v == NONE) return NONE;
+            long record = record(v);
+            if (arena.getInt(record + HASH) == hash && arena.getInt(record + LABEL_LENGTH) == label.length
+                    && arena.bytesEqual(arena.getLong(record + LABEL), label)) {
+                return v;
+            }
+        }
+    }
+
+    private int insert(byte[] label, int hash) {
+        int v;
+        if (freeRecord != NONE) {
+            v = freeRecord;
+            freeRecord = arena.getInt(record(v) + NEXT_FREE);
+        } else {
+            v = recordCount++;
+            int page = v >>> PAGE_BITS;
+            if (page == pages.length) pages = Arrays.copyOf(pages, page * 2);
+            if ((v & ((1 << PAGE_BITS) - 1)) == 0) pages[page] = arena.allocate(PAGE_BITS + RECORD_BITS);
+        }
+        long record = record(v);
+        long bytes = arena.allocate(blockBits(label.length));
+        arena.putBytes(bytes, label);
+        arena.putLong(record + LABEL, bytes);
+        arena.putLong(record + OUT, NULL);
+        arena.putLong(record + IN, NULL);
+        arena.putInt(record + LABEL_LENGTH, label.length);
+        arena.putInt(record + HASH, hash);
+        arena.putInt(record + OUT_SIZE, 0);
+        arena.putInt(record + OUT_BITS, 0);
+        arena.putInt(record + IN_SIZE, 0);
+        arena.putInt(record + IN_BITS, 0);
+
+        vertexCount++;
+        if (vertexCount * 4L > 3L << indexBits) {
+            long old = index;
+            int oldBits = indexBits;
+            indexBits++;
+            index = newIntTable(indexBits);
+            for (int i = 0; i < 1 << oldBits; i++) {
+                int u = arena.getInt(old + 4L * i);
+                if (u != NONE) placeInIndex(u);
+            }
+            arena.free(old, oldBits + 2);
+        }
+        placeInIndex(v);
+        return v;
+    }
+
+    private void placeInIndex(int v) {
+        int mask = (1 << indexBits) - 1;
+        int i = slot(arena.getInt(record(v) + HASH), mask);
+        while (arena.getInt(index + 4L * i) != NONE) i = (i + 1) & mask;
+        arena.putInt(index + 4L * i, v);
+    }
+
+    private void removeFromIndex(int v) {
+        int mask = (1 << indexBits) - 1;
+        int i = slot(arena.getInt(record(v) + HASH), mask);
+        while (arena.getInt(index + 4L * i) != v) i = (i + 1) & mask;
+        // backward-shift deletion, so no tombstones are left
+        int hole = i;
+        for (int j = (i + 1) & mask;; j = (j + 1) & mask) {
+            int u = arena.getInt(index + 4L * j);
+            if (u == NONE) break;
+            int home = slot(arena.getInt(record(u) + HASH), mask);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                arena.putInt(index + 4L * hole, u);
+                hole = j;
+            }
+        }
+        arena.putInt(index + 4L * hole, NONE);
+    }
+
+    // Weight of s -> t, or 0
+    private int weightOf(int s, int t) {
+        long record = record(s);
+        long out = arena.getLong(record + OUT);
+        if (out == NULL) return 0;
+        int mask = (1 << arena.getInt(record + OUT_BITS)) - 1;
+        for (int i = slot(t, mask);; i = (i + 1) & mask) {
+            int key = arena.getInt(out + 8L * i);
+            if (key == t) return arena.getInt(out + 8L * i + 4);
+            if (key == NONE) return 0;
+        }
+    }
+
+    // Map t to weight > 0 in the outgoing table of s; return the previous weight or 0
+    private int putOut(int s, int t, int weight) {
+        long record = record(s);
+        long out = arena.getLong(record + OUT);
+        if (out == NULL) out = growTable(record, OUT, OUT_BITS, 3);
+        int mask = (1 << arena.getInt(record + OUT_BITS)) - 1;
+        int i = slot(t, mask);
+        for (int key; (key = arena.getInt(out + 8L * i)) != NONE; i = (i + 1) & mask) {
+            if (key == t) {
+                int old = arena.getInt(out + 8L * i + 4);
+                arena.putInt(out + 8L * i + 4, weight);
+                return old;
+            }
+        }
+        arena.putInt(out + 8L * i, t);
+        arena.putInt(out + 8L * i + 4, weight);
+        int size = arena.getInt(record + OUT_SIZE) + 1;
+        arena.putInt(record + OUT_SIZE, size);
+        if (size * 4L > 3L * (mask + 1)) growTable(record, OUT, OUT_BITS, 3);
+        return 0;
+    }
+
+    // Add s to the incoming table of t, which does not contain it
+    private void putIn(int t, int s) {
+        long record = record(t);
+        long in = arena.getLong(record + IN);
+        if (in == NULL) in = growTable(record, IN, IN_BITS, 2);
+        int mask = (1 << arena.getInt(record + IN_BITS)) - 1;
+        int i = slot(s, mask);
+        while (arena.getInt(in + 4L * i) != NONE) i = (i + 1) & mask;
+        arena.putInt(in + 4L * i, s);
+        int size = arena.getInt(record + IN_SIZE) + 1;
+        arena.putInt(record + IN_SIZE, size);
+        if (size * 4L > 3L * (mask + 1)) growTable(record, IN, IN_BITS, 2);
+    }
+
+    // Remove t from the outgoing table of s; return its weight or 0
+    private int removeOut(int s, int t) {
+        long record = record(s);
+        long out = arena.getLong(record + OUT);
+        if (out == NULL) return 0;
+        int weight = removeSlot(out, arena.getInt(record + OUT_BITS), 3, t);
+        if (weight != 0) arena.putInt(record + OUT_SIZE, arena.getInt(record + OUT_SIZE) - 1);
+        return weight;
+    }
+
+    // Remove s from the incoming table of t, if present
+    private void removeIn(int t, int s) {
+        long record = record(t);
+        long in = arena.getLong(record + IN);
+        if (in == NULL) return;
+        if (removeSlot(in, arena.getInt(record + IN_BITS), 2, s) != 0) {
+            arena.putInt(record + IN_SIZE, arena.getInt(record + IN_SIZE) - 1);
+        }
+    }
+
+    // Remove key from a table of 2^bits slots of 2^slotBits bytes; return its weight (1 for
+    // tables without weights) or 0 if absent. Uses backward-shift deletion.
+    private int removeSlot(long table, int bits, int slotBits, int key) {
+        int mask = (1 << bits) - 1;
+        int i = slot(key, mask);
+        for (int k; (k = arena.getInt(table + ((long) i << slotBits))) != key; i = (i + 1) & mask) {
+            if (k == NONE) return 0;
+        }
+        int weight = slotBits == 3 ? arena.getInt(table + ((long) i << slotBits) + 4) : 1;
+        int hole = i;
+        for (int j = (i + 1) & mask;; j = (j + 1) & mask) {
+            long from = table + ((long) j << slotBits);
+            int k = arena.getInt(from);
+            if (k == NONE) break;
+            int home = slot(k, mask);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                long to = table + ((long) hole << slotBits);
+                arena.putInt(to, k);
+                if (slotBits == 3) arena.putInt(to + 4, arena.getInt(from + 4));
+                hole = j;
+            }
+        }
+        arena.putInt(table + ((long) hole << slotBits), NONE);
+        return weight;
+    }
+
+    // Replace a record's table (or lack of one) by one with twice the slots; return its address
+    private long growTable(long record, int addressField, int bitsField, int slotBits) {
+        long old = arena.getLong(record + addressField);
+        int oldBits = arena.getInt(record + bitsField);
+        int bits = old == NULL ? MIN_TABLE_BITS : oldBits + 1;
+        long table = arena.allocate(bits + slotBits);
+        for (int i = 0; i < 1 << bits; i++) {
+            arena.putInt(table + ((long) i << slotBits), NONE);
+        }
+        if (old != NULL) {
+            int mask = (1 << bits) - 1;
+            for (int i = 0; i < 1 << oldBits; i++) {
+                long from = old + ((long) i << slotBits);
+                int key = arena.getInt(from);
+                if (key == NONE) continue;
+                int j = slot(key, mask);
+                while (arena.getInt(table + ((long) j << slotBits)) != NONE) j = (j + 1) & mask;
+                arena.putInt(table + ((long) j << slotBits), key);
+                if (slotBits == 3) arena.putInt(table + ((long) j << slotBits) + 4, arena.getInt(from + 4));
+            }
+            arena.free(old, oldBits + slotBits);
+        }
+        arena.putLong(record + addressField, table);
+        arena.putInt(record + bitsField, bits);
+        return table;
+    }
+
+    private long newIntTable(int bits) {
+        long table = arena.allocate(bits + 2);
+        for (int i = 0; i < 1 << bits; i++) {
+            arena.putInt(table + 4L * i, NONE);
+        }
+        return table;
+    }
+
+    // log2 of the block size holding length bytes
+    private static int blockBits(int length) {
+        return Math.max(Arena.MIN_BLOCK_BITS, 32 - Integer.numberOfLeadingZeros(Math.max(1, length) - 1));
+    }
+
+    private static int hash(byte[] bytes) {
+        int h = 0x811C9DC5;
+        for (byte b : bytes) {
+            h = (h ^ b) * 0x01000193;
+        }
+        return h;
+    }
+
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Allocates power-of-two blocks of off-heap memory from 1 MB direct
+     * buffers ("chunks"), addressed by (chunk number &lt;&lt; 32 | offset). Freed
+     * blocks are kept on one list per size, linked through their first
+     * eight bytes. A block is aligned to its size within its chunk; a block
+     * larger than a chunk is a chunk of its own.
+     */
+    private static final class Arena {
+        static final int MIN_BLOCK_BITS = 4;
+        static final int CHUNK_BITS = 20;
+        private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+        private ByteBuffer[] chunks = new ByteBuffer[16];
+        private int chunkCount = 0;
+        private int current = NONE;
+        private int top = 0;
+        private final long[] freeLists = new long[CHUNK_BITS + 1];
+        private long reserved = 0;
+
+        // Abstraction function:
+        //   - the blocks handed out by allocate and not yet freed.
+        // Representation invariant:
+        //   - chunks [0, chunkCount) are native-order direct buffers, or null once the
+        //     large block they held is freed; reserved is the sum of their capacities.
+        //   - unless current == NONE, chunk current is carved from at offset top, and
+        //     its bytes from top on are unused.
+        //   - freeLists[b] heads a NULL-terminated list of free 2^b-byte blocks.
+
+        Arena() {
+            Arrays.fill(freeLists, NULL);
+        }
+
+        long reserved() {
+            return reserved;
+        }
+
+        // Return the address of a new block of 2^bits bytes
+        long allocate(int bits) {
+            bits = Math.max(bits, MIN_BLOCK_BITS);
+            if (bits > CHUNK_BITS) return address(newChunk(1 << bits), 0);
+            long block = freeLists[bits];
+            if (block != NULL) {
+                freeLists[bits] = getLong(block);
+                return block;
+            }
+            int size = 1 << bits;
+            int start = (top + size - 1) & -size;
+            if (current == NONE || start + size > CHUNK_SIZE) {
+                if (current != NONE) release(top, CHUNK_SIZE);
+                current = newChunk(CHUNK_SIZE);
+                start = 0;
+            } else {
+                release(top, start);
+            }
+            top = start + size;
+            return address(current, start);
+        }
+
+        // Free a block returned by allocate(bits)
+        void free(long block, int bits) {
+            bits = Math.max(bits, MIN_BLOCK_BITS);
+            if (bits > CHUNK_BITS) {
+                int chunk = (int) (block >>> 32);
+                reserved -= chunks[chunk].capacity();
+                FREE.accept(chunks[chunk]);
+                chunks[chunk] = null;
+                return;
+            }
+            putLong(block, freeLists[bits]);
+            freeLists[bits] = block;
+        }
+
+        // Put the unused range [from, to) of the current chunk on the free lists, as aligned blocks
+        private void release(int from, int to) {
+            while (from < to) {
+                int bits = Math.min(Integer.numberOfTrailingZeros(from), 31 - Integer.numberOfLeadingZeros(to - from));
+                free(address(current, from), bits);
+                from += 1 << bits;
+            }
+        }
+
+        private int newChunk(int capacity) {
+            if (chunkCount == chunks.length) chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            chunks[chunkCount] = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+            reserved += capacity;
+            return chunkCount++;
+        }
+
+        void close() {
+            for (int i = 0; i < chunkCount; i++) {
+                if (chunks[i] != null) FREE.accept(chunks[i]);
+            }
+            chunks = null;
+            reserved = 0;
+        }
+
+        private static long address(int chunk, int offset) {
+            return (long) chunk << 32 | offset;
+        }
+
+        int getInt(long address) {
+            return chunks[(int) (address >>> 32)].getInt((int) address);
+        }
+
+        void putInt(long address, int value) {
+            chunks[(int) (address >>> 32)].putInt((int) address, value);
+        }
+
+        long getLong(long address) {
+            return chunks[(int) (address >>> 32)].getLong((int) address);
+        }
+
+        void putLong(long address, long value) {
+            chunks[(int) (address >>> 32)].putLong((int) address, value);
+        }
+
+        void getBytes(long address, byte[] bytes) {
+            ByteBuffer chunk = chunks[(int) (address >>> 32)].duplicate();
+            chunk.position((int) address);
+            chunk.get(bytes);
+        }
+
+        void putBytes(long address, byte[] bytes) {
+            ByteBuffer chunk = chunks[(int) (address >>> 32)].duplicate();
+            chunk.position((int) address);
+            chunk.put(bytes);
+        }
+
+        boolean bytesEqual(long address, byte[] bytes) {
+            ByteBuffer chunk = chunks[(int) (address >>> 32)];
+            int offset = (int) address;
+            for (int i = 0; i < bytes.length; i++) {
+                if (chunk.get(offset + i) != bytes[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Frees a direct buffer's memory at once, through the JDK's internal
+     * cleaner: Unsafe.invokeCleaner on Java 9 and later, the buffer's
+     * cleaner() on Java 8. If neither is accessible, the memory is left for
+     * the garbage collector to free.
+     */
+    private static final Consumer<ByteBuffer> FREE = directBufferFreer();
+
+    private static Consumer<ByteBuffer> directBufferFreer() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> {
+                try {
+                    invokeCleaner.invoke(unsafe, buffer);
+                } catch (ReflectiveOperationException e) {
+                    // left to the garbage collector
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 8
+        }
+        return buffer -> {
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // left to the garbage collector
+            }
+        };
+    }
+}
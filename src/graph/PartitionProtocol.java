@@ -0,0 +1,100 @@
+package graph;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * The wire format between a {@link PartitionedGraph} and its
+ * {@link PartitionWorker}s, and the hash that assigns vertices to shards.
+ *
+ * <p>Each request is an opcode byte followed by its arguments; each response
+ * is a status byte followed by the result, or by an error message if the
+ * status is {@link #ERROR}. Integers are unsigned LEB128 varints, so counts
+ * and weights usually take one byte, and strings are a varint byte length
+ * followed by UTF-8 (WTF-8 for unpaired surrogates). A connection starts with
+ * {@link #HELLO}, naming the graph and the shard the connection serves. After
+ * an ERROR response the worker closes the connection, since it may not have
+ * read all of the failed request, nor any requests pipelined after it.
+ *
+ * <pre>
+ *   HELLO       name shard shards  -> ()
+ *   ADD         vertex             -> bool
+ *   ADD_ALL     n vertex*n         -> ()
+ *   SET         source target w    -> previous w
+ *   SET_ALL     n (s t w)*n        -> n previous w
+ *   REMOVE      vertex             -> bool (true iff this shard owned it)
+ *   VERTICES                       -> n vertex*n (owned by this shard)
+ *   TARGETS     n vertex*n         -> n (m (target w)*m)*n
+ *   SOURCES     vertex             -> m (source w)*m (sources owned by this shard)
+ *   WEIGHTS     n (s t)*n          -> n w*n
+ *   SHUTDOWN                       -> (), then the worker exits
+ * </pre>
+ */
+final class PartitionProtocol {
+
+    static final byte HELLO = 1;
+    static final byte ADD = 2;
+    static final byte ADD_ALL = 3;
+    static final byte SET = 4;
+    static final byte SET_ALL = 5;
+    static final byte REMOVE = 6;
+    static final byte VERTICES = 7;
+    static final byte TARGETS = 8;
+    static final byte SOURCES = 9;
+    static final byte WEIGHTS = 10;
+    static final byte SHUTDOWN = 11;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    // line a launched worker prints once it listens, followed by its port
+    static final String READY = "PartitionWorker listening on port ";
+
+    private PartitionProtocol() {
+        throw new AssertionError("PartitionProtocol is not instantiable");
+    }
+
+    /**
+     * @param vertex vertex label
+     * @param shards positive number of shards
+     * @return the shard in [0, shards) that owns vertex and its out-edges;
+     *         the same in every JVM, since String.hashCode is specified
+     */
+    static int owner(String vertex, int shards) {
+        long h = vertex.hashCode() * 0x9E3779B97F4A7C15L;
+        return (int) Math.floorMod(h ^ (h >>> 32), (long) shards);
+    }
+
+    static void writeInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Connection closed");
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = LabelBytes.encode(value);
+        writeInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readInt(in)];
+        in.readFully(bytes);
+        return LabelBytes.decode(bytes);
+    }
+}
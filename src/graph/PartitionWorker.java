@@ -0,0 +1,367 @@
+package graph;
+
+import static graph.PartitionProtocol.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A process holding shards of {@link PartitionedGraph}s: for each graph it
+ * serves, the vertices that hash to its shard and their out-edges. It
+ * listens on the loopback address and speaks the protocol described in
+ * {@link PartitionProtocol}, serving each connection on a thread of its own.
+ *
+ * <p>Run as {@code java -cp bin graph.PartitionWorker [-port N] [-parent]}.
+ * Once listening it prints one line, {@code PartitionWorker listening on
+ * port N}. With {@code -port 0} (the default) the system chooses a free port.
+ * With {@code -parent} the worker exits when its standard input is closed,
+ * so a worker launched by a {@link PartitionedGraph} does not outlive the
+ * JVM that launched it.
+ */
+public final class PartitionWorker {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long LAUNCH_TIMEOUT_SECONDS = 60;
+
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    // Abstraction function:
+    //   - a worker holding, for each graph named by a key of partitions, that graph's shard.
+    // Representation invariant:
+    //   - true
+    // Thread safety argument:
+    //   - partitions is a concurrent map, and each Partition is a monitor.
+
+    private PartitionWorker() {
+    }
+
+    /**
+     * Run a worker until it is shut down.
+     *
+     * @param args {@code [-port N] [-parent]}, as described above
+     * @throws IOException if the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 0;
+        boolean parent = false;
+        for (int a = 0; a < args.length; a++) {
+            switch (args[a]) {
+            case "-port": port = Integer.parseInt(args[++a]); break;
+            case "-parent": parent = true; break;
+            default: throw new IllegalArgumentException("Unknown option " + args[a]);
+            }
+        }
+        if (parent) {
+            Thread watchdog = new Thread(() -> {
+                try {
+                    while (System.in.read() >= 0) {
+                        // the launcher never writes; wait for it to close the stream or exit
+                    }
+                } catch (IOException e) {
+                    // treat as closed
+                }
+                System.exit(0);
+            }, "partition-worker-parent");
+            watchdog.setDaemon(true);
+            watchdog.start();
+        }
+        PartitionWorker worker = new PartitionWorker();
+        try (ServerSocket server = new ServerSocket(port, 64, InetAddress.getLoopbackAddress())) {
+            System.out.println(READY + server.getLocalPort());
+            System.out.flush();
+            for (int connections = 1; ; connections++) {
+                Socket socket = server.accept();
+                Thread thread = new Thread(() -> worker.serve(socket), "partition-worker-" + connections);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * A worker process started by {@link #launch(List)}.
+     */
+    static final class Launched {
+        final Process process;
+        final InetSocketAddress address;
+
+        Launched(Process process, InetSocketAddress address) {
+            this.process = process;
+            this.address = address;
+        }
+    }
+
+    /**
+     * Start a worker in a new JVM with this JVM's class path, and wait until
+     * it listens. The worker exits when this JVM does.
+     *
+     * @param jvmOptions options for the new JVM, such as {@code -Xmx8g}
+     * @return the worker's process and address
+     * @throws IOException if the JVM cannot be started or exits before listening
+     */
+    static Launched launch(List<String> jvmOptions) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(PartitionWorker.class.getName());
+        command.add("-parent");
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try {
+            BufferedReader out = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            String line = readLine(out);
+            if (line == null || !line.startsWith(READY)) {
+                throw new IOException("Worker did not start: " + (line == null ? "exited" : line));
+            }
+            int port = Integer.parseInt(line.substring(READY.length()).trim());
+            return new Launched(process, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException | RuntimeException e) {
+            process.destroyForcibly();
+            throw e;
+        }
+    }
+
+    // Read the worker's first line, giving up if it takes too long
+    private static String readLine(BufferedReader out) throws IOException {
+        String[] line = new String[1];
+        IOException[] failure = new IOException[1];
+        Thread reader = new Thread(() -> {
+            try {
+                line[0] = out.readLine();
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        }, "partition-worker-launch");
+        reader.setDaemon(true);
+        reader.start();
+        try {
+            reader.join(TimeUnit.SECONDS.toMillis(LAUNCH_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while starting worker", e);
+        }
+        if (reader.isAlive()) throw new IOException("Worker did not start within " + LAUNCH_TIMEOUT_SECONDS + " s");
+        if (failure[0] != null) throw failure[0];
+        return line[0];
+    }
+
+    // Serve one connection until the client closes it or a request fails
+    private void serve(Socket socket) {
+        try (Socket connection = socket;
+             InputStream raw = connection.getInputStream();
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(connection.getOutputStream(), BUFFER_SIZE))) {
+            connection.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(raw, BUFFER_SIZE));
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            DataOutputStream resultOut = new DataOutputStream(result);
+            Partition partition = null;
+            for (int op; (op = in.read()) >= 0; ) {
+                result.reset();
+                try {
+                    if (op == HELLO) {
+                        partition = hello(readString(in), readInt(in), readInt(in));
+                    } else if (op == SHUTDOWN) {
+                        out.writeByte(OK);
+                        out.flush();
+                        System.exit(0);
+                    } else if (partition == null) {
+                        throw new IllegalStateException("Expected HELLO first");
+                    } else {
+                        partition.handle(op, in, resultOut);
+                    }
+                    out.writeByte(OK);
+                    result.writeTo(out);
+                } catch (RuntimeException e) {
+                    // the request may be half read, so the connection cannot serve another
+                    out.writeByte(ERROR);
+                    writeString(out, String.valueOf(e));
+                    out.flush();
+                    return;
+                }
+                // answer a pipelined batch of requests with one write
+                if (in.available() == 0) out.flush();
+            }
+        } catch (IOException e) {
+            // the client is gone; its graph stays for other connections
+        }
+    }
+
+    private Partition hello(String name, int shard, int shards) {
+        if (shards <= 0 || shard < 0 || shard >= shards) throw new IllegalArgumentException("Bad shard " + shard);
+        Partition partition = partitions.computeIfAbsent(name, key -> new Partition(shard, shards));
+        if (partition.shard != shard || partition.shards != shards) {
+            throw new IllegalStateException("Graph " + name + " is shard " + partition.shard + " of "
+                    + partition.shards + " here");
+        }
+        return partition;
+    }
+
+    /**
+     * One graph's shard: the vertices owned by this shard, and a local graph
+     * of their out-edges.
+     */
+    private static final class Partition {
+        private final int shard;
+        private final int shards;
+        private final Set<String> owned = new HashSet<>();
+        private final Graph<String> local = Graph.empty();
+
+        // Abstraction function:
+        //   - the vertices of the shard are owned; the edges of the shard are local's.
+        // Representation invariant:
+        //   - owner(v, shards) == shard for every v in owned.
+        //   - every edge of local has its source in owned, and every vertex of local is
+        //     in owned or is the target of an edge of local.
+        // Thread safety argument:
+        //   - all access to owned and local is within this object's monitor.
+
+        Partition(int shard, int shards) {
+            this.shard = shard;
+            this.shards = shards;
+        }
+
+        // Read op's arguments, then apply it and write its result
+        synchronized void handle(int op, DataInputStream in, DataOutputStream out) throws IOException {
+            switch (op) {
+            case ADD:
+                out.writeBoolean(add(readString(in)));
+                break;
+            case ADD_ALL:
+                for (String vertex : readStrings(in)) {
+                    add(vertex);
+                }
+                break;
+            case SET: {
+                String source = readString(in);
+                String target = readString(in);
+                writeInt(out, set(source, target, readInt(in)));
+                break;
+            }
+            case SET_ALL: {
+                int n = readInt(in);
+                String[] sources = new String[n];
+                String[] targets = new String[n];
+                int[] weights = new int[n];
+                for (int i = 0; i < n; i++) {
+                    sources[i] = readString(in);
+                    targets[i] = readString(in);
+                    weights[i] = readInt(in);
+                }
+                writeInt(out, n);
+                for (int i = 0; i < n; i++) {
+                    writeInt(out, set(sources[i], targets[i], weights[i]));
+                }
+                break;
+            }
+            case REMOVE:
+                out.writeBoolean(remove(readString(in)));
+                break;
+            case VERTICES:
+                writeInt(out, owned.size());
+                for (String vertex : owned) {
+                    writeString(out, vertex);
+                }
+                break;
+            case TARGETS: {
+                List<String> sources = readStrings(in);
+                writeInt(out, sources.size());
+                for (String source : sources) {
+                    Map<String, Integer> targets = owned.contains(source)
+                            ? local.targets(source) : Collections.<String, Integer>emptyMap();
+                    writeEdges(out, targets);
+                }
+                break;
+            }
+            case SOURCES:
+                writeEdges(out, local.sources(readString(in)));
+                break;
+            case WEIGHTS: {
+                int n = readInt(in);
+                String[] pairs = new String[2 * n];
+                for (int i = 0; i < pairs.length; i++) {
+                    pairs[i] = readString(in);
+                }
+                writeInt(out, n);
+                for (int i = 0; i < n; i++) {
+                    writeInt(out, local.weight(pairs[2 * i], pairs[2 * i + 1]));
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown opcode " + op);
+            }
+        }
+
+        private boolean add(String vertex) {
+            if (!owned.add(vertex)) return false;
+            local.add(vertex);
+            return true;
+        }
+
+        private int set(String source, String target, int weight) {
+            if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative");
+            add(source);
+            if (owner(target, shards) == shard) add(target);
+            int previous = local.set(source, target, weight);
+            if (weight == 0) dropIfUnused(target);
+            return previous;
+        }
+
+        private boolean remove(String vertex) {
+            boolean wasOwned = owned.remove(vertex);
+            Set<String> targets = wasOwned
+                    ? new HashSet<>(local.targets(vertex).keySet()) : Collections.<String>emptySet();
+            local.remove(vertex);
+            for (String target : targets) {
+                dropIfUnused(target);
+            }
+            return wasOwned;
+        }
+
+        // Drop a vertex that another shard owns once no local edge reaches it
+        private void dropIfUnused(String vertex) {
+            if (!owned.contains(vertex) && local.sources(vertex).isEmpty()) local.remove(vertex);
+        }
+
+        private static List<String> readStrings(DataInputStream in) throws IOException {
+            int n = readInt(in);
+            List<String> strings = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                strings.add(readString(in));
+            }
+            return strings;
+        }
+
+        private static void writeEdges(DataOutputStream out, Map<String, Integer> edges) throws IOException {
+            writeInt(out, edges.size());
+            for (Map.Entry<String, Integer> edge : edges.entrySet()) {
+                writeString(out, edge.getKey());
+                writeInt(out, edge.getValue());
+            }
+        }
+    }
+}
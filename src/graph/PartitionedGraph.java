@@ -0,0 +1,569 @@
+package graph;
+
+import static graph.PartitionProtocol.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A Graph of String labels whose vertices are hash-partitioned across
+ * {@link PartitionWorker} processes: each vertex, with its out-edges, lives
+ * on the one shard it hashes to, so a graph can be larger than any one heap.
+ * Build one with {@link #builder()}, either launching its workers as child
+ * JVMs or connecting to workers already running on this machine.
+ *
+ * <p>{@link #targets}, {@link #weight} and {@link #add} are one round trip
+ * to the owning shard; {@link #set} also tells the target's shard about the
+ * target. {@link #sources}, {@link #vertices} and {@link #remove} ask every
+ * shard, sending all the requests before reading any response, so they take
+ * about one round trip too. The batch operations {@link #targets(Collection)},
+ * {@link #weights(List, List)} and {@link #setAll(List, List, int[])} send one
+ * request to each shard for a whole batch.
+ *
+ * <p>Safe for use by several threads: each operation is atomic on each shard
+ * it touches, and operations on several shards lock their connections in
+ * shard order. An operation touching several shards is not atomic across
+ * them, so concurrent writers may see each other's changes half done. If a
+ * worker cannot be reached, the operation throws {@link UncheckedIOException},
+ * and if a worker fails a request, it throws {@link IllegalStateException};
+ * either way the graph can no longer be used.
+ */
+public final class PartitionedGraph implements Graph<String>, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long SHUTDOWN_SECONDS = 5;
+
+    private final Shard[] shards;
+    private final List<Process> processes;
+    private final LongAdder requests = new LongAdder();
+    private volatile boolean broken = false;
+
+    // Abstraction function:
+    //   - the union of the shards' graphs on the workers at the other ends of shards:
+    //     each vertex v is on shard owner(v, shards.length), with its out-edges.
+    // Representation invariant:
+    //   - shards.length > 0; shards[i] is connected to the worker holding shard i, and
+    //     has no request in flight unless its lock is held.
+    //   - processes are the workers this graph launched, and must shut down; empty if
+    //     it connected to running workers.
+    // Safety from rep exposure:
+    //   - all fields are private; every map and set returned is a new copy.
+    // Thread safety argument:
+    //   - each connection is only used while holding its shard's lock, for the whole
+    //     exchange, and locks are taken in increasing shard order, so exchanges never
+    //     interleave and cannot deadlock.
+    //   - requests is a LongAdder; broken is volatile and only ever set to true.
+
+    /**
+     * Get a builder of partitioned graphs.
+     *
+     * @return a new builder with no workers chosen
+     */
+    public static PartitionedGraphBuilder builder() {
+        return new PartitionedGraphBuilder();
+    }
+
+    PartitionedGraph(String name, List<InetSocketAddress> workers, List<Process> processes) throws IOException {
+        this.shards = new Shard[workers.size()];
+        this.processes = processes;
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new Shard(new Socket(workers.get(i).getAddress(), workers.get(i).getPort()));
+            }
+            Request[] hello = new Request[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                int shard = i;
+                hello[i] = out -> {
+                    out.writeByte(HELLO);
+                    writeString(out, name);
+                    writeInt(out, shard);
+                    writeInt(out, shards.length);
+                };
+            }
+            exchange(hello, (shard, in) -> null);
+        } catch (UncheckedIOException e) {
+            disconnect();
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int shards() {
+        return shards.length;
+    }
+
+    /**
+     * @return the number of requests sent to workers so far, one per shard
+     *         per operation or batch that involved it
+     */
+    public long requests() {
+        return requests.sum();
+    }
+
+    private int ownerOf(String vertex) {
+        return owner(vertex, shards.length);
+    }
+
+    @Override
+    public boolean add(String vertex) {
+        return call(ownerOf(vertex), out -> {
+            out.writeByte(ADD);
+            writeString(out, vertex);
+        }, (shard, in) -> in.readBoolean());
+    }
+
+    @Override
+    public int set(String source, String target, int weight) {
+        if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative");
+        Request[] requests = new Request[shards.length];
+        int sourceShard = ownerOf(source);
+        int targetShard = ownerOf(target);
+        requests[sourceShard] = out -> {
+            out.writeByte(SET);
+            writeString(out, source);
+            writeString(out, target);
+            writeInt(out, weight);
+        };
+        if (targetShard != sourceShard) {
+            requests[targetShard] = out -> {
+                out.writeByte(ADD);
+                writeString(out, target);
+            };
+        }
+        Object[] results = exchange(requests, (shard, in) -> shard == sourceShard ? readInt(in) : in.readBoolean());
+        return (Integer) results[sourceShard];
+    }
+
+    /**
+     * Set a batch of edges, as {@code set(sources.get(i), targets.get(i),
+     * weights[i])} would for each i in order, with one request per shard.
+     *
+     * @param sources labels of the source vertices
+     * @param targets labels of the target vertices, as many as sources
+     * @param weights nonnegative weights, as many as sources
+     * @return the previous weight of each edge, in order
+     */
+    public int[] setAll(List<String> sources, List<String> targets, int[] weights) {
+        int n = sources.size();
+        if (targets.size() != n || weights.length != n) throw new IllegalArgumentException("Batch sizes differ");
+        for (int weight : weights) {
+            if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative");
+        }
+        int[][] edgesOf = groupByOwner(sources);
+        List<Set<String>> addsOf = new ArrayList<>();
+        for (int shard = 0; shard < shards.length; shard++) {
+            addsOf.add(new LinkedHashSet<>());
+        }
+        for (int i = 0; i < n; i++) {
+            int targetShard = ownerOf(targets.get(i));
+            if (targetShard != ownerOf(sources.get(i))) addsOf.get(targetShard).add(targets.get(i));
+        }
+        // every shard gets its targets first, then its edges, in one pipelined exchange
+        Request[] requests = new Request[shards.length];
+        for (int shard = 0; shard < shards.length; shard++) {
+            int[] edges = edgesOf[shard];
+            Set<String> adds = addsOf.get(shard);
+            if (edges.length == 0 && adds.isEmpty()) continue;
+            requests[shard] = out -> {
+                out.writeByte(ADD_ALL);
+                writeInt(out, adds.size());
+                for (String vertex : adds) {
+                    writeString(out, vertex);
+                }
+                out.writeByte(SET_ALL);
+                writeInt(out, edges.length);
+                for (int i : edges) {
+                    writeString(out, sources.get(i));
+                    writeString(out, targets.get(i));
+                    writeInt(out, weights[i]);
+                }
+            };
+        }
+        int[] previous = new int[n];
+        exchange(requests, (shard, in) -> {
+            // exchange read the status of ADD_ALL, which has no result; this is SET_ALL's
+            if (in.readByte() != OK) throw new IllegalStateException("Shard " + shard + ": " + readString(in));
+            int count = readInt(in);
+            for (int k = 0; k < count; k++) {
+                previous[edgesOf[shard][k]] = readInt(in);
+            }
+            return null;
+        });
+        return previous;
+    }
+
+    @Override
+    public boolean remove(String vertex) {
+        Request[] requests = new Request[shards.length];
+        Arrays.fill(requests, (Request) out -> {
+            out.writeByte(REMOVE);
+            writeString(out, vertex);
+        });
+        for (Object owned : exchange(requests, (shard, in) -> in.readBoolean())) {
+            if ((Boolean) owned) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Set<String> vertices() {
+        Set<String> vertices = new HashSet<>();
+        Request[] requests = new Request[shards.length];
+        Arrays.fill(requests, (Request) out -> out.writeByte(VERTICES));
+        exchange(requests, (shard, in) -> {
+            for (int count = readInt(in); count > 0; count--) {
+                vertices.add(readString(in));
+            }
+            return null;
+        });
+        return Collections.unmodifiableSet(vertices);
+    }
+
+    @Override
+    public Map<String, Integer> sources(String target) {
+        Map<String, Integer> sources = new HashMap<>();
+        Request[] requests = new Request[shards.length];
+        Arrays.fill(requests, (Request) out -> {
+            out.writeByte(SOURCES);
+            writeString(out, target);
+        });
+        exchange(requests, (shard, in) -> {
+            readEdges(in, sources);
+            return null;
+        });
+        return sources;
+    }
+
+    @Override
+    public Map<String, Integer> targets(String source) {
+        return call(ownerOf(source), out -> {
+            out.writeByte(TARGETS);
+            writeInt(out, 1);
+            writeString(out, source);
+        }, (shard, in) -> {
+            readInt(in);
+            return readEdges(in, new HashMap<>());
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Reads each shard's sources into arrays, without a map or boxed weights,
+     * and visits them once every shard has answered, so action may read this graph.
+     */
+    @Override
+    public void forEachSource(String target, ObjIntConsumer<? super String> action) {
+        Row[] rows = new Row[shards.length];
+        Request[] requests = new Request[shards.length];
+        Arrays.fill(requests, (Request) out -> {
+            out.writeByte(SOURCES);
+            writeString(out, target);
+        });
+        exchange(requests, (shard, in) -> {
+            rows[shard] = readRow(in);
+            return null;
+        });
+        for (Row row : rows) {
+            row.visit(action);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Reads the row into arrays, without a map or boxed weights, and visits
+     * it once the shard has answered, so action may read this graph.
+     */
+    @Override
+    public void forEachTarget(String source, ObjIntConsumer<? super String> action) {
+        call(ownerOf(source), out -> {
+            out.writeByte(TARGETS);
+            writeInt(out, 1);
+            writeString(out, source);
+        }, (shard, in) -> {
+            readInt(in);
+            return readRow(in);
+        }).visit(action);
+    }
+
+    /**
+     * Get the targets of a batch of vertices, with one request per shard.
+     *
+     * @param sources labels of source vertices
+     * @return a new map from each distinct source to a new map of its
+     *         targets, as {@link #targets(String)} would return
+     */
+    public Map<String, Map<String, Integer>> targets(Collection<String> sources) {
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(sources));
+        int[][] sourcesOf = groupByOwner(distinct);
+        Map<String, Map<String, Integer>> targets = new HashMap<>();
+        Request[] requests = new Request[shards.length];
+        for (int shard = 0; shard < shards.length; shard++) {
+            int[] mine = sourcesOf[shard];
+            if (mine.length == 0) continue;
+            requests[shard] = out -> {
+                out.writeByte(TARGETS);
+                writeInt(out, mine.length);
+                for (int i : mine) {
+                    writeString(out, distinct.get(i));
+                }
+            };
+        }
+        exchange(requests, (shard, in) -> {
+            int count = readInt(in);
+            for (int k = 0; k < count; k++) {
+                targets.put(distinct.get(sourcesOf[shard][k]), readEdges(in, new HashMap<>()));
+            }
+            return null;
+        });
+        return targets;
+    }
+
+    @Override
+    public int weight(String source, String target) {
+        return weights(Collections.singletonList(source), Collections.singletonList(target))[0];
+    }
+
+    /**
+     * Get the weights of a batch of edges, with one request per shard.
+     *
+     * @param sources labels of the source vertices
+     * @param targets labels of the target vertices, as many as sources
+     * @return the weight of each edge from sources.get(i) to targets.get(i),
+     *         or 0 if there is none, in order
+     */
+    public int[] weights(List<String> sources, List<String> targets) {
+        if (targets.size() != sources.size()) throw new IllegalArgumentException("Batch sizes differ");
+        int[][] edgesOf = groupByOwner(sources);
+        Request[] requests = new Request[shards.length];
+        for (int shard = 0; shard < shards.length; shard++) {
+            int[] edges = edgesOf[shard];
+            if (edges.length == 0) continue;
+            requests[shard] = out -> {
+                out.writeByte(WEIGHTS);
+                writeInt(out, edges.length);
+                for (int i : edges) {
+                    writeString(out, sources.get(i));
+                    writeString(out, targets.get(i));
+                }
+            };
+        }
+        int[] weights = new int[sources.size()];
+        exchange(requests, (shard, in) -> {
+            int count = readInt(in);
+            for (int k = 0; k < count; k++) {
+                weights[edgesOf[shard][k]] = readInt(in);
+            }
+            return null;
+        });
+        return weights;
+    }
+
+    // For each shard, the indexes of the vertices it owns
+    private int[][] groupByOwner(List<String> vertices) {
+        int[] owners = new int[vertices.size()];
+        int[] counts = new int[shards.length];
+        for (int i = 0; i < owners.length; i++) {
+            owners[i] = ownerOf(vertices.get(i));
+            counts[owners[i]]++;
+        }
+        int[][] groups = new int[shards.length][];
+        for (int shard = 0; shard < shards.length; shard++) {
+            groups[shard] = new int[counts[shard]];
+            counts[shard] = 0;
+        }
+        for (int i = 0; i < owners.length; i++) {
+            groups[owners[i]][counts[owners[i]]++] = i;
+        }
+        return groups;
+    }
+
+    private static Map<String, Integer> readEdges(DataInputStream in, Map<String, Integer> into) throws IOException {
+        for (int count = readInt(in); count > 0; count--) {
+            into.put(readString(in), readInt(in));
+        }
+        return into;
+    }
+
+    private static Row readRow(DataInputStream in) throws IOException {
+        Row row = new Row(readInt(in));
+        for (int i = 0; i < row.labels.length; i++) {
+            row.labels[i] = readString(in);
+            row.weights[i] = readInt(in);
+        }
+        return row;
+    }
+
+    /**
+     * Shut down the workers this graph launched, or just disconnect from
+     * workers it connected to, whose shards of the graph stay for other
+     * connections.
+     */
+    @Override
+    public void close() {
+        if (!processes.isEmpty() && !broken) {
+            Request[] shutdown = new Request[shards.length];
+            Arrays.fill(shutdown, (Request) out -> out.writeByte(SHUTDOWN));
+            try {
+                exchange(shutdown, (shard, in) -> null);
+            } catch (UncheckedIOException | IllegalStateException e) {
+                // already gone; destroyed below
+            }
+        }
+        disconnect();
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(SHUTDOWN_SECONDS, TimeUnit.SECONDS)) process.destroyForcibly();
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void disconnect() {
+        broken = true;
+        for (Shard shard : shards) {
+            if (shard == null) continue;
+            try {
+                shard.socket.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionedGraph of " + shards.length + " shards";
+    }
+
+    /**
+     * Writes one request, or a pipelined series of requests, to a shard.
+     */
+    private interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Reads the result of a shard's request, after its OK status.
+     */
+    private interface Response<T> {
+        T read(int shard, DataInputStream in) throws IOException;
+    }
+
+    private <T> T call(int shard, Request request, Response<T> response) {
+        Request[] requests = new Request[shards.length];
+        requests[shard] = request;
+        @SuppressWarnings("unchecked")
+        T result = (T) exchange(requests, response)[shard];
+        return result;
+    }
+
+    // Send each non-null request to its shard, then read every response; return the results by shard
+    private Object[] exchange(Request[] requests, Response<?> response) {
+        if (broken) throw new IllegalStateException("Partitioned graph is closed or lost a worker");
+        Object[] results = new Object[shards.length];
+        int locked = 0;
+        try {
+            for (; locked < shards.length; locked++) {
+                if (requests[locked] == null) continue;
+                Shard shard = shards[locked];
+                shard.lock.lock();
+                requests[locked].write(shard.out);
+                shard.out.flush();
+                this.requests.increment();
+            }
+            RuntimeException failure = null;
+            for (int i = 0; i < shards.length; i++) {
+                if (requests[i] == null) continue;
+                DataInputStream in = shards[i].in;
+                if (in.readByte() != OK) {
+                    // the worker closes the connection after an error, leaving any pipelined replies unsent
+                    broken = true;
+                    failure = new IllegalStateException("Shard " + i + ": " + readString(in));
+                    continue;
+                }
+                try {
+                    results[i] = response.read(i, in);
+                } catch (RuntimeException e) {
+                    // the connection is out of step once a response is left half read
+                    broken = true;
+                    throw e;
+                }
+            }
+            if (failure != null) throw failure;
+            return results;
+        } catch (IOException e) {
+            broken = true;
+            throw new UncheckedIOException("Lost a partition worker", e);
+        } finally {
+            for (int i = 0; i < shards.length && i <= locked; i++) {
+                if (requests[i] != null && shards[i].lock.isHeldByCurrentThread()) shards[i].lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Edges read from a reply, as labels and their weights.
+     */
+    private static final class Row {
+        final String[] labels;
+        final int[] weights;
+
+        Row(int size) {
+            labels = new String[size];
+            weights = new int[size];
+        }
+
+        void visit(ObjIntConsumer<? super String> action) {
+            for (int i = 0; i < labels.length; i++) {
+                action.accept(labels[i], weights[i]);
+            }
+        }
+    }
+
+    /**
+     * A connection to one worker.
+     */
+    private static final class Shard {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        Shard(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package graph;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Configures a {@link PartitionedGraph}. Obtain one from
+ * {@link PartitionedGraph#builder()}, then choose either how many workers to
+ * launch with {@link #shards(int)} or which running workers to connect to
+ * with {@link #workers(List)}.
+ */
+public final class PartitionedGraphBuilder {
+
+    private int shards = 0;
+    private List<InetSocketAddress> workers = null;
+    private String name = "graph";
+    private List<String> workerJvmOptions = Collections.emptyList();
+
+    PartitionedGraphBuilder() {
+    }
+
+    /**
+     * Launch the given number of workers, each in a JVM of its own on this
+     * machine, with this JVM's class path. They shut down when the graph is
+     * closed or this JVM exits.
+     *
+     * @param shards positive number of workers
+     * @return this builder
+     */
+    public PartitionedGraphBuilder shards(int shards) {
+        if (shards <= 0) throw new IllegalArgumentException("Shards must be positive");
+        this.shards = shards;
+        this.workers = null;
+        return this;
+    }
+
+    /**
+     * Connect to workers already running, one per shard in order. Every
+     * graph connecting to the same workers under the same name must list them
+     * in the same order. Closing the graph leaves them running.
+     *
+     * @param workers addresses of workers, at least one
+     * @return this builder
+     */
+    public PartitionedGraphBuilder workers(List<InetSocketAddress> workers) {
+        if (workers.isEmpty()) throw new IllegalArgumentException("Workers must not be empty");
+        this.workers = new ArrayList<>(workers);
+        this.shards = 0;
+        return this;
+    }
+
+    /**
+     * Name the graph on its workers (default "graph"). One worker may hold
+     * shards of several graphs; graphs built with the same name and workers
+     * share their vertices and edges.
+     *
+     * @param name graph name
+     * @return this builder
+     */
+    public PartitionedGraphBuilder name(String name) {
+        if (name.isEmpty()) throw new IllegalArgumentException("Name must not be empty");
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Give the JVMs of launched workers these options, such as a heap size.
+     *
+     * @param options JVM options
+     * @return this builder
+     */
+    public PartitionedGraphBuilder workerJvmOptions(String... options) {
+        this.workerJvmOptions = new ArrayList<>(Arrays.asList(options));
+        return this;
+    }
+
+    /**
+     * Launch or connect to the workers and create the graph.
+     *
+     * @return a new graph, which must be closed
+     * @throws IOException if a worker cannot be launched or reached
+     */
+    public PartitionedGraph build() throws IOException {
+        if (workers != null) return new PartitionedGraph(name, workers, Collections.<Process>emptyList());
+        if (shards == 0) throw new IllegalStateException("Choose shards or workers first");
+        List<Process> processes = new ArrayList<>();
+        try {
+            List<InetSocketAddress> addresses = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                PartitionWorker.Launched worker = PartitionWorker.launch(workerJvmOptions);
+                processes.add(worker.process);
+                addresses.add(worker.address);
+            }
+            return new PartitionedGraph(name, addresses, processes);
+        } catch (IOException | RuntimeException e) {
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Finds the heaviest simple path of a bounded number of edges between two
+ * vertices of a graph: the path with the greatest total edge weight among
+ * those with no repeated vertex and between a minimum and a maximum number
+ * of edges. Configure one with {@link #builder()}.
+ *
+ * <p>The search grows partial paths from both ends at once, forwards from the
+ * source with {@link Graph#forEachTarget} and backwards from the target with
+ * {@link Graph#forEachSource}, always extending the end with the smaller
+ * frontier by one edge, until the two ends together span the maximum length;
+ * then it joins the partial paths that meet at a common vertex. A hub at one
+ * end is thus expanded only if the other end is busier still. Of the partial
+ * paths of one length that end at the same vertex only the heaviest is kept,
+ * and of those only the heaviest few (the beam width); so the search is
+ * exact on a directed acyclic graph with an unbounded beam and budget, and
+ * otherwise finds a good path quickly rather than the best one at any cost.
+ *
+ * <p>Each search is bounded by the number of edges it follows, the number of
+ * partial paths it holds, and optionally its running time. A search that
+ * reaches a budget stops expanding and returns the best path among those
+ * already found; see {@link #truncated()}. The adjacency of the vertex being
+ * expanded when a budget runs out is still visited, but ignored.
+ *
+ * <p>A PathSearch reuses its state from one search to the next, so it is not
+ * thread-safe; use one per thread. The graph must not be modified during a
+ * search.
+ *
+ * @param <L> type of vertex labels in the graph
+ */
+public final class PathSearch<L> {
+
+    private final Graph<L> graph;
+    private final int minEdges;
+    private final int maxEdges;
+    private final int beamWidth;
+    private final int maxStates;
+    private final long maxEdgeVisits;
+    private final long timeLimitNanos;
+    private final Comparator<Object> tieBreak;
+
+    private final List<Map<L, State<L>>> forward = new ArrayList<>();
+    private final List<Map<L, State<L>>> backward = new ArrayList<>();
+    private final Expansion expansion = new Expansion();
+    private long edgeVisits;
+    private int states;
+    private long deadline;
+    private boolean truncated;
+
+    // Abstraction function:
+    //   - a search of graph for paths of minEdges to maxEdges edges, with the given budgets;
+    //     truncated says whether the last search ran out of budget.
+    // Representation invariant:
+    //   - 1 <= minEdges <= maxEdges; beamWidth, maxStates, maxEdgeVisits positive;
+    //     timeLimitNanos >= 0, where 0 is no limit.
+    //   - during or after a search from s to t: forward.get(i) maps each vertex v to the
+    //     heaviest kept simple path of i edges from s to v, as a chain of States from v back
+    //     to s; backward.get(j) likewise maps v to a path of j edges from v to t, as a chain
+    //     from v on to t; forward.size() + backward.size() - 2 <= maxEdges.
+    //   - states is the number of States in forward and backward.
+    // Thread safety:
+    //   - not thread-safe; every field is confined to the thread searching.
+
+    /**
+     * Start configuring a search; see {@link PathSearchBuilder}.
+     *
+     * @return a new builder with default options
+     */
+    public static PathSearchBuilder builder() {
+        return new PathSearchBuilder();
+    }
+
+    PathSearch(Graph<L> graph, int minEdges, int maxEdges, int beamWidth, int maxStates, long maxEdgeVisits,
+            long timeLimitNanos, Comparator<Object> tieBreak) {
+        this.graph = graph;
+        this.minEdges = minEdges;
+        this.maxEdges = maxEdges;
+        this.beamWidth = beamWidth;
+        this.maxStates = maxStates;
+        this.maxEdgeVisits = maxEdgeVisits;
+        this.timeLimitNanos = timeLimitNanos;
+        this.tieBreak = tieBreak;
+    }
+
+    /**
+     * Find the heaviest simple path between two vertices. Of several paths of
+     * the same weight, one with the fewest edges is chosen, and of those the
+     * first by the builder's tie-break comparator, if it has one.
+     *
+     * @param source a label
+     * @param target a label
+     * @return the heaviest path found from source to target, or null if none
+     *         was found; since paths are simple, there is never a path from a
+     *         vertex to itself
+     */
+    public Path<L> find(L source, L target) {
+        forward.clear();
+        backward.clear();
+        edgeVisits = 0;
+        states = 2;
+        truncated = false;
+        deadline = timeLimitNanos > 0 ? System.nanoTime() + timeLimitNanos : 0;
+        forward.add(start(source));
+        backward.add(start(target));
+        while (forward.size() + backward.size() - 2 < maxEdges && !truncated) {
+            Map<L, State<L>> front = forward.get(forward.size() - 1);
+            Map<L, State<L>> back = backward.get(backward.size() - 1);
+            if (front.isEmpty() && back.isEmpty()) break;
+            boolean forwards = back.isEmpty() || (!front.isEmpty() && front.size() <= back.size());
+            if (forwards) forward.add(expand(front, true));
+            else backward.add(expand(back, false));
+        }
+        return meet();
+    }
+
+    /**
+     * @return true if the most recent search ran out of one of its budgets
+     *         before it finished, so a heavier path may exist than the one found
+     */
+    public boolean truncated() {
+        return truncated;
+    }
+
+    private Map<L, State<L>> start(L vertex) {
+        Map<L, State<L>> layer = new HashMap<>();
+        layer.put(vertex, new State<>(vertex, 0, null));
+        return layer;
+    }
+
+    // Extend every partial path of a layer by one edge, keeping the heaviest per end vertex
+    private Map<L, State<L>> expand(Map<L, State<L>> layer, boolean forwards) {
+        Map<L, State<L>> next = new HashMap<>();
+        expansion.next = next;
+        expansion.forwards = forwards;
+        for (State<L> state : layer.values()) {
+            if (truncated) break;
+            expansion.from = state;
+            if (forwards) graph.forEachTarget(state.vertex, expansion);
+            else graph.forEachSource(state.vertex, expansion);
+        }
+        if (next.size() > beamWidth) {
+            List<State<L>> kept = new ArrayList<>(next.values());
+            kept.sort((a, b) -> a.weight != b.weight ? Long.compare(b.weight, a.weight) : compare(a, b, forwards));
+            next.clear();
+            for (State<L> state : kept.subList(0, beamWidth)) {
+                next.put(state.vertex, state);
+            }
+            states -= kept.size() - beamWidth;
+        }
+        return next;
+    }
+
+    // Join the partial paths of every pair of lengths that meet, returning the best whole path
+    private Path<L> meet() {
+        State<L> bestFront = null;
+        State<L> bestBack = null;
+        long bestWeight = 0;
+        int bestEdges = 0;
+        for (int i = 0; i < forward.size(); i++) {
+            for (int j = 0; j < backward.size(); j++) {
+                int edges = i + j;
+                if (edges < minEdges || edges > maxEdges) continue;
+                Map<L, State<L>> fronts = forward.get(i);
+                Map<L, State<L>> backs = backward.get(j);
+                boolean scanFronts = fronts.size() <= backs.size();
+                for (State<L> state : (scanFronts ? fronts : backs).values()) {
+                    State<L> other = (scanFronts ? backs : fronts).get(state.vertex);
+                    if (other == null) continue;
+                    State<L> front = scanFronts ? state : other;
+                    State<L> back = scanFronts ? other : state;
+                    if (!disjoint(front.parent, back.parent)) continue;
+                    long weight = front.weight + back.weight;
+                    boolean better = bestFront == null || weight > bestWeight
+                            || (weight == bestWeight && (edges < bestEdges || (edges == bestEdges
+                                    && tieBreak != null
+                                    && compare(vertices(front, back), vertices(bestFront, bestBack)) < 0)));
+                    if (better) {
+                        bestFront = front;
+                        bestBack = back;
+                        bestWeight = weight;
+                        bestEdges = edges;
+                    }
+                }
+            }
+        }
+        return bestFront != null ? new Path<>(vertices(bestFront, bestBack), bestWeight) : null;
+    }
+
+    private static <L> boolean disjoint(State<L> a, State<L> b) {
+        for (State<L> x = a; x != null; x = x.parent) {
+            for (State<L> y = b; y != null; y = y.parent) {
+                if (x.vertex.equals(y.vertex)) return false;
+            }
+        }
+        return true;
+    }
+
+    // The vertices of the path made of a forward and a backward partial path ending at one vertex
+    private static <L> List<L> vertices(State<L> front, State<L> back) {
+        List<L> vertices = new ArrayList<>();
+        for (State<L> state = front; state != null; state = state.parent) {
+            vertices.add(state.vertex);
+        }
+        Collections.reverse(vertices);
+        for (State<L> state = back.parent; state != null; state = state.parent) {
+            vertices.add(state.vertex);
+        }
+        return vertices;
+    }
+
+    // Compare two partial paths of the same length and direction by tieBreak, in path order
+    private int compare(State<L> a, State<L> b, boolean forwards) {
+        if (tieBreak == null) return 0;
+        if (forwards) {
+            if (a == null) return 0;
+            int c = compare(a.parent, b.parent, true);
+            return c != 0 ? c : tieBreak.compare(a.vertex, b.vertex);
+        }
+        for (; a != null; a = a.parent, b = b.parent) {
+            int c = tieBreak.compare(a.vertex, b.vertex);
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    private int compare(List<L> a, List<L> b) {
+        for (int i = 0; i < a.size(); i++) {
+            int c = tieBreak.compare(a.get(i), b.get(i));
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    /**
+     * Extends one partial path by each edge visited, spending the budgets.
+     */
+    private final class Expansion implements ObjIntConsumer<L> {
+        State<L> from;
+        Map<L, State<L>> next;
+        boolean forwards;
+
+        @Override
+        public void accept(L vertex, int weight) {
+            if (truncated) return;
+            if (++edgeVisits > maxEdgeVisits
+                    || (deadline != 0 && (edgeVisits & 0xFF) == 0 && System.nanoTime() - deadline > 0)) {
+                truncated = true;
+                return;
+            }
+            for (State<L> state = from; state != null; state = state.parent) {
+                if (state.vertex.equals(vertex)) return;
+            }
+            long total = from.weight + weight;
+            State<L> existing = next.get(vertex);
+            if (existing == null) {
+                if (states >= maxStates) {
+                    truncated = true;
+                    return;
+                }
+                states++;
+                next.put(vertex, new State<>(vertex, total, from));
+            } else if (total > existing.weight
+                    || (total == existing.weight && compare(from, existing.parent, forwards) < 0)) {
+                existing.weight = total;
+                existing.parent = from;
+            }
+        }
+    }
+
+    /**
+     * A partial path: its last vertex, its total weight, and the partial path
+     * it extends (null for the empty path at either end).
+     */
+    private static final class State<L> {
+        final L vertex;
+        long weight;
+        State<L> parent;
+
+        State(L vertex, long weight, State<L> parent) {
+            this.vertex = vertex;
+            this.weight = weight;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * An immutable path found by a search: its vertices in order, from source
+     * to target, and its total edge weight.
+     *
+     * @param <L> type of vertex labels
+     */
+    public static final class Path<L> {
+        private final List<L> vertices;
+        private final long weight;
+
+        // Abstraction function:
+        //   - the path through vertices, in order, of total weight weight.
+        // Representation invariant:
+        //   - vertices has at least two distinct elements and is unmodifiable; weight > 0.
+        // Safety from rep exposure:
+        //   - vertices is an unmodifiable copy made by the search.
+
+        Path(List<L> vertices, long weight) {
+            this.vertices = Collections.unmodifiableList(vertices);
+            this.weight = weight;
+        }
+
+        /**
+         * @return the vertices of this path, in order from source to target
+         */
+        public List<L> vertices() {
+            return vertices;
+        }
+
+        /**
+         * @return the sum of the weights of this path's edges
+         */
+        public long weight() {
+            return weight;
+        }
+
+        /**
+         * @return the number of edges in this path
+         */
+        public int edges() {
+            return vertices.size() - 1;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (!(that instanceof Path)) return false;
+            Path<?> other = (Path<?>) that;
+            return weight == other.weight && vertices.equals(other.vertices);
+        }
+
+        @Override
+        public int hashCode() {
+            return vertices.hashCode() * 31 + Long.hashCode(weight);
+        }
+
+        @Override
+        public String toString() {
+            return vertices + " (weight " + weight + ")";
+        }
+    }
+}
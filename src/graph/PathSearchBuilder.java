@@ -0,0 +1,121 @@
+package graph;
+
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configures the paths a {@link PathSearch} looks for and the budget each
+ * search may spend. Obtain one from {@link PathSearch#builder()}; every option
+ * has a default, and one builder may build any number of searches.
+ */
+public final class PathSearchBuilder {
+
+    private int minEdges = 1;
+    private int maxEdges = 2;
+    private int beamWidth = 1024;
+    private int maxStates = 1 << 16;
+    private long maxEdgeVisits = 1L << 20;
+    private long timeLimitNanos = 0;
+    private Comparator<Object> tieBreak = null;
+
+    PathSearchBuilder() {
+    }
+
+    /**
+     * Look for paths of between minEdges and maxEdges edges (default 1 to 2).
+     *
+     * @param minEdges positive minimum number of edges
+     * @param maxEdges maximum number of edges, at least minEdges
+     * @return this builder
+     */
+    public PathSearchBuilder edges(int minEdges, int maxEdges) {
+        if (minEdges <= 0) throw new IllegalArgumentException("Minimum edges must be positive");
+        if (maxEdges < minEdges) throw new IllegalArgumentException("Maximum edges cannot be less than minimum edges");
+        this.minEdges = minEdges;
+        this.maxEdges = maxEdges;
+        return this;
+    }
+
+    /**
+     * Keep at most beamWidth partial paths of each length from each end
+     * (default 1024), dropping the lightest. With a narrow beam the search is
+     * faster but may miss the best path.
+     *
+     * @param beamWidth positive number of partial paths
+     * @return this builder
+     */
+    public PathSearchBuilder beamWidth(int beamWidth) {
+        if (beamWidth <= 0) throw new IllegalArgumentException("Beam width must be positive");
+        this.beamWidth = beamWidth;
+        return this;
+    }
+
+    /**
+     * Bound the memory of one search: it stops expanding once it holds
+     * maxStates partial paths (default 65536), each of a few dozen bytes.
+     *
+     * @param maxStates positive number of partial paths
+     * @return this builder
+     */
+    public PathSearchBuilder maxStates(int maxStates) {
+        if (maxStates <= 0) throw new IllegalArgumentException("Maximum states must be positive");
+        this.maxStates = maxStates;
+        return this;
+    }
+
+    /**
+     * Bound the work of one search: it stops expanding once it has followed
+     * maxEdgeVisits edges (default 2^20). Unlike a time limit, this budget
+     * gives the same result for the same graph on any machine.
+     *
+     * @param maxEdgeVisits positive number of edges
+     * @return this builder
+     */
+    public PathSearchBuilder maxEdgeVisits(long maxEdgeVisits) {
+        if (maxEdgeVisits <= 0) throw new IllegalArgumentException("Maximum edge visits must be positive");
+        this.maxEdgeVisits = maxEdgeVisits;
+        return this;
+    }
+
+    /**
+     * Bound the time of one search: it stops expanding once it has run for
+     * the given duration. By default there is no time limit.
+     *
+     * @param duration positive duration
+     * @param unit unit of duration
+     * @return this builder
+     */
+    public PathSearchBuilder timeLimit(long duration, TimeUnit unit) {
+        if (duration <= 0) throw new IllegalArgumentException("Time limit must be positive");
+        this.timeLimitNanos = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Break ties between paths of the same weight and length by comparing
+     * their vertices in order with a comparator. By default ties are broken
+     * arbitrarily.
+     *
+     * @param <L> type of vertex labels
+     * @param tieBreak comparator of vertex labels; the searches built must be
+     *        for graphs whose labels it accepts
+     * @return this builder
+     */
+    @SuppressWarnings("unchecked")
+    public <L> PathSearchBuilder tieBreak(Comparator<? super L> tieBreak) {
+        this.tieBreak = (Comparator<Object>) tieBreak;
+        return this;
+    }
+
+    /**
+     * Create a search of a graph with the options given so far.
+     *
+     * @param <L> type of vertex labels in the graph
+     * @param graph graph to search; must not be modified during a search
+     * @return a new search
+     */
+    public <L> PathSearch<L> build(Graph<L> graph) {
+        return new PathSearch<>(graph, minEdges, maxEdges, beamWidth, maxStates, maxEdgeVisits,
+                timeLimitNanos, tieBreak);
+    }
+}
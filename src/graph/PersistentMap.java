@@ -0,0 +1,436 @@
+package graph;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable hash map whose updates return a new map sharing all but a
+ * path of nodes with the old one: a hash array mapped trie, branching 32
+ * ways on successive 5-bit slices of each key's hash. An update copies at
+ * most about log32(size) small nodes, and old maps stay valid and unchanged.
+ *
+ * @param <K> type of keys, must be immutable
+ * @param <V> type of values, must be immutable
+ */
+final class PersistentMap<K, V> {
+
+    private static final PersistentMap<Object, Object> EMPTY = new PersistentMap<>(null, 0);
+    private static final Object ABSENT = new Object();
+    private static final int BITS = 5;
+    // deepest chain: one bitmap node per 5-bit slice of a hash, then a collision node
+    private static final int MAX_DEPTH = (32 + BITS - 1) / BITS + 1;
+
+    private final Node root;
+    private final int size;
+
+    // Abstraction function:
+    //   - the map from each key stored in the trie under root to its value.
+    // Representation invariant:
+    //   - root is null iff size == 0; size is the number of keys in the trie.
+    //   - a BitmapNode at depth d holds a key or subnode for bit b of bitmap exactly when
+    //     some key under it has hash slice d equal to b; no BitmapNode is empty.
+    //   - a CollisionNode holds at least one key, all with its hash.
+    //   - keys are distinct and non-null; nodes are never modified once published.
+    // Thread safety argument:
+    //   - immutable: every field is final and nodes are never modified after construction,
+    //     so maps may be shared between threads without locking.
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param <K> type of keys
+     * @param <V> type of values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @return number of keys in this map
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param key a key
+     * @return the value of key, or null if it is not in this map
+     */
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        if (root == null || key == null) return null;
+        Object value = root.get(key, hash(key), 0);
+        return value != ABSENT ? (V) value : null;
+    }
+
+    /**
+     * @param key non-null key
+     * @param value non-null value
+     * @return a map with key mapped to value and otherwise equal to this one;
+     *         this map itself if key already has an equal value
+     */
+    PersistentMap<K, V> with(K key, V value) {
+        int hash = hash(key);
+        if (root == null) return new PersistentMap<>(new BitmapNode(bit(hash, 0), new Object[] { key, value }), 1);
+        boolean[] added = { false };
+        Node node = root.with(key, value, hash, 0, added);
+        return node == root ? this : new PersistentMap<>(node, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @param key a key
+     * @return a map without key and otherwise equal to this one; this map
+     *         itself if key is not in it
+     */
+    PersistentMap<K, V> without(Object key) {
+        if (root == null || key == null) return this;
+        Node node = root.without(key, hash(key), 0);
+        if (node == root) return this;
+        return node == null ? empty() : new PersistentMap<>(node, size - 1);
+    }
+
+    /**
+     * Visit every entry, in no particular order.
+     *
+     * @param action called once with each key and its value
+     */
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    /**
+     * @return an unmodifiable Map view of this map
+     */
+    Map<K, V> asMap() {
+        return new MapView();
+    }
+
+    /**
+     * @return an unmodifiable Set view of this map's keys
+     */
+    Set<K> keySet() {
+        return asMap().keySet();
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    // A node holding two keys of different slots, or a chain of nodes down to where they differ
+    private static Node pair(Object k1, Object v1, int h1, Object k2, Object v2, int h2, int shift) {
+        if (h1 == h2) return new CollisionNode(h1, new Object[] { k1, v1, k2, v2 });
+        int b1 = bit(h1, shift);
+        int b2 = bit(h2, shift);
+        if (b1 == b2) return new BitmapNode(b1, new Object[] { null, pair(k1, v1, h1, k2, v2, h2, shift + BITS) });
+        return Integer.compareUnsigned(b1, b2) < 0
+                ? new BitmapNode(b1 | b2, new Object[] { k1, v1, k2, v2 })
+                : new BitmapNode(b1 | b2, new Object[] { k2, v2, k1, v1 });
+    }
+
+    /**
+     * A node of the trie.
+     */
+    private abstract static class Node {
+        // the value of key, or ABSENT
+        abstract Object get(Object key, int hash, int shift);
+
+        // this node with key mapped to value, or this node if unchanged; sets added[0] for a new key
+        abstract Node with(Object key, Object value, int hash, int shift, boolean[] added);
+
+        // this node without key, this node if key is absent, or null if nothing is left
+        abstract Node without(Object key, int hash, int shift);
+
+        abstract void forEach(BiConsumer<Object, Object> action);
+
+        // key, value pairs; a null key is followed by a subnode
+        abstract Object[] array();
+    }
+
+    /**
+     * Up to 32 slots, one per bit set in bitmap, in bit order; each slot is a
+     * key and its value, or null and a subnode.
+     */
+    private static final class BitmapNode extends Node {
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return ABSENT;
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[i];
+            if (k == null) return ((Node) array[i + 1]).get(key, hash, shift + BITS);
+            return key.equals(k) ? array[i + 1] : ABSENT;
+        }
+
+        @Override
+        Node with(Object key, Object value, int hash, int shift, boolean[] added) {
+            int bit = bit(hash, shift);
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, i);
+                copy[i] = key;
+                copy[i + 1] = value;
+                System.arraycopy(array, i, copy, i + 2, array.length - i);
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == null) {
+                Node child = ((Node) v).with(key, value, hash, shift + BITS, added);
+                return child == v ? this : replace(i + 1, child);
+            }
+            if (key.equals(k)) return value.equals(v) ? this : replace(i + 1, value);
+            added[0] = true;
+            Object[] copy = array.clone();
+            copy[i] = null;
+            copy[i + 1] = pair(k, v, hash(k), key, value, hash, shift + BITS);
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        Node without(Object key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[i];
+            if (k == null) {
+                Node child = ((Node) array[i + 1]).without(key, hash, shift + BITS);
+                if (child == array[i + 1]) return this;
+                if (child != null) return replace(i + 1, child);
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) return null;
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+            return new BitmapNode(bitmap & ~bit, copy);
+        }
+
+        private Node replace(int i, Object element) {
+            Object[] copy = array.clone();
+            copy[i] = element;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] != null) action.accept(array[i], array[i + 1]);
+                else ((Node) array[i + 1]).forEach(action);
+            }
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+    }
+
+    /**
+     * Keys that all have the same hash, as key, value pairs.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object get(Object key, int hash, int shift) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) return array[i + 1];
+            }
+            return ABSENT;
+        }
+
+        @Override
+        Node with(Object key, Object value, int hash, int shift, boolean[] added) {
+            if (hash != this.hash) {
+                // a key that differs from this node's keys in a later slice: branch above them
+                return new BitmapNode(bit(this.hash, shift), new Object[] { null, this })
+                        .with(key, value, hash, shift, added);
+            }
+            for (int i = 0; i < array.length; i += 2) {
+                if (!key.equals(array[i])) continue;
+                if (value.equals(array[i + 1])) return this;
+                Object[] copy = array.clone();
+                copy[i + 1] = value;
+                return new CollisionNode(hash, copy);
+            }
+            added[0] = true;
+            Object[] copy = Arrays.copyOf(array, array.length + 2);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        Node without(Object key, int hash, int shift) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (!key.equals(array[i])) continue;
+                if (array.length == 2) return null;
+                Object[] copy = new Object[array.length - 2];
+                System.arraycopy(array, 0, copy, 0, i);
+                System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+                return new CollisionNode(hash, copy);
+            }
+            return this;
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+    }
+
+    /**
+     * Iterates the entries of a trie depth-first, with an explicit stack.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private final Object[][] arrays = new Object[MAX_DEPTH + 1][];
+        private final int[] positions = new int[MAX_DEPTH + 1];
+        private int depth = -1;
+        private Map.Entry<K, V> next;
+
+        EntryIterator() {
+            if (root != null) arrays[++depth] = root.array();
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Object[] array = arrays[depth];
+                int i = positions[depth];
+                if (i == array.length) {
+                    positions[depth--] = 0;
+                    continue;
+                }
+                positions[depth] = i + 2;
+                if (array[i] == null) {
+                    arrays[++depth] = ((Node) array[i + 1]).array();
+                } else {
+                    next = new AbstractMap.SimpleImmutableEntry<>((K) array[i], (V) array[i + 1]);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null) throw new NoSuchElementException();
+            Map.Entry<K, V> entry = next;
+            advance();
+            return entry;
+        }
+    }
+
+    /**
+     * An unmodifiable Map view of the enclosing map.
+     */
+    private final class MapView extends AbstractMap<K, V> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return PersistentMap.this.get(key) != null;
+        }
+
+        @Override
+        public V get(Object key) {
+            return PersistentMap.this.get(key);
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator();
+                }
+            };
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return new AbstractSet<K>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public boolean contains(Object key) {
+                    return PersistentMap.this.get(key) != null;
+                }
+
+                @Override
+                public Iterator<K> iterator() {
+                    Iterator<Map.Entry<K, V>> entries = new EntryIterator();
+                    return new Iterator<K>() {
+                        @Override
+                        public boolean hasNext() {
+                            return entries.hasNext();
+                        }
+
+                        @Override
+                        public K next() {
+                            return entries.next().getKey();
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package graph;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A compact Graph for a handful of vertices and edges: labels and edges live
+ * in small parallel arrays and every operation is a linear scan, which beats
+ * hashing at these sizes and costs no per-entry objects.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+class SmallGraph<L> implements Graph<L> {
+
+    private Object[] labels = new Object[4];
+    private int vertexCount = 0;
+    private Object[] edgeSources = new Object[4];
+    private Object[] edgeTargets = new Object[4];
+    private int[] edgeWeights = new int[4];
+    private int edgeCount = 0;
+
+    // Abstraction function:
+    //   - The vertices are labels[0..vertexCount).
+    //   - For each i in [0, edgeCount), there is an edge edgeSources[i] -> edgeTargets[i]
+    //     with weight edgeWeights[i].
+    // Representation invariant:
+    //   - labels[0..vertexCount) are distinct and non-null.
+    //   - the (source, target) pairs in [0, edgeCount) are distinct, both endpoints are
+    //     vertices, and every weight is > 0.
+
+    /**
+     * @return the number of vertices in this graph
+     */
+    int vertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return the number of edges in this graph
+     */
+    int edgeCount() {
+        return edgeCount;
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        if (indexOfVertex(vertex) >= 0) return false;
+        if (vertexCount == labels.length) labels = Arrays.copyOf(labels, vertexCount * 2);
+        labels[vertexCount++] = vertex;
+        return true;
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative");
+
+        add(source);
+        add(target);
+
+        int i = indexOfEdge(source, target);
+        if (i >= 0) {
+            int oldWeight = edgeWeights[i];
+            if (weight == 0) removeEdgeAt(i);
+            else edgeWeights[i] = weight;
+            return oldWeight;
+        }
+        if (weight > 0) {
+            if (edgeCount == edgeWeights.length) {
+                int capacity = edgeCount * 2;
+                edgeSources = Arrays.copyOf(edgeSources, capacity);
+                edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+                edgeWeights = Arrays.copyOf(edgeWeights, capacity);
+            }
+            edgeSources[edgeCount] = source;
+            edgeTargets[edgeCount] = target;
+            edgeWeights[edgeCount] = weight;
+            edgeCount++;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        int v = indexOfVertex(vertex);
+        if (v < 0) return false;
+
+        labels[v] = labels[--vertexCount];
+        labels[vertexCount] = null;
+        for (int i = edgeCount - 1; i >= 0; i--) {
+            if (edgeSources[i].equals(vertex) || edgeTargets[i].equals(vertex)) removeEdgeAt(i);
+        }
+        return true;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return new AbstractSet<L>() {
+            @Override
+            public int size() {
+                return vertexCount;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return indexOfVertex(o) >= 0;
+            }
+
+            @Override
+            public Iterator<L> iterator() {
+                return new Iterator<L>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < vertexCount;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public L next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        return (L) labels[next++];
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<L, Integer> sources(L target) {
+        Map<L, Integer> sources = new HashMap<>();
+        for (int i = 0; i < edgeCount; i++) {
+            if (edgeTargets[i].equals(target)) sources.put((L) edgeSources[i], edgeWeights[i]);
+        }
+        return sources;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<L, Integer> targets(L source) {
+        Map<L, Integer> targets = new HashMap<>();
+        for (int i = 0; i < edgeCount; i++) {
+            if (edgeSources[i].equals(source)) targets.put((L) edgeTargets[i], edgeWeights[i]);
+        }
+        return targets;
+    }
+
+    @Override
+    public int weight(L source, L target) {
+        int i = indexOfEdge(source, target);
+        return i >= 0 ? edgeWeights[i] : 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEachSource(L target, ObjIntConsumer<? super L> action) {
+        for (int i = 0; i < edgeCount; i++) {
+            if (edgeTargets[i].equals(target)) action.accept((L) edgeSources[i], edgeWeights[i]);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEachTarget(L source, ObjIntConsumer<? super L> action) {
+        for (int i = 0; i < edgeCount; i++) {
+            if (edgeSources[i].equals(source)) action.accept((L) edgeTargets[i], edgeWeights[i]);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public L maxWeightTarget(L source) {
+        int best = -1;
+        for (int i = 0; i < edgeCount; i++) {
+            if (edgeSources[i].equals(source) && (best < 0 || edgeWeights[i] > edgeWeights[best])) best = i;
+        }
+        return best >= 0 ? (L) edgeTargets[best] : null;
+    }
+
+    /**
+     * Copy this graph's vertices and edges into another graph.
+     *
+     * @param graph graph to add the vertices and edges to
+     */
+    @SuppressWarnings("unchecked")
+    void copyInto(Graph<L> graph) {
+        for (int i = 0; i < vertexCount; i++) {
+            graph.add((L) labels[i]);
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            graph.set((L) edgeSources[i], (L) edgeTargets[i], edgeWeights[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        List<String> edges = new ArrayList<>();
+        for (int i = 0; i < edgeCount; i++) {
+            edges.add(edgeSources[i] + " -> " + edgeTargets[i] + " (" + edgeWeights[i] + ")");
+        }
+        return "Graph with vertices: " + vertices() + " and edges: " + edges;
+    }
+
+    private int indexOfVertex(Object vertex) {
+        for (int i = 0; i < vertexCount; i++) {
+            if (labels[i].equals(vertex)) return i;
+        }
+        return -1;
+    }
+
+    private int indexOfEdge(L source, L target) {
+        for (int i = 0; i < edgeCount; i++) {
+            if (edgeSources[i].equals(source) && edgeTargets[i].equals(target)) return i;
+        }
+        return -1;
+    }
+
+    // Remove edge i by moving the last edge into its slot
+    private void removeEdgeAt(int i) {
+        int last = --edgeCount;
+        edgeSources[i] = edgeSources[last];
+        edgeTargets[i] = edgeTargets[last];
+        edgeWeights[i] = edgeWeights[last];
+        edgeSources[last] = null;
+        edgeTargets[last] = null;
+    }
+}
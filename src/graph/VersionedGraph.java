@@ -0,0 +1,421 @@
+package graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A thread-safe Graph kept as a sequence of immutable versions, so that
+ * readers never wait for writers. Each version holds every vertex's
+ * adjacency in persistent hash maps; a change copies only the few trie
+ * nodes on its path and shares the rest with the previous version.
+ *
+ * <p>{@link #snapshot()} returns the current version without locking or
+ * copying; it never changes, however the graph is changed afterwards, and
+ * may be read by any number of threads. {@link #update(Consumer)} applies a
+ * batch of changes and publishes them as one new version, so no snapshot
+ * ever sees half of a batch. A version no snapshot refers to any more is
+ * reclaimed by the garbage collector, except for the nodes it shares with
+ * later versions.
+ *
+ * <p>The Graph methods of a VersionedGraph itself read the current version,
+ * and each mutator publishes a version of its own. {@link #vertices()},
+ * {@link #sources} and {@link #targets} return unmodifiable views of the
+ * version current when they were called. Writers are serialized by a lock,
+ * which readers never take.
+ *
+ * @param <L> type of vertex labels in this graph, must be immutable
+ */
+public final class VersionedGraph<L> implements Graph<L> {
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Snapshot<L> current = new Snapshot<>(PersistentMap.empty(), 0);
+
+    // Abstraction function:
+    //   - the graph is current's graph.
+    // Representation invariant:
+    //   - current satisfies Snapshot's invariant; version numbers increase by one with
+    //     each published change.
+    // Thread safety argument:
+    //   - current is volatile and refers to an immutable Snapshot, so a reader sees some
+    //     whole published version without locking.
+    //   - current is only replaced while holding writeLock, and each replacement is
+    //     derived from the version it replaces, so no change is lost.
+
+    /**
+     * Create an empty graph.
+     */
+    public VersionedGraph() {
+    }
+
+    /**
+     * Get the current version of this graph, without locking or copying.
+     *
+     * @return an immutable graph equal to this graph as of the most recently
+     *         published change
+     */
+    public Snapshot<L> snapshot() {
+        return current;
+    }
+
+    /**
+     * Apply a batch of changes and publish them as one version. During the
+     * batch, changes is given a Graph that starts equal to the current
+     * version, can be read and changed like any Graph, and sees its own
+     * changes; snapshots taken by other threads see none of them until the
+     * batch returns, and then all of them. Writers wait for each other, but
+     * not for readers. The Graph given to changes must not be used after it
+     * returns, nor by any other thread.
+     *
+     * @param changes called once with a graph to change
+     * @return the version published, or the current version if changes made
+     *         no change
+     * @throws RuntimeException if changes throws it, in which case nothing
+     *         is published
+     */
+    public Snapshot<L> update(Consumer<? super Graph<L>> changes) {
+        writeLock.lock();
+        try {
+            Batch<L> batch = new Batch<>(current.vertices);
+            try {
+                changes.accept(batch);
+            } finally {
+                batch.closed = true;
+            }
+            return publish(batch);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the version number of the current version: 0 for the empty
+     *         graph this graph started as, and one more for each change or
+     *         batch of changes published since
+     */
+    public long version() {
+        return current.version;
+    }
+
+    @Override
+    public boolean add(L vertex) {
+        writeLock.lock();
+        try {
+            Batch<L> batch = new Batch<>(current.vertices);
+            boolean added = batch.add(vertex);
+            publish(batch);
+            return added;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public int set(L source, L target, int weight) {
+        writeLock.lock();
+        try {
+            Batch<L> batch = new Batch<>(current.vertices);
+            int previous = batch.set(source, target, weight);
+            publish(batch);
+            return previous;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(L vertex) {
+        writeLock.lock();
+        try {
+            Batch<L> batch = new Batch<>(current.vertices);
+            boolean removed = batch.remove(vertex);
+            publish(batch);
+            return removed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Make a batch's changes the current version; requires writeLock
+    private Snapshot<L> publish(Batch<L> batch) {
+        Snapshot<L> previous = current;
+        if (batch.vertices == previous.vertices) return previous;
+        current = new Snapshot<>(batch.vertices, previous.version + 1);
+        return current;
+    }
+
+    @Override
+    public Set<L> vertices() {
+        return current.vertices();
+    }
+
+    @Override
+    public Map<L, Integer> sources(L target) {
+        return current.sources(target);
+    }
+
+    @Override
+    public Map<L, Integer> targets(L source) {
+        return current.targets(source);
+    }
+
+    @Override
+    public int weight(L source, L target) {
+        return current.weight(source, target);
+    }
+
+    @Override
+    public void forEachSource(L target, ObjIntConsumer<? super L> action) {
+        current.forEachSource(target, action);
+    }
+
+    @Override
+    public void forEachTarget(L source, ObjIntConsumer<? super L> action) {
+        current.forEachTarget(source, action);
+    }
+
+    @Override
+    public L maxWeightTarget(L source) {
+        return current.maxWeightTarget(source);
+    }
+
+    @Override
+    public String toString() {
+        return current.toString();
+    }
+
+    /**
+     * The edges into and out of one vertex, as immutable maps from the other
+     * endpoint to the weight.
+     */
+    private static final class Adjacency<L> {
+        @SuppressWarnings("rawtypes")
+        private static final Adjacency EMPTY = new Adjacency<>(PersistentMap.empty(), PersistentMap.empty());
+
+        final PersistentMap<L, Integer> sources;
+        final PersistentMap<L, Integer> targets;
+
+        Adjacency(PersistentMap<L, Integer> sources, PersistentMap<L, Integer> targets) {
+            this.sources = sources;
+            this.targets = targets;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <L> Adjacency<L> empty() {
+            return EMPTY;
+        }
+    }
+
+    /**
+     * One immutable version of a VersionedGraph. Its mutators throw
+     * UnsupportedOperationException; it may be shared between threads
+     * without locking.
+     *
+     * @param <L> type of vertex labels in the graph, must be immutable
+     */
+    public static final class Snapshot<L> implements Graph<L> {
+        private final PersistentMap<L, Adjacency<L>> vertices;
+        private final long version;
+
+        // Abstraction function:
+        //   - the graph whose vertices are the keys of vertices, where the edge s -> t has
+        //     weight vertices.get(s).targets.get(t); version is its version number.
+        // Representation invariant:
+        //   - vertices.get(s).targets.get(t) == vertices.get(t).sources.get(s) for every
+        //     edge, and it is > 0; both endpoints of every edge are keys of vertices.
+        // Safety from rep exposure:
+        //   - vertices and its maps are immutable, and only unmodifiable views of them are
+        //     returned.
+        // Thread safety argument:
+        //   - immutable.
+
+        Snapshot(PersistentMap<L, Adjacency<L>> vertices, long version) {
+            this.vertices = vertices;
+            this.version = version;
+        }
+
+        /**
+         * @return the version number of this snapshot; see {@link VersionedGraph#version()}
+         */
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public boolean add(L vertex) {
+            throw new UnsupportedOperationException("A snapshot cannot be modified");
+        }
+
+        @Override
+        public int set(L source, L target, int weight) {
+            throw new UnsupportedOperationException("A snapshot cannot be modified");
+        }
+
+        @Override
+        public boolean remove(L vertex) {
+            throw new UnsupportedOperationException("A snapshot cannot be modified");
+        }
+
+        @Override
+        public Set<L> vertices() {
+            return vertices.keySet();
+        }
+
+        @Override
+        public Map<L, Integer> sources(L target) {
+            return VersionedGraph.sources(vertices, target);
+        }
+
+        @Override
+        public Map<L, Integer> targets(L source) {
+            return VersionedGraph.targets(vertices, source);
+        }
+
+        @Override
+        public int weight(L source, L target) {
+            return VersionedGraph.weight(vertices, source, target);
+        }
+
+        @Override
+        public void forEachSource(L target, ObjIntConsumer<? super L> action) {
+            Adjacency<L> adjacency = vertices.get(target);
+            if (adjacency != null) adjacency.sources.forEach((source, weight) -> action.accept(source, weight));
+        }
+
+        @Override
+        public void forEachTarget(L source, ObjIntConsumer<? super L> action) {
+            Adjacency<L> adjacency = vertices.get(source);
+            if (adjacency != null) adjacency.targets.forEach((target, weight) -> action.accept(target, weight));
+        }
+
+        @Override
+        public String toString() {
+            List<String> edges = new ArrayList<>();
+            vertices.forEach((source, adjacency) -> adjacency.targets.forEach(
+                    (target, weight) -> edges.add(source + " -> " + target + " (" + weight + ")")));
+            return "Graph with vertices: " + vertices() + " and edges: " + edges;
+        }
+    }
+
+    /**
+     * The graph a batch of changes is applied to: a version being built from
+     * the current one, which no other thread can see until it is published.
+     */
+    private static final class Batch<L> implements Graph<L> {
+        private PersistentMap<L, Adjacency<L>> vertices;
+        private boolean closed = false;
+
+        // Abstraction function:
+        //   - as for Snapshot.
+        // Representation invariant:
+        //   - as for Snapshot; once closed, no operation may be called.
+        // Thread safety argument:
+        //   - confined to the writer holding writeLock.
+
+        Batch(PersistentMap<L, Adjacency<L>> vertices) {
+            this.vertices = vertices;
+        }
+
+        private void checkOpen() {
+            if (closed) throw new IllegalStateException("The batch has already been published");
+        }
+
+        @Override
+        public boolean add(L vertex) {
+            checkOpen();
+            if (vertices.get(vertex) != null) return false;
+            vertices = vertices.with(vertex, Adjacency.empty());
+            return true;
+        }
+
+        @Override
+        public int set(L source, L target, int weight) {
+            checkOpen();
+            if (weight < 0) throw new IllegalArgumentException("Weight cannot be negative");
+            Adjacency<L> from = vertices.get(source);
+            Integer previous = from != null ? from.targets.get(target) : null;
+            if (previous != null && previous == weight) return weight;
+            if (weight == 0) {
+                if (previous == null) {
+                    // like the other implementations, name both vertices even without an edge
+                    add(source);
+                    add(target);
+                    return 0;
+                }
+                vertices = vertices.with(source, new Adjacency<>(from.sources, from.targets.without(target)));
+                Adjacency<L> to = vertices.get(target);
+                vertices = vertices.with(target, new Adjacency<>(to.sources.without(source), to.targets));
+                return previous;
+            }
+            if (from == null) from = Adjacency.empty();
+            vertices = vertices.with(source, new Adjacency<>(from.sources, from.targets.with(target, weight)));
+            // read target only now, in case it is source
+            Adjacency<L> to = vertices.get(target);
+            if (to == null) to = Adjacency.empty();
+            vertices = vertices.with(target, new Adjacency<>(to.sources.with(source, weight), to.targets));
+            return previous != null ? previous : 0;
+        }
+
+        @Override
+        public boolean remove(L vertex) {
+            checkOpen();
+            Adjacency<L> adjacency = vertices.get(vertex);
+            if (adjacency == null) return false;
+            vertices = vertices.without(vertex);
+            adjacency.targets.forEach((target, weight) -> {
+                Adjacency<L> to = vertices.get(target);
+                if (to != null) vertices = vertices.with(target, new Adjacency<>(to.sources.without(vertex), to.targets));
+            });
+            adjacency.sources.forEach((source, weight) -> {
+                Adjacency<L> from = vertices.get(source);
+                if (from != null) vertices = vertices.with(source, new Adjacency<>(from.sources, from.targets.without(vertex)));
+            });
+            return true;
+        }
+
+        @Override
+        public Set<L> vertices() {
+            checkOpen();
+            return vertices.keySet();
+        }
+
+        @Override
+        public Map<L, Integer> sources(L target) {
+            checkOpen();
+            return VersionedGraph.sources(vertices, target);
+        }
+
+        @Override
+        public Map<L, Integer> targets(L source) {
+            checkOpen();
+            return VersionedGraph.targets(vertices, source);
+        }
+
+        @Override
+        public int weight(L source, L target) {
+            checkOpen();
+            return VersionedGraph.weight(vertices, source, target);
+        }
+    }
+
+    private static <L> Map<L, Integer> sources(PersistentMap<L, Adjacency<L>> vertices, L target) {
+        Adjacency<L> adjacency = vertices.get(target);
+        return adjacency != null ? adjacency.sources.asMap() : Collections.<L, Integer>emptyMap();
+    }
+
+    private static <L> Map<L, Integer> targets(PersistentMap<L, Adjacency<L>> vertices, L source) {
+        Adjacency<L> adjacency = vertices.get(source);
+        return adjacency != null ? adjacency.targets.asMap() : Collections.<L, Integer>emptyMap();
+    }
+
+    private static <L> int weight(PersistentMap<L, Adjacency<L>> vertices, L source, L target) {
+        Adjacency<L> adjacency = vertices.get(source);
+        Integer weight = adjacency != null ? adjacency.targets.get(target) : null;
+        return weight != null ? weight : 0;
+    }
+}
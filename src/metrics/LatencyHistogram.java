@@ -0,0 +1,157 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds, with buckets laid out
+ * like HdrHistogram's: values below 64 get a bucket each, and every larger
+ * power-of-two range is split into 32 equal buckets, so any recorded value is
+ * reported within about 3% of its true value, at a fixed size of 15 KB.
+ *
+ * <p>{@link #record(long)} is wait-free apart from rare updates of the
+ * minimum and maximum, so many threads can record at once. Reading a summary
+ * while other threads record gives a summary of some of the recordings in
+ * progress, never a torn count.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+
+    // Abstraction function:
+    //   - the multiset of recorded values, where each value v is known only up to the
+    //     bucket indexOf(v), except that the least and greatest values recorded are
+    //     known exactly as min and max.
+    // Representation invariant:
+    //   - counts[i] is the number of recorded values with indexOf(value) == i.
+    //   - total is the sum of recorded values; min/max are Long.MAX_VALUE/0 if none.
+    // Thread safety argument:
+    //   - every field is an atomic variable, updated only by atomic operations; a
+    //     reader may see a recording's count before its total, min or max.
+
+    /**
+     * Record one latency.
+     *
+     * @param nanos latency in nanoseconds; negative values (from a clock that
+     *        went backwards) are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        total.add(value);
+        if (value < min.get()) min.accumulateAndGet(value, Math::min);
+        if (value > max.get()) max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Forget every recorded value. Values recorded concurrently with a reset
+     * may be partly forgotten.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Get a percentile of the recorded values.
+     *
+     * @param percentile in [0, 100]
+     * @return a value within the bucket precision of the smallest recorded
+     *         value that at least percentile percent of the values do not
+     *         exceed, or 0 if no values are recorded
+     */
+    public long valueAtPercentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) throw new IllegalArgumentException("Percentile out of range");
+        long[] snapshot = snapshotCounts();
+        return valueAtPercentile(snapshot, sum(snapshot), percentile);
+    }
+
+    /**
+     * @return a summary of the values recorded so far
+     */
+    public LatencySummary summary() {
+        long[] snapshot = snapshotCounts();
+        long count = sum(snapshot);
+        if (count == 0) return new LatencySummary(0, 0, 0, 0, 0, 0, 0, 0);
+        return new LatencySummary(count, (double) total.sum() / count, min.get(), max.get(),
+                valueAtPercentile(snapshot, count, 50), valueAtPercentile(snapshot, count, 90),
+                valueAtPercentile(snapshot, count, 99), valueAtPercentile(snapshot, count, 99.9));
+    }
+
+    private long[] snapshotCounts() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    private static long sum(long[] counts) {
+        long sum = 0;
+        for (long count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private long valueAtPercentile(long[] snapshot, long count, double percentile) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // the bucket's upper bound can overshoot the exact maximum
+                return Math.min(highestEquivalent(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @param value non-negative value
+     * @return the index of value's bucket
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF + (subBucket - HALF);
+    }
+
+    /**
+     * @param index a bucket index
+     * @return the largest value in that bucket
+     */
+    static long highestEquivalent(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
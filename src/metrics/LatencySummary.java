@@ -0,0 +1,78 @@
+package metrics;
+
+/**
+ * An immutable summary of a {@link LatencyHistogram}: the number of
+ * recorded latencies and their mean, extremes and common percentiles, all in
+ * nanoseconds. Percentiles are within the histogram's bucket precision.
+ *
+ * <p>The getters make a summary readable over JMX as composite data.
+ */
+public final class LatencySummary {
+
+    private final long count;
+    private final double meanNanos;
+    private final long minNanos;
+    private final long maxNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+
+    LatencySummary(long count, double meanNanos, long minNanos, long maxNanos,
+            long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos) {
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.minNanos = minNanos;
+        this.maxNanos = maxNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+    }
+
+    /** @return the number of latencies recorded */
+    public long getCount() {
+        return count;
+    }
+
+    /** @return the mean latency, or 0 if none were recorded */
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+
+    /** @return the least latency, or 0 if none were recorded */
+    public long getMinNanos() {
+        return minNanos;
+    }
+
+    /** @return the greatest latency, or 0 if none were recorded */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /** @return the median latency, or 0 if none were recorded */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /** @return the 90th percentile latency, or 0 if none were recorded */
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    /** @return the 99th percentile latency, or 0 if none were recorded */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /** @return the 99.9th percentile latency, or 0 if none were recorded */
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fns min=%dns p50=%dns p90=%dns p99=%dns p99.9=%dns max=%dns",
+                count, meanNanos, minNanos, p50Nanos, p90Nanos, p99Nanos, p999Nanos, maxNanos);
+    }
+}
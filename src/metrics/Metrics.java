@@ -0,0 +1,204 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A named, thread-safe set of operation timers, each recording into a
+ * {@link LatencyHistogram}. Metrics are read either by pulling a
+ * {@link #snapshot()} or over JMX after {@link #register()}.
+ *
+ * <p>Timing an operation looks like:
+ * <pre>
+ *   long start = timer.start();
+ *   ... operation ...
+ *   timer.stop(start);
+ * </pre>
+ * While the metrics are disabled, {@link Timer#start()} does not read the
+ * clock and {@link Timer#stop(long)} does nothing.
+ */
+public final class Metrics implements MetricsMXBean {
+
+    /** JMX domain of registered metrics. */
+    public static final String DOMAIN = "graph.metrics";
+
+    private final String name;
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private volatile boolean enabled;
+
+    // Abstraction function:
+    //   - a set of metrics called name, which record iff enabled, with one latency
+    //     histogram per entry of timers.
+    // Representation invariant:
+    //   - each timer's owner is this and its name is its key in timers.
+    // Thread safety argument:
+    //   - timers is a concurrent map whose values are thread-safe; enabled is volatile.
+
+    /**
+     * Create enabled metrics with no timers.
+     *
+     * @param name name of these metrics, used as their JMX name
+     */
+    public Metrics(String name) {
+        this(name, true);
+    }
+
+    /**
+     * Create metrics with no timers.
+     *
+     * @param name name of these metrics, used as their JMX name
+     * @param enabled true to start recording immediately
+     */
+    public Metrics(String name, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the name of these metrics
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Get a timer, creating it if necessary.
+     *
+     * @param operation name of the timed operation
+     * @return the timer of these metrics with that name
+     */
+    public Timer timer(String operation) {
+        return timers.computeIfAbsent(operation, key -> new Timer(this, key));
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Take a summary of every timer. This is the pull-style way to read
+     * metrics without JMX.
+     *
+     * @return an unmodifiable map from timer name to a summary of its latencies, sorted by name
+     */
+    public SortedMap<String, LatencySummary> snapshot() {
+        SortedMap<String, LatencySummary> summaries = new TreeMap<>();
+        for (Map.Entry<String, Timer> timer : timers.entrySet()) {
+            summaries.put(timer.getKey(), timer.getValue().histogram().summary());
+        }
+        return Collections.unmodifiableSortedMap(summaries);
+    }
+
+    @Override
+    public Map<String, LatencySummary> getLatencies() {
+        return snapshot();
+    }
+
+    @Override
+    public void reset() {
+        for (Timer timer : timers.values()) {
+            timer.histogram().reset();
+        }
+    }
+
+    /**
+     * @return the name these metrics are registered under in JMX
+     * @throws JMException if name cannot be part of a JMX name
+     */
+    public ObjectName objectName() throws JMException {
+        return new ObjectName(DOMAIN, "name", ObjectName.quote(name));
+    }
+
+    /**
+     * Register these metrics with the platform MBean server, under
+     * {@link #objectName()}.
+     *
+     * @throws JMException if metrics with the same name are already
+     *         registered, or the registration fails
+     */
+    public void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName());
+    }
+
+    /**
+     * Unregister these metrics from the platform MBean server, if they are registered.
+     *
+     * @throws JMException if the unregistration fails
+     */
+    public void unregister() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = objectName();
+        if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+    }
+
+    @Override
+    public String toString() {
+        return "Metrics " + name + (enabled ? "" : " (disabled)") + ": " + snapshot();
+    }
+
+    /**
+     * Times one kind of operation into a histogram. Thread-safe.
+     */
+    public static final class Timer {
+
+        /** A timer that never records, for code that is not given any metrics. */
+        public static final Timer NONE = new Timer(null, "none");
+
+        private static final long NOT_TIMED = Long.MIN_VALUE;
+
+        private final Metrics owner;
+        private final String name;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Timer(Metrics owner, String name) {
+            this.owner = owner;
+            this.name = name;
+        }
+
+        /**
+         * @return the name of the timed operation
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return the histogram this timer records into
+         */
+        public LatencyHistogram histogram() {
+            return histogram;
+        }
+
+        /**
+         * Start timing an operation.
+         *
+         * @return a token to pass to {@link #stop(long)} when the operation ends
+         */
+        public long start() {
+            return owner != null && owner.enabled ? System.nanoTime() : NOT_TIMED;
+        }
+
+        /**
+         * Finish timing an operation and record its latency, if it was timed.
+         *
+         * @param start token returned by {@link #start()}
+         */
+        public void stop(long start) {
+            if (start != NOT_TIMED) histogram.record(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * JMX management interface of {@link Metrics}.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return true iff timers of these metrics are recording
+     */
+    boolean isEnabled();
+
+    /**
+     * Start or stop recording. While disabled, timing an operation costs one
+     * volatile read.
+     *
+     * @param enabled true to record, false to stop recording
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * @return a summary of each timer's latencies, by timer name
+     */
+    Map<String, LatencySummary> getLatencies();
+
+    /**
+     * Forget everything recorded by every timer.
+     */
+    void reset();
+}
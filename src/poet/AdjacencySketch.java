@@ -0,0 +1,256 @@
+package poet;
+
+/**
+ * Approximate adjacency counts within a fixed memory budget: a count-min
+ * sketch estimates the count of every pair seen, and a Space-Saving table
+ * of the heaviest pairs holds the counts that are kept.
+ *
+ * <p>Until the table is full, every pair it holds is counted exactly. Once
+ * it is full, a pair not in the table takes the place of the table's
+ * lightest pair only when the sketch estimates it heavier, and starts from
+ * that estimate. Estimates never undercount, so a pair of true count c in
+ * a stream of n pairs is kept if c is above about the table's minimum
+ * count, and its kept count exceeds c by at most its recorded error, which
+ * is at most about {@code e * n / sketchWidth} with high probability.
+ *
+ * <p>Keys are pairs of IDs made by {@link BridgeTable#key(int, int)}.
+ */
+final class AdjacencySketch {
+
+    private static final int DEPTH = 4;
+    // share of the budget given to the count-min sketch, out of 8
+    private static final int SKETCH_EIGHTHS = 2;
+    // bytes per table entry (heap key, count and error) and per index slot
+    private static final int HEAP_ENTRY_BYTES = 16;
+    private static final int INDEX_SLOT_BYTES = 12;
+    private static final long[] SEEDS = {
+        0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+    };
+
+    private final int[] sketch;
+    private final int widthMask;
+    private final long[] heapKeys;
+    private final int[] heapCounts;
+    private final int[] heapErrors;
+    private final BridgeTable index;
+    private final int[] cells = new int[DEPTH];
+    private int size;
+    private long total;
+    private long evictions;
+    private long dropped;
+
+    // Abstraction function:
+    //   - the multiset of total pairs added, of which the pairs heapKeys[0..size) are
+    //     kept with counts heapCounts[0..size), each at most heapErrors[i] above the
+    //     pair's true count; row r of sketch is the count-min row with seed SEEDS[r].
+    // Representation invariant:
+    //   - sketch.length == DEPTH * (widthMask + 1), and widthMask + 1 is a power of two.
+    //   - cells is scratch space, meaningful only within increment.
+    //   - heapKeys[0..size) are distinct; index maps each to its position in heapKeys.
+    //   - heapCounts[0..size) is a min-heap: heapCounts[(i - 1) / 2] <= heapCounts[i].
+    //   - 0 <= heapErrors[i] < heapCounts[i]; all errors are 0 while evictions == 0.
+    //   - dropped counts the adds that changed only the sketch.
+    //   - every sketch estimate is at least the number of times its key was added.
+    // Thread safety argument:
+    //   - not thread-safe; used by one loading thread.
+
+    /**
+     * Create an empty sketch.
+     *
+     * @param budgetBytes memory for the sketch and the table, at least 1 KB
+     */
+    AdjacencySketch(long budgetBytes) {
+        if (budgetBytes < 1024) throw new IllegalArgumentException("Memory budget must be at least 1 KB");
+        long sketchBytes = budgetBytes * SKETCH_EIGHTHS / 8;
+        int width = (int) Math.min(1 << 28, Long.highestOneBit(sketchBytes / (DEPTH * Integer.BYTES)));
+        this.sketch = new int[DEPTH * width];
+        this.widthMask = width - 1;
+        // the largest index, at 2 slots per entry, and as many entries as fit beside it
+        // without filling the index past the 3/4 at which it would grow
+        long tableBytes = budgetBytes - (long) sketch.length * Integer.BYTES;
+        long slots = Long.highestOneBit(tableBytes / (INDEX_SLOT_BYTES * 2 + HEAP_ENTRY_BYTES) * 2);
+        slots = Math.max(8, Math.min(1 << 29, slots));
+        int capacity = (int) Math.max(1, Math.min(slots * 3 / 4 - 1,
+                (tableBytes - slots * INDEX_SLOT_BYTES) / HEAP_ENTRY_BYTES));
+        this.heapKeys = new long[capacity];
+        this.heapCounts = new int[capacity];
+        this.heapErrors = new int[capacity];
+        this.index = new BridgeTable((int) (slots / 2));
+    }
+
+    /**
+     * Count one occurrence of a pair.
+     *
+     * @param key a key made by {@link BridgeTable#key(int, int)}
+     */
+    void add(long key) {
+        total++;
+        int estimate = increment(key);
+        int position = index.get(key);
+        if (position >= 0) {
+            heapCounts[position]++;
+            siftDown(position);
+        } else if (size < heapKeys.length) {
+            index.put(key, size);
+            heapKeys[size] = key;
+            // the table has never been full, so this is the pair's first occurrence
+            heapCounts[size] = 1;
+            heapErrors[size] = 0;
+            siftUp(size++);
+        } else if (size == 0 || estimate <= heapCounts[0]) {
+            dropped++;
+        } else {
+            evictions++;
+            index.remove(heapKeys[0]);
+            index.put(key, 0);
+            heapKeys[0] = key;
+            heapCounts[0] = estimate;
+            heapErrors[0] = estimate - 1;
+            siftDown(0);
+        }
+    }
+
+    // Conservative update: raise only the counters at the minimum, and return the new estimate
+    private int increment(long key) {
+        int width = widthMask + 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            cells[row] = row * width + column(key, row);
+            estimate = Math.min(estimate, sketch[cells[row]]);
+        }
+        if (estimate < Integer.MAX_VALUE) estimate++;
+        for (int cell : cells) {
+            if (sketch[cell] < estimate) sketch[cell] = estimate;
+        }
+        return estimate;
+    }
+
+    private int column(long key, int row) {
+        long h = (key ^ (key >>> 29)) * SEEDS[row];
+        return (int) (h ^ (h >>> 32)) & widthMask;
+    }
+
+    /**
+     * @param key a key made by {@link BridgeTable#key(int, int)}
+     * @return an estimate of the number of times key was added, never below
+     *         the true number; exact for a key kept while {@link #isExact()}
+     */
+    int estimate(long key) {
+        int position = index.get(key);
+        if (position >= 0) return heapCounts[position];
+        int width = widthMask + 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, sketch[row * width + column(key, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Visit every kept pair with its count, in no particular order.
+     *
+     * @param visitor called once with each kept key and its count
+     */
+    void forEach(BridgeTable.EntryVisitor visitor) {
+        for (int i = 0; i < size; i++) {
+            visitor.visit(heapKeys[i], heapCounts[i]);
+        }
+    }
+
+    /**
+     * @return true iff every pair added is kept with its exact count, that
+     *         is, the budget has not been reached
+     */
+    boolean isExact() {
+        return evictions == 0 && dropped == 0;
+    }
+
+    /**
+     * @return maximum number of pairs kept
+     */
+    int capacity() {
+        return heapKeys.length;
+    }
+
+    /**
+     * @return number of pairs kept
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of pairs added, counting repeats
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * @return number of occurrences of pairs not kept because the table was
+     *         full of pairs at least as heavy
+     */
+    long dropped() {
+        return dropped;
+    }
+
+    /**
+     * @return number of times a kept pair was replaced by a heavier one
+     */
+    long evictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the greatest amount by which a kept count may exceed its true count
+     */
+    int maxError() {
+        int max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, heapErrors[i]);
+        }
+        return max;
+    }
+
+    /**
+     * @return approximate bytes of memory used by the sketch and the table
+     */
+    long sizeInBytes() {
+        return (long) sketch.length * Integer.BYTES + (long) heapKeys.length * HEAP_ENTRY_BYTES
+                + index.capacity() * (long) INDEX_SLOT_BYTES;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapCounts[parent] <= heapCounts[i]) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) return;
+            if (child + 1 < size && heapCounts[child + 1] < heapCounts[child]) child++;
+            if (heapCounts[i] <= heapCounts[child]) return;
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long key = heapKeys[i];
+        int count = heapCounts[i];
+        int error = heapErrors[i];
+        heapKeys[i] = heapKeys[j];
+        heapCounts[i] = heapCounts[j];
+        heapErrors[i] = heapErrors[j];
+        heapKeys[j] = key;
+        heapCounts[j] = count;
+        heapErrors[j] = error;
+        index.put(heapKeys[i], i);
+        index.put(heapKeys[j], j);
+    }
+}
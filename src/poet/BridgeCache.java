@@ -0,0 +1,542 @@
+package poet;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+
+/**
+ * A bounded, thread-safe cache of bridge words, keyed by the pair of
+ * lowercase words they bridge. Pairs without a bridge are cached too, since
+ * searching for a missing bridge costs as much as finding one.
+ *
+ * <p>The cache is split into segments by key hash, each guarded by its own
+ * lock and holding a fixed share of the entries, so concurrent poems rarely
+ * contend. Each segment evicts by its cache's {@link Policy}.
+ *
+ * <p>A cache does not know the graph its bridges came from: its poet
+ * invalidates the pairs an update may change, while no poem is running.
+ */
+public final class BridgeCache {
+
+    /**
+     * How a full cache chooses the entry to evict.
+     */
+    public enum Policy {
+        /** Evict the least recently used entry. */
+        LRU,
+        /**
+         * Window TinyLFU: new entries enter a small LRU window, and an entry
+         * leaving the window replaces the main region's eviction candidate
+         * only if it has been looked up more often recently, as estimated by
+         * a count-min sketch. Frequent pairs survive a burst of one-off pairs
+         * that would flush an LRU cache.
+         */
+        TINY_LFU
+    }
+
+    // value cached for pairs that have no bridge; words are never empty
+    private static final String NO_BRIDGE = "";
+
+    private final int maximumSize;
+    private final Policy policy;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Abstraction function:
+    //   - the union of the segments' entries, each mapping a pair (w1, w2) to its bridge
+    //     word, or to "no bridge" if the value is NO_BRIDGE; hits, misses and evictions
+    //     count the lookups and evictions since creation.
+    // Representation invariant:
+    //   - segments.length is a power of two; each key is in segments[spread(hash) & mask];
+    //   - the segments' capacities sum to maximumSize, and each holds at most its capacity.
+    // Thread safety argument:
+    //   - each segment's state is only accessed while holding the segment's lock;
+    //     the counters are LongAdders.
+
+    /**
+     * Create an empty cache.
+     *
+     * @param maximumSize positive maximum number of cached pairs
+     * @param policy eviction policy
+     */
+    BridgeCache(int maximumSize, Policy policy) {
+        if (maximumSize <= 0) throw new IllegalArgumentException("Maximum size must be positive");
+        this.maximumSize = maximumSize;
+        this.policy = policy;
+        // a few segments per processor, but none so small that eviction gets erratic
+        int wanted = Math.min(4 * Runtime.getRuntime().availableProcessors(), Math.max(1, maximumSize / 64));
+        int count = Integer.highestOneBit(wanted);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            int capacity = maximumSize / count + (i < maximumSize % count ? 1 : 0);
+            segments[i] = policy == Policy.LRU ? new LruSegment(capacity) : new TinyLfuSegment(capacity);
+        }
+    }
+
+    /**
+     * @return the maximum number of cached pairs
+     */
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return the eviction policy
+     */
+    public Policy policy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of cached pairs
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return the lookup and eviction counts so far
+     */
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size());
+    }
+
+    /**
+     * Look up the cached bridge of a pair, counting a hit or a miss.
+     *
+     * @param key pair of lowercase words
+     * @return the bridge word; "" if the pair is cached as having no bridge; or
+     *         null if the pair is not cached
+     */
+    String get(Pair key) {
+        Segment segment = segmentOf(key);
+        String bridge;
+        synchronized (segment) {
+            bridge = segment.get(key);
+        }
+        if (bridge != null) hits.increment();
+        else misses.increment();
+        return bridge;
+    }
+
+    /**
+     * Cache the bridge of a pair, evicting another pair if the cache is full.
+     *
+     * @param key pair of lowercase words
+     * @param bridge bridge word, or null if the pair has no bridge
+     */
+    void put(Pair key, String bridge) {
+        Segment segment = segmentOf(key);
+        int evicted;
+        synchronized (segment) {
+            evicted = segment.put(key, bridge != null ? bridge : NO_BRIDGE);
+        }
+        if (evicted > 0) evictions.add(evicted);
+    }
+
+    /**
+     * Remove every cached pair (w1, w2) for which stale.test(w1, w2).
+     *
+     * @param stale which pairs to remove
+     */
+    void invalidateIf(BiPredicate<String, String> stale) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.removeIf(stale);
+            }
+        }
+    }
+
+    /**
+     * Remove every cached pair.
+     */
+    public void invalidateAll() {
+        invalidateIf((w1, w2) -> true);
+    }
+
+    private Segment segmentOf(Pair key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return "BridgeCache " + policy + " of " + maximumSize + ": " + stats();
+    }
+
+    /**
+     * An immutable pair of words, the key of a cached bridge.
+     */
+    static final class Pair {
+        final String w1;
+        final String w2;
+        private final int hash;
+
+        Pair(String w1, String w2) {
+            this.w1 = w1;
+            this.w2 = w2;
+            this.hash = 31 * w1.hashCode() + w2.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (!(that instanceof Pair)) return false;
+            Pair other = (Pair) that;
+            return hash == other.hash && w1.equals(other.w1) && w2.equals(other.w2);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + w1 + ", " + w2 + ")";
+        }
+    }
+
+    /**
+     * Counts of a cache's lookups and evictions, taken at one time.
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final int size;
+
+        Stats(long hitCount, long missCount, long evictionCount, int size) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+        }
+
+        /**
+         * @return number of lookups that found their pair cached
+         */
+        public long hitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return number of lookups that did not find their pair cached
+         */
+        public long missCount() {
+            return missCount;
+        }
+
+        /**
+         * @return hitCount / (hitCount + missCount), or 0 if there were no lookups
+         */
+        public double hitRate() {
+            long lookups = hitCount + missCount;
+            return lookups == 0 ? 0 : (double) hitCount / lookups;
+        }
+
+        /**
+         * @return number of pairs evicted to make room for others; pairs
+         *         invalidated by updates are not counted
+         */
+        public long evictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * @return number of cached pairs
+         */
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions, %d pairs",
+                    hitCount, missCount, 100 * hitRate(), evictionCount, size);
+        }
+    }
+
+    /**
+     * One share of a cache's entries. Not thread-safe: callers hold its lock.
+     */
+    private abstract static class Segment {
+        /** @return the value of key, recording the access, or null if absent */
+        abstract String get(Pair key);
+
+        /** Store a value for key; @return the number of entries evicted */
+        abstract int put(Pair key, String value);
+
+        /** Remove the entries whose pair satisfies stale */
+        abstract void removeIf(BiPredicate<String, String> stale);
+
+        abstract int size();
+    }
+
+    /**
+     * A segment evicting its least recently used entry.
+     */
+    private static final class LruSegment extends Segment {
+        private final int capacity;
+        private final LinkedHashMap<Pair, String> entries;
+
+        LruSegment(int capacity) {
+            this.capacity = capacity;
+            this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        @Override
+        String get(Pair key) {
+            return entries.get(key);
+        }
+
+        @Override
+        int put(Pair key, String value) {
+            entries.put(key, value);
+            if (entries.size() <= capacity) return 0;
+            Iterator<Pair> eldest = entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            return 1;
+        }
+
+        @Override
+        void removeIf(BiPredicate<String, String> stale) {
+            entries.keySet().removeIf(key -> stale.test(key.w1, key.w2));
+        }
+
+        @Override
+        int size() {
+            return entries.size();
+        }
+    }
+
+    /**
+     * A Window TinyLFU segment: an LRU window of about 1% of the capacity in
+     * front of a segmented-LRU main region, whose probation queue holds
+     * entries seen once in the main region and whose protected queue (80% of
+     * the main region) holds entries hit again there. Admission from the
+     * window into the main region is decided by a FrequencySketch of recent
+     * lookups.
+     */
+    private static final class TinyLfuSegment extends Segment {
+        private static final int WINDOW = 0;
+        private static final int PROBATION = 1;
+        private static final int PROTECTED = 2;
+
+        private final Map<Pair, Node> nodes = new HashMap<>();
+        private final Node[] queues = { new Node(null, null), new Node(null, null), new Node(null, null) };
+        private final int[] sizes = new int[3];
+        private final int windowCapacity;
+        private final int mainCapacity;
+        private final int protectedCapacity;
+        private final FrequencySketch sketch;
+
+        // Abstraction function:
+        //   - the entries of nodes, each in the queue nodes.get(key).queue.
+        // Representation invariant:
+        //   - queues[q] is the sentinel of a circular doubly-linked list of the sizes[q]
+        //     nodes in queue q, least recently used first;
+        //   - sizes[WINDOW] <= windowCapacity, sizes[PROTECTED] <= protectedCapacity,
+        //     sizes[PROBATION] + sizes[PROTECTED] <= mainCapacity.
+
+        TinyLfuSegment(int capacity) {
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.mainCapacity = capacity - windowCapacity;
+            this.protectedCapacity = mainCapacity * 4 / 5;
+            this.sketch = new FrequencySketch(capacity);
+            for (Node sentinel : queues) {
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+            }
+        }
+
+        @Override
+        String get(Pair key) {
+            sketch.increment(key.hashCode());
+            Node node = nodes.get(key);
+            if (node == null) return null;
+            if (node.queue == PROBATION) {
+                moveTo(node, PROTECTED);
+                if (sizes[PROTECTED] > protectedCapacity) moveTo(queues[PROTECTED].next, PROBATION);
+            } else {
+                moveTo(node, node.queue);
+            }
+            return node.value;
+        }
+
+        @Override
+        int put(Pair key, String value) {
+            Node node = nodes.get(key);
+            if (node != null) {
+                node.value = value;
+                return 0;
+            }
+            node = new Node(key, value);
+            nodes.put(key, node);
+            link(node, WINDOW);
+            if (sizes[WINDOW] <= windowCapacity) return 0;
+
+            // the window's eldest entry competes with the main region's eldest for a place
+            Node candidate = queues[WINDOW].next;
+            if (mainCapacity == 0) {
+                evict(candidate);
+                return 1;
+            }
+            moveTo(candidate, PROBATION);
+            if (sizes[PROBATION] + sizes[PROTECTED] <= mainCapacity) return 0;
+            Node victim = queues[PROBATION].next;
+            if (victim == candidate) victim = queues[PROTECTED].next;
+            evict(sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())
+                    ? victim : candidate);
+            return 1;
+        }
+
+        @Override
+        void removeIf(BiPredicate<String, String> stale) {
+            for (Iterator<Node> it = nodes.values().iterator(); it.hasNext();) {
+                Node node = it.next();
+                if (stale.test(node.key.w1, node.key.w2)) {
+                    unlink(node);
+                    it.remove();
+                }
+            }
+        }
+
+        @Override
+        int size() {
+            return nodes.size();
+        }
+
+        private void evict(Node node) {
+            unlink(node);
+            nodes.remove(node.key);
+        }
+
+        // Move a node to the most recently used end of a queue
+        private void moveTo(Node node, int queue) {
+            unlink(node);
+            link(node, queue);
+        }
+
+        private void link(Node node, int queue) {
+            Node sentinel = queues[queue];
+            node.queue = queue;
+            node.prev = sentinel.prev;
+            node.next = sentinel;
+            sentinel.prev.next = node;
+            sentinel.prev = node;
+            sizes[queue]++;
+        }
+
+        private void unlink(Node node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            sizes[node.queue]--;
+        }
+    }
+
+    /**
+     * An entry of a TinyLfuSegment, linked into one of its queues.
+     */
+    private static final class Node {
+        final Pair key;
+        String value;
+        int queue;
+        Node prev;
+        Node next;
+
+        Node(Pair key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A count-min sketch of recent lookup frequencies, with four 4-bit
+     * counters per key (so estimates saturate at 15). After about ten
+     * lookups per cached entry every counter is halved, so the sketch
+     * follows changes in popularity.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+            0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L,
+        };
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        // Abstraction function:
+        //   - for each row r in 0..3, counter c of table word i is the 4-bit field
+        //     (table[i] >>> 4c) & 15; a key's estimate is the least of its four counters.
+        // Representation invariant:
+        //   - table.length is a power of two; additions < sampleSize.
+
+        /**
+         * @param capacity positive number of entries whose frequencies matter
+         */
+        FrequencySketch(int capacity) {
+            this.table = new long[Integer.highestOneBit(Math.max(8, capacity) * 2 - 1)];
+            this.sampleSize = 10 * Math.max(8, capacity);
+        }
+
+        /**
+         * Count one lookup of a key.
+         *
+         * @param hash hash code of the key
+         */
+        void increment(int hash) {
+            boolean added = false;
+            for (int row = 0; row < 4; row++) {
+                int index = indexOf(hash, row);
+                int shift = counterOf(hash, row) << 2;
+                if (((table[index] >>> shift) & 15) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) halve();
+        }
+
+        /**
+         * @param hash hash code of a key
+         * @return estimated number of recent lookups of the key, at most 15
+         */
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int row = 0; row < 4; row++) {
+                int shift = counterOf(hash, row) << 2;
+                frequency = Math.min(frequency, (int) ((table[indexOf(hash, row)] >>> shift) & 15));
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            return (int) (h ^ (h >>> 32)) & (table.length - 1);
+        }
+
+        // which of the 16 counters of its word a row uses; each row uses a distinct quarter
+        private static int counterOf(int hash, int row) {
+            return (row << 2) + ((hash >>> (row << 3)) & 3);
+        }
+
+        private void halve() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+            }
+            additions /= 2;
+        }
+    }
+}
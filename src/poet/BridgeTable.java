@@ -0,0 +1,179 @@
+package poet;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash table from (source ID, target ID) pairs to an int,
+ * such as a bridge word ID or an adjacency count, with each pair packed into
+ * one long key so that entries cost twelve bytes and no objects.
+ */
+final class BridgeTable {
+
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    // Abstraction function:
+    //   - For each slot i with keys[i] != EMPTY, the pair (keys[i] >>> 32, (int) keys[i])
+    //     maps to values[i].
+    // Representation invariant:
+    //   - keys.length == values.length, a power of two, and size < keys.length.
+    //   - the keys are distinct, non-negative, and each is reachable by linear probing
+    //     from its home slot without crossing an EMPTY slot.
+
+    /**
+     * Create an empty table.
+     *
+     * @param expectedSize number of pairs the table is expected to hold
+     */
+    BridgeTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Pack a pair of non-negative IDs into a key.
+     *
+     * @param source non-negative ID
+     * @param target non-negative ID
+     * @return key for the pair
+     */
+    static long key(int source, int target) {
+        return ((long) source << 32) | (target & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param key a key made by {@link #key(int, int)}
+     * @return the value stored for key, or -1 if there is none
+     */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) return values[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Store a value, replacing any earlier value for the same key.
+     *
+     * @param key a key made by {@link #key(int, int)}
+     * @param value value to store
+     */
+    void put(long key, int value) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 4 > keys.length * 3) rehash(keys.length * 2);
+    }
+
+    /**
+     * Add to the value stored for a key, storing delta if there is none.
+     *
+     * @param key a key made by {@link #key(int, int)}
+     * @param delta amount to add
+     */
+    void add(long key, int delta) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] += delta;
+                return;
+            }
+        }
+        keys[i] = key;
+        values[i] = delta;
+        if (++size * 4 > keys.length * 3) rehash(keys.length * 2);
+    }
+
+    /**
+     * Remove a key and its value, if present.
+     *
+     * @param key a key made by {@link #key(int, int)}
+     */
+    void remove(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        for (; keys[i] != key; i = (i + 1) & mask) {
+            if (keys[i] == EMPTY) return;
+        }
+        // backward-shift deletion, so no tombstones are left
+        int hole = i;
+        for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = EMPTY;
+        size--;
+    }
+
+    /**
+     * @return number of pairs in this table
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of slots in this table, used or not
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Visit every entry, in no particular order. The table must not be
+     * modified during the visit.
+     *
+     * @param visitor called once with each key and its value
+     */
+    void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) visitor.visit(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Visits the entries of a table.
+     */
+    interface EntryVisitor {
+        void visit(long key, int value);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        int mask = capacity - 1;
+        for (int k = 0; k < oldKeys.length; k++) {
+            if (oldKeys[k] == EMPTY) continue;
+            int i = slot(oldKeys[k], mask);
+            while (keys[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = oldKeys[k];
+            values[i] = oldValues[k];
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,268 @@
+package poet;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import graph.Dictionary;
+import graph.Graph;
+import graph.PartitionedGraph;
+
+/**
+ * Builds the word affinity graph of a corpus (as described in
+ * {@link GraphPoet}), either in one sequential pass or in parallel over
+ * byte-range shards of the file. Both produce the same graph.
+ *
+ * <p>Words are interned in a {@link Dictionary} and adjacencies are counted
+ * on word IDs, so a corpus costs no object per word or per adjacency while it
+ * is read. The graph is built at the end, from the counts, with one String
+ * per distinct word shared by every edge that mentions it.
+ *
+ * <p>For corpora whose adjacencies do not fit in memory, the counts can
+ * instead be kept in an {@link AdjacencySketch}, which keeps only the
+ * heaviest pairs once its budget is reached. For graphs too big for one
+ * heap, the counts can be loaded into a {@link PartitionedGraph}, which
+ * never holds the graph in this JVM.
+ */
+final class CorpusLoader {
+
+    // edges sent to each shard of a partitioned graph in one request, on average
+    private static final int EDGES_PER_BATCH = 1 << 14;
+
+    private CorpusLoader() {
+        throw new AssertionError("CorpusLoader is not instantiable");
+    }
+
+    /**
+     * Build the affinity graph of a corpus in one pass.
+     *
+     * @param corpus UTF-8 text file
+     * @return a new mutable affinity graph
+     * @throws IOException if the corpus cannot be found or read
+     */
+    static Graph<String> load(Path corpus) throws IOException {
+        Shard shard = loadRange(corpus, 0, Long.MAX_VALUE);
+        return toGraph(shard.dictionary, shard.counts::forEach);
+    }
+
+    /**
+     * Build an approximate affinity graph of a corpus in one pass, counting
+     * adjacencies in a sketch of bounded memory. The graph has the sketch's
+     * kept pairs as its edges, weighted by their kept counts; it equals
+     * {@link #load(Path)}'s iff {@code counts.isExact()} afterwards. Only the
+     * counting is bounded: the dictionary still holds every distinct word.
+     *
+     * @param corpus UTF-8 text file
+     * @param counts empty sketch to count the adjacencies in
+     * @return a new mutable affinity graph
+     * @throws IOException if the corpus cannot be found or read
+     */
+    static Graph<String> load(Path corpus, AdjacencySketch counts) throws IOException {
+        Dictionary dictionary = new Dictionary();
+        int[] previous = { -1 };
+        new CorpusTokenizer().forEachWord(corpus, dictionary, word -> {
+            if (previous[0] >= 0) counts.add(BridgeTable.key(previous[0], word));
+            previous[0] = word;
+        });
+        return toGraph(dictionary, counts::forEach);
+    }
+
+    /**
+     * Build the affinity graph of a text, as if it were a corpus file.
+     *
+     * @param text corpus text
+     * @return a new mutable affinity graph
+     */
+    static Graph<String> load(CharSequence text) {
+        Dictionary dictionary = new Dictionary();
+        BridgeTable counts = new BridgeTable(16);
+        int[] previous = { -1 };
+        CorpusTokenizer.forEachWord(text, dictionary, word -> {
+            if (previous[0] >= 0) counts.add(BridgeTable.key(previous[0], word), 1);
+            previous[0] = word;
+        });
+        return toGraph(dictionary, counts::forEach);
+    }
+
+    /**
+     * Build the affinity graph of a corpus in parallel. The file is cut into
+     * byte ranges at word boundaries, each range is counted with its own
+     * dictionary, the shards' counts are merged into one dictionary, and the
+     * adjacency across each cut is added back.
+     *
+     * @param corpus UTF-8 text file
+     * @param parallelism positive number of shards and threads to use
+     * @return a new mutable affinity graph, equal to {@link #load(Path)}'s
+     * @throws IOException if the corpus cannot be found or read
+     */
+    static Graph<String> loadParallel(Path corpus, int parallelism) throws IOException {
+        if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive");
+        if (parallelism == 1) return load(corpus);
+
+        long[] cuts = new long[parallelism + 1];
+        try (FileChannel channel = FileChannel.open(corpus, StandardOpenOption.READ)) {
+            long size = channel.size();
+            CorpusTokenizer tokenizer = new CorpusTokenizer();
+            for (int i = 1; i < parallelism; i++) {
+                long cut = tokenizer.nextBoundary(channel, size / parallelism * i);
+                cuts[i] = Math.max(cuts[i - 1], Math.min(cut, size));
+            }
+            cuts[parallelism] = size;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<Shard>> futures = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                long start = cuts[i];
+                long end = cuts[i + 1];
+                futures.add(executor.submit(() -> loadRange(corpus, start, end)));
+            }
+            Dictionary dictionary = new Dictionary();
+            BridgeTable counts = null;
+            int last = -1;
+            for (Future<Shard> future : futures) {
+                Shard shard = get(future);
+                if (shard.first < 0) continue;
+                if (counts == null) {
+                    // the first non-empty shard's IDs carry over unchanged
+                    dictionary = shard.dictionary;
+                    counts = shard.counts;
+                    last = shard.last;
+                    continue;
+                }
+                int[] ids = new int[shard.dictionary.size()];
+                for (int id = 0; id < ids.length; id++) {
+                    ids[id] = dictionary.intern(shard.dictionary, id);
+                }
+                BridgeTable into = counts;
+                shard.counts.forEach((key, count) ->
+                        into.add(BridgeTable.key(ids[(int) (key >>> 32)], ids[(int) key]), count));
+                // the last word before the cut is followed by the first word after it
+                counts.add(BridgeTable.key(last, ids[shard.first]), 1);
+                last = ids[shard.last];
+            }
+            return counts == null ? Graph.empty() : toGraph(dictionary, counts::forEach);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Shard loadRange(Path corpus, long start, long end) throws IOException {
+        Dictionary dictionary = new Dictionary();
+        BridgeTable counts = new BridgeTable(1 << 10);
+        int[] ends = { -1, -1 };
+        new CorpusTokenizer().forEachWord(corpus, start, end, dictionary, word -> {
+            if (ends[1] >= 0) counts.add(BridgeTable.key(ends[1], word), 1);
+            else ends[0] = word;
+            ends[1] = word;
+        });
+        return new Shard(dictionary, counts, ends[0], ends[1]);
+    }
+
+    /**
+     * Load the affinity graph of a corpus into a partitioned graph, counting
+     * in one pass and then sending the edges to the graph's shards in
+     * batches. Only the dictionary and the counts, a few dozen bytes per
+     * distinct word and adjacency, are held in this JVM.
+     *
+     * @param corpus UTF-8 text file
+     * @param counts empty sketch to count the adjacencies in, or null to
+     *        count them exactly
+     * @param into empty graph to load into
+     * @throws IOException if the corpus cannot be found or read
+     */
+    static void load(Path corpus, AdjacencySketch counts, PartitionedGraph into) throws IOException {
+        if (counts == null) {
+            Shard shard = loadRange(corpus, 0, Long.MAX_VALUE);
+            send(shard.dictionary, shard.counts::forEach, into);
+            return;
+        }
+        Dictionary dictionary = new Dictionary();
+        int[] previous = { -1 };
+        new CorpusTokenizer().forEachWord(corpus, dictionary, word -> {
+            if (previous[0] >= 0) counts.add(BridgeTable.key(previous[0], word));
+            previous[0] = word;
+        });
+        send(dictionary, counts::forEach, into);
+    }
+
+    // Set every counted edge in a partitioned graph, EDGES_PER_BATCH edges per request to each shard
+    private static void send(Dictionary dictionary, Consumer<BridgeTable.EntryVisitor> counts,
+            PartitionedGraph into) {
+        String[] words = new String[dictionary.size()];
+        List<String> sources = new ArrayList<>();
+        List<String> targets = new ArrayList<>();
+        int[] weights = new int[EDGES_PER_BATCH * into.shards()];
+        counts.accept((key, count) -> {
+            int source = (int) (key >>> 32);
+            int target = (int) key;
+            if (words[source] == null) words[source] = dictionary.word(source);
+            if (words[target] == null) words[target] = dictionary.word(target);
+            weights[sources.size()] = count;
+            sources.add(words[source]);
+            targets.add(words[target]);
+            if (sources.size() == weights.length) {
+                into.setAll(sources, targets, weights);
+                sources.clear();
+                targets.clear();
+            }
+        });
+        if (!sources.isEmpty()) into.setAll(sources, targets, Arrays.copyOf(weights, sources.size()));
+    }
+
+    // Build the graph of adjacency counts, decoding each word's String once
+    private static Graph<String> toGraph(Dictionary dictionary, Consumer<BridgeTable.EntryVisitor> counts) {
+        Graph<String> graph = Graph.builder().expectedVertices(dictionary.size()).build();
+        String[] words = new String[dictionary.size()];
+        counts.accept((key, count) -> {
+            int source = (int) (key >>> 32);
+            int target = (int) key;
+            if (words[source] == null) words[source] = dictionary.word(source);
+            if (words[target] == null) words[target] = dictionary.word(target);
+            graph.set(words[source], words[target], count);
+        });
+        return graph;
+    }
+
+    private static Shard get(Future<Shard> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading corpus", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Adjacency counts of one byte range, keyed by the IDs of its own
+     * dictionary, with the IDs of the range's first and last words (both -1
+     * if it has no words).
+     */
+    private static final class Shard {
+        final Dictionary dictionary;
+        final BridgeTable counts;
+        final int first;
+        final int last;
+
+        Shard(Dictionary dictionary, BridgeTable counts, int first, int last) {
+            this.dictionary = dictionary;
+            this.counts = counts;
+            this.first = first;
+            this.last = last;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package poet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+import graph.Dictionary;
+
+/**
+ * Splits a UTF-8 corpus file into lowercase words, streaming it through a
+ * fixed-size buffer. Words are delimited by ASCII whitespace (spaces, tabs,
+ * carriage returns, newlines, form feeds); line breaks are delimiters like
+ * any other, so words on either side of one are adjacent.
+ *
+ * <p>Words are interned in a {@link Dictionary}. ASCII words are lowercased
+ * in place and interned straight from the buffer, so a known ASCII word
+ * costs no allocation. Words with non-ASCII characters are decoded to a
+ * String to be lowercased.
+ */
+final class CorpusTokenizer {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final int bufferSize;
+
+    /**
+     * Create a tokenizer with a 1 MiB read buffer.
+     */
+    CorpusTokenizer() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize positive size in bytes of each read from the file
+     */
+    CorpusTokenizer(int bufferSize) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be positive");
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Read every word of a corpus in order.
+     *
+     * @param corpus UTF-8 text file
+     * @param dictionary dictionary in which to intern each lowercased word
+     * @param words called with the ID of each word, in corpus order
+     * @throws IOException if the corpus cannot be found or read
+     */
+    void forEachWord(Path corpus, Dictionary dictionary, IntConsumer words) throws IOException {
+        forEachWord(corpus, 0, Long.MAX_VALUE, dictionary, words);
+    }
+
+    /**
+     * Read every word in a byte range of a corpus, in order. The range is
+     * treated as if it were the whole file, so for no word to be cut in two,
+     * start and end should each be 0, the file size, or the offset of a
+     * delimiter byte (see {@link #nextBoundary}).
+     *
+     * @param corpus UTF-8 text file
+     * @param start offset of the first byte to read
+     * @param end offset just past the last byte to read; may exceed the file size
+     * @param dictionary dictionary in which to intern each lowercased word
+     * @param words called with the ID of each word, in corpus order
+     * @throws IOException if the corpus cannot be found or read
+     */
+    void forEachWord(Path corpus, long start, long end, Dictionary dictionary, IntConsumer words)
+            throws IOException {
+        byte[] chunk = new byte[bufferSize];
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        byte[] token = new byte[64];
+        int tokenLength = 0;
+        boolean ascii = true;
+
+        try (FileChannel channel = FileChannel.open(corpus, StandardOpenOption.READ)) {
+            long position = start;
+            while (position < end) {
+                buffer.limit((int) Math.min(chunk.length, end - position));
+                int read = channel.read(buffer, position);
+                if (read == -1) break;
+                position += read;
+                for (int i = 0; i < read; i++) {
+                    byte b = chunk[i];
+                    if (isDelimiter(b)) {
+                        if (tokenLength > 0) words.accept(intern(dictionary, token, tokenLength, ascii));
+                        tokenLength = 0;
+                        ascii = true;
+                        continue;
+                    }
+                    if (tokenLength == token.length) token = Arrays.copyOf(token, tokenLength * 2);
+                    if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+                    else if (b < 0) ascii = false;
+                    token[tokenLength++] = b;
+                }
+                buffer.clear();
+            }
+        }
+        if (tokenLength > 0) words.accept(intern(dictionary, token, tokenLength, ascii));
+    }
+
+    /**
+     * Find the first word boundary at or after an offset.
+     *
+     * @param channel open channel on a corpus file
+     * @param offset offset into the file
+     * @return the offset of the first delimiter byte at or after offset, or the
+     *         file size if there is none
+     * @throws IOException if the file cannot be read
+     */
+    long nextBoundary(FileChannel channel, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(bufferSize, 1 << 12));
+        long position = offset;
+        int read;
+        while ((read = channel.read(buffer, position)) != -1) {
+            for (int i = 0; i < read; i++) {
+                if (isDelimiter(buffer.get(i))) return position + i;
+            }
+            position += read;
+            buffer.clear();
+        }
+        return channel.size();
+    }
+
+    /**
+     * Read every word of a text in order, with the same delimiters and
+     * lowercasing as a corpus file. ASCII words are lowercased into a reused
+     * buffer, so a known ASCII word costs no allocation.
+     *
+     * @param text text to split into words
+     * @param dictionary dictionary in which to intern each lowercased word
+     * @param words called with the ID of each word, in order
+     */
+    static void forEachWord(CharSequence text, Dictionary dictionary, IntConsumer words) {
+        StringBuilder token = new StringBuilder();
+        boolean ascii = true;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (c < 0x80 && isDelimiter((byte) c)) {
+                if (start >= 0) {
+                    if (ascii) words.accept(dictionary.intern(token));
+                    else words.accept(dictionary.intern(lowercase(text.subSequence(start, i).toString())));
+                }
+                token.setLength(0);
+                ascii = true;
+                start = -1;
+                continue;
+            }
+            if (start < 0) start = i;
+            if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+            else if (c >= 0x80) ascii = false;
+            token.append(c);
+        }
+    }
+
+    /**
+     * Lowercase a word the way corpus words are lowercased, whatever the
+     * default locale.
+     *
+     * @param word a word
+     * @return word in lowercase
+     */
+    static String lowercase(String word) {
+        return word.toLowerCase(Locale.ROOT);
+    }
+
+    private static int intern(Dictionary dictionary, byte[] token, int length, boolean ascii) {
+        if (ascii) return dictionary.intern(token, 0, length);
+        String word = lowercase(new String(token, 0, length, StandardCharsets.UTF_8));
+        return dictionary.intern(word);
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+    }
+}
@@ -5,10 +5,37 @@ package poet;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import graph.DurableGraph;
+import graph.Graph;
+import graph.GraphSnapshot;
+import graph.Graphs;
+import graph.MappedGraph;
+import graph.PartitionedGraph;
+import graph.PathSearch;
+import graph.PathSearchBuilder;
+import metrics.Metrics;
 
 /**
  * A graph-based poetry generator.
@@ -35,6 +62,8 @@ import java.util.List;
  * w1 -> b -> w2 is a two-edge-long path with maximum-weight weight among all
  * the two-edge-long paths from w1 to w2 in the affinity graph.
  * If there are no such paths, no bridge word is inserted.
+ * If several bridge words give paths of the same maximum weight, the one that
+ * is first in {@link String#compareTo(String) lexicographic order} is used.
  * In the output poem, input words retain their original case, while bridge
  * words are lower case. The whitespace between every word in the poem is a
  * single space.
@@ -46,6 +75,20 @@ import java.util.List;
  * <p>the output poem would be:
  * <pre>    Test of the system.    </pre>
  * 
+ * <p>A poet built with {@link GraphPoetBuilder#maxBridgeWords(int)} may
+ * instead insert a bridge of several words: the inner words of the heaviest
+ * path of at most that many words between w1 and w2, found by a bounded
+ * {@link PathSearch}.
+ * 
+ * <p>A poet whose graph is a {@link PartitionedGraph}, built with
+ * {@link GraphPoetBuilder#partitionedGraph(PartitionedGraph)}, finds the
+ * bridge words of a whole poem, or a whole batch of poems, in two batched
+ * requests to each shard rather than a few round trips per pair of words.
+ * 
+ * <p>A poet whose graph is a {@link DurableGraph}, built with
+ * {@link GraphPoetBuilder#durableGraph(DurableGraph)}, logs each update to
+ * its graph as one record, so a crash keeps either all or none of it.
+ * 
  * <p>PS2 instructions: this is a required ADT class, and you MUST NOT weaken
  * the required specifications. However, you MAY strengthen the specifications
  * and you MAY add additional methods.
@@ -54,17 +97,56 @@ import java.util.List;
  */
 public class GraphPoet {
     
-    private final Map<String, Map<String, Integer>> graph = new HashMap<>();
+    private static final String[] NO_WORDS = { "" };
+    // smallest chunks of a batch worth a task of their own
+    private static final int SEARCHES_PER_TASK = 32;
+    private static final int INPUTS_PER_TASK = 64;
+    // characters of a streamed input read, and bridged under one read lock, at a time
+    private static final int STREAM_CHUNK = 8192;
+    
+    private Graph<String> graph;
+    private boolean graphShared;
+    private final Map<String, Integer> ids;
+    private final List<String> words;
+    private final BridgeTable bridges;
+    private final BridgeCache cache;
+    private final PathSearchBuilder bridgePaths;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Metrics.Timer bridgeTimer;
+    private final Metrics.Timer poemTimer;
+    private final Metrics.Timer batchTimer;
+    private final Metrics.Timer updateTimer;
     
     // Abstraction function:
-    //   - The graph is a mapping from each word (vertex) to a map of words it is followed by
-    //     (edges), with the number of times that adjacency occurs (edge weight).
+    //   - graph is the word affinity graph: vertices are lowercase words, and the weight
+    //     of w1 -> w2 is the number of times w1 is followed by w2 in the corpus plus all
+    //     added text, minus all removed text.
+    //   - if bridges != null, it maps the pair of IDs (ids.get(w1), ids.get(w2)) to the
+    //     ID of the bridge word between w1 and w2, for every pair that has one.
     
     // Representation invariant:
-    //   - The graph should never be null and should not have any empty words or edges.
+    //   - graph has no empty words, only positive weights, and no vertex without edges.
+    //   - if graphShared, graph may be immutable or used elsewhere, so it is copied
+    //     before its first modification.
+    //   - if bridges != null, ids maps each vertex of graph (and possibly words no longer
+    //     in graph) to its index in words, words.get(ids.get(w)) == w, and bridges holds
+    //     exactly the pairs with a bridge.
+    //   - if bridges == null, ids and words are null.
+    //   - if bridgePaths != null, bridges == null.
+    //   - if cache != null, bridges == null and every pair cached in cache has its
+    //     bridge in graph.
     
     // Safety from rep exposure:
-    //   - We only expose copies of the graph to the outside world, and not the original map.
+    //   - all fields are private; graph is only returned within the package, and no
+    //     other field is returned at all.
+    
+    // Thread safety argument:
+    //   - graph, graphShared, ids, words and bridges are only read while holding lock's
+    //     read lock and only modified while holding its write lock, so every poem sees
+    //     the state between two whole updates.
+    //   - cache is thread-safe; pairs are only put in it under the read lock and
+    //     invalidated under the write lock, so a pair cached from one state of graph
+    //     cannot outlive the update that changes its bridge.
     
     /**
      * Create a new poet with the graph from corpus (as described above).
@@ -72,21 +154,318 @@ public class GraphPoet {
      * @throws IOException if the corpus file cannot be found or read
      */
     public GraphPoet(File corpus) throws IOException {
-        List<String> lines = Files.readAllLines(corpus.toPath());
-        for (String line : lines) {
-            String[] words = line.split("[\\s\\n\\r]+");
-            for (int i = 0; i < words.length - 1; i++) {
-                String w1 = words[i].toLowerCase();
-                String w2 = words[i + 1].toLowerCase();
-                addEdge(w1, w2);
+        this(corpus, false);
+    }
+    
+    /**
+     * Create a new poet with the graph from corpus (as described above),
+     * optionally precomputing the bridge word for every pair of words that has
+     * one, so that generating a poem costs one table lookup per pair of input
+     * words. Precomputation runs in parallel on the common fork-join pool.
+     * Either way, the poems generated are the same.
+     * 
+     * <p>The corpus is read as UTF-8 text in one streaming pass, so memory use
+     * grows with its vocabulary and adjacencies rather than with its length.
+     * @param corpus text file from which to derive the poet's affinity graph
+     * @param precomputeBridges true to precompute all bridge words
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    public GraphPoet(File corpus, boolean precomputeBridges) throws IOException {
+        this(CorpusLoader.load(corpus.toPath()), precomputeBridges);
+    }
+    
+    /**
+     * Start configuring a poet for a corpus; see {@link GraphPoetBuilder}.
+     * @param corpus text file from which to derive the poet's affinity graph
+     * @return a new builder with default options
+     */
+    public static GraphPoetBuilder builder(File corpus) {
+        return new GraphPoetBuilder(corpus);
+    }
+    
+    /**
+     * Create a new poet from a graph snapshot file written by
+     * {@link #saveSnapshot(Path)}. The file is memory-mapped and served in
+     * place, so startup does not depend on the size of the graph; the graph
+     * is copied onto the heap only if the poet is later updated. Only the
+     * snapshot's header is checked; a corrupt body may make the poet write
+     * wrong poems or throw unchecked exceptions, so use
+     * {@link #fromSnapshot(Path, boolean)} for files that may be damaged.
+     * @param snapshot snapshot file of an affinity graph
+     * @return a new poet with the graph in the snapshot
+     * @throws IOException if the snapshot cannot be read, or is not a snapshot
+     *         of this version, or its header is corrupt
+     */
+    public static GraphPoet fromSnapshot(Path snapshot) throws IOException {
+        return fromSnapshot(snapshot, false);
+    }
+    
+    /**
+     * Create a new poet from a graph snapshot file written by
+     * {@link #saveSnapshot(Path)}, as {@link #fromSnapshot(Path)} does.
+     * @param snapshot snapshot file of an affinity graph
+     * @param verify if true, check the checksum of the whole snapshot first,
+     *        which reads the whole file
+     * @return a new poet with the graph in the snapshot
+     * @throws IOException if the snapshot cannot be read, or is not a snapshot
+     *         of this version, or is corrupt in any part that was checked
+     */
+    public static GraphPoet fromSnapshot(Path snapshot, boolean verify) throws IOException {
+        MappedGraph graph = GraphSnapshot.map(snapshot);
+        if (verify && !graph.verifyChecksum()) throw new IOException("Corrupt snapshot body: " + snapshot);
+        return new GraphPoet(graph, false, true, null, null, null);
+    }
+    
+    /**
+     * Create a new poet from an affinity graph.
+     * @param affinities affinity graph of a corpus; the poet takes ownership of
+     *        it, so the caller must not use it afterwards
+     * @param precomputeBridges true to precompute all bridge words
+     */
+    GraphPoet(Graph<String> affinities, boolean precomputeBridges) {
+        this(affinities, precomputeBridges, false, null, null, null);
+    }
+    
+    /**
+     * Create a new poet from an affinity graph, timing its work.
+     * @param affinities affinity graph of a corpus; the poet takes ownership of
+     *        it, so the caller must not use it afterwards
+     * @param precomputeBridges true to precompute all bridge words
+     * @param shared true if affinities may be immutable or used elsewhere, so
+     *        it must be copied before the poet modifies it
+     * @param metrics metrics to record the timers described in
+     *        {@link GraphPoetBuilder#metrics(Metrics)} into, or null for none
+     * @param cache empty cache of the bridges found by searching, owned by the
+     *        poet from now on, or null for none; unused if bridges are precomputed
+     * @param bridgePaths search for bridges of several words, owned by the poet
+     *        from now on, with its tie-break set to lexicographic order; or null
+     *        for single bridge words. If not null, bridges are not precomputed.
+     */
+    GraphPoet(Graph<String> affinities, boolean precomputeBridges, boolean shared, Metrics metrics,
+            BridgeCache cache, PathSearchBuilder bridgePaths) {
+        precomputeBridges &= bridgePaths == null;
+        this.graph = affinities;
+        this.graphShared = shared;
+        this.cache = precomputeBridges ? null : cache;
+        this.bridgePaths = bridgePaths;
+        this.bridgeTimer = metrics != null ? metrics.timer("bridgeSearch") : Metrics.Timer.NONE;
+        this.poemTimer = metrics != null ? metrics.timer("poem") : Metrics.Timer.NONE;
+        this.batchTimer = metrics != null ? metrics.timer("poemBatch") : Metrics.Timer.NONE;
+        this.updateTimer = metrics != null ? metrics.timer("update") : Metrics.Timer.NONE;
+        
+        if (precomputeBridges) {
+            Metrics.Timer precomputeTimer = metrics != null ? metrics.timer("bridgePrecompute") : Metrics.Timer.NONE;
+            long start = precomputeTimer.start();
+            this.words = new ArrayList<>(graph.vertices());
+            this.ids = new HashMap<>();
+            for (int i = 0; i < words.size(); i++) {
+                ids.put(words.get(i), i);
             }
+            // a few leaves per worker, so each leaf's scratch arrays are reused over many words
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            int leafSize = Math.max(64, words.size() / (8 * pool.getParallelism()));
+            this.bridges = pool.invoke(new BridgeSearch(0, words.size(), leafSize)).toTable();
+            precomputeTimer.stop(start);
+        } else {
+            this.words = null;
+            this.ids = null;
+            this.bridges = null;
         }
     }
     
-    // Helper method to add edges to the graph
-    private void addEdge(String w1, String w2) {
-        graph.putIfAbsent(w1, new HashMap<>());
-        graph.get(w1).put(w2, graph.get(w1).getOrDefault(w2, 0) + 1);
+    /**
+     * @return this poet's affinity graph; callers must not modify it, and must
+     *         not read it while the poet may be updated
+     */
+    Graph<String> affinities() {
+        return graph;
+    }
+    
+    /**
+     * @return the cache of this poet's bridge words, configured with
+     *         {@link GraphPoetBuilder#bridgeCache(int, BridgeCache.Policy)},
+     *         or null if it has none
+     */
+    public BridgeCache bridgeCache() {
+        return cache;
+    }
+    
+    /**
+     * Write this poet's affinity graph to a snapshot file, from which
+     * {@link #fromSnapshot(Path)} can quickly recreate the poet.
+     * @param snapshot file to write, replacing any existing file
+     * @throws IOException if the file cannot be written
+     */
+    public void saveSnapshot(Path snapshot) throws IOException {
+        lock.readLock().lock();
+        try {
+            GraphSnapshot.write(graph, snapshot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Add the adjacencies of a text to this poet's affinity graph, as if the
+     * text were appended to the corpus as a separate file: its first word is
+     * not adjacent to the corpus's last word.
+     * Poems generated concurrently see the graph either before or after the
+     * whole text is added.
+     * @param text text to learn from
+     * @throws IllegalArgumentException if some adjacency would then occur
+     *         more than Integer.MAX_VALUE times; the poet is then not modified
+     */
+    public void addText(CharSequence text) {
+        update(CorpusLoader.load(text), 1);
+    }
+    
+    /**
+     * Add the adjacencies of a corpus file to this poet's affinity graph, as
+     * {@link #addText(CharSequence)} does for its text.
+     * @param corpus text file to learn from
+     * @throws IOException if the corpus file cannot be found or read
+     * @throws IllegalArgumentException if some adjacency would then occur
+     *         more than Integer.MAX_VALUE times; the poet is then not modified
+     */
+    public void addCorpus(Path corpus) throws IOException {
+        update(CorpusLoader.load(corpus), 1);
+    }
+    
+    /**
+     * Retract a text previously added with {@link #addText(CharSequence)} or
+     * {@link #addCorpus(Path)}, or contained in the original corpus as a
+     * separate run of words, by subtracting its adjacencies from this poet's
+     * affinity graph. Words left without any adjacency are forgotten.
+     * Poems generated concurrently see the graph either before or after the
+     * whole text is removed.
+     * @param text text to forget
+     * @throws IllegalArgumentException if some adjacency of text occurs more
+     *         often in text than in the graph; the poet is then not modified
+     */
+    public void removeText(CharSequence text) {
+        update(CorpusLoader.load(text), -1);
+    }
+    
+    /**
+     * Retract a corpus file, as {@link #removeText(CharSequence)} does for its text.
+     * @param corpus text file to forget
+     * @throws IOException if the corpus file cannot be found or read
+     * @throws IllegalArgumentException if some adjacency of corpus occurs more
+     *         often in it than in the graph; the poet is then not modified
+     */
+    public void removeCorpus(Path corpus) throws IOException {
+        update(CorpusLoader.load(corpus), -1);
+    }
+    
+    // Add sign times the weights of delta to graph, then refresh the bridges of the pairs whose
+    // two-edge paths changed
+    private void update(Graph<String> delta, int sign) {
+        long start = updateTimer.start();
+        lock.writeLock().lock();
+        try {
+            // check every edge before changing any, so that apply cannot fail part way
+            for (String source : delta.vertices()) {
+                for (Map.Entry<String, Integer> edge : delta.targets(source).entrySet()) {
+                    long weight = graph.weight(source, edge.getKey()) + (long) sign * edge.getValue();
+                    if (weight < 0) {
+                        throw new IllegalArgumentException("Cannot remove adjacency " + source + " -> "
+                                + edge.getKey() + " more often than it occurs");
+                    } else if (weight > Integer.MAX_VALUE) {
+                        throw new IllegalArgumentException("Adjacency " + source + " -> " + edge.getKey()
+                                + " would occur more than " + Integer.MAX_VALUE + " times");
+                    }
+                }
+            }
+            
+            if (graphShared) {
+                Graph<String> copy = Graph.builder().expectedVertices(graph.vertices().size()).build();
+                Graphs.sum(copy, graph);
+                graph = copy;
+                graphShared = false;
+            }
+            
+            // pairs affected before the change (for removed paths) and after it (for new ones)
+            Set<Long> affected = new HashSet<>();
+            if (bridges != null) collectAffectedPairs(delta, affected);
+            if (graph instanceof DurableGraph) {
+                // log the whole update as one record, waiting for the disk once
+                ((DurableGraph<String>) graph).batch(batch -> apply(batch, delta, sign));
+            } else {
+                apply(graph, delta, sign);
+            }
+            if (bridges != null) {
+                collectAffectedPairs(delta, affected);
+                BridgeFinder finder = new BridgeFinder(graph, null, null);
+                for (long key : affected) {
+                    String bridge = finder.find(words.get((int) (key >>> 32)), words.get((int) key));
+                    if (bridge != null) bridges.put(key, ids.get(bridge));
+                    else bridges.remove(key);
+                }
+            }
+            // a changed path of several edges may start and end anywhere, so drop every cached pair
+            if (cache != null && bridgePaths != null) cache.invalidateAll();
+            else if (cache != null) invalidateAffectedPairs(delta);
+        } finally {
+            lock.writeLock().unlock();
+            updateTimer.stop(start);
+        }
+    }
+    
+    // Add sign times the weights of delta to a graph, removing the words of delta left without edges
+    private static void apply(Graph<String> graph, Graph<String> delta, int sign) {
+        for (String source : delta.vertices()) {
+            for (Map.Entry<String, Integer> edge : delta.targets(source).entrySet()) {
+                Graphs.addWeight(graph, source, edge.getKey(), sign * edge.getValue());
+            }
+        }
+        if (sign < 0) {
+            for (String vertex : delta.vertices()) {
+                if (graph.targets(vertex).isEmpty() && graph.sources(vertex).isEmpty()) graph.remove(vertex);
+            }
+        }
+    }
+    
+    // Add the keys of all pairs (w1, w2) with a two-edge path through an edge of delta:
+    // for delta's edge x -> y, those are (w1, y) for w1 -> x and (x, w2) for y -> w2
+    private void collectAffectedPairs(Graph<String> delta, Set<Long> affected) {
+        for (String x : delta.vertices()) {
+            Map<String, Integer> ys = delta.targets(x);
+            if (ys.isEmpty()) continue;
+            Set<String> intoX = graph.sources(x).keySet();
+            for (String y : ys.keySet()) {
+                int idX = idOf(x);
+                int idY = idOf(y);
+                for (String w1 : intoX) {
+                    affected.add(BridgeTable.key(idOf(w1), idY));
+                }
+                for (String w2 : graph.targets(y).keySet()) {
+                    affected.add(BridgeTable.key(idX, idOf(w2)));
+                }
+            }
+        }
+    }
+    
+    // Drop the cached pairs whose bridge delta's edges may change: a changed path w1 -> b -> w2
+    // has a changed edge, so either w1 is a source or w2 is a target of an edge of delta
+    private void invalidateAffectedPairs(Graph<String> delta) {
+        Set<String> sources = new HashSet<>();
+        Set<String> targets = new HashSet<>();
+        for (String source : delta.vertices()) {
+            Set<String> ys = delta.targets(source).keySet();
+            if (ys.isEmpty()) continue;
+            sources.add(source);
+            targets.addAll(ys);
+        }
+        if (!sources.isEmpty()) cache.invalidateIf((w1, w2) -> sources.contains(w1) || targets.contains(w2));
+    }
+    
+    // Return the ID of a word, assigning a new one if necessary
+    private int idOf(String word) {
+        Integer id = ids.get(word);
+        if (id != null) return id;
+        ids.put(word, words.size());
+        words.add(word);
+        return words.size() - 1;
     }
     
     /**
@@ -95,42 +474,564 @@ public class GraphPoet {
      * @return poem (as described above)
      */
     public String poem(String input) {
-        String[] words = input.split(" ");
+        long start = poemTimer.start();
+        String[] words = split(input);
         StringBuilder poem = new StringBuilder(words[0]);
 
-        for (int i = 0; i < words.length - 1; i++) {
-            String w1 = words[i].toLowerCase();
-            String w2 = words[i + 1].toLowerCase();
-            String bridgeWord = findBridgeWord(w1, w2);
+        lock.readLock().lock();
+        try {
+            PartitionedGraph partitioned = partitionedGraph();
+            String[] found = null;
+            if (partitioned != null) {
+                String[] w1s = new String[words.length - 1];
+                String[] w2s = new String[words.length - 1];
+                for (int i = 0; i < words.length - 1; i++) {
+                    w1s[i] = CorpusTokenizer.lowercase(words[i]);
+                    w2s[i] = CorpusTokenizer.lowercase(words[i + 1]);
+                }
+                found = findBridges(partitioned, w1s, w2s);
+            }
+            BridgeFinder finder = bridges == null && found == null
+                    ? new BridgeFinder(graph, cache, bridgePaths) : null;
+            for (int i = 0; i < words.length - 1; i++) {
+                String w1 = CorpusTokenizer.lowercase(words[i]);
+                String w2 = CorpusTokenizer.lowercase(words[i + 1]);
+                long bridgeStart = bridgeTimer.start();
+                String bridgeWord = bridges != null ? lookupBridgeWord(w1, w2)
+                        : found != null ? found[i] : finder.find(w1, w2);
+                bridgeTimer.stop(bridgeStart);
+                if (bridgeWord != null) {
+                    poem.append(" ").append(bridgeWord);
+                }
+                poem.append(" ").append(words[i + 1]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        String result = poem.toString();
+        poemTimer.stop(start);
+        return result;
+    }
+    
+    /**
+     * Generate a poem from a stream of input, writing it to a stream as the
+     * input is read. The poem written is exactly {@code poem(input)} for
+     * the whole input read, but memory use does not grow with its length:
+     * only the current and the previous input word are kept.
+     * 
+     * <p>The input is bridged in chunks of a few thousand characters, each
+     * seeing the affinity graph between two whole updates; unlike
+     * {@code poem(String)}, different chunks may see different updates.
+     * Neither stream is closed or flushed.
+     * @param in input from which to create the poem, read to its end
+     * @param out where to write the poem (as described above)
+     * @throws IOException if in cannot be read or out cannot be written
+     */
+    public void poem(Reader in, Writer out) throws IOException {
+        long start = poemTimer.start();
+        char[] buffer = new char[STREAM_CHUNK];
+        StringBuilder word = new StringBuilder();
+        StringBuilder poem = new StringBuilder();
+        // lowercase last non-empty word, and the spaces read since it (or since the start)
+        String previous = null;
+        int spaces = 0;
+        for (int read; (read = in.read(buffer)) >= 0;) {
+            lock.readLock().lock();
+            try {
+                BridgeFinder finder = bridges == null ? new BridgeFinder(graph, cache, bridgePaths) : null;
+                for (int i = 0; i < read; i++) {
+                    char c = buffer[i];
+                    if (c != ' ') {
+                        word.append(c);
+                        continue;
+                    }
+                    if (word.length() > 0) {
+                        previous = appendWord(poem, previous, spaces, word.toString(), finder);
+                        word.setLength(0);
+                        spaces = 0;
+                    }
+                    spaces++;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            out.append(poem);
+            poem.setLength(0);
+        }
+        // spaces at the very end are dropped, as split() drops trailing empty words
+        if (word.length() > 0) {
+            lock.readLock().lock();
+            try {
+                BridgeFinder finder = bridges == null ? new BridgeFinder(graph, cache, bridgePaths) : null;
+                appendWord(poem, previous, spaces, word.toString(), finder);
+            } finally {
+                lock.readLock().unlock();
+            }
+            out.append(poem);
+        }
+        poemTimer.stop(start);
+    }
+    
+    // Append a non-empty input word following the given number of spaces, bridged from the previous
+    // word if a single space separates them (otherwise empty words do); return the lowercase word
+    private String appendWord(StringBuilder poem, String previous, int spaces, String word, BridgeFinder finder) {
+        String lower = CorpusTokenizer.lowercase(word);
+        if (previous != null && spaces == 1) {
+            long bridgeStart = bridgeTimer.start();
+            String bridgeWord = bridges != null ? lookupBridgeWord(previous, lower) : finder.find(previous, lower);
+            bridgeTimer.stop(bridgeStart);
             if (bridgeWord != null) {
                 poem.append(" ").append(bridgeWord);
             }
-            poem.append(" ").append(words[i + 1]);
         }
+        for (int i = 0; i < spaces; i++) {
+            poem.append(' ');
+        }
+        poem.append(word);
+        return lower;
+    }
+    
+    /**
+     * Generate a poem for each of a batch of inputs, fanning the work out
+     * over the common fork-join pool; see {@link #poems(List, Executor)}.
+     * @param inputs strings from which to create poems
+     * @return the poems, in the order of inputs
+     */
+    public List<String> poems(List<String> inputs) {
+        return poems(inputs, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Generate a poem for each of a stream of inputs, as
+     * {@link #poems(List)} does. The stream is consumed before any poem is
+     * generated, so that every distinct pair of words is resolved once.
+     * @param inputs strings from which to create poems
+     * @return a stream of the poems, in the order of inputs
+     */
+    public Stream<String> poems(Stream<String> inputs) {
+        return poems(inputs.collect(Collectors.toList())).stream();
+    }
+    
+    /**
+     * Generate a poem for each of a batch of inputs. Each poem is exactly
+     * {@code poem(input)}, but each input word is lowercased once, the
+     * bridge for each distinct pair of adjacent words in the whole batch is
+     * searched for once (unless bridges are precomputed, when each pair is
+     * one table lookup anyway), and the work is split into tasks run on
+     * executor. The whole batch sees the affinity graph between two whole
+     * updates.
+     * @param inputs strings from which to create poems
+     * @param executor executor to run the tasks on; this method blocks until
+     *        they have all finished
+     * @return the poems, in the order of inputs
+     */
+    public List<String> poems(List<String> inputs, Executor executor) {
+        long start = batchTimer.start();
+        List<String> poems = bridges != null ? lookUpPoems(inputs, executor) : searchPoems(inputs, executor);
+        batchTimer.stop(start);
+        return poems;
+    }
+    
+    // Generate a batch of poems from the precomputed bridge table
+    private List<String> lookUpPoems(List<String> inputs, Executor executor) {
+        String[] poems = new String[inputs.size()];
+        lock.readLock().lock();
+        try {
+            fanOut(inputs.size(), INPUTS_PER_TASK, executor, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    String[] tokens = split(inputs.get(i));
+                    StringBuilder poem = new StringBuilder(tokens[0]);
+                    Integer previous = ids.get(CorpusTokenizer.lowercase(tokens[0]));
+                    for (int k = 1; k < tokens.length; k++) {
+                        Integer id = ids.get(CorpusTokenizer.lowercase(tokens[k]));
+                        int bridge = previous != null && id != null ? bridges.get(BridgeTable.key(previous, id)) : -1;
+                        if (bridge >= 0) {
+                            poem.append(" ").append(words.get(bridge));
+                        }
+                        poem.append(" ").append(tokens[k]);
+                        previous = id;
+                    }
+                    poems[i] = poem.toString();
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        return Arrays.asList(poems);
+    }
+    
+    // Generate a batch of poems by searching the graph once for each distinct pair of adjacent words
+    private List<String> searchPoems(List<String> inputs, Executor executor) {
+        int n = inputs.size();
+        
+        // tokenize, numbering the distinct lowercase words and adjacent pairs in the batch
+        String[][] tokens = new String[n][];
+        int[][] pairsOf = new int[n][];
+        Map<String, Integer> batchIds = new HashMap<>();
+        List<String> batchWords = new ArrayList<>();
+        BridgeTable pairIds = new BridgeTable(16);
+        long[] pairs = new long[16];
+        int pairCount = 0;
+        for (int i = 0; i < n; i++) {
+            String[] words = split(inputs.get(i));
+            int[] pairIndexes = new int[words.length - 1];
+            int previous = -1;
+            for (int k = 0; k < words.length; k++) {
+                String lower = CorpusTokenizer.lowercase(words[k]);
+                Integer id = batchIds.get(lower);
+                if (id == null) {
+                    id = batchWords.size();
+                    batchIds.put(lower, id);
+                    batchWords.add(lower);
+                }
+                if (k > 0) {
+                    long key = BridgeTable.key(previous, id);
+                    int pair = pairIds.get(key);
+                    if (pair < 0) {
+                        pair = pairCount++;
+                        pairIds.put(key, pair);
+                        if (pair == pairs.length) pairs = Arrays.copyOf(pairs, pair * 2);
+                        pairs[pair] = key;
+                    }
+                    pairIndexes[k - 1] = pair;
+                }
+                previous = id;
+            }
+            tokens[i] = words;
+            pairsOf[i] = pairIndexes;
+        }
+        
+        // bridge each distinct pair once, in chunks that each reuse one finder
+        String[] bridgeOf = new String[pairCount];
+        long[] distinctPairs = pairs;
+        lock.readLock().lock();
+        try {
+            PartitionedGraph partitioned = partitionedGraph();
+            if (partitioned != null) {
+                String[] w1s = new String[pairCount];
+                String[] w2s = new String[pairCount];
+                for (int p = 0; p < pairCount; p++) {
+                    w1s[p] = batchWords.get((int) (distinctPairs[p] >>> 32));
+                    w2s[p] = batchWords.get((int) distinctPairs[p]);
+                }
+                System.arraycopy(findBridges(partitioned, w1s, w2s), 0, bridgeOf, 0, pairCount);
+            } else {
+                fanOut(pairCount, SEARCHES_PER_TASK, executor, (from, to) -> {
+                    BridgeFinder finder = new BridgeFinder(graph, cache, bridgePaths);
+                    for (int p = from; p < to; p++) {
+                        String w1 = batchWords.get((int) (distinctPairs[p] >>> 32));
+                        String w2 = batchWords.get((int) distinctPairs[p]);
+                        bridgeOf[p] = finder.find(w1, w2);
+                    }
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        String[] poems = new String[n];
+        fanOut(n, INPUTS_PER_TASK, executor, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                String[] words = tokens[i];
+                StringBuilder poem = new StringBuilder(words[0]);
+                for (int k = 1; k < words.length; k++) {
+                    String bridgeWord = bridgeOf[pairsOf[i][k - 1]];
+                    if (bridgeWord != null) {
+                        poem.append(" ").append(bridgeWord);
+                    }
+                    poem.append(" ").append(words[k]);
+                }
+                poems[i] = poem.toString();
+            }
+        });
+        return Arrays.asList(poems);
+    }
+    
+    // Split an input into words at single spaces; an input of only spaces gives one empty word
+    private static String[] split(String input) {
+        String[] words = input.split(" ");
+        return words.length > 0 ? words : NO_WORDS;
+    }
+    
+    /**
+     * Work on one range [from, to) of a batch.
+     */
+    private interface RangeTask {
+        void run(int from, int to);
+    }
+    
+    // Split [0, count) into about one chunk per thread of executor, but no chunk smaller than
+    // minChunk; run all but the last chunk on executor and the last on this thread, and wait for all
+    private static void fanOut(int count, int minChunk, Executor executor, RangeTask task) {
+        int parallelism = executor instanceof ForkJoinPool
+                ? ((ForkJoinPool) executor).getParallelism()
+                : Runtime.getRuntime().availableProcessors();
+        int tasks = (int) Math.min(parallelism, (count + (long) minChunk - 1) / minChunk);
+        if (tasks <= 1) {
+            task.run(0, count);
+            return;
+        }
+        int chunk = (count + tasks - 1) / tasks;
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        int from = 0;
+        for (; from + chunk < count; from += chunk) {
+            int start = from;
+            int end = from + chunk;
+            chunks.add(CompletableFuture.runAsync(() -> task.run(start, end), executor));
+        }
+        task.run(from, count);
+        try {
+            CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+            throw e;
+        }
+    }
+    
+    // The graph, if its single-word bridges are found in batches
+    private PartitionedGraph partitionedGraph() {
+        return bridges == null && bridgePaths == null && graph instanceof PartitionedGraph
+                ? (PartitionedGraph) graph : null;
+    }
+    
+    // Find the bridge word of each pair (w1s[p], w2s[p]), or null if it has none, in two batches
+    // of requests to the graph's shards: the targets b of every w1, then the weight of every b -> w2
+    private String[] findBridges(PartitionedGraph partitioned, String[] w1s, String[] w2s) {
+        int n = w1s.length;
+        String[] found = new String[n];
+        boolean[] cached = new boolean[n];
+        Set<String> firsts = new LinkedHashSet<>();
+        for (int p = 0; p < n; p++) {
+            String bridge = cache != null ? cache.get(new BridgeCache.Pair(w1s[p], w2s[p])) : null;
+            if (bridge != null) {
+                cached[p] = true;
+                found[p] = bridge.isEmpty() ? null : bridge;
+            } else {
+                firsts.add(w1s[p]);
+            }
+        }
+        if (firsts.isEmpty()) return found;
         
-        return poem.toString();
+        Map<String, Map<String, Integer>> targets = partitioned.targets(firsts);
+        List<String> candidates = new ArrayList<>();
+        List<String> ends = new ArrayList<>();
+        List<Integer> fromW1 = new ArrayList<>();
+        List<Integer> pairOf = new ArrayList<>();
+        for (int p = 0; p < n; p++) {
+            if (cached[p]) continue;
+            for (Map.Entry<String, Integer> edge : targets.get(w1s[p]).entrySet()) {
+                candidates.add(edge.getKey());
+                ends.add(w2s[p]);
+                fromW1.add(edge.getValue());
+                pairOf.add(p);
+            }
+        }
+        int[] toW2 = partitioned.weights(candidates, ends);
+        int[] maxWeight = new int[n];
+        for (int k = 0; k < toW2.length; k++) {
+            if (toW2[k] == 0) continue;
+            int p = pairOf.get(k);
+            String b = candidates.get(k);
+            int weight = fromW1.get(k) + toW2[k];
+            if (weight > maxWeight[p] || (weight == maxWeight[p] && b.compareTo(found[p]) < 0)) {
+                maxWeight[p] = weight;
+                found[p] = b;
+            }
+        }
+        if (cache != null) {
+            for (int p = 0; p < n; p++) {
+                if (!cached[p]) cache.put(new BridgeCache.Pair(w1s[p], w2s[p]), found[p]);
+            }
+        }
+        return found;
     }
     
-    // Helper method to find the bridge word
-    private String findBridgeWord(String w1, String w2) {
-        Map<String, Integer> adjacencies = graph.getOrDefault(w1, new HashMap<>());
-        int maxWeight = 0;
-        String bridgeWord = null;
+    // Helper method to find the bridge word from the precomputed table
+    private String lookupBridgeWord(String w1, String w2) {
+        Integer id1 = ids.get(w1);
+        Integer id2 = ids.get(w2);
+        if (id1 == null || id2 == null) return null;
+        int bridge = bridges.get(BridgeTable.key(id1, id2));
+        return bridge >= 0 ? words.get(bridge) : null;
+    }
+    
+    /**
+     * Finds the bridge word between pairs of words: the b maximizing
+     * weight(w1 -> b) + weight(b -> w2). Visits the graph in place, so a
+     * search allocates nothing; one finder serves any number of searches by
+     * one thread. If given a cache, a finder looks pairs up there first and
+     * caches what it searches for. If given a path search, a finder instead
+     * finds bridges of several words, joined by single spaces.
+     */
+    private static class BridgeFinder implements ObjIntConsumer<String> {
+        private final Graph<String> graph;
+        private final BridgeCache cache;
+        private final PathSearch<String> paths;
+        private String w2;
+        private String bridgeWord;
+        private int maxWeight;
         
-        for (Map.Entry<String, Integer> entry : adjacencies.entrySet()) {
-            if (entry.getKey().equals(w2)) continue; // skip the direct neighbor
-            int weight = entry.getValue();
-            if (weight > maxWeight) {
+        BridgeFinder(Graph<String> graph, BridgeCache cache, PathSearchBuilder bridgePaths) {
+            this.graph = graph;
+            this.cache = cache;
+            this.paths = bridgePaths != null ? bridgePaths.build(graph) : null;
+        }
+        
+        String find(String w1, String w2) {
+            if (cache == null) return search(w1, w2);
+            BridgeCache.Pair pair = new BridgeCache.Pair(w1, w2);
+            String cached = cache.get(pair);
+            if (cached != null) return cached.isEmpty() ? null : cached;
+            String found = search(w1, w2);
+            cache.put(pair, found);
+            return found;
+        }
+        
+        private String search(String w1, String w2) {
+            if (paths != null) return searchPath(w1, w2);
+            this.w2 = w2;
+            this.bridgeWord = null;
+            this.maxWeight = 0;
+            graph.forEachTarget(w1, this);
+            return bridgeWord;
+        }
+        
+        private String searchPath(String w1, String w2) {
+            PathSearch.Path<String> path = paths.find(w1, w2);
+            if (path == null) return null;
+            List<String> vertices = path.vertices();
+            return String.join(" ", vertices.subList(1, vertices.size() - 1));
+        }
+        
+        // Consider the path w1 -> b -> w2, given the weight of w1 -> b
+        @Override
+        public void accept(String b, int fromW1) {
+            int toW2 = graph.weight(b, w2);
+            if (toW2 == 0) return;
+            int weight = fromW1 + toW2;
+            if (weight > maxWeight || (weight == maxWeight && b.compareTo(bridgeWord) < 0)) {
                 maxWeight = weight;
-                bridgeWord = entry.getKey();
+                bridgeWord = b;
             }
         }
+    }
+    
+    /**
+     * Finds the bridge words for all pairs whose first word has an ID in
+     * [from, to), splitting the range across fork-join workers.
+     */
+    private class BridgeSearch extends RecursiveTask<BridgeList> {
+        private static final long serialVersionUID = 1L;
+        
+        private final int from;
+        private final int to;
+        private final int leafSize;
+        
+        BridgeSearch(int from, int to, int leafSize) {
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
         
-        return bridgeWord;
+        @Override
+        protected BridgeList compute() {
+            if (to - from > leafSize) {
+                int middle = (from + to) >>> 1;
+                BridgeSearch left = new BridgeSearch(from, middle, leafSize);
+                left.fork();
+                BridgeList right = new BridgeSearch(middle, to, leafSize).compute();
+                return left.join().append(right);
+            }
+            
+            BridgeList found = new BridgeList();
+            TwoStepScan scan = new TwoStepScan();
+            for (int w1 = from; w1 < to; w1++) {
+                scan.reachedCount = 0;
+                graph.forEachTarget(words.get(w1), scan.firstStep);
+                for (int i = 0; i < scan.reachedCount; i++) {
+                    int w2 = scan.reached[i];
+                    found.add(BridgeTable.key(w1, w2), scan.bestBridge[w2]);
+                    scan.bestWeight[w2] = 0;
+                }
+            }
+            return found;
+        }
+    }
+    
+    /**
+     * Scratch state of a BridgeSearch leaf: for the current first word w1, the
+     * best bridge found so far to every word reached by a path w1 -> b -> w2.
+     * The visitors are created once per leaf and walk the graph in place.
+     */
+    private class TwoStepScan {
+        final int[] bestWeight = new int[words.size()];
+        final int[] bestBridge = new int[words.size()];
+        final int[] reached = new int[words.size()];
+        int reachedCount;
+        int b;
+        int fromW1;
+        
+        final ObjIntConsumer<String> secondStep = (word, toW2) -> {
+            int w2 = ids.get(word);
+            int weight = fromW1 + toW2;
+            if (bestWeight[w2] == 0) reached[reachedCount++] = w2;
+            if (weight > bestWeight[w2]
+                    || (weight == bestWeight[w2] && words.get(b).compareTo(words.get(bestBridge[w2])) < 0)) {
+                bestWeight[w2] = weight;
+                bestBridge[w2] = b;
+            }
+        };
+        
+        final ObjIntConsumer<String> firstStep = (word, weight) -> {
+            b = ids.get(word);
+            fromW1 = weight;
+            graph.forEachTarget(word, secondStep);
+        };
+    }
+    
+    /**
+     * A growable list of (pair key, bridge ID) entries found by one BridgeSearch.
+     */
+    private static class BridgeList {
+        private long[] keys = new long[16];
+        private int[] bridges = new int[16];
+        private int size = 0;
+        
+        void add(long key, int bridge) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                bridges = Arrays.copyOf(bridges, size * 2);
+            }
+            keys[size] = key;
+            bridges[size] = bridge;
+            size++;
+        }
+        
+        BridgeList append(BridgeList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.keys[i], other.bridges[i]);
+            }
+            return this;
+        }
+        
+        BridgeTable toTable() {
+            BridgeTable table = new BridgeTable(size);
+            for (int i = 0; i < size; i++) {
+                table.put(keys[i], bridges[i]);
+            }
+            return table;
+        }
     }
     
     @Override
     public String toString() {
-        return graph.toString();
+        lock.readLock().lock();
+        try {
+            return graph.toString();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,232 @@
+package poet;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Comparator;
+
+import graph.DurableGraph;
+import graph.Graph;
+import graph.PartitionedGraph;
+import graph.PathSearch;
+import graph.PathSearchBuilder;
+import metrics.Metrics;
+
+/**
+ * Configures how a {@link GraphPoet} loads its corpus and prepares for
+ * generating poems. Obtain one from {@link GraphPoet#builder(File)}; no
+ * option but {@link #maxBridgeWords(int)} and a {@link #memoryBudget(long)}
+ * too small for the corpus changes the poems the poet generates.
+ */
+public final class GraphPoetBuilder {
+
+    private final File corpus;
+    private boolean precomputeBridges = false;
+    private int parallelism = 1;
+    private long memoryBudget = 0;
+    private PartitionedGraph partitioned = null;
+    private DurableGraph<String> durable = null;
+    private Metrics metrics = null;
+    private int cacheSize = 0;
+    private BridgeCache.Policy cachePolicy = null;
+    private int maxBridgeWords = 1;
+    private int maxSearchStates = 1 << 16;
+    private long maxSearchEdgeVisits = 1L << 20;
+
+    GraphPoetBuilder(File corpus) {
+        this.corpus = corpus;
+    }
+
+    /**
+     * Precompute the bridge word for every pair of words that has one.
+     * Ignored if {@link #maxBridgeWords(int)} is above 1.
+     *
+     * @return this builder
+     */
+    public GraphPoetBuilder precomputeBridges() {
+        this.precomputeBridges = true;
+        return this;
+    }
+
+    /**
+     * Cache the bridge words found for recent pairs of input words, so that
+     * pairs that come up again are not searched for again. The poet drops
+     * the cached pairs an update may change; see {@link GraphPoet#bridgeCache()}
+     * for the cache's statistics. Unused if bridges are precomputed, since
+     * each pair is then a table lookup anyway.
+     *
+     * @param maximumSize positive maximum number of cached pairs
+     * @param policy how to choose the pairs to evict
+     * @return this builder
+     */
+    public GraphPoetBuilder bridgeCache(int maximumSize, BridgeCache.Policy policy) {
+        if (maximumSize <= 0) throw new IllegalArgumentException("Maximum size must be positive");
+        this.cacheSize = maximumSize;
+        this.cachePolicy = policy;
+        return this;
+    }
+
+    /**
+     * Allow bridges of up to maxWords words: between input words w1 and w2
+     * the poet inserts the inner words of the heaviest path from w1 to w2
+     * with between two and maxWords + 1 edges and no repeated word. Of paths
+     * of the same weight, the shortest is used, and of those the first in
+     * lexicographic order of their words. Bridges are then never
+     * precomputed, and each one is found by a bidirectional beam search
+     * within the budget set by {@link #bridgeSearchBudget(int, long)}.
+     *
+     * @param maxWords positive maximum number of words in a bridge; 1 (the
+     *        default) gives the poems described in {@link GraphPoet}
+     * @return this builder
+     */
+    public GraphPoetBuilder maxBridgeWords(int maxWords) {
+        if (maxWords <= 0) throw new IllegalArgumentException("Maximum bridge words must be positive");
+        this.maxBridgeWords = maxWords;
+        return this;
+    }
+
+    /**
+     * Bound the search for each bridge of several words, so that a pair of
+     * busy words cannot stall a poem: a search stops at the best bridge found
+     * once it holds maxStates partial paths or has followed maxEdgeVisits
+     * edges. The budget is counted rather than timed, so poems are the same
+     * on any machine. Unused unless {@link #maxBridgeWords(int)} is above 1.
+     *
+     * @param maxStates positive number of partial paths (default 65536)
+     * @param maxEdgeVisits positive number of edges (default 2^20)
+     * @return this builder
+     */
+    public GraphPoetBuilder bridgeSearchBudget(int maxStates, long maxEdgeVisits) {
+        if (maxStates <= 0) throw new IllegalArgumentException("Maximum states must be positive");
+        if (maxEdgeVisits <= 0) throw new IllegalArgumentException("Maximum edge visits must be positive");
+        this.maxSearchStates = maxStates;
+        this.maxSearchEdgeVisits = maxEdgeVisits;
+        return this;
+    }
+
+    /**
+     * Load the corpus with several threads, each counting the adjacencies in
+     * one byte range of the file.
+     *
+     * @param parallelism positive number of threads; 1 loads sequentially
+     * @return this builder
+     */
+    public GraphPoetBuilder parallelism(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Count the corpus's adjacencies within a memory budget. Until the budget
+     * is reached the poet is the same as without one; after that, only the
+     * most frequent adjacencies are kept, with approximate counts, and the
+     * rare ones are dropped. Since a bridge is the heaviest path between two
+     * words, the bridges of frequent words are mostly unchanged, but pairs
+     * connected only through rare adjacencies lose their bridges. Only the
+     * counting is budgeted; every distinct word is still kept. The corpus is
+     * then loaded sequentially, whatever the {@link #parallelism(int)}.
+     *
+     * @param bytes memory for counting adjacencies, at least 1024; each
+     *        adjacency kept costs about 55 bytes
+     * @return this builder
+     */
+    public GraphPoetBuilder memoryBudget(long bytes) {
+        if (bytes < 1024) throw new IllegalArgumentException("Memory budget must be at least 1 KB");
+        this.memoryBudget = bytes;
+        return this;
+    }
+
+    /**
+     * Load the affinity graph into a partitioned graph, whose shards live in
+     * worker processes, rather than into this JVM's heap. Only the corpus's
+     * adjacency counts are held here while loading; the {@link #memoryBudget(long)},
+     * if any, bounds them. The corpus is loaded sequentially, whatever the
+     * {@link #parallelism(int)}, and bridges are never precomputed: the poet
+     * finds each poem's or batch's bridges with two batched requests to each
+     * shard. The poems are the same as those of a poet with a local graph.
+     *
+     * @param graph empty graph, owned by the poet from now on; the caller
+     *        must close it once the poet is no longer used
+     * @return this builder
+     */
+    public GraphPoetBuilder partitionedGraph(PartitionedGraph graph) {
+        this.partitioned = graph;
+        return this;
+    }
+
+    /**
+     * Keep the affinity graph in a durable graph, so that the updates made
+     * with {@link GraphPoet#addText(CharSequence)} and the like survive a
+     * crash. If the graph recovered a previous poet's graph, the corpus is
+     * not read at all; otherwise the corpus is loaded as usual and installed
+     * in the graph with {@link DurableGraph#reset(Graph)}.
+     * Cannot be combined with {@link #partitionedGraph(PartitionedGraph)}.
+     *
+     * @param graph durable graph, owned by the poet from now on; the caller
+     *        must close it once the poet is no longer used
+     * @return this builder
+     */
+    public GraphPoetBuilder durableGraph(DurableGraph<String> graph) {
+        this.durable = graph;
+        return this;
+    }
+
+    /**
+     * Time the poet's work into a set of metrics, with these timers:
+     * <ul><li> "corpusLoad": reading the corpus into the affinity graph
+     *     <li> "bridgePrecompute": precomputing the bridge words, if requested
+     *     <li> "bridgeSearch": finding the bridge word for one pair of input words
+     *     <li> "poem": generating a whole poem, including its bridge searches
+     *     <li> "poemBatch": generating a whole batch of poems with {@code poems}
+     *     <li> "update": adding or removing text </ul>
+     * While the metrics are disabled, the timers cost about one volatile read each.
+     *
+     * @param metrics metrics to record into
+     * @return this builder
+     */
+    public GraphPoetBuilder metrics(Metrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Create the poet.
+     *
+     * @return a new poet with the graph from the corpus
+     * @throws IOException if the corpus file cannot be found or read
+     */
+    public GraphPoet build() throws IOException {
+        if (durable != null && partitioned != null) {
+            throw new IllegalStateException("Cannot combine a durable and a partitioned graph");
+        }
+        Metrics.Timer loadTimer = metrics != null ? metrics.timer("corpusLoad") : Metrics.Timer.NONE;
+        long start = loadTimer.start();
+        AdjacencySketch counts = memoryBudget > 0 ? new AdjacencySketch(memoryBudget) : null;
+        Graph<String> affinities;
+        if (partitioned != null) {
+            CorpusLoader.load(corpus.toPath(), counts, partitioned);
+            affinities = partitioned;
+        } else if (durable != null && durable.recovered()) {
+            affinities = durable;
+        } else {
+            affinities = counts != null
+                    ? CorpusLoader.load(corpus.toPath(), counts)
+                    : parallelism > 1
+                    ? CorpusLoader.loadParallel(corpus.toPath(), parallelism)
+                    : CorpusLoader.load(corpus.toPath());
+            if (durable != null) {
+                durable.reset(affinities);
+                affinities = durable;
+            }
+        }
+        loadTimer.stop(start);
+        BridgeCache cache = cachePolicy != null ? new BridgeCache(cacheSize, cachePolicy) : null;
+        PathSearchBuilder bridgePaths = maxBridgeWords > 1
+                ? PathSearch.builder().edges(2, maxBridgeWords + 1).maxStates(maxSearchStates)
+                        .maxEdgeVisits(maxSearchEdgeVisits).tieBreak(Comparator.<String>naturalOrder())
+                : null;
+        return new GraphPoet(affinities, precomputeBridges && partitioned == null, false, metrics, cache,
+                bridgePaths);
+    }
+}
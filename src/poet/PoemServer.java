@@ -0,0 +1,391 @@
+package poet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import metrics.Metrics;
+
+/**
+ * A local HTTP endpoint serving the poems of a {@link GraphPoet}, built on
+ * the JDK's {@code com.sun.net.httpserver}. It listens on the loopback
+ * address only.
+ *
+ * <p>A request {@code POST /poem} with the input as its UTF-8 body gets the
+ * response 200 with {@code poem(input)} as its UTF-8 body. Other responses:
+ * <ul><li> 404 for any other path, 405 for any other method
+ *     <li> 413 if the input is longer than the server's maximum
+ *     <li> 503, with {@code Retry-After}, if the server is already generating
+ *          as many poems as it allows
+ *     <li> 500 if the poet fails </ul>
+ *
+ * <p>Each request is handled on a thread of its own: a virtual thread when
+ * the runtime has them (Java 21 and later), and otherwise a platform thread
+ * from a pool of bounded size; while every thread of the pool is busy, new
+ * requests are refused with 503 by one more thread. Concurrent requests with
+ * the same input share one generation of the poem, and only requests that
+ * generate a poem count towards the server's limit of poems in flight.
+ *
+ * <p>{@link #swap(GraphPoet)} replaces the poet while the server runs:
+ * requests already generating a poem finish with the old poet, and every
+ * later request uses the new one, so no request is refused or dropped.
+ */
+public final class PoemServer implements Closeable {
+
+    /** Path at which poems are served. */
+    public static final String PATH = "/poem";
+
+    private static final int BACKLOG = 1024;
+    private static final int DRAIN_SECONDS = 5;
+    private static final int READ_CHUNK = 8192;
+    private static final byte[] NO_BODY = {};
+
+    static final String NODELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    private final HttpServer server;
+    private final ExecutorService requests;
+    private final ExecutorService overflow;
+    private final boolean virtualThreads;
+    private final int maxInputBytes;
+    private final Semaphore permits;
+    private volatile Generation current;
+    private volatile boolean closing = false;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final Metrics.Timer requestTimer;
+    private final Metrics.Timer poemTimer;
+
+    // Abstraction function:
+    //   - a running server at server's address serving the poems of current.poet, of
+    //     which current.inFlight maps each input being generated to its poem once done.
+    // Representation invariant:
+    //   - permits has at most maxInFlight permits, less one per poem being generated.
+    //   - every future in an inFlight map is incomplete, or about to be removed.
+    //   - active is the number of requests being handled; closing is true once close
+    //     has been called.
+    // Safety from rep exposure:
+    //   - all fields are private; the poets are shared with the caller on purpose,
+    //     and nothing else is returned.
+    // Thread safety argument:
+    //   - current is volatile, and each request reads it once, so a request sees one
+    //     whole generation; generations and their poets are thread-safe.
+    //   - inFlight is a concurrent map, updated only by atomic putIfAbsent and
+    //     remove(key, value), so exactly one request generates each in-flight input.
+    //   - swap is synchronized, so concurrent swaps each return the poet they replaced.
+    //   - closing is volatile, and close waits on active's monitor, which the last
+    //     request handled notifies after closing is set.
+    //   - permits, coalesced and rejected are thread-safe; server, requests and
+    //     overflow are used according to their own thread safety.
+
+    /**
+     * Get a builder of servers of a poet's poems.
+     *
+     * @param poet poet whose poems to serve
+     * @return a new builder with the default options
+     */
+    public static PoemServerBuilder builder(GraphPoet poet) {
+        return new PoemServerBuilder(poet);
+    }
+
+    PoemServer(GraphPoet poet, int port, int maxInFlight, int maxThreads, int maxInputBytes, boolean noDelay,
+            Metrics metrics) throws IOException {
+        this.current = new Generation(poet);
+        this.maxInputBytes = maxInputBytes;
+        this.permits = new Semaphore(maxInFlight);
+        this.requestTimer = metrics != null ? metrics.timer("request") : Metrics.Timer.NONE;
+        this.poemTimer = metrics != null ? metrics.timer("poemRequest") : Metrics.Timer.NONE;
+        if (noDelay && System.getProperty(NODELAY_PROPERTY) == null) {
+            System.setProperty(NODELAY_PROPERTY, "true");
+        }
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        if (virtual != null) {
+            this.overflow = null;
+            this.requests = virtual;
+        } else {
+            // requests arriving while every pool thread is busy go to the overflow thread, which
+            // refuses them; if even its queue is full, the JDK server closes their connections
+            ThreadPoolExecutor refuser = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(BACKLOG), OverflowThread::new);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(), new DaemonThreads(), (task, executor) -> refuser.execute(task));
+            pool.allowCoreThreadTimeOut(true);
+            this.overflow = refuser;
+            this.requests = pool;
+        }
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        } catch (IOException e) {
+            requests.shutdown();
+            if (overflow != null) overflow.shutdown();
+            throw e;
+        }
+        server.createContext(PATH, this::handle);
+        server.setExecutor(requests);
+        server.start();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor(), if this runtime has it
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // older runtime, or virtual threads are a disabled preview feature
+            return null;
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the address at which the server serves poems
+     */
+    public URI uri() {
+        InetSocketAddress address = server.getAddress();
+        return URI.create("http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + PATH);
+    }
+
+    /**
+     * @return true iff requests are handled on virtual threads
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return the poet whose poems are served to new requests
+     */
+    public GraphPoet poet() {
+        return current.poet;
+    }
+
+    /**
+     * Serve another poet's poems from now on. Requests already generating a
+     * poem finish with the old poet; no request is refused.
+     *
+     * @param poet poet whose poems to serve
+     * @return the poet served until now
+     */
+    public synchronized GraphPoet swap(GraphPoet poet) {
+        if (poet == null) throw new IllegalArgumentException("Poet cannot be null");
+        GraphPoet previous = current.poet;
+        current = new Generation(poet);
+        return previous;
+    }
+
+    /**
+     * @return the number of requests so far that shared a poem generated
+     *         for a concurrent request with the same input
+     */
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of requests so far refused with status 503
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Stop the server. Requests that arrive from now on are refused with
+     * status 503; requests already being handled get a few seconds to finish.
+     */
+    @Override
+    public void close() {
+        closing = true;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_SECONDS);
+        synchronized (active) {
+            for (long left; active.get() > 0 && (left = deadline - System.nanoTime()) > 0; ) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(active, left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        // HttpServer.stop(delay) can wait out its whole delay even when idle, so drain first
+        server.stop(0);
+        requests.shutdown();
+        if (overflow != null) overflow.shutdown();
+        try {
+            requests.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS);
+            if (overflow != null) overflow.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = requestTimer.start();
+        active.incrementAndGet();
+        try {
+            if (Thread.currentThread() instanceof OverflowThread) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "Too many requests");
+            } else if (!PATH.equals(exchange.getRequestURI().getPath())) {
+                respond(exchange, 404, "Not found");
+            } else if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, "Method not allowed");
+            } else {
+                byte[] body = readBody(exchange.getRequestBody());
+                if (body == null) {
+                    respond(exchange, 413, "Input longer than " + maxInputBytes + " bytes");
+                    return;
+                }
+                String poem;
+                try {
+                    poem = poem(new String(body, StandardCharsets.UTF_8));
+                } catch (RejectedExecutionException e) {
+                    rejected.increment();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    respond(exchange, 503, e.getMessage());
+                    return;
+                } catch (RuntimeException e) {
+                    respond(exchange, 500, "Poem failed: " + e);
+                    return;
+                }
+                respond(exchange, 200, poem);
+            }
+        } finally {
+            exchange.close();
+            requestTimer.stop(start);
+            if (active.decrementAndGet() == 0 && closing) {
+                synchronized (active) {
+                    active.notifyAll();
+                }
+            }
+        }
+    }
+
+    // Generate the poem of input, or wait for a concurrent request generating it
+    private String poem(String input) {
+        if (closing) throw new RejectedExecutionException("Server closing");
+        Generation generation = current;
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> leader = generation.inFlight.putIfAbsent(input, mine);
+        if (leader != null) {
+            coalesced.increment();
+            try {
+                return leader.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            if (!permits.tryAcquire()) {
+                throw new RejectedExecutionException("Too many poems in flight");
+            }
+            try {
+                long start = poemTimer.start();
+                String poem = generation.poet.poem(input);
+                poemTimer.stop(start);
+                mine.complete(poem);
+                return poem;
+            } finally {
+                permits.release();
+            }
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            generation.inFlight.remove(input, mine);
+        }
+    }
+
+    // The whole body, or null if it is longer than maxInputBytes
+    private byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] chunk = new byte[READ_CHUNK];
+        for (int read; (read = in.read(chunk)) >= 0; ) {
+            if (body.size() + read > maxInputBytes) return null;
+            body.write(chunk, 0, read);
+        }
+        return body.size() == 0 ? NO_BODY : body.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PoemServer at " + uri() + (virtualThreads ? " on virtual threads" : "");
+    }
+
+    /**
+     * A poet and the inputs being generated with it.
+     */
+    private static final class Generation {
+        private final GraphPoet poet;
+        private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+        Generation(GraphPoet poet) {
+            this.poet = poet;
+        }
+    }
+
+    /**
+     * The thread that refuses requests while every request thread is busy.
+     */
+    private static final class OverflowThread extends Thread {
+        OverflowThread(Runnable task) {
+            super(task, "poem-request-overflow");
+            setDaemon(true);
+        }
+    }
+
+    /**
+     * Names request threads, and keeps them from holding up the JVM's exit.
+     */
+    private static final class DaemonThreads implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "poem-request-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
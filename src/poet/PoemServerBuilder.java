@@ -0,0 +1,124 @@
+package poet;
+
+import java.io.IOException;
+
+import metrics.Metrics;
+
+/**
+ * Configures a {@link PoemServer}. Obtain one from
+ * {@link PoemServer#builder(GraphPoet)}.
+ */
+public final class PoemServerBuilder {
+
+    private final GraphPoet poet;
+    private int port = 0;
+    private int maxInFlight = 256;
+    private int maxThreads = 1024;
+    private int maxInputBytes = 1 << 16;
+    private boolean noDelay = false;
+    private Metrics metrics = null;
+
+    PoemServerBuilder(GraphPoet poet) {
+        if (poet == null) throw new IllegalArgumentException("Poet cannot be null");
+        this.poet = poet;
+    }
+
+    /**
+     * Listen on a port of the loopback address. By default the server
+     * listens on a free port chosen by the system; see {@link PoemServer#port()}.
+     *
+     * @param port port in [0, 65535], where 0 chooses a free port
+     * @return this builder
+     */
+    public PoemServerBuilder port(int port) {
+        if (port < 0 || port > 0xFFFF) throw new IllegalArgumentException("Port out of range");
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Limit the number of distinct poems generated at once; requests that
+     * would generate another are refused with status 503 rather than queued.
+     * Requests for an input already being generated wait for it without
+     * counting towards the limit. Default 256.
+     *
+     * @param maxInFlight positive maximum number of poems generated at once
+     * @return this builder
+     */
+    public PoemServerBuilder maxInFlight(int maxInFlight) {
+        if (maxInFlight <= 0) throw new IllegalArgumentException("Maximum in flight must be positive");
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Limit the number of platform threads handling requests, on runtimes
+     * without virtual threads (before Java 21); while they are all busy,
+     * new requests are refused with status 503. Requests waiting for a poem
+     * in flight hold a thread, so this should exceed the maximum in flight.
+     * Ignored when requests run on virtual threads. Default 1024.
+     *
+     * @param maxThreads positive maximum number of request threads
+     * @return this builder
+     */
+    public PoemServerBuilder maxThreads(int maxThreads) {
+        if (maxThreads <= 0) throw new IllegalArgumentException("Maximum threads must be positive");
+        this.maxThreads = maxThreads;
+        return this;
+    }
+
+    /**
+     * Set TCP_NODELAY on the server's connections. The JDK server writes a
+     * response's headers and body separately, so without it each response
+     * can wait out the client's delayed ACK, about 40 ms.
+     *
+     * <p>The JDK offers this only as the system property
+     * {@code sun.net.httpserver.nodelay}, which this sets unless it is
+     * already set. The property is JVM-wide and read once, when the first
+     * {@code HttpServer} of the JVM starts: it applies to every such server
+     * in the process, and does nothing if another started first.
+     *
+     * @return this builder
+     */
+    public PoemServerBuilder tcpNoDelay() {
+        this.noDelay = true;
+        return this;
+    }
+
+    /**
+     * Limit the size of an input; larger requests are refused with status
+     * 413. Default 64 KB.
+     *
+     * @param maxInputBytes positive maximum number of bytes of an input
+     * @return this builder
+     */
+    public PoemServerBuilder maxInputBytes(int maxInputBytes) {
+        if (maxInputBytes <= 0) throw new IllegalArgumentException("Maximum input bytes must be positive");
+        this.maxInputBytes = maxInputBytes;
+        return this;
+    }
+
+    /**
+     * Time requests. The server records these operations:
+     * <ul><li> "request": handling a request, from reading it to writing its response
+     *     <li> "poemRequest": generating a poem for a request that did not
+     *          join one already in flight </ul>
+     *
+     * @param metrics metrics to record into
+     * @return this builder
+     */
+    public PoemServerBuilder metrics(Metrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Create the server and start listening.
+     *
+     * @return a new running server
+     * @throws IOException if the port cannot be bound
+     */
+    public PoemServer build() throws IOException {
+        return new PoemServer(poet, port, maxInFlight, maxThreads, maxInputBytes, noDelay, metrics);
+    }
+}
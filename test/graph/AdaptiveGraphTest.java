@@ -0,0 +1,60 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class AdaptiveGraphTest extends GraphInstanceTest {
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new AdaptiveGraph<>();
+    }
+
+    @Test
+    public void testSwitchesOnVertexCount() {
+        AdaptiveGraph<Integer> graph = new AdaptiveGraph<>();
+        for (int i = 0; i < AdaptiveGraph.SMALL_MAX_VERTICES; i++) {
+            graph.add(i);
+        }
+        assertTrue("Graph at the vertex threshold should still be compact", graph.isCompact());
+        graph.add(-1);
+        assertFalse("Graph past the vertex threshold should be hashed", graph.isCompact());
+        assertEquals("All vertices should survive the switch",
+                     AdaptiveGraph.SMALL_MAX_VERTICES + 1, graph.vertices().size());
+    }
+
+    @Test
+    public void testSwitchOnEdgeCountPreservesEdges() {
+        AdaptiveGraph<String> graph = new AdaptiveGraph<>();
+        Set<String> view = graph.vertices();
+        String[] labels = { "A", "B", "C", "D", "E", "F" };
+        for (String source : labels) {
+            for (String target : labels) {
+                graph.set(source, target, 1);
+            }
+        }
+        graph.set("A", "B", 9);
+        assertFalse("Graph past the edge threshold should be hashed", graph.isCompact());
+        assertEquals("Earlier vertices() view should see the switched graph", 6, view.size());
+        assertTrue("Earlier vertices() view should see the switched graph", view.contains("F"));
+        assertEquals("Expected every vertex to have 6 targets", 6, graph.targets("C").size());
+        assertEquals("Updating an edge after the switch should return its weight", 9, graph.set("A", "B", 0));
+        assertFalse("Removed edge should be gone from sources", graph.sources("B").containsKey("A"));
+    }
+
+    @Test
+    public void testRemoveInCompactForm() {
+        AdaptiveGraph<String> graph = new AdaptiveGraph<>();
+        graph.set("A", "B", 1);
+        graph.set("B", "C", 2);
+        graph.set("C", "A", 3);
+        assertTrue("Removing vertex B should return true", graph.remove("B"));
+        assertTrue("Small graph should stay compact", graph.isCompact());
+        assertEquals("Expected no targets of A after removing B", Collections.emptyMap(), graph.targets("A"));
+        assertEquals("Edge C -> A should be unaffected", Collections.singletonMap("C", 3), graph.sources("A"));
+    }
+}
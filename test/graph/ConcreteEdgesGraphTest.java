@@ -45,6 +45,35 @@ public class ConcreteEdgesGraphTest extends GraphInstanceTest {
                      Collections.emptyMap(), graph.sources("B"));
     }
 
+    @Test
+    public void testUpdateThenRemoveEdge() {
+        ConcreteEdgesGraph graph = new ConcreteEdgesGraph();
+        graph.set("A", "B", 10);
+        graph.set("A", "B", 20);
+        assertEquals("Removing re-weighted edge A -> B should return previous weight 20", 
+                     20, graph.set("A", "B", 0));
+        assertEquals("Expected no targets of A after edge removal", 
+                     Collections.emptyMap(), graph.targets("A"));
+        assertEquals("Expected no sources of B after edge removal", 
+                     Collections.emptyMap(), graph.sources("B"));
+    }
+
+    @Test
+    public void testRemoveVertexWithIncomingAndOutgoingEdges() {
+        ConcreteEdgesGraph graph = new ConcreteEdgesGraph();
+        graph.set("A", "B", 1);
+        graph.set("B", "C", 2);
+        graph.set("B", "B", 3);
+        graph.set("C", "A", 4);
+        assertTrue("Removing vertex B should return true", graph.remove("B"));
+        assertEquals("Expected no targets of A after removing B", 
+                     Collections.emptyMap(), graph.targets("A"));
+        assertEquals("Expected no sources of C after removing B", 
+                     Collections.emptyMap(), graph.sources("C"));
+        assertEquals("Edge C -> A should be unaffected", 
+                     Collections.singletonMap("C", 4), graph.sources("A"));
+    }
+
     @Test
     public void testToString() {
         ConcreteEdgesGraph graph = new ConcreteEdgesGraph();
@@ -3,6 +3,8 @@ package graph;
 import static org.junit.Assert.*;
 
 import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -57,6 +59,44 @@ public class ConcreteVerticesGraphTest extends GraphInstanceTest {
                      Collections.singletonMap("B", 10), graph.targets("A"));
     }
 
+    @Test
+    public void testSourcesAgreeWithTargets() {
+        ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
+        String[] labels = { "A", "B", "C", "D", "E", "F" };
+        Random random = new Random(6005);
+        for (int i = 0; i < 2000; i++) {
+            String source = labels[random.nextInt(labels.length)];
+            String target = labels[random.nextInt(labels.length)];
+            if (random.nextInt(10) == 0) {
+                graph.remove(source);
+            } else {
+                graph.set(source, target, random.nextInt(4));
+            }
+            assertDirectionsAgree(graph);
+        }
+    }
+
+    // Every edge reported by targets() must be reported by sources() with the same weight, and vice versa
+    private static void assertDirectionsAgree(ConcreteVerticesGraph graph) {
+        int outDegreeSum = 0;
+        int inDegreeSum = 0;
+        for (String vertex : graph.vertices()) {
+            for (Map.Entry<String, Integer> edge : graph.targets(vertex).entrySet()) {
+                assertEquals("sources(" + edge.getKey() + ") should contain " + vertex,
+                             edge.getValue(), graph.sources(edge.getKey()).get(vertex));
+            }
+            for (Map.Entry<String, Integer> edge : graph.sources(vertex).entrySet()) {
+                assertTrue("source " + edge.getKey() + " of " + vertex + " should be a vertex",
+                           graph.vertices().contains(edge.getKey()));
+                assertEquals("targets(" + edge.getKey() + ") should contain " + vertex,
+                             edge.getValue(), graph.targets(edge.getKey()).get(vertex));
+            }
+            outDegreeSum += graph.targets(vertex).size();
+            inDegreeSum += graph.sources(vertex).size();
+        }
+        assertEquals("Total in-degree should equal total out-degree", outDegreeSum, inDegreeSum);
+    }
+
     @Test
     public void testToString() {
         ConcreteVerticesGraph graph = new ConcreteVerticesGraph();
@@ -0,0 +1,169 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class ConcurrentGraphTest extends GraphInstanceTest {
+
+    private static final int THREADS = 8;
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new ConcurrentGraph<>();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveConcurrencyLevel() {
+        new ConcurrentGraph<String>(0);
+    }
+
+    @Test
+    public void testRepInvariantUnderContention() throws Exception {
+        final ConcurrentGraph<String> graph = new ConcurrentGraph<>(THREADS);
+        final String[] labels = new String[20];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = "v" + i;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            tasks.add(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 20000; i++) {
+                    String source = labels[random.nextInt(labels.length)];
+                    String target = labels[random.nextInt(labels.length)];
+                    int op = random.nextInt(20);
+                    if (op == 0) {
+                        graph.remove(source);
+                    } else if (op < 4) {
+                        for (Map.Entry<String, Integer> edge : graph.sources(target).entrySet()) {
+                            assertTrue("Snapshot weights must be positive", edge.getValue() > 0);
+                        }
+                    } else if (op < 7) {
+                        for (String vertex : graph.vertices()) {
+                            assertNotNull("Iterating vertices() must not fail", vertex);
+                        }
+                    } else {
+                        graph.set(source, target, random.nextInt(3));
+                    }
+                }
+                return null;
+            });
+        }
+        tasks.add(() -> {
+            for (int i = 0; i < 200; i++) {
+                graph.checkRep();
+            }
+            return null;
+        });
+        runAll(tasks);
+        graph.checkRep();
+    }
+
+    @Test
+    public void testSetReturnsEachPreviousWeightOnce() throws Exception {
+        // every set on one edge replaces exactly one earlier weight, so the returned
+        // previous weights are 0 plus all written weights but the one left in place
+        final ConcurrentGraph<String> graph = new ConcurrentGraph<>(THREADS);
+        final int perThread = 5000;
+        final List<List<Integer>> returned = new ArrayList<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int base = t * perThread;
+            final List<Integer> mine = new ArrayList<>();
+            returned.add(mine);
+            tasks.add(() -> {
+                for (int i = 1; i <= perThread; i++) {
+                    mine.add(graph.set("A", "B", base + i));
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+
+        Set<Integer> seen = new HashSet<>();
+        for (List<Integer> weights : returned) {
+            for (int weight : weights) {
+                assertTrue("Previous weight " + weight + " returned twice", seen.add(weight));
+            }
+        }
+        int last = graph.targets("A").get("B");
+        assertFalse("Final weight should not have been returned", seen.contains(last));
+        assertTrue("First set should have returned 0", seen.contains(0));
+        assertEquals("Every other written weight should have been returned once",
+                     THREADS * perThread, seen.size());
+        assertEquals("Sources should agree with targets", Collections.singletonMap("A", last), graph.sources("B"));
+    }
+
+    @Test
+    public void testFreezeDuringChanges() throws Exception {
+        final ConcurrentGraph<String> graph = new ConcurrentGraph<>(THREADS);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS - 1; t++) {
+            final long seed = t;
+            tasks.add(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 50000; i++) {
+                    String source = "v" + random.nextInt(200);
+                    String target = "v" + random.nextInt(200);
+                    if (random.nextInt(10) == 0) {
+                        graph.remove(target);
+                    } else {
+                        graph.set(source, target, random.nextInt(3));
+                    }
+                }
+                return null;
+            });
+        }
+        tasks.add(() -> {
+            for (int i = 0; i < 200; i++) {
+                FrozenGraph<String> frozen = graph.freeze();
+                for (String source : frozen.vertices()) {
+                    for (Map.Entry<String, Integer> edge : frozen.targets(source).entrySet()) {
+                        assertTrue("Frozen edge to a missing vertex " + edge.getKey(),
+                                   frozen.vertices().contains(edge.getKey()));
+                        assertEquals("Frozen sources should agree with targets",
+                                     edge.getValue(), frozen.sources(edge.getKey()).get(source));
+                    }
+                }
+            }
+            return null;
+        });
+        runAll(tasks);
+    }
+
+    // Start all tasks together and rethrow the first failure
+    private static void runAll(List<Callable<Void>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
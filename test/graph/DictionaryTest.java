@@ -0,0 +1,109 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class DictionaryTest {
+
+    // Testing strategy:
+    //   - lookup by: UTF-8 byte slice (at offset 0 and inside a larger buffer), CharSequence
+    //   - words: empty, ASCII, 2- and 3-byte UTF-8, surrogate pair, unpaired surrogate
+    //   - size: empty, one word, enough words to grow every array
+    //   - intern from another dictionary: word present, word absent, bad ID
+    //   - word(): valid ID, negative ID, ID past the end
+
+    @Test
+    public void testEmpty() {
+        Dictionary dictionary = new Dictionary();
+        assertEquals("Expected no words", 0, dictionary.size());
+        assertEquals("Expected word absent", -1, dictionary.idOf("a"));
+    }
+
+    @Test
+    public void testInternAssignsDenseIds() {
+        Dictionary dictionary = new Dictionary();
+        assertEquals("Expected first ID", 0, dictionary.intern("to"));
+        assertEquals("Expected second ID", 1, dictionary.intern(new StringBuilder("be")));
+        assertEquals("Expected existing ID", 0, dictionary.intern("to"));
+        assertEquals("Expected two words", 2, dictionary.size());
+        assertEquals("Expected word", "be", dictionary.word(1));
+        assertEquals("Expected ID", 1, dictionary.idOf("be"));
+    }
+
+    @Test
+    public void testByteSlices() {
+        Dictionary dictionary = new Dictionary();
+        byte[] buffer = "xx hello yy".getBytes(StandardCharsets.US_ASCII);
+        int id = dictionary.intern(buffer, 3, 5);
+        assertEquals("Slice and String should match", id, dictionary.idOf("hello"));
+        assertEquals("Expected slice of whole buffer", id,
+                     dictionary.idOf("hello".getBytes(StandardCharsets.US_ASCII), 0, 5));
+        assertEquals("Expected prefix absent", -1, dictionary.idOf(buffer, 3, 4));
+        assertEquals("Expected empty word", 1, dictionary.intern(buffer, 0, 0));
+        assertEquals("Expected empty word", "", dictionary.word(1));
+    }
+
+    @Test
+    public void testUnicode() {
+        Dictionary dictionary = new Dictionary();
+        String[] words = { "\u00e9t\u00e9", "\u6587\u5b57", "\ud83d\ude00", "a\ud800b" };
+        for (String word : words) {
+            int id = dictionary.intern(word);
+            byte[] utf8 = word.getBytes(StandardCharsets.UTF_8);
+            assertEquals("String and UTF-8 should match for " + word, id, dictionary.idOf(utf8, 0, utf8.length));
+        }
+        assertEquals("Expected 2-byte word", words[0], dictionary.word(0));
+        assertEquals("Expected 3-byte word", words[1], dictionary.word(1));
+        assertEquals("Expected surrogate pair", words[2], dictionary.word(2));
+        assertEquals("Expected unpaired surrogate replaced", "a?b", dictionary.word(3));
+        assertEquals("Expected same word after replacement", 3, dictionary.idOf("a?b"));
+    }
+
+    @Test
+    public void testGrowth() {
+        Dictionary dictionary = new Dictionary();
+        int n = 100000;
+        for (int i = 0; i < n; i++) {
+            assertEquals("Expected next ID", i, dictionary.intern("word" + i));
+        }
+        assertEquals("Expected every word", n, dictionary.size());
+        for (int i = 0; i < n; i += 997) {
+            assertEquals("Expected word kept", "word" + i, dictionary.word(i));
+            assertEquals("Expected ID kept", i, dictionary.idOf("word" + i));
+        }
+        assertTrue("Expected bytes counted", dictionary.sizeInBytes() > 8L * n);
+    }
+
+    @Test
+    public void testInternFromOther() {
+        Dictionary first = new Dictionary();
+        Dictionary second = new Dictionary();
+        first.intern("a");
+        first.intern("\u00e9");
+        second.intern("\u00e9");
+        assertEquals("Expected word present", 0, second.intern(first, 1));
+        assertEquals("Expected word added", 1, second.intern(first, 0));
+        assertEquals("Expected copied word", "a", second.word(1));
+        try {
+            second.intern(first, 2);
+            fail("Expected bad ID to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeId() {
+        new Dictionary().word(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIdPastEnd() {
+        Dictionary dictionary = new Dictionary();
+        dictionary.intern("a");
+        dictionary.word(1);
+    }
+}
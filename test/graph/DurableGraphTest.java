@@ -0,0 +1,323 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class DurableGraphTest extends GraphInstanceTest {
+
+    // Testing strategy:
+    //   - recovery: after close, after a crash (the files as they are while open), from a
+    //     checkpoint, a checkpoint and a log tail, a torn last record, a corrupt checkpoint
+    //   - durability window: zero (each change on disk when it returns), positive with sync()
+    //   - batch: changes recovered together or not at all
+    //   - checkpoints: by log size in the background, explicit, by reset, reset with concurrent changes
+    //   - directory: new, already open; labels: Strings (with unpaired surrogates), another type with its codec
+    //   - random operations against ConcreteVerticesGraph, reopened along the way
+
+    private final List<Path> directories = new ArrayList<>();
+    private final List<DurableGraph<?>> opened = new ArrayList<>();
+
+    private Path newDirectory() {
+        try {
+            Path directory = Files.createTempDirectory("durable-graph");
+            directories.add(directory);
+            return directory;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <L> DurableGraph<L> open(DurableGraphBuilder<L> builder) throws IOException {
+        DurableGraph<L> graph = builder.build();
+        opened.add(graph);
+        return graph;
+    }
+
+    @Override
+    public Graph<String> emptyInstance() {
+        try {
+            return open(DurableGraph.builder(newDirectory()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @After
+    public void cleanUp() throws IOException {
+        for (DurableGraph<?> graph : opened) {
+            graph.close();
+        }
+        for (Path directory : directories) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    // The files of an open graph's directory as a crash would leave them, in a new directory
+    private Path crashCopy(Path directory) throws IOException {
+        Path copy = newDirectory();
+        for (Path file : files(directory)) {
+            if (!file.getFileName().toString().equals("lock")) Files.copy(file, copy.resolve(file.getFileName()));
+        }
+        return copy;
+    }
+
+    private static List<Path> files(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> names(Path directory, String prefix) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (Path file : files(directory)) {
+            if (file.getFileName().toString().startsWith(prefix)) names.add(file.getFileName().toString());
+        }
+        return names;
+    }
+
+    @Test
+    public void testRecoversAfterClose() throws IOException {
+        Path directory = newDirectory();
+        DurableGraph<String> graph = open(DurableGraph.builder(directory));
+        assertFalse("Expected a new graph", graph.recovered());
+        graph.set("a", "b", 3);
+        graph.set("b", "c", 1);
+        graph.add("d");
+        graph.remove("c");
+        graph.set("\uD800", "?", 2);
+        graph.close();
+        DurableGraph<String> reopened = open(DurableGraph.builder(directory));
+        assertTrue("Expected a recovered graph", reopened.recovered());
+        assertSameGraph("Recovered graph", graph, reopened);
+    }
+
+    @Test
+    public void testChangesOnDiskWhenTheyReturn() throws IOException {
+        Path directory = newDirectory();
+        DurableGraph<String> graph = open(DurableGraph.builder(directory));
+        for (int i = 0; i < 50; i++) {
+            graph.set("v" + i, "v" + (i + 1), i + 1);
+        }
+        DurableGraph<String> recovered = open(DurableGraph.builder(crashCopy(directory)));
+        assertSameGraph("Recovered graph", graph, recovered);
+    }
+
+    @Test
+    public void testWindowedChangesOnDiskAfterSync() throws IOException {
+        Path directory = newDirectory();
+        DurableGraph<String> graph = open(DurableGraph.builder(directory).durabilityWindow(1, TimeUnit.HOURS));
+        for (int i = 0; i < 50; i++) {
+            graph.set("v" + i, "v" + (i + 1), i + 1);
+        }
+        graph.sync();
+        DurableGraph<String> recovered = open(DurableGraph.builder(crashCopy(directory)));
+        assertSameGraph("Recovered graph", graph, recovered);
+    }
+
+    @Test
+    public void testTornRecordDropped() throws IOException {
+        Path directory = newDirectory();
+        DurableGraph<String> graph = open(DurableGraph.builder(directory));
+        graph.set("a", "b", 1);
+        graph.close();
+        Path log = directory.resolve(names(directory, "wal-").get(0));
+        long whole = Files.size(log);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.APPEND)) {
+            // the start of a record whose length runs past the end of the file
+            channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 40, 2, 1 }));
+        }
+        DurableGraph<String> reopened = open(DurableGraph.builder(directory));
+        assertSameGraph("Recovered graph", graph, reopened);
+        assertEquals("Expected the torn record truncated", whole, Files.size(log));
+        reopened.set("b", "c", 2);
+        reopened.close();
+        assertEquals("Expected later changes recovered", 2, open(DurableGraph.builder(directory)).weight("b", "c"));
+    }
+
+    @Test
+    public void testBatchRecoveredWhole() throws IOException {
+        Path directory = newDirectory();
+        DurableGraph<String> graph = open(DurableGraph.builder(directory));
+        graph.set("a", "b", 1);
+        graph.batch(batch -> {
+            batch.set("b", "c", 2);
+            batch.set("c", "d", 3);
+            batch.remove("a");
+        });
+        assertEquals("Expected the batch applied", Collections.emptyMap(), graph.sources("b"));
+        graph.close();
+
+        // cut the batch record short, as a crash while writing it would
+        Path log = directory.resolve(names(directory, "wal-").get(0));
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        DurableGraph<String> torn = open(DurableGraph.builder(directory));
+        assertEquals("Expected none of the batch", Collections.singletonMap("b", 1), torn.targets("a"));
+        assertEquals("Expected none of the batch", 0, torn.weight("c", "d"));
+    }
+
+    @Test
+    public void testCheckpointsReplaceLog() throws IOException, InterruptedException {
+        Path directory = newDirectory();
+        DurableGraph<String> graph = open(DurableGraph.builder(directory).checkpointBytes(2048)
+                .durabilityWindow(10, TimeUnit.MILLISECONDS));
+        Random random = new Random(6005);
+        for (int i = 0; i < 2000; i++) {
+            graph.set("v" + random.nextInt(100), "v" + random.nextInt(100), 1 + random.nextInt(9));
+        }
+        graph.sync();
+        // no more changes, so no more checkpoints start: wait for the last to finish before copying
+        for (int tries = 0; (names(directory, "checkpoint-").isEmpty() || graph.checkpointing()) && tries < 500;
+                tries++) {
+            Thread.sleep(10);
+        }
+        assertFalse("Expected a background checkpoint", names(directory, "checkpoint-").isEmpty());
+        assertFalse("Expected the background checkpoints finished", graph.checkpointing());
+        DurableGraph<String> recovered = open(DurableGraph.builder(crashCopy(directory)));
+        assertSameGraph("Recovered graph", graph, recovered);
+
+        graph.checkpoint();
+        List<String> checkpoints = names(directory, "checkpoint-");
+        assertEquals("Expected only the latest checkpoint kept", 1, checkpoints.size());
+        int latest = Integer.parseInt(checkpoints.get(0).replaceAll("\\D", ""));
+        for (String log : names(directory, "wal-")) {
+            assertTrue("Expected the log before the checkpoint deleted",
+                       Integer.parseInt(log.replaceAll("\\D", "")) >= latest);
+        }
+        graph.set("tail", "v1", 5);
+        graph.close();
+        DurableGraph<String> reopened = open(DurableGraph.builder(directory));
+        assertSameGraph("Recovered graph", graph, reopened);
+    }
+
+    @Test
+    public void testReset() throws IOException {
+        Path directory = newDirectory();
+        DurableGraph<String> graph = open(DurableGraph.builder(directory));
+        graph.set("old", "edge", 1);
+        Graph<String> rebuilt = Graph.empty();
+        rebuilt.set("new", "edge", 7);
+        graph.reset(rebuilt);
+        assertSameGraph("Reset graph", rebuilt, graph);
+        assertEquals("Expected one checkpoint", 1, names(directory, "checkpoint-").size());
+        DurableGraph<String> recovered = open(DurableGraph.builder(crashCopy(directory)));
+        assertSameGraph("Recovered graph", rebuilt, recovered);
+    }
+
+    @Test
+    public void testResetWithConcurrentChanges() throws Exception {
+        Path directory = newDirectory();
+        DurableGraph<String> graph = open(DurableGraph.builder(directory));
+        graph.set("old", "edge", 1);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 500; i++) {
+                graph.set("w" + (i % 20), "w" + ((i + 1) % 20), 1 + i);
+            }
+        });
+        writer.start();
+        Graph<String> rebuilt = Graph.empty();
+        rebuilt.set("new", "edge", 7);
+        graph.reset(rebuilt);
+        writer.join();
+        assertFalse("Expected the old graph gone", graph.vertices().contains("old"));
+        DurableGraph<String> recovered = open(DurableGraph.builder(crashCopy(directory)));
+        assertSameGraph("Recovered graph", graph, recovered);
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptCheckpoint() throws IOException {
+        Path directory = newDirectory();
+        DurableGraph<String> graph = open(DurableGraph.builder(directory));
+        graph.set("a", "b", 1);
+        graph.checkpoint();
+        graph.close();
+        Path checkpoint = directory.resolve(names(directory, "checkpoint-").get(0));
+        byte[] bytes = Files.readAllBytes(checkpoint);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(checkpoint, bytes);
+        open(DurableGraph.builder(directory));
+    }
+
+    @Test(expected = IOException.class)
+    public void testDirectoryAlreadyOpen() throws IOException {
+        Path directory = newDirectory();
+        open(DurableGraph.builder(directory));
+        open(DurableGraph.builder(directory));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() throws IOException {
+        DurableGraph<String> graph = open(DurableGraph.builder(newDirectory()));
+        graph.close();
+        graph.add("a");
+    }
+
+    @Test
+    public void testLabelCodec() throws IOException {
+        DurableGraph.LabelCodec<Integer> ints = new DurableGraph.LabelCodec<Integer>() {
+            @Override
+            public void write(Integer label, DataOutput out) throws IOException {
+                out.writeInt(label);
+            }
+
+            @Override
+            public Integer read(DataInput in) throws IOException {
+                return in.readInt();
+            }
+        };
+        Path directory = newDirectory();
+        DurableGraph<Integer> graph = open(DurableGraph.builder(directory, ints));
+        graph.set(1, 2, 3);
+        graph.checkpoint();
+        graph.set(2, 1, 4);
+        graph.close();
+        DurableGraph<Integer> reopened = open(DurableGraph.builder(directory, ints));
+        assertEquals("Expected the checkpointed edge", 3, reopened.weight(1, 2));
+        assertEquals("Expected the logged edge", 4, reopened.weight(2, 1));
+    }
+
+    @Test
+    public void testRecoversRandomOperations() throws IOException {
+        Path directory = newDirectory();
+        DurableGraph<String> graph = open(DurableGraph.builder(directory).checkpointBytes(4096)
+                .durabilityWindow(5, TimeUnit.MILLISECONDS));
+        ConcreteVerticesGraph reference = new ConcreteVerticesGraph();
+        Random random = new Random(6005);
+        for (int i = 0; i < 6000; i++) {
+            if (i % 2000 == 1999) {
+                graph.close();
+                graph = open(DurableGraph.builder(directory).checkpointBytes(4096)
+                        .durabilityWindow(5, TimeUnit.MILLISECONDS));
+                assertSameGraph("Reopened graph", reference, graph);
+            }
+            randomOperation(random, reference, graph);
+        }
+        graph.close();
+        assertSameGraph("Recovered graph", reference, open(DurableGraph.builder(directory)));
+    }
+}
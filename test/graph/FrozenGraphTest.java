@@ -0,0 +1,98 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FrozenGraphTest {
+
+    // Testing strategy
+    //   freeze() / copyOf()
+    //     graph: empty, small, random with self loops
+    //     frozen graph: frozen again returns itself
+    //   mutators: add, set, remove all throw
+    //   observers: vertices, sources, targets, weight on present and missing labels
+
+    private static FrozenGraph<String> sample() {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("A", "B", 5);
+        graph.set("A", "C", 2);
+        graph.set("C", "A", 1);
+        graph.add("D");
+        return graph.freeze();
+    }
+
+    @Test
+    public void testEmpty() {
+        FrozenGraph<String> frozen = new ConcreteEdgesGraph().freeze();
+        assertEquals("Expected no vertices", Collections.emptySet(), frozen.vertices());
+        assertEquals("Expected no targets", Collections.emptyMap(), frozen.targets("A"));
+    }
+
+    @Test
+    public void testObservers() {
+        FrozenGraph<String> frozen = sample();
+        assertEquals("Expected 4 vertices", 4, frozen.vertices().size());
+        assertTrue("Expected D to be a vertex", frozen.vertices().contains("D"));
+        assertFalse("Expected E not to be a vertex", frozen.vertices().contains("E"));
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("B", 5);
+        expected.put("C", 2);
+        assertEquals("Targets of A", expected, frozen.targets("A"));
+        assertEquals("Sources of A", Collections.singletonMap("C", 1), frozen.sources("A"));
+        assertEquals("Weight of A -> B", 5, frozen.weight("A", "B"));
+        assertEquals("Weight of B -> A", 0, frozen.weight("B", "A"));
+        assertNull("Missing key should map to null", frozen.targets("A").get("D"));
+        assertEquals("Missing vertex should have no sources", Collections.emptyMap(), frozen.sources("E"));
+    }
+
+    @Test
+    public void testFreezeIsIdempotent() {
+        FrozenGraph<String> frozen = sample();
+        assertSame("Freezing a frozen graph should return it", frozen, frozen.freeze());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testAddThrows() {
+        sample().add("E");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSetThrows() {
+        sample().set("A", "B", 1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testRemoveThrows() {
+        sample().remove("A");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTargetsViewIsReadOnly() {
+        sample().targets("A").put("D", 1);
+    }
+
+    @Test
+    public void testRandomGraph() {
+        Graph<Integer> graph = new HashGraph<>();
+        Random random = new Random(6005);
+        for (int i = 0; i < 5000; i++) {
+            graph.set(random.nextInt(300), random.nextInt(300), random.nextInt(10));
+        }
+        FrozenGraph<Integer> frozen = graph.freeze();
+        assertEquals("Frozen vertices should match", graph.vertices(), frozen.vertices());
+        for (Integer vertex : graph.vertices()) {
+            assertEquals("Targets of " + vertex, graph.targets(vertex), frozen.targets(vertex));
+            assertEquals("Sources of " + vertex, graph.sources(vertex), frozen.sources(vertex));
+            for (Map.Entry<Integer, Integer> edge : graph.targets(vertex).entrySet()) {
+                assertEquals("Weight of edge from " + vertex,
+                             (int) edge.getValue(), frozen.weight(vertex, edge.getKey()));
+            }
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package graph;
 
 import static org.junit.Assert.*;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
 import org.junit.Test;
 
 public abstract class GraphInstanceTest {
@@ -9,6 +14,39 @@ public abstract class GraphInstanceTest {
     // Each subclass will provide a specific graph implementation instance
     public abstract Graph<String> emptyInstance();
 
+    /**
+     * Assert that two graphs have the same vertices, and the same edges from
+     * and to each vertex.
+     */
+    static void assertSameGraph(String message, Graph<String> expected, Graph<String> actual) {
+        assertEquals(message + ": vertices", expected.vertices(), actual.vertices());
+        for (String vertex : expected.vertices()) {
+            assertEquals(message + ": targets of " + vertex,
+                         new HashMap<>(expected.targets(vertex)), new HashMap<>(actual.targets(vertex)));
+            assertEquals(message + ": sources of " + vertex,
+                         new HashMap<>(expected.sources(vertex)), new HashMap<>(actual.sources(vertex)));
+        }
+    }
+
+    /**
+     * Apply one random add, remove or set over 60 vertices to two graphs,
+     * asserting that they return the same result.
+     */
+    static void randomOperation(Random random, Graph<String> reference, Graph<String> graph) {
+        String source = "v" + random.nextInt(60);
+        String target = "v" + random.nextInt(60);
+        int op = random.nextInt(100);
+        if (op == 0) {
+            assertEquals("remove(" + source + ")", reference.remove(source), graph.remove(source));
+        } else if (op == 1) {
+            assertEquals("add(" + source + ")", reference.add(source), graph.add(source));
+        } else {
+            int weight = random.nextInt(3);
+            assertEquals("set(" + source + ", " + target + ")",
+                         reference.set(source, target, weight), graph.set(source, target, weight));
+        }
+    }
+
     @Test(expected = AssertionError.class)
     public void testAssertionsEnabled() {
         assert false; // Ensure assertions are enabled with VM argument: -ea
@@ -54,6 +92,27 @@ public abstract class GraphInstanceTest {
                      Collections.singletonMap("A", 10), graph.sources("B"));
     }
 
+    @Test
+    public void testFreezeMatchesGraph() {
+        Graph<String> graph = emptyInstance();
+        graph.set("A", "B", 1);
+        graph.set("B", "C", 2);
+        graph.set("C", "A", 3);
+        graph.set("C", "C", 4);
+        graph.add("D");
+        Graph<String> frozen = graph.freeze();
+        assertEquals("Frozen vertices should match", graph.vertices(), frozen.vertices());
+        for (String vertex : graph.vertices()) {
+            assertEquals("Frozen targets of " + vertex + " should match",
+                         new HashMap<>(graph.targets(vertex)), new HashMap<>(frozen.targets(vertex)));
+            assertEquals("Frozen sources of " + vertex + " should match",
+                         new HashMap<>(graph.sources(vertex)), new HashMap<>(frozen.sources(vertex)));
+        }
+        graph.set("A", "B", 0);
+        assertEquals("Frozen graph should not see later changes",
+                     Collections.singletonMap("B", 1), new HashMap<>(frozen.targets("A")));
+    }
+
     @Test
     public void testTargets() {
         Graph<String> graph = emptyInstance();
@@ -63,4 +122,57 @@ public abstract class GraphInstanceTest {
         assertEquals("Expected target B with weight 10", 
                      Collections.singletonMap("B", 10), graph.targets("A"));
     }
+
+    @Test
+    public void testVisitorsMatchMaps() {
+        Graph<String> graph = emptyInstance();
+        graph.set("A", "B", 1);
+        graph.set("A", "C", 5);
+        graph.set("C", "A", 3);
+        graph.set("C", "C", 4);
+        graph.add("D");
+        for (Graph<String> g : Arrays.asList(graph, graph.freeze())) {
+            for (String vertex : Arrays.asList("A", "B", "C", "D", "E")) {
+                Map<String, Integer> targets = new HashMap<>();
+                g.forEachTarget(vertex, (target, weight) -> assertNull("Target visited twice", targets.put(target, weight)));
+                assertEquals("Visited targets of " + vertex, new HashMap<>(g.targets(vertex)), targets);
+                Map<String, Integer> sources = new HashMap<>();
+                g.forEachSource(vertex, (source, weight) -> assertNull("Source visited twice", sources.put(source, weight)));
+                assertEquals("Visited sources of " + vertex, new HashMap<>(g.sources(vertex)), sources);
+                for (String other : Arrays.asList("A", "B", "C", "D", "E")) {
+                    assertEquals("Weight of " + vertex + " -> " + other,
+                                 g.targets(vertex).getOrDefault(other, 0).intValue(), g.weight(vertex, other));
+                }
+            }
+            assertEquals("Heaviest target of A", "C", g.maxWeightTarget("A"));
+            assertEquals("Heaviest target of C", "C", g.maxWeightTarget("C"));
+            assertNull("No targets of D", g.maxWeightTarget("D"));
+            assertNull("No vertex E", g.maxWeightTarget("E"));
+        }
+    }
+
+    @Test
+    public void testUnpairedSurrogateLabels() {
+        Graph<String> graph = emptyInstance();
+        assertTrue("Adding a lone high surrogate should return true", graph.add("\uD800"));
+        assertTrue("Adding '?' should return true", graph.add("?"));
+        assertTrue("Adding a lone low surrogate should return true", graph.add("x\uDC00"));
+        graph.set("\uD800", "x\uDC00", 2);
+        assertEquals("Labels should be kept exactly",
+                     new HashSet<>(Arrays.asList("\uD800", "?", "x\uDC00")), graph.vertices());
+        assertEquals("Expected the edge between surrogate labels",
+                     Collections.singletonMap("x\uDC00", 2), new HashMap<>(graph.targets("\uD800")));
+        assertEquals("Expected no edges from '?'", Collections.emptyMap(), new HashMap<>(graph.targets("?")));
+    }
+
+    @Test
+    public void testMatchesConcreteVerticesGraph() {
+        Graph<String> graph = emptyInstance();
+        ConcreteVerticesGraph reference = new ConcreteVerticesGraph();
+        Random random = new Random(6005);
+        for (int i = 0; i < 5000; i++) {
+            randomOperation(random, reference, graph);
+        }
+        assertSameGraph("Random operations", reference, graph);
+    }
 }
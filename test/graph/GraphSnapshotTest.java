@@ -0,0 +1,173 @@
+package graph;
+
+import static graph.GraphInstanceTest.assertSameGraph;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GraphSnapshotTest {
+
+    // Testing strategy
+    //   write() then map() / read()
+    //     graph: empty, isolated vertices, self loops, non-ASCII labels, unpaired surrogates, random
+    //     into: ConcreteVerticesGraph
+    //   map() on bad files: wrong magic, corrupt header, truncated
+    //   verifyChecksum(): intact body, corrupt body, corrupt byte in each section and padding
+    //   MappedGraph mutators throw
+    //   mappable(): largest mappable graphs, each section at its limit
+
+    private static Path temp() throws IOException {
+        File file = File.createTempFile("graph", ".snapshot");
+        file.deleteOnExit();
+        return file.toPath();
+    }
+
+    private static void corrupt(Path file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xFF);
+        }
+    }
+
+    @Test
+    public void testEmptyGraph() throws IOException {
+        Path file = temp();
+        GraphSnapshot.write(new ConcreteVerticesGraph(), file);
+        MappedGraph mapped = GraphSnapshot.map(file);
+        assertEquals("Expected no vertices", Collections.emptySet(), mapped.vertices());
+        assertEquals("Expected no targets", Collections.emptyMap(), mapped.targets("A"));
+        assertTrue("Checksum should match", mapped.verifyChecksum());
+    }
+
+    @Test
+    public void testSmallGraph() throws IOException {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("b", "a", 3);
+        graph.set("a", "b", 1);
+        graph.set("a", "a", 2);
+        graph.set("\u00e9t\u00e9", "a", 7);
+        graph.set("\uD800", "?", 5);
+        graph.add("z");
+        Path file = temp();
+        GraphSnapshot.write(graph, file);
+
+        MappedGraph mapped = GraphSnapshot.map(file);
+        assertSameGraph("Mapped graph", graph, mapped);
+        assertEquals("Weight lookup through the view", 7, (int) mapped.sources("a").get("\u00e9t\u00e9"));
+        assertFalse("Missing label should not be a vertex", mapped.vertices().contains("y"));
+        assertNull("Missing edge should map to null", mapped.targets("b").get("z"));
+        assertEquals("Weight without a map", 3, mapped.weight("b", "a"));
+        assertEquals("Heaviest target of a", "a", mapped.maxWeightTarget("a"));
+        Map<String, Integer> visited = new HashMap<>();
+        mapped.forEachSource("a", visited::put);
+        assertEquals("Visited sources of a", new HashMap<>(graph.sources("a")), visited);
+
+        ConcreteVerticesGraph copy = new ConcreteVerticesGraph();
+        GraphSnapshot.read(file, copy);
+        assertSameGraph("Graph read into ConcreteVerticesGraph", graph, copy);
+    }
+
+    @Test
+    public void testRandomGraph() throws IOException {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        Random random = new Random(6005);
+        for (int i = 0; i < 5000; i++) {
+            graph.set("w" + random.nextInt(400), "w" + random.nextInt(400), random.nextInt(20));
+        }
+        Path file = temp();
+        GraphSnapshot.write(graph, file);
+        MappedGraph mapped = GraphSnapshot.map(file);
+        assertTrue("Checksum should match", mapped.verifyChecksum());
+        assertSameGraph("Mapped graph", graph, mapped);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMappedGraphImmutable() throws IOException {
+        Path file = temp();
+        GraphSnapshot.write(new ConcreteVerticesGraph(), file);
+        GraphSnapshot.map(file).add("A");
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrongMagic() throws IOException {
+        Path file = temp();
+        GraphSnapshot.write(new ConcreteVerticesGraph(), file);
+        corrupt(file, 0);
+        GraphSnapshot.map(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptHeader() throws IOException {
+        Path file = temp();
+        GraphSnapshot.write(new ConcreteVerticesGraph(), file);
+        corrupt(file, 9);
+        GraphSnapshot.map(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("a", "b", 1);
+        Path file = temp();
+        GraphSnapshot.write(graph, file);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 4);
+        }
+        GraphSnapshot.map(file);
+    }
+
+    @Test
+    public void testCorruptAnyBodyByte() throws IOException {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("a", "b", 1);
+        Path file = temp();
+        GraphSnapshot.write(graph, file);
+        long length = file.toFile().length();
+        for (long position = GraphSnapshot.HEADER_SIZE; position < length; position++) {
+            corrupt(file, position);
+            assertFalse("Checksum should not match with byte " + position + " corrupt",
+                        GraphSnapshot.map(file).verifyChecksum());
+            corrupt(file, position);
+        }
+        assertTrue("Checksum should match once restored", GraphSnapshot.map(file).verifyChecksum());
+    }
+
+    @Test
+    public void testCorruptBody() throws IOException {
+        Graph<String> graph = new ConcreteVerticesGraph();
+        graph.set("a", "b", 1);
+        Path file = temp();
+        GraphSnapshot.write(graph, file);
+        corrupt(file, GraphSnapshot.HEADER_SIZE + 13);
+        assertFalse("Checksum should not match", GraphSnapshot.map(file).verifyChecksum());
+        try {
+            GraphSnapshot.read(file, new ConcreteVerticesGraph());
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSectionsFitOneMappingEach() {
+        assertTrue("Snapshot of 200 million edges should be mappable",
+                   GraphSnapshot.mappable(1000, 4000, 200_000_000));
+        assertTrue("Snapshot of Integer.MAX_VALUE / 8 edges should be mappable",
+                   GraphSnapshot.mappable(0, 0, Integer.MAX_VALUE / 8));
+        assertFalse("Snapshot of Integer.MAX_VALUE / 8 + 1 edges should not be mappable",
+                    GraphSnapshot.mappable(0, 0, Integer.MAX_VALUE / 8 + 1));
+        assertFalse("Snapshot of 2 GB of labels should not be mappable",
+                    GraphSnapshot.mappable(1, Integer.MAX_VALUE + 1L, 0));
+    }
+}
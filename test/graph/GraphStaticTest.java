@@ -5,7 +5,9 @@ package graph;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -21,6 +23,10 @@ public class GraphStaticTest {
     //   empty()
     //     no inputs, only output is empty graph
     //     observe with vertices()
+    //     vertex label type: String, Integer
+    //   builder()
+    //     hints: none, expected size, read-mostly, concurrent
+    //     observe with vertices(), set(), sources(), targets()
     
     @Test(expected=AssertionError.class)
     public void testAssertionsEnabled() {
@@ -33,6 +39,48 @@ public class GraphStaticTest {
                 Collections.emptySet(), Graph.empty().vertices());
     }
     
-    // TODO test other vertex label types in Problem 3.2
+    @Test
+    public void testEmptyIntegerLabels() {
+        Graph<Integer> graph = Graph.empty();
+        assertEquals("Initial set should return 0", 0, graph.set(1, 2, 5));
+        assertEquals("Expected target 2 with weight 5",
+                Collections.singletonMap(2, 5), graph.targets(1));
+        assertEquals("Expected source 1 with weight 5",
+                Collections.singletonMap(1, 5), graph.sources(2));
+    }
+    
+    @Test
+    public void testEmptyInstancesIndependent() {
+        Graph<String> first = Graph.empty();
+        Graph<String> second = Graph.empty();
+        first.add("A");
+        assertEquals("expected a fresh empty() graph to have no vertices",
+                Collections.emptySet(), second.vertices());
+    }
+    
+    @Test
+    public void testBuilderHints() {
+        List<Graph<String>> graphs = Arrays.asList(
+                Graph.builder().<String>build(),
+                Graph.builder().expectedVertices(100000).expectedEdges(1000000).<String>build(),
+                Graph.builder().readMostly().<String>build(),
+                Graph.builder().concurrent().<String>build());
+        for (Graph<String> graph : graphs) {
+            assertEquals("expected built graph to have no vertices",
+                    Collections.emptySet(), graph.vertices());
+            graph.set("A", "B", 3);
+            assertEquals("Updating should return old weight", 3, graph.set("A", "B", 4));
+            assertEquals("Expected source A with weight 4",
+                    Collections.singletonMap("A", 4), graph.sources("B"));
+            assertTrue("Removing vertex A should return true", graph.remove("A"));
+            assertEquals("Expected no sources of B after removing A",
+                    Collections.emptyMap(), graph.sources("B"));
+        }
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testBuilderRejectsNegativeHint() {
+        Graph.builder().expectedVertices(-1);
+    }
     
 }
@@ -0,0 +1,96 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class GraphsTest {
+
+    // Testing strategy
+    //   addWeight()
+    //     delta: positive, zero, negative
+    //     edge: absent, present; result: removed, kept, negative or overflow (rejected)
+    //   sum()
+    //     graphs: disjoint, overlapping edges, isolated vertices, same graph
+
+    @Test
+    public void testAddWeightCreatesAndIncrements() {
+        Graph<String> graph = Graph.empty();
+        assertEquals("Adding to a missing edge should create it", 3, Graphs.addWeight(graph, "A", "B", 3));
+        assertEquals("Adding to an edge should increment it", 5, Graphs.addWeight(graph, "A", "B", 2));
+        assertEquals("Adding zero should report the weight", 5, Graphs.addWeight(graph, "A", "B", 0));
+        assertEquals("Expected weight 5", Collections.singletonMap("B", 5), graph.targets("A"));
+    }
+
+    @Test
+    public void testAddWeightNegative() {
+        Graph<String> graph = Graph.empty();
+        graph.set("A", "B", 5);
+        assertEquals("Subtracting should decrement", 2, Graphs.addWeight(graph, "A", "B", -3));
+        assertEquals("Subtracting the whole weight should remove the edge", 0, Graphs.addWeight(graph, "A", "B", -2));
+        assertEquals("Expected no edge", Collections.emptyMap(), graph.targets("A"));
+    }
+
+    @Test
+    public void testAddWeightBelowZeroRejected() {
+        Graph<String> graph = Graph.empty();
+        graph.set("A", "B", 1);
+        try {
+            Graphs.addWeight(graph, "A", "B", -2);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Rejected change should leave the edge", Collections.singletonMap("B", 1), graph.targets("A"));
+        }
+    }
+
+    @Test
+    public void testAddWeightRejectedLeavesGraph() {
+        Graph<String> graph = Graph.empty();
+        try {
+            Graphs.addWeight(graph, "A", "B", -1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Rejected change should add no vertices", Collections.emptySet(), graph.vertices());
+        }
+        graph.set("A", "B", Integer.MAX_VALUE - 1);
+        try {
+            Graphs.addWeight(graph, "A", "B", 2);
+            fail("Expected ArithmeticException");
+        } catch (ArithmeticException e) {
+            assertEquals("Overflowing change should leave the edge",
+                         Collections.singletonMap("B", Integer.MAX_VALUE - 1), graph.targets("A"));
+        }
+    }
+
+    @Test
+    public void testSum() {
+        Graph<String> into = Graph.empty();
+        into.set("A", "B", 1);
+        into.set("B", "C", 2);
+        Graph<String> from = Graph.empty();
+        from.set("A", "B", 4);
+        from.set("C", "A", 3);
+        from.add("D");
+        Graphs.sum(into, from);
+
+        assertEquals("Vertices should be the union", new HashSet<>(Arrays.asList("A", "B", "C", "D")), into.vertices());
+        Map<String, Integer> sourcesOfB = new HashMap<>();
+        sourcesOfB.put("A", 5);
+        assertEquals("Shared edge weights should add", sourcesOfB, into.sources("B"));
+        assertEquals("Edges only in into should be kept", Collections.singletonMap("C", 2), into.targets("B"));
+        assertEquals("Edges only in from should be added", Collections.singletonMap("A", 3), into.targets("C"));
+        assertEquals("from should not be modified", Collections.singletonMap("B", 4), from.targets("A"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSumIntoSelfRejected() {
+        Graph<String> graph = Graph.empty();
+        Graphs.sum(graph, graph);
+    }
+}
@@ -0,0 +1,26 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class HashGraphTest extends GraphInstanceTest {
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new HashGraph<>();
+    }
+
+    @Test
+    public void testSelfLoopRemovedWithVertex() {
+        HashGraph<String> graph = new HashGraph<>();
+        graph.set("A", "A", 2);
+        graph.set("A", "B", 3);
+        assertEquals("Self loop should be its own source", Collections.singletonMap("A", 2), graph.sources("A"));
+        assertTrue("Removing vertex A should return true", graph.remove("A"));
+        assertEquals("Expected no sources of B after removing A", Collections.emptyMap(), graph.sources("B"));
+        assertEquals("Expected only B to remain", Collections.singleton("B"), graph.vertices());
+    }
+}
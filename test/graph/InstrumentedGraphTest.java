@@ -0,0 +1,41 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import metrics.Metrics;
+
+/**
+ * Tests for InstrumentedGraph.
+ */
+public class InstrumentedGraphTest extends GraphInstanceTest {
+
+    // Testing strategy
+    //   Graph operations: GraphInstanceTest, over a decorated ConcreteVerticesGraph
+    //   timers: one count per call while enabled, none while disabled
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new InstrumentedGraph<>(new ConcreteVerticesGraph(), new Metrics("test"));
+    }
+
+    @Test
+    public void testCountsCalls() {
+        Metrics metrics = new Metrics("test-counts");
+        Graph<String> graph = new InstrumentedGraph<>(new ConcreteVerticesGraph(), metrics);
+        graph.set("A", "B", 1);
+        graph.set("B", "C", 2);
+        graph.targets("A");
+        metrics.setEnabled(false);
+        graph.targets("B");
+        graph.remove("A");
+        assertEquals("Expected two timed sets", 2, metrics.snapshot().get("set").getCount());
+        assertEquals("Expected one timed targets", 1, metrics.snapshot().get("targets").getCount());
+        assertEquals("Expected no timed removes", 0, metrics.snapshot().get("remove").getCount());
+        assertEquals("Decorator should show the graph", "[B, C]",
+                     new TreeSet<>(graph.vertices()).toString());
+    }
+}
@@ -0,0 +1,87 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class IntGraphTest extends GraphInstanceTest {
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new IntGraph();
+    }
+
+    @Test
+    public void testPrimitiveAccessors() {
+        IntGraph graph = new IntGraph();
+        graph.set("A", "B", 10);
+        graph.set("A", "C", 5);
+        int a = graph.idOf("A");
+        int b = graph.idOf("B");
+        int c = graph.idOf("C");
+        assertEquals("Label of A's ID should be A", "A", graph.labelOf(a));
+        assertEquals("Expected weight of A -> B", 10, graph.weightOf(a, b));
+        assertEquals("Expected no edge B -> A", 0, graph.weightOf(b, a));
+
+        int[] targets = graph.targetsOf(a);
+        Arrays.sort(targets);
+        int[] expected = { b, c };
+        Arrays.sort(expected);
+        assertArrayEquals("Targets of A should be B and C", expected, targets);
+        assertArrayEquals("Sources of C should be A", new int[] { a }, graph.sourcesOf(c));
+        assertEquals("Missing label should have ID -1", -1, graph.idOf("D"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRemovedIdRejected() {
+        IntGraph graph = new IntGraph();
+        graph.add("A");
+        int a = graph.idOf("A");
+        graph.remove("A");
+        graph.targetsOf(a);
+    }
+
+    @Test
+    public void testIdReusedAfterRemove() {
+        IntGraph graph = new IntGraph();
+        graph.set("A", "B", 1);
+        graph.set("B", "B", 2);
+        int b = graph.idOf("B");
+        graph.remove("B");
+        graph.add("C");
+        assertEquals("Removed ID should be reused", b, graph.idOf("C"));
+        assertEquals("New vertex must not inherit edges", 0, graph.weightOf(graph.idOf("A"), b));
+        assertEquals("New vertex must not inherit edges", Collections.emptyMap(), graph.sources("C"));
+    }
+
+    @Test
+    public void testRowsGrowAndShrink() {
+        IntGraph graph = new IntGraph();
+        for (int i = 0; i < 100; i++) {
+            graph.set("hub", "t" + i, i + 1);
+            graph.set("s" + i, "hub", 1);
+        }
+        assertEquals("Expected every target", 100, graph.targetsOf(graph.idOf("hub")).length);
+        assertEquals("Expected every source", 100, graph.sourcesOf(graph.idOf("hub")).length);
+        for (int i = 0; i < 100; i += 2) {
+            graph.set("hub", "t" + i, 0);
+            graph.remove("s" + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Weight of hub -> t" + i, i % 2 == 0 ? 0 : i + 1, graph.weight("hub", "t" + i));
+            assertEquals("Weight of s" + i + " -> hub", i % 2 == 0 ? 0 : 1, graph.weight("s" + i, "hub"));
+        }
+        assertEquals("Heaviest target of hub", "t99", graph.maxWeightTarget("hub"));
+        for (int i = 1; i < 100; i += 2) {
+            graph.set("hub", "t" + i, 0);
+            graph.set("s" + i, "hub", 0);
+        }
+        assertEquals("Expected no targets left", 0, graph.targetsOf(graph.idOf("hub")).length);
+        assertEquals("Expected no sources left", Collections.emptyMap(), graph.sources("hub"));
+        assertEquals("Emptied rows can grow again", 0, graph.set("hub", "t0", 3));
+        assertEquals("Expected the new edge", Collections.singletonMap("t0", 3), graph.targets("hub"));
+    }
+}
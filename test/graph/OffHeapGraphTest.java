@@ -0,0 +1,105 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class OffHeapGraphTest extends GraphInstanceTest {
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new OffHeapGraph();
+    }
+
+    @Test
+    public void testUnicodeLabels() {
+        try (OffHeapGraph graph = new OffHeapGraph()) {
+            graph.set("\u00e9t\u00e9", "\u6587\u5b57", 3);
+            graph.set("\u6587\u5b57", "", 1);
+            assertEquals("Expected edge between unicode labels", 3, graph.weight("\u00e9t\u00e9", "\u6587\u5b57"));
+            assertEquals("Expected edge to empty label", Collections.singletonMap("", 1), graph.targets("\u6587\u5b57"));
+            assertTrue("Expected empty label", graph.vertices().contains(""));
+        }
+    }
+
+    @Test
+    public void testHubLargerThanChunk() {
+        try (OffHeapGraph graph = new OffHeapGraph()) {
+            int edges = 200000;
+            for (int i = 0; i < edges; i++) {
+                graph.set("hub", "w" + i, 1 + i % 7);
+            }
+            assertEquals("Expected every target", edges, graph.targets("hub").size());
+            assertEquals("Expected heaviest weight", 7, graph.weight("hub", graph.maxWeightTarget("hub")));
+            for (int i = 0; i < edges; i += 2) {
+                graph.remove("w" + i);
+            }
+            assertEquals("Expected odd targets left", edges / 2, graph.targets("hub").size());
+            assertEquals("Expected edge kept", 2, graph.weight("hub", "w1"));
+            assertEquals("Expected edge removed", 0, graph.weight("hub", "w2"));
+            long bytes = graph.offHeapBytes();
+            assertTrue("Hub should need off-heap memory: " + bytes, bytes > 1 << 20);
+            assertTrue("Expected hub removed", graph.remove("hub"));
+            assertTrue("Freeing the hub's table should release memory", graph.offHeapBytes() < bytes);
+        }
+    }
+
+    @Test
+    public void testFreedSpaceIsReused() {
+        try (OffHeapGraph graph = new OffHeapGraph()) {
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 10000; i++) {
+                    graph.set("s" + (i % 100), "t" + i, 1);
+                }
+                for (int i = 0; i < 100; i++) {
+                    graph.remove("s" + i);
+                }
+                for (int i = 0; i < 10000; i++) {
+                    graph.remove("t" + i);
+                }
+                assertEquals("Expected empty graph", 0, graph.vertices().size());
+            }
+            assertTrue("Repeated rounds should reuse space: " + graph.offHeapBytes(), graph.offHeapBytes() <= 4 << 20);
+        }
+    }
+
+    @Test
+    public void testVerticesView() {
+        try (OffHeapGraph graph = new OffHeapGraph()) {
+            graph.add("A");
+            graph.set("B", "C", 1);
+            graph.remove("B");
+            graph.add("D");
+            Set<String> vertices = new HashSet<>();
+            for (String vertex : graph.vertices()) {
+                assertTrue("Vertex iterated twice: " + vertex, vertices.add(vertex));
+            }
+            assertEquals("Expected live vertices", new HashSet<>(Arrays.asList("A", "C", "D")), vertices);
+        }
+    }
+
+    @Test
+    public void testCloseFreesGraph() {
+        OffHeapGraph graph = new OffHeapGraph();
+        graph.set("A", "B", 1);
+        graph.close();
+        graph.close();
+        try {
+            graph.weight("A", "B");
+            fail("Expected closed graph to reject use");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            graph.add("C");
+            fail("Expected closed graph to reject use");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
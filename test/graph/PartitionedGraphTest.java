@@ -0,0 +1,261 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PartitionedGraphTest extends GraphInstanceTest {
+
+    // Testing strategy:
+    //   - workers: launched by the graph, connected to while running
+    //   - vertices: on one shard, on different shards; edges within and across shards
+    //   - batches: targets, weights and setAll, each one request per shard involved
+    //   - graph name: shared by two graphs, distinct; shard count disagreeing with the workers'
+    //   - close: launched workers shut down, running workers left for other graphs
+    //   - errors: worker closes the connection after one; graph unusable after one, even with
+    //     a pipelined reply left unread
+
+    private static final int SHARDS = 3;
+    // workers shared by the tests, launched by the first test that needs them
+    private static List<InetSocketAddress> workers;
+    private static int graphs = 0;
+
+    private final List<PartitionedGraph> opened = new ArrayList<>();
+
+    private static synchronized List<InetSocketAddress> workers() {
+        if (workers == null) {
+            List<InetSocketAddress> addresses = new ArrayList<>();
+            try {
+                for (int i = 0; i < SHARDS; i++) {
+                    addresses.add(PartitionWorker.launch(Collections.<String>emptyList()).address);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            workers = addresses;
+        }
+        return workers;
+    }
+
+    private PartitionedGraph connect(String name) {
+        try {
+            PartitionedGraph graph = PartitionedGraph.builder().workers(workers()).name(name).build();
+            opened.add(graph);
+            return graph;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Graph<String> emptyInstance() {
+        synchronized (PartitionedGraphTest.class) {
+            graphs++;
+        }
+        return connect("test" + graphs);
+    }
+
+    @After
+    public void closeGraphs() {
+        for (PartitionedGraph graph : opened) {
+            graph.close();
+        }
+    }
+
+    // Vertices "v0", "v1", ... until there are n of them on the given shard
+    private static List<String> onShard(int shard, int n) {
+        List<String> vertices = new ArrayList<>();
+        for (int i = 0; vertices.size() < n; i++) {
+            if (PartitionProtocol.owner("v" + i, SHARDS) == shard) vertices.add("v" + i);
+        }
+        return vertices;
+    }
+
+    @Test
+    public void testEdgesAcrossShards() {
+        PartitionedGraph graph = (PartitionedGraph) emptyInstance();
+        String a = onShard(0, 1).get(0);
+        String b = onShard(1, 1).get(0);
+        String c = onShard(2, 1).get(0);
+        graph.set(a, b, 2);
+        graph.set(c, b, 3);
+        graph.set(b, a, 1);
+        assertEquals("Expected every vertex", new HashSet<>(Arrays.asList(a, b, c)), graph.vertices());
+        Map<String, Integer> sources = new HashMap<>();
+        sources.put(a, 2);
+        sources.put(c, 3);
+        assertEquals("Expected sources from two shards", sources, graph.sources(b));
+        assertEquals("Expected targets from the owner", Collections.singletonMap(b, 2), graph.targets(a));
+        assertEquals("Expected c's edge", 3, graph.weight(c, b));
+
+        assertEquals("Previous weight", 2, graph.set(a, b, 0));
+        assertTrue("b should stay, on its own shard", graph.vertices().contains(b));
+        assertTrue("Expected b removed", graph.remove(b));
+        assertFalse("Expected b gone", graph.remove(b));
+        assertEquals("Expected edges into b gone", Collections.emptyMap(), graph.targets(c));
+        assertEquals("Expected edges from b gone", Collections.emptyMap(), graph.sources(a));
+    }
+
+    @Test
+    public void testBatchesSendOneRequestPerShard() {
+        PartitionedGraph graph = (PartitionedGraph) emptyInstance();
+        List<String> sources = new ArrayList<>();
+        List<String> targets = new ArrayList<>();
+        int[] weights = new int[60];
+        Random random = new Random(6005);
+        for (int i = 0; i < weights.length; i++) {
+            sources.add("v" + random.nextInt(30));
+            targets.add("v" + random.nextInt(30));
+            weights[i] = 1 + random.nextInt(5);
+        }
+        ConcreteVerticesGraph reference = new ConcreteVerticesGraph();
+        int[] expectedPrevious = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            expectedPrevious[i] = reference.set(sources.get(i), targets.get(i), weights[i]);
+        }
+
+        long before = graph.requests();
+        assertArrayEquals("Expected previous weights in order", expectedPrevious,
+                          graph.setAll(sources, targets, weights));
+        assertEquals("Expected one request per shard", SHARDS, graph.requests() - before);
+
+        before = graph.requests();
+        Map<String, Map<String, Integer>> batch = graph.targets(sources);
+        assertEquals("Expected one request per shard", SHARDS, graph.requests() - before);
+        for (String source : sources) {
+            assertEquals("Targets of " + source, new HashMap<>(reference.targets(source)), batch.get(source));
+        }
+
+        before = graph.requests();
+        int[] found = graph.weights(targets, sources);
+        assertEquals("Expected one request per shard", SHARDS, graph.requests() - before);
+        for (int i = 0; i < found.length; i++) {
+            assertEquals("Weight of " + targets.get(i) + " -> " + sources.get(i),
+                         reference.weight(targets.get(i), sources.get(i)), found[i]);
+        }
+
+        before = graph.requests();
+        graph.targets(onShard(1, 5));
+        assertEquals("Expected only the owning shard asked", 1, graph.requests() - before);
+    }
+
+    @Test
+    public void testGraphsSharedByName() {
+        PartitionedGraph first = connect("shared");
+        PartitionedGraph second = connect("shared");
+        PartitionedGraph other = (PartitionedGraph) emptyInstance();
+        first.set("a", "b", 4);
+        assertEquals("Expected the same graph", 4, second.weight("a", "b"));
+        assertEquals("Expected a separate graph", Collections.emptySet(), other.vertices());
+        first.close();
+        assertEquals("Closing should leave running workers' graphs", 4, second.weight("a", "b"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testShardCountDisagrees() throws IOException {
+        String name = "disagree";
+        connect(name).add("a");
+        PartitionedGraph.builder().workers(workers().subList(0, 2)).name(name).build();
+    }
+
+    @Test
+    public void testLaunchedWorkersShutDown() throws IOException {
+        PartitionedGraph graph = PartitionedGraph.builder().shards(2).build();
+        assertEquals("Expected two shards", 2, graph.shards());
+        graph.set("a", "b", 1);
+        graph.set("b", "c", 2);
+        assertEquals("Expected the edges", 2, graph.weight("b", "c"));
+        graph.close();
+        try {
+            graph.vertices();
+            fail("Expected a closed graph to be unusable");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testWorkerClosesConnectionAfterError() throws IOException {
+        try (Socket socket = new Socket(workers().get(0).getAddress(), workers().get(0).getPort())) {
+            socket.setSoTimeout(10_000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            // ADD before HELLO fails, and the vertex after it is never read
+            out.writeByte(PartitionProtocol.ADD);
+            PartitionProtocol.writeString(out, "a");
+            out.flush();
+            assertEquals("Expected an error", PartitionProtocol.ERROR, in.readByte());
+            assertTrue("Expected the message", PartitionProtocol.readString(in).contains("HELLO"));
+            assertEquals("Expected the connection closed", -1, in.read());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testErrorInPipelinedRequestBreaksGraph() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            // a worker that fails setAll's ADD_ALL but still answers its SET_ALL
+            Thread worker = new Thread(() -> {
+                try (Socket socket = server.accept()) {
+                    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    in.readByte();
+                    PartitionProtocol.readString(in);
+                    PartitionProtocol.readInt(in);
+                    PartitionProtocol.readInt(in);
+                    out.writeByte(PartitionProtocol.OK);
+                    out.flush();
+                    in.readByte();
+                    out.writeByte(PartitionProtocol.ERROR);
+                    PartitionProtocol.writeString(out, "injected");
+                    out.writeByte(PartitionProtocol.OK);
+                    PartitionProtocol.writeInt(out, 1);
+                    PartitionProtocol.writeInt(out, 0);
+                    out.flush();
+                    while (in.read() >= 0) {
+                        // wait for the graph to disconnect
+                    }
+                } catch (IOException e) {
+                    // the test fails on the graph's side
+                }
+            });
+            worker.start();
+            PartitionedGraph graph = PartitionedGraph.builder()
+                    .workers(Collections.singletonList((InetSocketAddress) server.getLocalSocketAddress()))
+                    .name("failing").build();
+            try {
+                graph.setAll(Arrays.asList("a"), Arrays.asList("b"), new int[] { 1 });
+                fail("Expected the worker's error");
+            } catch (IllegalStateException e) {
+                assertTrue("Expected the worker's message", e.getMessage().contains("injected"));
+            }
+            try {
+                graph.weight("a", "b");
+                fail("Expected the graph to be unusable");
+            } catch (IllegalStateException e) {
+                // expected
+            } finally {
+                graph.close();
+            }
+            worker.join(10_000);
+        }
+    }
+}
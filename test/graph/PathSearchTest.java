@@ -0,0 +1,254 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PathSearchTest {
+
+    // Testing strategy:
+    //   - graph: empty, missing endpoints, acyclic, cyclic, hub of high degree
+    //   - edges: min 1 or more (direct edge excluded), max 1, 2, several
+    //   - paths: none, one, several of different weights and lengths, ties
+    //   - beam: unbounded, width 1
+    //   - budgets: unlimited, edge visits exhausted, states exhausted, time exhausted
+    //   - builder: invalid options
+
+    @Test
+    public void testNoPath() {
+        Graph<String> graph = Graph.empty();
+        graph.set("a", "b", 1);
+        PathSearch<String> search = PathSearch.builder().edges(1, 3).build(graph);
+        assertNull("Expected no path backwards", search.find("b", "a"));
+        assertNull("Expected no path from a missing vertex", search.find("x", "b"));
+        assertNull("Expected no path to itself", search.find("a", "a"));
+        assertFalse("Expected complete search", search.truncated());
+    }
+
+    @Test
+    public void testBridge() {
+        Graph<String> graph = Graph.empty();
+        graph.set("a", "c", 10);
+        graph.set("a", "b", 1);
+        graph.set("b", "c", 1);
+        graph.set("a", "d", 2);
+        graph.set("d", "c", 3);
+        PathSearch<String> search = PathSearch.builder().edges(2, 2).build(graph);
+        PathSearch.Path<String> path = search.find("a", "c");
+        assertEquals("Expected heaviest two-edge path", Arrays.asList("a", "d", "c"), path.vertices());
+        assertEquals("Expected weight", 5, path.weight());
+        assertEquals("Expected edges", 2, path.edges());
+        assertEquals("Expected direct edge when allowed", Arrays.asList("a", "c"),
+                     PathSearch.builder().edges(1, 2).build(graph).find("a", "c").vertices());
+    }
+
+    @Test
+    public void testLongerPathHeavier() {
+        Graph<String> graph = Graph.empty();
+        graph.set("a", "b", 1);
+        graph.set("b", "z", 1);
+        graph.set("a", "c", 2);
+        graph.set("c", "d", 2);
+        graph.set("d", "e", 2);
+        graph.set("e", "z", 2);
+        assertEquals("Expected short path within bound", Arrays.asList("a", "b", "z"),
+                     PathSearch.builder().edges(2, 3).build(graph).find("a", "z").vertices());
+        assertEquals("Expected longer heavier path", Arrays.asList("a", "c", "d", "e", "z"),
+                     PathSearch.builder().edges(2, 4).build(graph).find("a", "z").vertices());
+    }
+
+    @Test
+    public void testTieBreak() {
+        Graph<String> graph = Graph.empty();
+        for (String b : new String[] { "q", "m", "x", "c", "k" }) {
+            graph.set("a", b, 1);
+            graph.set(b, "z", 1);
+        }
+        graph.set("a", "y", 1);
+        graph.set("y", "w", 1);
+        graph.set("w", "z", 0);
+        PathSearch<String> search = PathSearch.builder().edges(2, 3)
+                .tieBreak(Comparator.<String>naturalOrder()).build(graph);
+        assertEquals("Expected first tied path", Arrays.asList("a", "c", "z"), search.find("a", "z").vertices());
+    }
+
+    @Test
+    public void testCyclesNotRepeated() {
+        Graph<String> graph = Graph.empty();
+        graph.set("a", "b", 1);
+        graph.set("b", "a", 100);
+        graph.set("b", "c", 1);
+        graph.set("c", "b", 100);
+        PathSearch.Path<String> path = PathSearch.builder().edges(1, 6).build(graph).find("a", "c");
+        assertEquals("Expected the only simple path", Arrays.asList("a", "b", "c"), path.vertices());
+        assertEquals("Expected weight", 2, path.weight());
+    }
+
+    @Test
+    public void testMatchesExhaustiveSearchOnAcyclicGraphs() {
+        Random random = new Random(6005);
+        for (int trial = 0; trial < 200; trial++) {
+            int n = 5 + random.nextInt(25);
+            Graph<Integer> graph = Graph.empty();
+            for (int e = random.nextInt(4 * n); e > 0; e--) {
+                int u = random.nextInt(n);
+                int v = random.nextInt(n);
+                if (u < v) graph.set(u, v, 1 + random.nextInt(9));
+            }
+            int min = 1 + random.nextInt(2);
+            int max = min + random.nextInt(4);
+            PathSearch<Integer> search = PathSearch.builder().edges(min, max).beamWidth(Integer.MAX_VALUE)
+                    .maxStates(Integer.MAX_VALUE).maxEdgeVisits(Long.MAX_VALUE).build(graph);
+            for (int q = 0; q < 20; q++) {
+                int source = random.nextInt(n);
+                int target = random.nextInt(n);
+                PathSearch.Path<Integer> found = search.find(source, target);
+                long best = exhaustive(graph, source, target, min, max, new ArrayList<>(Arrays.asList(source)), 0);
+                assertEquals("Expected best weight " + source + " -> " + target, best, found == null ? -1 : found.weight());
+                if (found != null) checkPath(graph, found, source, target, min, max);
+            }
+        }
+    }
+
+    @Test
+    public void testValidPathsOnCyclicGraphs() {
+        Random random = new Random(6005);
+        for (int trial = 0; trial < 100; trial++) {
+            int n = 5 + random.nextInt(20);
+            Graph<Integer> graph = Graph.empty();
+            for (int e = random.nextInt(4 * n); e > 0; e--) {
+                graph.set(random.nextInt(n), random.nextInt(n), 1 + random.nextInt(9));
+            }
+            PathSearch<Integer> search = PathSearch.builder().edges(2, 4).beamWidth(3).build(graph);
+            for (int q = 0; q < 20; q++) {
+                int source = random.nextInt(n);
+                int target = random.nextInt(n);
+                PathSearch.Path<Integer> found = search.find(source, target);
+                long best = exhaustive(graph, source, target, 2, 4, new ArrayList<>(Arrays.asList(source)), 0);
+                if (found == null) continue;
+                checkPath(graph, found, source, target, 2, 4);
+                assertTrue("Found path cannot beat the best", found.weight() <= best);
+            }
+        }
+    }
+
+    @Test
+    public void testNarrowBeam() {
+        Graph<String> graph = Graph.empty();
+        graph.set("a", "heavy", 10);
+        graph.set("heavy", "dead", 10);
+        graph.set("a", "light", 1);
+        graph.set("light", "on", 1);
+        graph.set("on", "x", 1);
+        graph.set("x", "z", 1);
+        assertEquals("Expected the path through the light start",
+                     4, PathSearch.builder().edges(1, 4).build(graph).find("a", "z").weight());
+        // the forward end alone covers the first two edges and keeps only the heavy partial path
+        assertNull("Narrow beam should drop the light start",
+                   PathSearch.builder().edges(1, 4).beamWidth(1).build(graph).find("a", "z"));
+    }
+
+    @Test
+    public void testEdgeVisitBudget() {
+        Graph<String> graph = hub(10000);
+        PathSearch<String> unbounded = PathSearch.builder().edges(2, 3).beamWidth(Integer.MAX_VALUE).build(graph);
+        assertEquals("Expected path through the hub", 3, unbounded.find("start", "end").edges());
+        assertFalse("Expected complete search", unbounded.truncated());
+
+        PathSearch<String> bounded = PathSearch.builder().edges(2, 3).maxEdgeVisits(100).build(graph);
+        bounded.find("start", "end");
+        assertTrue("Expected truncated search", bounded.truncated());
+    }
+
+    @Test
+    public void testStateBudget() {
+        Graph<String> graph = hub(10000);
+        PathSearch<String> bounded = PathSearch.builder().edges(2, 3).maxStates(50).build(graph);
+        bounded.find("start", "end");
+        assertTrue("Expected truncated search", bounded.truncated());
+        graph.set("start", "other", 1);
+        PathSearch<String> search = PathSearch.builder().edges(2, 3).maxStates(50).build(graph);
+        assertEquals("Expected path found within budget", Arrays.asList("start", "hub", "w7", "end"),
+                     search.find("start", "end").vertices());
+        assertFalse("Expected complete search", search.truncated());
+    }
+
+    @Test
+    public void testTimeBudget() {
+        Graph<String> graph = hub(100000);
+        PathSearch<String> search = PathSearch.builder().edges(2, 4).timeLimit(1, TimeUnit.NANOSECONDS)
+                .maxStates(Integer.MAX_VALUE).build(graph);
+        search.find("start", "end");
+        assertTrue("Expected truncated search", search.truncated());
+    }
+
+    @Test
+    public void testSmallerFrontierExpanded() {
+        Graph<String> graph = hub(10000);
+        graph.set("start", "other", 1);
+        // once start has two targets, the end with one vertex is expanded, never reaching the hub's targets
+        PathSearch<String> search = PathSearch.builder().edges(2, 3).maxEdgeVisits(20).build(graph);
+        assertEquals("Expected path found by expanding the target end",
+                     Arrays.asList("start", "hub", "w7", "end"), search.find("start", "end").vertices());
+        assertFalse("Expected complete search", search.truncated());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidEdges() {
+        PathSearch.builder().edges(3, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBeam() {
+        PathSearch.builder().beamWidth(0);
+    }
+
+    // start -> hub -> w0 .. w(n-1), with w7 -> end
+    private static Graph<String> hub(int n) {
+        Graph<String> graph = Graph.empty();
+        graph.set("start", "hub", 1);
+        for (int i = 0; i < n; i++) {
+            graph.set("hub", "w" + i, 1);
+        }
+        graph.set("w7", "end", 1);
+        return graph;
+    }
+
+    // Weight of the heaviest simple path extending path to target, or -1 if none
+    private static long exhaustive(Graph<Integer> graph, int at, int target, int min, int max, List<Integer> path,
+            long weight) {
+        int edges = path.size() - 1;
+        long best = at == target && edges >= min ? weight : -1;
+        if (edges == max) return best;
+        for (int next : graph.targets(at).keySet()) {
+            if (path.contains(next)) continue;
+            path.add(next);
+            best = Math.max(best, exhaustive(graph, next, target, min, max, path, weight + graph.weight(at, next)));
+            path.remove(path.size() - 1);
+        }
+        return best;
+    }
+
+    private static void checkPath(Graph<Integer> graph, PathSearch.Path<Integer> path, int source, int target,
+            int min, int max) {
+        List<Integer> vertices = path.vertices();
+        assertEquals("Expected source first", source, (int) vertices.get(0));
+        assertEquals("Expected target last", target, (int) vertices.get(vertices.size() - 1));
+        assertTrue("Expected length within bounds: " + path, path.edges() >= min && path.edges() <= max);
+        assertEquals("Expected simple path: " + path, vertices.size(), vertices.stream().distinct().count());
+        long weight = 0;
+        for (int i = 0; i + 1 < vertices.size(); i++) {
+            int w = graph.weight(vertices.get(i), vertices.get(i + 1));
+            assertTrue("Expected edges of the graph: " + path, w > 0);
+            weight += w;
+        }
+        assertEquals("Expected weight of the edges: " + path, weight, path.weight());
+    }
+}
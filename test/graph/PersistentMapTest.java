@@ -0,0 +1,115 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PersistentMapTest {
+
+    // Testing strategy:
+    //   - keys: distinct hashes, hashes sharing leading slices, fully colliding hashes
+    //   - with: new key, new value for a key, same value (no copy)
+    //   - without: present key, absent key, last key
+    //   - old versions: unchanged after later updates
+    //   - views: get, containsKey, iteration, keySet
+
+    @Test
+    public void testEmpty() {
+        PersistentMap<String, Integer> map = PersistentMap.empty();
+        assertEquals("Expected empty map", 0, map.size());
+        assertNull("Expected absent key", map.get("a"));
+        assertSame("Removing from empty should return it", map, map.without("a"));
+        assertTrue("Expected empty view", map.asMap().isEmpty());
+    }
+
+    @Test
+    public void testWithAndWithout() {
+        PersistentMap<String, Integer> empty = PersistentMap.empty();
+        PersistentMap<String, Integer> one = empty.with("a", 1);
+        PersistentMap<String, Integer> two = one.with("b", 2);
+        assertSame("Same value should not copy", two, two.with("b", 2));
+        PersistentMap<String, Integer> replaced = two.with("b", 3);
+        assertEquals("Expected replaced value", Integer.valueOf(3), replaced.get("b"));
+        assertEquals("Expected size unchanged", 2, replaced.size());
+        assertEquals("Old map should be unchanged", Integer.valueOf(2), two.get("b"));
+        assertSame("Removing an absent key should not copy", two, two.without("z"));
+        assertEquals("Expected key removed", 1, two.without("a").size());
+        assertEquals("Removing the last key should empty the map", 0, one.without("a").size());
+        assertEquals("Old map should be unchanged", 1, one.size());
+    }
+
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(6005);
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        Map<Integer, Integer> reference = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // shifted keys share low hash bits, so they share trie levels
+            int key = random.nextInt(5000) << random.nextInt(20);
+            if (random.nextInt(3) == 0) {
+                map = map.without(key);
+                reference.remove(key);
+            } else {
+                map = map.with(key, i);
+                reference.put(key, i);
+            }
+        }
+        assertEquals("Expected same size", reference.size(), map.size());
+        assertEquals("Expected same map", reference, map.asMap());
+        assertEquals("Expected same keys", reference.keySet(), map.keySet());
+        Map<Integer, Integer> visited = new HashMap<>();
+        map.forEach((key, value) -> assertNull("Key visited twice", visited.put(key, value)));
+        assertEquals("Expected every entry visited", reference, visited);
+    }
+
+    @Test
+    public void testCollidingHashes() {
+        PersistentMap<Colliding, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < 100; i++) {
+            map = map.with(new Colliding(i, i % 3), i);
+        }
+        assertEquals("Expected every key", 100, map.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Expected value of colliding key", Integer.valueOf(i), map.get(new Colliding(i, i % 3)));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            map = map.without(new Colliding(i, i % 3));
+        }
+        assertEquals("Expected odd keys left", 50, map.size());
+        assertNull("Expected key removed", map.get(new Colliding(4, 1)));
+        assertEquals("Expected key kept", Integer.valueOf(5), map.get(new Colliding(5, 2)));
+        int count = 0;
+        for (Map.Entry<Colliding, Integer> entry : map.asMap().entrySet()) {
+            assertEquals("Expected odd key", 1, entry.getValue() % 2);
+            count++;
+        }
+        assertEquals("Expected every key iterated", 50, count);
+    }
+
+    /**
+     * A key whose hash code is chosen, to force collisions.
+     */
+    private static final class Colliding {
+        private final int id;
+        private final int hash;
+
+        Colliding(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            return that instanceof Colliding && ((Colliding) that).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package graph;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class VersionedGraphTest extends GraphInstanceTest {
+
+    // Testing strategy:
+    //   - snapshot: taken before, during and after changes; read after later changes
+    //   - update: no change, several changes, changes reading their own writes, throwing
+    //   - batch graph: used during, and after, its update
+    //   - version: initial, after each mutator, after a batch, after a no-op
+    //   - concurrency: readers checking a batch invariant while a writer updates
+
+    @Override
+    public Graph<String> emptyInstance() {
+        return new VersionedGraph<>();
+    }
+
+    @Test
+    public void testSnapshotUnaffectedByChanges() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        graph.set("a", "b", 1);
+        VersionedGraph.Snapshot<String> before = graph.snapshot();
+        graph.set("a", "b", 5);
+        graph.set("b", "c", 2);
+        graph.remove("a");
+        assertEquals("Snapshot should keep its vertices", new HashSet<>(Arrays.asList("a", "b")), before.vertices());
+        assertEquals("Snapshot should keep its edges", Collections.singletonMap("b", 1), before.targets("a"));
+        assertEquals("Graph should have changed", new HashSet<>(Arrays.asList("b", "c")), graph.vertices());
+        assertEquals("Expected no sources of b", Collections.emptyMap(), graph.sources("b"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotImmutable() {
+        new VersionedGraph<String>().snapshot().add("a");
+    }
+
+    @Test
+    public void testVersions() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        assertEquals("Expected first version", 0, graph.version());
+        graph.add("a");
+        graph.set("a", "b", 1);
+        assertEquals("Expected a version per change", 2, graph.version());
+        graph.add("a");
+        graph.set("a", "b", 1);
+        graph.remove("z");
+        assertEquals("No-op changes should not publish", 2, graph.version());
+        VersionedGraph.Snapshot<String> published = graph.update(batch -> {
+            batch.set("b", "c", 1);
+            batch.set("c", "a", 1);
+        });
+        assertEquals("Expected one version per batch", 3, published.version());
+        assertSame("Expected published version current", published, graph.snapshot());
+    }
+
+    @Test
+    public void testBatchSeesItsOwnChanges() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        graph.set("a", "b", 2);
+        graph.update(batch -> {
+            assertEquals("Batch should start at the current version", 2, batch.weight("a", "b"));
+            Graphs.addWeight(batch, "a", "b", 3);
+            assertEquals("Batch should see its own change", 5, batch.weight("a", "b"));
+            assertEquals("Others should not see the batch yet", 2, graph.weight("a", "b"));
+        });
+        assertEquals("Expected batch published", 5, graph.weight("a", "b"));
+    }
+
+    @Test
+    public void testFailedBatchPublishesNothing() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        graph.set("a", "b", 2);
+        try {
+            graph.update(batch -> {
+                batch.set("a", "b", 7);
+                batch.set("a", "c", -1);
+            });
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals("Expected no change published", 2, graph.weight("a", "b"));
+        assertEquals("Expected no version published", 1, graph.version());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testBatchUnusableAfterUpdate() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        AtomicReference<Graph<String>> escaped = new AtomicReference<>();
+        graph.update(escaped::set);
+        escaped.get().add("a");
+    }
+
+    @Test
+    public void testReadersNeverSeeHalfABatch() throws InterruptedException {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        int accounts = 50;
+        graph.update(batch -> {
+            for (int i = 0; i < accounts; i++) {
+                batch.set("bank", "a" + i, 100);
+            }
+        });
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            long previous = -1;
+            while (!done.get() && failure.get() == null) {
+                VersionedGraph.Snapshot<String> snapshot = graph.snapshot();
+                long total = 0;
+                for (int weight : snapshot.targets("bank").values()) {
+                    total += weight;
+                }
+                if (total != 100 * accounts) failure.set("Saw total " + total + " at version " + snapshot.version());
+                if (snapshot.version() < previous) failure.set("Versions went backwards");
+                previous = snapshot.version();
+            }
+        });
+        reader.start();
+        Random random = new Random(6005);
+        for (int i = 0; i < 5000; i++) {
+            // move weight between two edges in one batch, keeping the total
+            String from = "a" + random.nextInt(accounts);
+            String to = "a" + random.nextInt(accounts);
+            graph.update(batch -> {
+                if (from.equals(to) || batch.weight("bank", from) <= 1) return;
+                Graphs.addWeight(batch, "bank", from, -1);
+                Graphs.addWeight(batch, "bank", to, 1);
+            });
+        }
+        done.set(true);
+        reader.join();
+        assertNull(failure.get(), failure.get());
+    }
+
+    @Test
+    public void testVerticesViewIsOfItsVersion() {
+        VersionedGraph<String> graph = new VersionedGraph<>();
+        graph.add("a");
+        java.util.Set<String> vertices = graph.vertices();
+        graph.add("b");
+        assertEquals("View should keep its version", Collections.singleton("a"), vertices);
+        Map<String, Integer> targets = graph.targets("a");
+        graph.set("a", "b", 1);
+        assertTrue("View should keep its version", targets.isEmpty());
+    }
+}
@@ -0,0 +1,104 @@
+package metrics;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    // Testing strategy
+    //   indexOf / highestEquivalent: values below 64, at powers of two, huge values
+    //   record: negative, zero, small, large; one thread, many threads
+    //   summary / valueAtPercentile: empty, one value, many values vs exact percentiles
+    //   reset
+
+    @Test
+    public void testBucketsCoverValues() {
+        Random random = new Random(6005);
+        for (int k = 0; k < 100000; k++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = LatencyHistogram.indexOf(value);
+            long high = LatencyHistogram.highestEquivalent(index);
+            assertTrue("Bucket of " + value + " should contain it", value <= high);
+            assertTrue("Bucket of " + value + " should be within 1/32 of it", high - value <= value / 32);
+            if (index > 0) {
+                assertTrue("Previous bucket should end below " + value,
+                           LatencyHistogram.highestEquivalent(index - 1) < value);
+            }
+        }
+        for (long value = 0; value < 64; value++) {
+            assertEquals("Small values should be exact", value,
+                         LatencyHistogram.highestEquivalent(LatencyHistogram.indexOf(value)));
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        LatencySummary summary = new LatencyHistogram().summary();
+        assertEquals("Expected no values", 0, summary.getCount());
+        assertEquals("Expected zero median", 0, summary.getP50Nanos());
+    }
+
+    @Test
+    public void testOneValue() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(12345);
+        LatencySummary summary = histogram.summary();
+        assertEquals("Expected one value", 1, summary.getCount());
+        assertEquals("Expected exact min", 12345, summary.getMinNanos());
+        assertEquals("Expected exact max", 12345, summary.getMaxNanos());
+        assertEquals("Percentiles clamp to max", 12345, summary.getP999Nanos());
+        assertEquals("Expected exact mean", 12345.0, summary.getMeanNanos(), 0);
+    }
+
+    @Test
+    public void testNegativeRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals("Expected zero max", 0, histogram.summary().getMaxNanos());
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Long> values = new ArrayList<>();
+        for (long value = 1; value <= 10000; value++) {
+            histogram.record(value * 100);
+            values.add(value * 100);
+        }
+        for (double percentile : new double[] { 1, 50, 90, 99, 99.9, 100 }) {
+            long exact = values.get((int) Math.ceil(percentile / 100 * values.size()) - 1);
+            long reported = histogram.valueAtPercentile(percentile);
+            assertTrue("Percentile " + percentile + " should be near " + exact + " but was " + reported,
+                       reported >= exact && reported - exact <= exact / 32);
+        }
+        histogram.reset();
+        assertEquals("Expected no values after reset", 0, histogram.count());
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int k = 1; k <= 100000; k++) {
+                    histogram.record(k);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencySummary summary = histogram.summary();
+        assertEquals("No recording should be lost", 400000, summary.getCount());
+        assertEquals("Expected exact min", 1, summary.getMinNanos());
+        assertEquals("Expected exact max", 100000, summary.getMaxNanos());
+        assertEquals("Expected exact mean", 50000.5, summary.getMeanNanos(), 1e-6);
+    }
+}
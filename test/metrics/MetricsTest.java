@@ -0,0 +1,70 @@
+package metrics;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+
+public class MetricsTest {
+
+    // Testing strategy
+    //   timer: new name, existing name, NONE
+    //   enabled: true, false, toggled
+    //   snapshot, reset
+    //   JMX: register, read attributes, toggle through JMX, unregister
+
+    @Test
+    public void testTimerRecordsWhileEnabled() {
+        Metrics metrics = new Metrics("test-enabled");
+        Metrics.Timer timer = metrics.timer("op");
+        assertSame("Same name should give the same timer", timer, metrics.timer("op"));
+        timer.stop(timer.start());
+        metrics.setEnabled(false);
+        timer.stop(timer.start());
+        assertEquals("Only the enabled call should be recorded", 1, metrics.snapshot().get("op").getCount());
+        metrics.reset();
+        assertEquals("Expected nothing after reset", 0, metrics.snapshot().get("op").getCount());
+    }
+
+    @Test
+    public void testDisabledFromStart() {
+        Metrics metrics = new Metrics("test-disabled", false);
+        Metrics.Timer timer = metrics.timer("op");
+        timer.stop(timer.start());
+        assertEquals("Expected nothing recorded", 0, timer.histogram().count());
+    }
+
+    @Test
+    public void testNoneNeverRecords() {
+        Metrics.Timer.NONE.stop(Metrics.Timer.NONE.start());
+        assertEquals("Expected nothing recorded", 0, Metrics.Timer.NONE.histogram().count());
+    }
+
+    @Test
+    public void testJmx() throws JMException {
+        Metrics metrics = new Metrics("test-jmx");
+        metrics.timer("op").histogram().record(1000);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        metrics.register();
+        try {
+            assertEquals("Expected enabled attribute", true, server.getAttribute(metrics.objectName(), "Enabled"));
+            TabularData latencies = (TabularData) server.getAttribute(metrics.objectName(), "Latencies");
+            CompositeData row = latencies.get(new Object[] { "op" });
+            CompositeData summary = (CompositeData) row.get("value");
+            assertEquals("Expected one recorded call", 1L, summary.get("count"));
+            assertEquals("Expected exact max", 1000L, summary.get("maxNanos"));
+
+            server.invoke(metrics.objectName(), "reset", new Object[0], new String[0]);
+            assertEquals("Reset through JMX", 0, metrics.timer("op").histogram().count());
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse("Expected unregistered", server.isRegistered(metrics.objectName()));
+    }
+}
@@ -0,0 +1,91 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AdjacencySketchTest {
+
+    // Testing strategy:
+    //   - distinct pairs: fewer than the capacity, many more than the capacity
+    //   - counts: uniform, a few heavy pairs over a long tail of single occurrences
+    //   - estimate: kept pair, pair never kept, pair never added
+    //   - budget: invalid, minimum
+
+    private static long pair(int source, int target) {
+        return BridgeTable.key(source, target);
+    }
+
+    @Test
+    public void testExactWithinBudget() {
+        AdjacencySketch sketch = new AdjacencySketch(1 << 16);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(6005);
+        for (int i = 0; i < 10000; i++) {
+            long key = pair(random.nextInt(20), random.nextInt(20));
+            sketch.add(key);
+            expected.merge(key, 1, Integer::sum);
+        }
+        assertTrue("Expected exact counts", sketch.isExact());
+        assertEquals("Expected every pair kept", expected.size(), sketch.size());
+        assertEquals("Expected no error", 0, sketch.maxError());
+        Map<Long, Integer> kept = new HashMap<>();
+        sketch.forEach((key, count) -> assertNull("Pair visited twice", kept.put(key, count)));
+        assertEquals("Expected exact counts", expected, kept);
+        assertEquals("Expected a pair never added to estimate 0", 0, sketch.estimate(pair(99, 99)));
+        assertEquals("Expected every pair counted", 10000, sketch.total());
+    }
+
+    @Test
+    public void testKeepsHeavyPairsOverLongTail() {
+        AdjacencySketch sketch = new AdjacencySketch(8 << 10);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(6005);
+        for (int i = 0; i < 200000; i++) {
+            // one pair in four is one of 20 heavy pairs; the rest are almost all distinct
+            long key = i % 4 == 0 ? pair(random.nextInt(20), 0) : pair(1000 + random.nextInt(1 << 20), 1);
+            sketch.add(key);
+            expected.merge(key, 1, Integer::sum);
+        }
+        assertFalse("Expected the budget reached", sketch.isExact());
+        assertTrue("Expected tail pairs dropped or evicted", sketch.dropped() + sketch.evictions() > 0);
+        assertTrue("Expected at most the capacity kept", sketch.size() <= sketch.capacity());
+        assertTrue("Expected the budget respected", sketch.sizeInBytes() <= 8 << 10);
+        Map<Long, Integer> kept = new HashMap<>();
+        sketch.forEach(kept::put);
+        int maxError = sketch.maxError();
+        for (int source = 0; source < 20; source++) {
+            long key = pair(source, 0);
+            Integer count = kept.get(key);
+            assertNotNull("Expected heavy pair " + source + " kept", count);
+            assertTrue("Expected no undercount", count >= expected.get(key));
+            assertTrue("Expected count within the error bound", count <= expected.get(key) + maxError);
+        }
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertTrue("Expected estimates never below true counts",
+                       sketch.estimate(entry.getKey()) >= entry.getValue());
+        }
+    }
+
+    @Test
+    public void testMinimumBudget() {
+        AdjacencySketch sketch = new AdjacencySketch(1024);
+        assertTrue("Expected room for some pairs", sketch.capacity() > 0);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add(pair(i, i));
+            sketch.add(pair(0, 0));
+        }
+        Map<Long, Integer> kept = new HashMap<>();
+        sketch.forEach(kept::put);
+        assertTrue("Expected the heaviest pair kept", kept.containsKey(pair(0, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBudgetTooSmall() {
+        new AdjacencySketch(1023);
+    }
+}
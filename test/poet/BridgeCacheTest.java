@@ -0,0 +1,172 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BridgeCacheTest {
+
+    // Testing strategy:
+    //   - policy: LRU, TINY_LFU
+    //   - maximumSize: 1, small (one segment), large (several segments)
+    //   - get: absent pair, pair with a bridge, pair cached as having none
+    //   - access pattern: repeated hot pairs, one-off scan of cold pairs
+    //   - invalidateIf: no pair, some pairs, all pairs
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveSize() {
+        new BridgeCache(0, BridgeCache.Policy.LRU);
+    }
+
+    @Test
+    public void testGetPut() {
+        for (BridgeCache.Policy policy : BridgeCache.Policy.values()) {
+            BridgeCache cache = new BridgeCache(10, policy);
+            assertNull("Expected absent pair", cache.get(pair("a", "b")));
+            cache.put(pair("a", "b"), "x");
+            cache.put(pair("b", "a"), null);
+            assertEquals("Expected cached bridge", "x", cache.get(pair("a", "b")));
+            assertEquals("Expected cached lack of bridge", "", cache.get(pair("b", "a")));
+            cache.put(pair("a", "b"), "y");
+            assertEquals("Expected replaced bridge", "y", cache.get(pair("a", "b")));
+
+            BridgeCache.Stats stats = cache.stats();
+            assertEquals("Expected hits", 3, stats.hitCount());
+            assertEquals("Expected misses", 1, stats.missCount());
+            assertEquals("Expected hit rate", 0.75, stats.hitRate(), 1e-9);
+            assertEquals("Expected no evictions", 0, stats.evictionCount());
+            assertEquals("Expected size", 2, stats.size());
+            assertEquals("Expected size", 2, cache.size());
+        }
+    }
+
+    @Test
+    public void testSizeOne() {
+        for (BridgeCache.Policy policy : BridgeCache.Policy.values()) {
+            BridgeCache cache = new BridgeCache(1, policy);
+            cache.put(pair("a", "b"), "x");
+            cache.put(pair("c", "d"), "y");
+            assertEquals("Expected one pair for " + policy, 1, cache.size());
+            assertEquals("Expected one eviction for " + policy, 1, cache.stats().evictionCount());
+        }
+    }
+
+    @Test
+    public void testLruEvictsLeastRecentlyUsed() {
+        BridgeCache cache = new BridgeCache(3, BridgeCache.Policy.LRU);
+        cache.put(pair("a", "1"), "x");
+        cache.put(pair("a", "2"), "x");
+        cache.put(pair("a", "3"), "x");
+        cache.get(pair("a", "1"));
+        cache.put(pair("a", "4"), "x");
+        assertNull("Least recently used pair should be evicted", cache.get(pair("a", "2")));
+        assertEquals("Recently used pair should stay", "x", cache.get(pair("a", "1")));
+        assertEquals("Expected one eviction", 1, cache.stats().evictionCount());
+    }
+
+    @Test
+    public void testTinyLfuResistsScans() {
+        int size = 200;
+        BridgeCache lru = new BridgeCache(size, BridgeCache.Policy.LRU);
+        BridgeCache tinyLfu = new BridgeCache(size, BridgeCache.Policy.TINY_LFU);
+        List<BridgeCache.Pair> hot = new ArrayList<>();
+        for (int i = 0; i < size / 2; i++) {
+            hot.add(pair("hot", "w" + i));
+        }
+        Random random = new Random(6005);
+        for (BridgeCache cache : new BridgeCache[] { lru, tinyLfu }) {
+            for (int round = 0; round < 20; round++) {
+                for (BridgeCache.Pair key : hot) {
+                    lookUp(cache, key);
+                }
+                // a scan of one-off pairs, larger than the cache
+                for (int i = 0; i < 2 * size; i++) {
+                    lookUp(cache, pair("cold", "w" + random.nextInt()));
+                }
+            }
+        }
+        int lruHot = cachedCount(lru, hot);
+        int tinyLfuHot = cachedCount(tinyLfu, hot);
+        assertTrue("Scan should flush LRU: " + lruHot, lruHot < hot.size() / 10);
+        assertTrue("TinyLFU should keep most hot pairs: " + tinyLfuHot, tinyLfuHot > hot.size() * 9 / 10);
+        assertTrue("Caches should stay within bound", lru.size() <= size && tinyLfu.size() <= size);
+    }
+
+    @Test
+    public void testBoundUnderRandomLoad() {
+        for (BridgeCache.Policy policy : BridgeCache.Policy.values()) {
+            BridgeCache cache = new BridgeCache(1000, policy);
+            Random random = new Random(6005);
+            for (int i = 0; i < 100_000; i++) {
+                lookUp(cache, pair("w" + random.nextInt(3000), "w" + random.nextInt(3)));
+                assertTrue("Cache should stay within its bound for " + policy, cache.size() <= 1000);
+            }
+            BridgeCache.Stats stats = cache.stats();
+            assertEquals("Expected every lookup counted", 100_000, stats.hitCount() + stats.missCount());
+            assertEquals("Expected misses to fill or evict", stats.missCount(), stats.size() + stats.evictionCount());
+        }
+    }
+
+    @Test
+    public void testInvalidateIf() {
+        for (BridgeCache.Policy policy : BridgeCache.Policy.values()) {
+            BridgeCache cache = new BridgeCache(1000, policy);
+            for (int i = 0; i < 100; i++) {
+                cache.put(pair("w" + i, "w" + (i % 10)), "x");
+            }
+            cache.invalidateIf((w1, w2) -> false);
+            assertEquals("Expected nothing removed", 100, cache.size());
+            cache.invalidateIf((w1, w2) -> w1.equals("w5") || w2.equals("w3"));
+            assertEquals("Expected matching pairs removed", 89, cache.size());
+            assertNull("Expected removed pair", cache.get(pair("w13", "w3")));
+            assertEquals("Expected kept pair", "x", cache.get(pair("w14", "w4")));
+            cache.put(pair("w5", "w5"), "y");
+            assertEquals("Cache should work after invalidation", "y", cache.get(pair("w5", "w5")));
+            cache.invalidateAll();
+            assertEquals("Expected empty cache", 0, cache.size());
+            assertEquals("Invalidation is not eviction", 0, cache.stats().evictionCount());
+        }
+    }
+
+    @Test
+    public void testFrequencySketch() {
+        BridgeCache.FrequencySketch sketch = new BridgeCache.FrequencySketch(64);
+        assertEquals("Expected unseen key", 0, sketch.frequency(42));
+        for (int i = 0; i < 5; i++) {
+            sketch.increment(42);
+        }
+        assertTrue("Expected at least the true count", sketch.frequency(42) >= 5);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(7);
+        }
+        assertEquals("Expected saturated count", 15, sketch.frequency(7));
+        // enough other additions to age every counter
+        for (int i = 0; i < 1000; i++) {
+            sketch.increment(1000 + i);
+        }
+        assertTrue("Expected aged count", sketch.frequency(7) < 15);
+    }
+
+    private static BridgeCache.Pair pair(String w1, String w2) {
+        return new BridgeCache.Pair(w1, w2);
+    }
+
+    // Look a pair up, caching a bridge on a miss as a poet would
+    private static void lookUp(BridgeCache cache, BridgeCache.Pair key) {
+        if (cache.get(key) == null) cache.put(key, "bridge");
+    }
+
+    // Count the pairs cached, without recording the accesses
+    private static int cachedCount(BridgeCache cache, List<BridgeCache.Pair> keys) {
+        int[] count = { 0 };
+        cache.invalidateIf((w1, w2) -> {
+            if (keys.contains(pair(w1, w2))) count[0]++;
+            return false;
+        });
+        return count[0];
+    }
+}
@@ -0,0 +1,118 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import graph.Graph;
+
+public class CorpusLoaderTest {
+
+    // Testing strategy
+    //   loadParallel()
+    //     parallelism: 1, a few, more shards than words
+    //     cuts: inside a word, on whitespace, inside a run of whitespace; shards with no words
+    //     corpus: empty, one word, repo corpora, random text with repeated words
+    //   load() with a sketch
+    //     budget: above the corpus's distinct adjacencies, below them
+
+    private static void assertSameGraph(String message, Graph<String> expected, Graph<String> actual) {
+        assertEquals(message + ": vertices", expected.vertices(), actual.vertices());
+        for (String vertex : expected.vertices()) {
+            assertEquals(message + ": targets of " + vertex,
+                         new HashMap<>(expected.targets(vertex)), new HashMap<>(actual.targets(vertex)));
+        }
+    }
+
+    private static void assertParallelMatches(File corpus) throws IOException {
+        Graph<String> sequential = CorpusLoader.load(corpus.toPath());
+        for (int parallelism : new int[] { 1, 2, 3, 7, 64 }) {
+            assertSameGraph(corpus + " with parallelism " + parallelism,
+                            sequential, CorpusLoader.loadParallel(corpus.toPath(), parallelism));
+        }
+    }
+
+    private static File write(String text) throws IOException {
+        File corpus = File.createTempFile("corpus", ".txt");
+        corpus.deleteOnExit();
+        Files.write(corpus.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return corpus;
+    }
+
+    @Test
+    public void testRepoCorpora() throws IOException {
+        for (String path : new String[] { "src/poet/simple-corpus.txt", "src/poet/complex-corpus.txt",
+                                          "src/poet/mugar-omni-theater.txt", "src/poet/tied-corpus.txt" }) {
+            assertParallelMatches(new File(path));
+        }
+    }
+
+    @Test
+    public void testEmptyAndSingleWord() throws IOException {
+        assertParallelMatches(write(""));
+        assertParallelMatches(write("   \n  "));
+        assertParallelMatches(write("alone"));
+    }
+
+    @Test
+    public void testRandomText() throws IOException {
+        Random random = new Random(6005);
+        StringBuilder text = new StringBuilder();
+        String[] separators = { " ", "  ", "\n", "\r\n", "\t" };
+        for (int i = 0; i < 5000; i++) {
+            text.append("Word").append(random.nextInt(40)).append(separators[random.nextInt(separators.length)]);
+        }
+        assertParallelMatches(write(text.toString()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveParallelism() throws IOException {
+        CorpusLoader.loadParallel(new File("src/poet/simple-corpus.txt").toPath(), 0);
+    }
+
+    @Test
+    public void testBudgetAboveCorpusIsExact() throws IOException {
+        for (String path : new String[] { "src/poet/simple-corpus.txt", "src/poet/mugar-omni-theater.txt" }) {
+            AdjacencySketch counts = new AdjacencySketch(1 << 20);
+            Graph<String> sketched = CorpusLoader.load(new File(path).toPath(), counts);
+            assertTrue("Expected exact counts within budget", counts.isExact());
+            assertSameGraph(path + " within budget", CorpusLoader.load(new File(path).toPath()), sketched);
+        }
+    }
+
+    @Test
+    public void testBudgetBelowCorpusKeepsFrequentAdjacencies() throws IOException {
+        // a frequent phrase among many adjacencies that each occur about once
+        Random random = new Random(6005);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append(i % 10 == 0 ? "common phrase " : "rare" + random.nextInt(100000) + " ");
+        }
+        File corpus = write(text.toString());
+        Graph<String> exact = CorpusLoader.load(corpus.toPath());
+        AdjacencySketch counts = new AdjacencySketch(16 << 10);
+        Graph<String> sketched = CorpusLoader.load(corpus.toPath(), counts);
+        assertFalse("Expected the budget reached", counts.isExact());
+        assertTrue("Expected fewer edges than the exact graph",
+                   countEdges(sketched) <= counts.capacity() && countEdges(sketched) < countEdges(exact));
+        int weight = sketched.targets("common").getOrDefault("phrase", 0);
+        assertTrue("Expected the frequent adjacency kept", weight >= exact.weight("common", "phrase"));
+        assertTrue("Expected its count within the error bound",
+                   weight <= exact.weight("common", "phrase") + counts.maxError());
+    }
+
+    private static int countEdges(Graph<String> graph) {
+        int edges = 0;
+        for (String vertex : graph.vertices()) {
+            edges += graph.targets(vertex).size();
+        }
+        return edges;
+    }
+}
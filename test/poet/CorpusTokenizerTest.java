@@ -0,0 +1,99 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import graph.Dictionary;
+
+public class CorpusTokenizerTest {
+
+    // Testing strategy
+    //   delimiters: spaces, tabs, CRLF and LF line breaks, runs of several, leading and trailing
+    //   words: ASCII mixed case, non-ASCII, repeated
+    //   source: file, in-memory text
+    //   buffer: larger than the file, smaller than a word (words straddle reads)
+    //   file: empty, missing
+
+    private static List<String> words(String text, int bufferSize) throws IOException {
+        File corpus = File.createTempFile("corpus", ".txt");
+        try {
+            Files.write(corpus.toPath(), text.getBytes(StandardCharsets.UTF_8));
+            Dictionary dictionary = new Dictionary();
+            List<String> words = new ArrayList<>();
+            new CorpusTokenizer(bufferSize).forEachWord(corpus.toPath(), dictionary,
+                    id -> words.add(dictionary.word(id)));
+            return words;
+        } finally {
+            corpus.delete();
+        }
+    }
+
+    @Test
+    public void testDelimiters() throws IOException {
+        assertEquals("Whitespace of every kind should delimit words",
+                     Arrays.asList("to", "explore", "strange", "new", "worlds"),
+                     words("  To\texplore\r\nstrange  new\nWorlds\n", 1024));
+    }
+
+    @Test
+    public void testWordsStraddlingReads() throws IOException {
+        String text = "Hello, HELLO, hello, goodbye!";
+        List<String> expected = Arrays.asList("hello,", "hello,", "hello,", "goodbye!");
+        for (int bufferSize = 1; bufferSize <= 8; bufferSize++) {
+            assertEquals("Words should not depend on buffer size " + bufferSize,
+                         expected, words(text, bufferSize));
+        }
+    }
+
+    @Test
+    public void testNonAsciiLowercased() throws IOException {
+        assertEquals("Non-ASCII words should be lowercased",
+                     Arrays.asList("\u00e9cole", "\u00e9cole"),
+                     words("\u00c9COLE \u00e9cole", 3));
+    }
+
+    @Test
+    public void testRepeatedWordsInterned() throws IOException {
+        File corpus = File.createTempFile("corpus", ".txt");
+        try {
+            Files.write(corpus.toPath(), "echo Echo ECHO".getBytes(StandardCharsets.UTF_8));
+            Dictionary dictionary = new Dictionary();
+            List<Integer> ids = new ArrayList<>();
+            new CorpusTokenizer().forEachWord(corpus.toPath(), dictionary, ids::add);
+            assertEquals("Repeated words should share one ID", Arrays.asList(0, 0, 0), ids);
+            assertEquals("Expected one word", 1, dictionary.size());
+        } finally {
+            corpus.delete();
+        }
+    }
+
+    @Test
+    public void testTextMatchesFile() throws IOException {
+        String text = "  To\texplore\r\nstrange \u00c9COLE  new\nWorlds\n";
+        Dictionary dictionary = new Dictionary();
+        List<String> words = new ArrayList<>();
+        CorpusTokenizer.forEachWord(text, dictionary, id -> words.add(dictionary.word(id)));
+        assertEquals("Text should split like a file", words(text, 1024), words);
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        assertEquals("Empty file should have no words", Collections.emptyList(), words("", 16));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingFile() throws IOException {
+        new CorpusTokenizer().forEachWord(new File("src/poet/invalid-corpus.txt").toPath(),
+                new Dictionary(), id -> { });
+    }
+}
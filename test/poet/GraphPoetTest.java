@@ -3,7 +3,33 @@ package poet;
 import static org.junit.Assert.*;
 import org.junit.Test;
 import java.io.File;
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import graph.ConcurrentGraph;
+import graph.DurableGraph;
+import graph.Graph;
+import graph.PartitionedGraph;
+import metrics.Metrics;
 
 public class GraphPoetTest {
     
@@ -14,7 +40,7 @@ public class GraphPoetTest {
         GraphPoet poet = new GraphPoet(corpus);
         
         String input = "Seek to explore new and exciting synergies!";
-        String expectedPoem = "Seek to explore strange new worlds and new exciting synergies!";
+        String expectedPoem = "Seek to explore strange new life and exciting synergies!";
         String generatedPoem = poet.poem(input);
         
         assertEquals("The poem was generated correctly", expectedPoem, generatedPoem);
@@ -46,6 +72,27 @@ public class GraphPoetTest {
         assertEquals("Empty input should return empty poem", expectedPoem, generatedPoem);
     }
     
+    @Test
+    public void testLowercasingIgnoresDefaultLocale() throws IOException {
+        // Turkish lowercases I to dotless i, so input words must not use the default locale
+        File corpus = File.createTempFile("corpus", ".txt");
+        corpus.deleteOnExit();
+        Files.write(corpus.toPath(), "TITLE IS INDEX".getBytes(StandardCharsets.UTF_8));
+        Locale original = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            for (boolean precompute : new boolean[] { false, true }) {
+                GraphPoet poet = new GraphPoet(corpus, precompute);
+                assertEquals("Bridge should be found, precompute " + precompute,
+                             "TITLE is INDEX", poet.poem("TITLE INDEX"));
+                assertEquals("Batch bridge should be found, precompute " + precompute,
+                             Arrays.asList("TITLE is INDEX"), poet.poems(Arrays.asList("TITLE INDEX")));
+            }
+        } finally {
+            Locale.setDefault(original);
+        }
+    }
+    
     @Test(expected = IOException.class)
     public void testInvalidCorpus() throws IOException {
         // Test invalid corpus file path
@@ -60,9 +107,564 @@ public class GraphPoetTest {
         GraphPoet poet = new GraphPoet(corpus);
         
         String input = "Seek to explore new frontiers";
-        String expectedPoem = "Seek life to seek explore strange new worlds frontiers"; 
+        String expectedPoem = "Seek to explore strange new frontiers";
         String generatedPoem = poet.poem(input);
         
         assertEquals("The poem with multiple bridge words should be correct", expectedPoem, generatedPoem);
     }
+    
+    @Test
+    public void testBridgeMustReachSecondWord() throws IOException {
+        // "to" is followed by "explore" most often, but explore never leads to "life"
+        File corpus = new File("src/poet/complex-corpus.txt");
+        GraphPoet poet = new GraphPoet(corpus);
+        
+        String input = "To life";
+        String expectedPoem = "To seek life";
+        String generatedPoem = poet.poem(input);
+        
+        assertEquals("The bridge word must lie on a path from w1 to w2", expectedPoem, generatedPoem);
+    }
+    
+    @Test
+    public void testTiedBridgesChooseFirstWord() throws IOException {
+        // apple -> yellow -> banana and apple -> xylophone -> banana both have weight 2
+        File corpus = new File("src/poet/tied-corpus.txt");
+        GraphPoet poet = new GraphPoet(corpus);
+        
+        String input = "Apple Banana";
+        String expectedPoem = "Apple xylophone Banana";
+        String generatedPoem = poet.poem(input);
+        
+        assertEquals("Tied bridge words should resolve to the lexicographically first", expectedPoem, generatedPoem);
+    }
+    
+    @Test
+    public void testPrecomputedBridgesMatch() throws IOException {
+        String[] corpora = { "src/poet/simple-corpus.txt", "src/poet/complex-corpus.txt",
+                             "src/poet/mugar-omni-theater.txt", "src/poet/tied-corpus.txt" };
+        String[] inputs = { "Seek to explore new and exciting synergies!", "Seek to explore new frontiers",
+                            "Test the system.", "To life", "to new worlds and explore", "apple banana", "" };
+        for (String path : corpora) {
+            GraphPoet onDemand = new GraphPoet(new File(path));
+            GraphPoet precomputed = new GraphPoet(new File(path), true);
+            for (String input : inputs) {
+                assertEquals("Precomputed bridges should give the same poem for \"" + input + "\"",
+                             onDemand.poem(input), precomputed.poem(input));
+            }
+        }
+    }
+    
+    @Test
+    public void testAdjacencyAcrossLineBreak() throws IOException {
+        // "worlds" ends the first line and "to" starts the second
+        File corpus = new File("src/poet/simple-corpus.txt");
+        GraphPoet poet = new GraphPoet(corpus);
+        
+        String input = "Worlds explore";
+        String expectedPoem = "Worlds to explore";
+        String generatedPoem = poet.poem(input);
+        
+        assertEquals("Words on either side of a line break should be adjacent", expectedPoem, generatedPoem);
+    }
+    
+    @Test
+    public void testParallelBuildMatches() throws IOException {
+        File corpus = new File("src/poet/complex-corpus.txt");
+        GraphPoet sequential = new GraphPoet(corpus);
+        GraphPoet parallel = GraphPoet.builder(corpus).parallelism(4).precomputeBridges().build();
+        
+        String input = "Seek to explore new frontiers";
+        assertEquals("Parallel loading should not change the poem", sequential.poem(input), parallel.poem(input));
+    }
+    
+    @Test
+    public void testAddAndRemoveText() throws IOException {
+        File corpus = new File("src/poet/mugar-omni-theater.txt");
+        GraphPoet poet = new GraphPoet(corpus);
+        
+        poet.addText("test your sound system. test your sound system.");
+        assertEquals("Added text should bridge new pairs", "Test your sound", poet.poem("Test sound"));
+        assertEquals("Added text should join the corpus's edges", "Sound system. test", poet.poem("Sound test"));
+        
+        poet.removeText("test your sound system. test your sound system.");
+        assertEquals("Removing the text should forget its words", "Test sound", poet.poem("Test sound"));
+        assertEquals("Removing the text should keep the corpus's edges", "Sound test", poet.poem("Sound test"));
+        assertEquals("Removing the text should restore the poem", "Test of the system.", poet.poem("Test the system."));
+    }
+    
+    @Test
+    public void testRemoveTextNotAddedRejected() throws IOException {
+        File corpus = new File("src/poet/mugar-omni-theater.txt");
+        GraphPoet poet = new GraphPoet(corpus);
+        try {
+            poet.removeText("test of the theater");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Rejected removal should leave the poet unchanged",
+                         "Test of the system.", poet.poem("Test the system."));
+        }
+    }
+    
+    @Test
+    public void testOverflowingAdditionRejected() {
+        for (boolean precompute : new boolean[] { false, true }) {
+            Graph<String> graph = Graph.empty();
+            graph.set("to", "seek", 1);
+            graph.set("seek", "life", 1);
+            graph.set("strange", "worlds", Integer.MAX_VALUE);
+            GraphPoet poet = new GraphPoet(graph, precompute);
+            try {
+                poet.addText("seek strange life to seek strange worlds");
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertEquals("Rejected addition should leave the poet unchanged, precompute " + precompute,
+                             "seek life", poet.poem("seek life"));
+                assertEquals("Rejected addition should keep bridges, precompute " + precompute,
+                             "to seek life", poet.poem("to life"));
+            }
+        }
+    }
+    
+    @Test
+    public void testIncrementalUpdatesMatchFreshPoet() throws IOException {
+        String[] texts = { "to seek new life", "and new civilizations to explore",
+                           "life and new worlds", "seek strange new life" };
+        File corpus = new File("src/poet/simple-corpus.txt");
+        GraphPoet precomputed = new GraphPoet(corpus, true);
+        GraphPoet onDemand = new GraphPoet(corpus);
+        String[] inputs = { "Seek to explore new and exciting synergies!", "To life", "explore worlds",
+                            "new new", "seek explore civilizations", "strange life" };
+        for (int round = 0; round < 2 * texts.length; round++) {
+            String text = texts[round % texts.length];
+            if (round < texts.length) {
+                precomputed.addText(text);
+                onDemand.addText(text);
+            } else {
+                precomputed.removeText(text);
+                onDemand.removeText(text);
+            }
+            for (String input : inputs) {
+                assertEquals("Updated precomputed bridges should match after round " + round,
+                             onDemand.poem(input), precomputed.poem(input));
+            }
+        }
+        GraphPoet fresh = new GraphPoet(corpus);
+        for (String input : inputs) {
+            assertEquals("Adding then removing every text should restore the poem",
+                         fresh.poem(input), precomputed.poem(input));
+        }
+    }
+    
+    @Test
+    public void testPoemsSeeWholeUpdates() throws Exception {
+        File corpus = new File("src/poet/mugar-omni-theater.txt");
+        final GraphPoet poet = new GraphPoet(corpus, true);
+        final String update = "this x a this x a sound y system. sound y system.";
+        final String input = "This a sound system.";
+        final String before = poet.poem(input);
+        poet.addText(update);
+        final String after = poet.poem(input);
+        poet.removeText(update);
+        assertNotEquals("Update should change the poem", before, after);
+        
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                poet.addText(update);
+                poet.removeText(update);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            String poem = poet.poem(input);
+            assertTrue("Poem should reflect all or none of an update: " + poem,
+                       poem.equals(before) || poem.equals(after));
+        }
+        writer.join();
+    }
+    
+    @Test
+    public void testSnapshotRoundTrip() throws IOException {
+        File corpus = new File("src/poet/simple-corpus.txt");
+        GraphPoet poet = new GraphPoet(corpus);
+        File snapshot = File.createTempFile("poet", ".snapshot");
+        snapshot.deleteOnExit();
+        poet.saveSnapshot(snapshot.toPath());
+        
+        GraphPoet loaded = GraphPoet.fromSnapshot(snapshot.toPath());
+        String input = "Seek to explore new and exciting synergies!";
+        assertEquals("Poet loaded from a snapshot should write the same poem", poet.poem(input), loaded.poem(input));
+        
+        loaded.addText("explore brave new worlds explore brave new worlds");
+        assertEquals("Poet loaded from a snapshot should accept updates",
+                     "Seek to explore brave new life and exciting synergies!", loaded.poem(input));
+    }
+    
+    @Test
+    public void testSnapshotVerifiedOnRequest() throws IOException {
+        File snapshot = File.createTempFile("poet", ".snapshot");
+        snapshot.deleteOnExit();
+        new GraphPoet(new File("src/poet/simple-corpus.txt")).saveSnapshot(snapshot.toPath());
+        GraphPoet.fromSnapshot(snapshot.toPath(), true);
+        
+        try (RandomAccessFile raf = new RandomAccessFile(snapshot, "rw")) {
+            raf.seek(raf.length() - 1);
+            int b = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(b ^ 0xFF);
+        }
+        GraphPoet.fromSnapshot(snapshot.toPath());
+        try {
+            GraphPoet.fromSnapshot(snapshot.toPath(), true);
+            fail("Expected IOException for a corrupt body");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testMetricsTimeEachStage() throws IOException {
+        Metrics metrics = new Metrics("poet-test");
+        GraphPoet poet = GraphPoet.builder(new File("src/poet/simple-corpus.txt"))
+                .precomputeBridges().metrics(metrics).build();
+        String input = "Seek to explore new and exciting synergies!";
+        assertEquals("Metrics should not change the poem",
+                     new GraphPoet(new File("src/poet/simple-corpus.txt")).poem(input), poet.poem(input));
+        assertEquals("Expected one corpus load", 1, metrics.snapshot().get("corpusLoad").getCount());
+        assertEquals("Expected one precomputation", 1, metrics.snapshot().get("bridgePrecompute").getCount());
+        assertEquals("Expected one poem", 1, metrics.snapshot().get("poem").getCount());
+        assertEquals("Expected a bridge search per adjacent pair", 6, metrics.snapshot().get("bridgeSearch").getCount());
+        
+        metrics.setEnabled(false);
+        poet.poem(input);
+        assertEquals("Disabled metrics should not record", 1, metrics.snapshot().get("poem").getCount());
+    }
+    
+    @Test
+    public void testBridgeCacheMatchesSearch() throws IOException {
+        File corpus = new File("src/poet/simple-corpus.txt");
+        GraphPoet uncached = new GraphPoet(corpus);
+        for (BridgeCache.Policy policy : BridgeCache.Policy.values()) {
+            GraphPoet poet = GraphPoet.builder(corpus).bridgeCache(8, policy).build();
+            List<String> inputs = batchInputs(500);
+            for (String input : inputs) {
+                assertEquals("Cached poem should match for " + policy, uncached.poem(input), poet.poem(input));
+            }
+            assertEquals("Cached batch should match for " + policy, uncached.poems(inputs), poet.poems(inputs));
+            BridgeCache.Stats stats = poet.bridgeCache().stats();
+            assertTrue("Expected hits for " + policy + ": " + stats, stats.hitCount() > 0);
+            assertTrue("Expected misses for " + policy + ": " + stats, stats.missCount() > 0);
+            assertTrue("Expected evictions for " + policy + ": " + stats, stats.evictionCount() > 0);
+            assertTrue("Cache should stay within its bound: " + stats, stats.size() <= 8);
+        }
+    }
+    
+    @Test
+    public void testBridgeCacheInvalidatedByUpdates() throws IOException {
+        File corpus = new File("src/poet/simple-corpus.txt");
+        GraphPoet poet = GraphPoet.builder(corpus).bridgeCache(100, BridgeCache.Policy.TINY_LFU).build();
+        String input = "Seek to explore new and exciting synergies!";
+        String before = poet.poem(input);
+        assertEquals("Expected a miss per pair", 6, poet.bridgeCache().stats().missCount());
+        assertEquals("Repeated poem should be the same", before, poet.poem(input));
+        assertEquals("Expected a hit per pair", 6, poet.bridgeCache().stats().hitCount());
+        
+        poet.addText("explore brave new worlds explore brave new worlds");
+        assertEquals("Cache should not hide an added path",
+                     "Seek to explore brave new life and exciting synergies!", poet.poem(input));
+        poet.removeText("explore brave new worlds explore brave new worlds");
+        assertEquals("Cache should not hide a removed path", before, poet.poem(input));
+        assertTrue("Unaffected pairs should stay cached", poet.bridgeCache().size() > 1);
+    }
+    
+    @Test
+    public void testBridgeCacheUnusedWhenPrecomputed() throws IOException {
+        GraphPoet poet = GraphPoet.builder(new File("src/poet/simple-corpus.txt"))
+                .precomputeBridges().bridgeCache(100, BridgeCache.Policy.LRU).build();
+        assertNull("Expected no cache", poet.bridgeCache());
+    }
+
+    @Test
+    public void testLongBridges() throws IOException {
+        File corpus = new File("src/poet/simple-corpus.txt");
+        GraphPoet single = new GraphPoet(corpus);
+        GraphPoet oneWord = GraphPoet.builder(corpus).maxBridgeWords(1).build();
+        GraphPoet twoWords = GraphPoet.builder(corpus).maxBridgeWords(2).build();
+        GraphPoet fourWords = GraphPoet.builder(corpus).maxBridgeWords(4).precomputeBridges().build();
+        assertEquals("Expected no single-word bridge", "To worlds", single.poem("To worlds"));
+        assertEquals("Expected no single-word bridge", "To worlds", oneWord.poem("To worlds"));
+        assertEquals("Expected two-word bridge", "To explore new worlds", twoWords.poem("To worlds"));
+        assertEquals("Expected heaviest bridge", "To explore strange new worlds", fourWords.poem("To worlds"));
+        assertEquals("Expected no repeated word", "new life", fourWords.poem("new life"));
+
+        List<String> inputs = batchInputs(300);
+        for (String input : inputs) {
+            assertEquals("Default bridge length should match", single.poem(input), oneWord.poem(input));
+            StringWriter streamed = new StringWriter();
+            fourWords.poem(new StringReader(input), streamed);
+            assertEquals("Streamed poem should match", fourWords.poem(input), streamed.toString());
+        }
+        List<String> expected = new ArrayList<>();
+        for (String input : inputs) {
+            expected.add(fourWords.poem(input));
+        }
+        assertEquals("Batch should match poem()", expected, fourWords.poems(inputs));
+    }
+
+    @Test
+    public void testLongBridgeCacheInvalidatedByUpdates() throws IOException {
+        GraphPoet poet = GraphPoet.builder(new File("src/poet/simple-corpus.txt"))
+                .maxBridgeWords(3).bridgeCache(100, BridgeCache.Policy.LRU).build();
+        assertEquals("Expected bridge", "To explore strange new life", poet.poem("To life"));
+        assertEquals("Expected cached bridge", "To explore strange new life", poet.poem("To life"));
+        assertEquals("Expected a hit", 1, poet.bridgeCache().stats().hitCount());
+        // changes only the middle of the path, so neither end of the pair
+        poet.addText("explore bold new explore bold new");
+        assertEquals("Cache should not hide a changed middle", "To explore bold new life", poet.poem("To life"));
+    }
+
+    @Test
+    public void testBridgeSearchBudget() throws IOException {
+        GraphPoet poet = GraphPoet.builder(new File("src/poet/simple-corpus.txt"))
+                .maxBridgeWords(4).bridgeSearchBudget(100, 1).build();
+        assertEquals("Exhausted budget should leave no bridge", "To worlds", poet.poem("To worlds"));
+    }
+
+    @Test
+    public void testMemoryBudgetAboveCorpus() throws IOException {
+        File corpus = new File("src/poet/mugar-omni-theater.txt");
+        GraphPoet exact = new GraphPoet(corpus);
+        GraphPoet budgeted = GraphPoet.builder(corpus).memoryBudget(1 << 20).build();
+        for (String input : batchInputs(100)) {
+            assertEquals("A budget the corpus fits in should not change poems", exact.poem(input), budgeted.poem(input));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMemoryBudgetTooSmall() {
+        GraphPoet.builder(new File("src/poet/simple-corpus.txt")).memoryBudget(100);
+    }
+
+    @Test
+    public void testPartitionedGraphMatchesLocal() throws IOException {
+        File corpus = new File("src/poet/simple-corpus.txt");
+        GraphPoet local = new GraphPoet(corpus);
+        try (PartitionedGraph graph = PartitionedGraph.builder().shards(2).build()) {
+            GraphPoet partitioned = GraphPoet.builder(corpus).partitionedGraph(graph)
+                    .bridgeCache(16, BridgeCache.Policy.LRU).build();
+            assertEquals("Expected the same graph", local.affinities().vertices(), graph.vertices());
+            List<String> inputs = batchInputs(200);
+            for (String input : inputs) {
+                assertEquals("Poem should match for \"" + input + "\"", local.poem(input), partitioned.poem(input));
+            }
+            long before = graph.requests();
+            assertEquals("Batch should match", local.poems(inputs), partitioned.poems(inputs));
+            assertTrue("Expected two requests per shard for the batch", graph.requests() - before <= 4);
+            
+            String input = "Seek to explore new and exciting synergies!";
+            local.addText("explore brave new worlds explore brave new worlds");
+            partitioned.addText("explore brave new worlds explore brave new worlds");
+            assertEquals("Update should match", local.poem(input), partitioned.poem(input));
+        }
+    }
+    
+    @Test
+    public void testDurableGraphKeepsUpdates() throws IOException {
+        Path directory = Files.createTempDirectory("durable-poet");
+        String input = "Seek to explore new and exciting synergies!";
+        String updated;
+        try (DurableGraph<String> graph = DurableGraph.builder(directory).build()) {
+            GraphPoet poet = GraphPoet.builder(new File("src/poet/simple-corpus.txt")).durableGraph(graph).build();
+            assertEquals("Expected the corpus's poem", new GraphPoet(new File("src/poet/simple-corpus.txt")).poem(input),
+                         poet.poem(input));
+            poet.addText("explore brave new worlds explore brave new worlds");
+            updated = poet.poem(input);
+        }
+        try (DurableGraph<String> graph = DurableGraph.builder(directory).build()) {
+            // a recovered graph is used as it is, without reading the corpus
+            GraphPoet poet = GraphPoet.builder(new File("no-such-corpus.txt")).durableGraph(graph).build();
+            assertEquals("Expected the update recovered", updated, poet.poem(input));
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+    
+    @Test
+    public void testConcurrentPoemsOverConcurrentGraph() throws Exception {
+        Path directory = Files.createTempDirectory("durable-poet");
+        Random random = new Random(6005);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append('w').append(random.nextInt(200)).append(' ');
+        }
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            inputs.add("w" + random.nextInt(200) + " w" + random.nextInt(200) + " w" + random.nextInt(200));
+        }
+        try (DurableGraph<String> graph = DurableGraph.builder(directory).graph(new ConcurrentGraph<>()).build()) {
+            Path corpus = directory.resolve("corpus.txt");
+            Files.write(corpus, text.toString().getBytes(StandardCharsets.UTF_8));
+            GraphPoet poet = GraphPoet.builder(corpus.toFile()).durableGraph(graph).build();
+            GraphPoet reference = new GraphPoet(corpus.toFile());
+            // bridge searches read the graph from inside forEachTarget; they must not deadlock
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+            for (int t = 0; t < 8; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        for (int round = 0; round < 5; round++) {
+                            for (String input : inputs) {
+                                assertEquals("Poem of " + input, reference.poem(input), poet.poem(input));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                });
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join(TimeUnit.SECONDS.toMillis(60));
+                assertFalse("Expected poems to finish", thread.isAlive());
+            }
+            assertEquals("Expected no failures", Collections.emptyList(), failures);
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+    
+    @Test
+    public void testStreamedPoemMatchesPoem() throws IOException {
+        File corpus = new File("src/poet/simple-corpus.txt");
+        GraphPoet[] poets = { new GraphPoet(corpus), new GraphPoet(corpus, true),
+                              GraphPoet.builder(corpus).bridgeCache(16, BridgeCache.Policy.LRU).build() };
+        List<String> inputs = new ArrayList<>(batchInputs(300));
+        inputs.addAll(Arrays.asList("  Seek to", "new\nlife  ", " ", "   explore   new  ", "To explore new\n"));
+        for (GraphPoet poet : poets) {
+            for (String input : inputs) {
+                StringWriter whole = new StringWriter();
+                poet.poem(new StringReader(input), whole);
+                assertEquals("Streamed poem should match for \"" + input + "\"", poet.poem(input), whole.toString());
+                
+                // a reader returning a few characters at a time splits words across reads
+                StringWriter trickle = new StringWriter();
+                poet.poem(new FilterReader(new StringReader(input)) {
+                    @Override
+                    public int read(char[] buffer, int offset, int length) throws IOException {
+                        return super.read(buffer, offset, Math.min(length, 3));
+                    }
+                }, trickle);
+                assertEquals("Trickled poem should match for \"" + input + "\"", poet.poem(input), trickle.toString());
+            }
+        }
+    }
+    
+    @Test
+    public void testStreamedPoemOfLongInput() throws IOException {
+        GraphPoet poet = new GraphPoet(new File("src/poet/simple-corpus.txt"));
+        String unit = "Seek to explore new life ";
+        // each repetition after the first adds the same poem text, bridges included
+        int first = poet.poem(unit).length();
+        int next = poet.poem(unit + unit).length() - first;
+        int repetitions = 200_000;
+        Reader input = new Reader() {
+            private long position = 0;
+            
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                if (position == (long) unit.length() * repetitions) return -1;
+                int n = (int) Math.min(length, (long) unit.length() * repetitions - position);
+                for (int i = 0; i < n; i++) {
+                    buffer[offset + i] = unit.charAt((int) (position++ % unit.length()));
+                }
+                return n;
+            }
+            
+            @Override
+            public void close() {
+            }
+        };
+        long[] written = { 0 };
+        Writer output = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                written[0] += length;
+            }
+            
+            @Override
+            public void flush() {
+            }
+            
+            @Override
+            public void close() {
+            }
+        };
+        poet.poem(input, output);
+        assertEquals("Expected every repetition's poem written", first + (long) next * (repetitions - 1), written[0]);
+    }
+    
+    // Random inputs over the corpus's words, with odd spacing and case, and some repeated pairs
+    private static List<String> batchInputs(int count) {
+        String[] words = { "Seek", "to", "explore", "new", "and", "exciting", "synergies!", "STRANGE", "life", "zzz", "" };
+        Random random = new Random(6005);
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder input = new StringBuilder();
+            for (int k = random.nextInt(12); k >= 0; k--) {
+                input.append(words[random.nextInt(words.length)]).append(random.nextInt(8) == 0 ? "  " : " ");
+            }
+            inputs.add(input.toString());
+        }
+        inputs.add("");
+        inputs.add(" ");
+        return inputs;
+    }
+    
+    @Test
+    public void testPoemsMatchPoem() throws IOException {
+        for (boolean precompute : new boolean[] { false, true }) {
+            GraphPoet poet = new GraphPoet(new File("src/poet/simple-corpus.txt"), precompute);
+            List<String> inputs = batchInputs(2000);
+            List<String> expected = new ArrayList<>();
+            for (String input : inputs) {
+                expected.add(poet.poem(input));
+            }
+            assertEquals("Batch should match poem()", expected, poet.poems(inputs));
+            assertEquals("Calling-thread executor should match poem()", expected, poet.poems(inputs, Runnable::run));
+            assertEquals("Stream should match poem()", expected, poet.poems(inputs.stream()).collect(Collectors.toList()));
+        }
+    }
+    
+    @Test
+    public void testPoemsEmptyBatch() throws IOException {
+        GraphPoet poet = new GraphPoet(new File("src/poet/simple-corpus.txt"));
+        assertEquals("Expected no poems", Collections.emptyList(), poet.poems(Collections.<String>emptyList()));
+        assertEquals("Expected no poems", 0, poet.poems(Stream.<String>empty()).count());
+    }
+    
+    @Test
+    public void testPoemsOnExecutor() throws IOException {
+        GraphPoet poet = new GraphPoet(new File("src/poet/simple-corpus.txt"));
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            List<String> inputs = batchInputs(1000);
+            assertEquals("Pool should match common pool", poet.poems(inputs), poet.poems(inputs, executor));
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("Expected poem with bridge",
+                     Arrays.asList("Seek to explore strange new life"), poet.poems(Arrays.asList("Seek to explore new life")));
+    }
 }
@@ -0,0 +1,279 @@
+package poet;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import graph.Graph;
+import metrics.Metrics;
+
+public class PoemServerTest {
+
+    // Testing strategy:
+    //   - requests: poem input, empty input, non-ASCII input, wrong path, wrong method,
+    //     input over the maximum size
+    //   - concurrent requests: same input (coalesced), different inputs over the limit
+    //     (rejected), same input as one in flight while at the limit (coalesced)
+    //   - swap: with a request in flight, then new requests
+    //   - request threads: all busy (rejected, on runtimes without virtual threads)
+    //   - builder: invalid options
+    //   - metrics: request and poem timers record
+
+    @Test
+    public void testServesPoems() throws IOException, InterruptedException {
+        GraphPoet poet = new GraphPoet(new File("src/poet/simple-corpus.txt"));
+        Metrics metrics = new Metrics("poem-server-test");
+        try (PoemServer server = PoemServer.builder(poet).metrics(metrics).build()) {
+            String input = "Seek to explore new and exciting synergies!";
+            Response response = post(server.uri(), input);
+            assertEquals("Expected success", 200, response.status);
+            assertEquals("Expected the poet's poem", poet.poem(input), response.body);
+            assertEquals("Expected empty poem", 200, post(server.uri(), "").status);
+            // a request is timed until just after its response is sent
+            awaitCount(() -> metrics.snapshot().get("request").getCount(), 2);
+            assertEquals("Expected one timed poem per request", 2,
+                    metrics.snapshot().get("poemRequest").getCount());
+        }
+    }
+
+    @Test
+    public void testNonAsciiInput() throws IOException {
+        try (PoemServer server = PoemServer.builder(new EchoPoet("echo")).build()) {
+            String input = "caf\u00e9 \u8a69 \ud83d\udcdc";
+            assertEquals("Expected input decoded and poem encoded as UTF-8", "echo:" + input,
+                    post(server.uri(), input).body);
+        }
+    }
+
+    @Test
+    public void testBadRequests() throws IOException {
+        try (PoemServer server = PoemServer.builder(new EchoPoet("echo")).maxInputBytes(8).build()) {
+            assertEquals("Expected not found", 404, post(server.uri().resolve("/poems"), "a b").status);
+            HttpURLConnection get = (HttpURLConnection) server.uri().toURL().openConnection();
+            assertEquals("Expected method not allowed", 405, get.getResponseCode());
+            assertEquals("Expected allowed methods", "POST", get.getHeaderField("Allow"));
+            get.disconnect();
+            assertEquals("Expected input of the maximum size accepted", 200, post(server.uri(), "12345678").status);
+            assertEquals("Expected input too large", 413, post(server.uri(), "123456789").status);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxInFlight() {
+        PoemServer.builder(new EchoPoet("echo")).maxInFlight(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPort() {
+        PoemServer.builder(new EchoPoet("echo")).port(65536);
+    }
+
+    @Test
+    public void testCoalescesIdenticalInputs() throws Exception {
+        BlockingPoet poet = new BlockingPoet("slow");
+        ExecutorService clients = Executors.newCachedThreadPool();
+        try (PoemServer server = PoemServer.builder(poet).build()) {
+            Future<Response> first = clients.submit(() -> post(server.uri(), "same input"));
+            assertTrue("Expected the poet to start", poet.entered.tryAcquire(10, TimeUnit.SECONDS));
+            List<Future<Response>> others = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                others.add(clients.submit(() -> post(server.uri(), "same input")));
+            }
+            awaitCount(server::coalesced, 4);
+            poet.release.countDown();
+            assertEquals("Expected the poem", "slow:same input", first.get().body);
+            for (Future<Response> other : others) {
+                assertEquals("Expected the shared poem", "slow:same input", other.get().body);
+            }
+            assertEquals("Expected one poem generated", 1, poet.calls.get());
+            assertEquals("Expected a later request to generate again", "slow:same input",
+                    post(server.uri(), "same input").body);
+            assertEquals("Expected a second poem generated", 2, poet.calls.get());
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testAdmissionControl() throws Exception {
+        BlockingPoet poet = new BlockingPoet("slow");
+        ExecutorService clients = Executors.newCachedThreadPool();
+        try (PoemServer server = PoemServer.builder(poet).maxInFlight(1).build()) {
+            Future<Response> first = clients.submit(() -> post(server.uri(), "a"));
+            assertTrue("Expected the poet to start", poet.entered.tryAcquire(10, TimeUnit.SECONDS));
+            Response refused = post(server.uri(), "b");
+            assertEquals("Expected service unavailable", 503, refused.status);
+            assertEquals("Expected a retry hint", "1", refused.retryAfter);
+            assertEquals("Expected a rejection counted", 1, server.rejected());
+            Future<Response> joined = clients.submit(() -> post(server.uri(), "a"));
+            awaitCount(server::coalesced, 1);
+            poet.release.countDown();
+            assertEquals("Expected the poem", "slow:a", first.get().body);
+            assertEquals("Expected a coalesced request admitted at the limit", "slow:a", joined.get().body);
+            assertEquals("Expected a permit returned", "slow:b", post(server.uri(), "b").body);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRequestThreadsBounded() throws Exception {
+        BlockingPoet poet = new BlockingPoet("slow");
+        ExecutorService clients = Executors.newCachedThreadPool();
+        try (PoemServer server = PoemServer.builder(poet).maxThreads(1).build()) {
+            Future<Response> first = clients.submit(() -> post(server.uri(), "a"));
+            assertTrue("Expected the poet to start", poet.entered.tryAcquire(10, TimeUnit.SECONDS));
+            if (!server.usesVirtualThreads()) {
+                Response refused = post(server.uri(), "a");
+                assertEquals("Expected service unavailable with every thread busy", 503, refused.status);
+                assertEquals("Expected a retry hint", "1", refused.retryAfter);
+                assertEquals("Expected a rejection counted", 1, server.rejected());
+            }
+            poet.release.countDown();
+            assertEquals("Expected the poem", "slow:a", first.get().body);
+            // the thread may not be back in the pool the moment its response is sent
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            Response again = post(server.uri(), "b");
+            while (again.status == 503 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+                again = post(server.uri(), "b");
+            }
+            assertEquals("Expected a thread free again", "slow:b", again.body);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSwapKeepsRequestsInFlight() throws Exception {
+        BlockingPoet old = new BlockingPoet("old");
+        ExecutorService clients = Executors.newCachedThreadPool();
+        try (PoemServer server = PoemServer.builder(old).build()) {
+            Future<Response> inFlight = clients.submit(() -> post(server.uri(), "input"));
+            assertTrue("Expected the poet to start", old.entered.tryAcquire(10, TimeUnit.SECONDS));
+            GraphPoet next = new EchoPoet("new");
+            assertSame("Expected the old poet returned", old, server.swap(next));
+            assertSame("Expected the new poet served", next, server.poet());
+            assertEquals("Expected the same input generated by the new poet", "new:input",
+                    post(server.uri(), "input").body);
+            old.release.countDown();
+            Response finished = inFlight.get();
+            assertEquals("Expected the request in flight to finish", 200, finished.status);
+            assertEquals("Expected the old poet's poem", "old:input", finished.body);
+            assertEquals("Expected no coalescing across poets", 0, server.coalesced());
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static void awaitCount(CountSupplier count, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.get() < expected) {
+            assertTrue("Timed out waiting for " + expected, System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static Response post(URI uri, String input) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(input.getBytes(StandardCharsets.UTF_8));
+            }
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if (in != null) {
+                try (InputStream stream = in) {
+                    byte[] chunk = new byte[4096];
+                    for (int read; (read = stream.read(chunk)) >= 0; ) {
+                        body.write(chunk, 0, read);
+                    }
+                }
+            }
+            return new Response(status, new String(body.toByteArray(), StandardCharsets.UTF_8),
+                    connection.getHeaderField("Retry-After"));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private interface CountSupplier {
+        long get();
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String body;
+        private final String retryAfter;
+
+        Response(int status, String body, String retryAfter) {
+            this.status = status;
+            this.body = body;
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    /**
+     * A poet whose poem of an input is its name and the input.
+     */
+    private static class EchoPoet extends GraphPoet {
+        private final String name;
+
+        EchoPoet(String name) {
+            super(Graph.empty(), false);
+            this.name = name;
+        }
+
+        @Override
+        public String poem(String input) {
+            return name + ":" + input;
+        }
+    }
+
+    /**
+     * An echo poet whose poems wait until released.
+     */
+    private static final class BlockingPoet extends EchoPoet {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final Semaphore entered = new Semaphore(0);
+        private final AtomicInteger calls = new AtomicInteger();
+
+        BlockingPoet(String name) {
+            super(name);
+        }
+
+        @Override
+        public String poem(String input) {
+            calls.incrementAndGet();
+            entered.release();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return super.poem(input);
+        }
+    }
+}